@@ -104,6 +104,44 @@ public interface ISqlJetBtree {
      */
     void setCacheSize(int mxPage);
 
+    /**
+     * Set the maximum number of bytes of the database file which are read
+     * through memory-mapping. Zero disables memory-mapped reads.
+     *
+     * @param mmapSize
+     */
+    void setMmapSize(long mmapSize);
+
+    /**
+     * @return limit of memory-mapped part of the database file.
+     */
+    long getMmapSize();
+
+    /**
+     * Set the number of pages which are read at once when pages are read in
+     * sequential order. One or less disables read-ahead.
+     *
+     * @param pages
+     */
+    void setReadAhead(int pages);
+
+    /**
+     * @return number of pages which are read at once by sequential reads.
+     */
+    int getReadAhead();
+
+    /**
+     * Set the replacement policy of page cache.
+     *
+     * @param policy
+     */
+    void setCachePolicy(SqlJetPageCachePolicy policy);
+
+    /**
+     * @return replacement policy of page cache.
+     */
+    SqlJetPageCachePolicy getCachePolicy();
+
     /**
      * Change the way data is synced to disk in order to increase or decrease
      * how well the database resists damage due to OS crashes and power
@@ -119,7 +157,7 @@ public interface ISqlJetBtree {
 
     SqlJetSafetyLevel getSafetyLevel();
 
-    void setJournalMode(SqlJetPagerJournalMode mode);
+    void setJournalMode(SqlJetPagerJournalMode mode) throws SqlJetException;
 
     SqlJetPagerJournalMode getJournalMode();
 
@@ -0,0 +1,82 @@
+/**
+ * ISqlJetBtreeBuilder.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal;
+
+import org.tmatesoft.sqljet.core.SqlJetException;
+
+/**
+ * Bulk loader of an empty b-tree. Entries should be appended in ascending key
+ * order: leaf pages are packed one after another up to the fill factor and
+ * the interior levels are built bottom-up, so no balancing happens at all.
+ * The tree becomes visible to cursors only after {@link #finish()}.
+ *
+ * Builder doesn't compare keys of index b-trees, caller is responsible for
+ * their order. If loading fails then transaction should be rolled back.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public interface ISqlJetBtreeBuilder {
+
+    /**
+     * Minimal fill factor of pages, in percents.
+     */
+    int MIN_FILL_FACTOR = 10;
+
+    /**
+     * Maximal fill factor of pages, in percents.
+     */
+    int MAX_FILL_FACTOR = 100;
+
+    /**
+     * Appends an entry which follows all entries appended before. Parameters
+     * are the same as for
+     * {@link ISqlJetBtreeCursor#insert(ISqlJetMemoryPointer, long, ISqlJetMemoryPointer, int, int, boolean)}
+     * : for an INTKEY table only nKey is used as the key, for a ZERODATA
+     * table pData and nData are ignored.
+     *
+     * @param pKey
+     *            The key of the new record
+     * @param nKey
+     *            The key of the new record
+     * @param pData
+     *            The data of the new record
+     * @param nData
+     *            The data of the new record
+     * @throws SqlJetException
+     *             if the key of INTKEY table isn't greater than previous one.
+     */
+    void append(ISqlJetMemoryPointer pKey, long nKey, ISqlJetMemoryPointer pData, int nData) throws SqlJetException;
+
+    /**
+     * Returns count of entries appended so far.
+     *
+     * @return
+     */
+    long getCount();
+
+    /**
+     * Builds interior levels of b-tree and moves its top node into the root
+     * page. Builder can't be used after this call.
+     *
+     * @throws SqlJetException
+     */
+    void finish() throws SqlJetException;
+
+}
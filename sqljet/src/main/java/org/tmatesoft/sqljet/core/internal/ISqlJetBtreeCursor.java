@@ -127,6 +127,22 @@ public interface ISqlJetBtreeCursor {
     void insert( ISqlJetMemoryPointer pKey, long nKey, ISqlJetMemoryPointer pData, int nData,
          int nZero, boolean bias) throws SqlJetException;
 
+    /**
+     * Starts bulk load of the empty b-tree which this cursor is opened on.
+     * Entries are appended to the returned builder in key order instead of
+     * inserting them one by one, see {@link ISqlJetBtreeBuilder}. The cursor
+     * should be writable and it is left invalid after the load is finished.
+     *
+     * @param fillFactor
+     *            percent of page space used by loaded cells, from
+     *            {@link ISqlJetBtreeBuilder#MIN_FILL_FACTOR} to
+     *            {@link ISqlJetBtreeBuilder#MAX_FILL_FACTOR}.
+     * @return builder of b-tree
+     * @throws SqlJetException
+     *             if b-tree isn't empty.
+     */
+    ISqlJetBtreeBuilder getBuilder(int fillFactor) throws SqlJetException;
+
     /** Move the cursor to the first entry in the table.
      *
      * @return false if the cursor actually points to something or true if the table is empty.
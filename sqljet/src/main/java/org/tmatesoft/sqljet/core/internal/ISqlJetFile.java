@@ -17,6 +17,8 @@
  */
 package org.tmatesoft.sqljet.core.internal;
 
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Set;
 
 import org.tmatesoft.sqljet.core.SqlJetException;
@@ -119,6 +121,17 @@ public interface ISqlJetFile {
      */
     void write(final ISqlJetMemoryPointer buffer, final int amount, final long offset) throws SqlJetIOException;
 
+    /**
+     * Write amount bytes from each of buffers into consecutive regions of
+     * file starting at offset, with as few system calls as possible.
+     * 
+     * @param buffers
+     * @param amount
+     * @param offset
+     * @throws SqlJetIOException
+     */
+    void write(final List<ISqlJetMemoryPointer> buffers, final int amount, final long offset) throws SqlJetIOException;
+
     /**
      * Truncate an open file to a specified size
      * 
@@ -199,6 +212,31 @@ public interface ISqlJetFile {
      */
     boolean unlock(final SqlJetLockType lockType) throws SqlJetIOException;
 
+    /**
+     * Locks range of file which isn't used by {@link #lock(SqlJetLockType)}.
+     * Unlike locks of connections the lock belongs to this file handle rather
+     * than to a thread, it is held until {@link #unlockRange(long, long)} is
+     * called or the file is closed. Other handles of the same file in this
+     * process are not closed while it is held, since that would release it.
+     * 
+     * @param offset
+     * @param length
+     * @param shared
+     *            true for shared lock, false for exclusive one.
+     * @return false if the range is locked by another process.
+     * @throws SqlJetIOException
+     */
+    boolean lockRange(long offset, long length, boolean shared) throws SqlJetIOException;
+
+    /**
+     * Releases lock taken by {@link #lockRange(long, long, boolean)}.
+     * 
+     * @param offset
+     * @param length
+     * @throws SqlJetIOException
+     */
+    void unlockRange(long offset, long length) throws SqlJetIOException;
+
     /**
      * This routine checks if there is a RESERVED lock held on the specified
      * file by this or any other process. The return value is set 
@@ -241,5 +279,26 @@ public interface ISqlJetFile {
     * an in-memory journal 
     */
     boolean isMemJournal();
-    
+
+    /**
+     * Sets the maximum number of bytes from the start of the file which may
+     * be accessed through memory-mapping. Zero disables memory-mapping.
+     *
+     * @param mapSize
+     */
+    void setMapSize(long mapSize);
+
+    /**
+     * Returns read-only view of the memory-mapped region of file, or null if
+     * this region could not be mapped: memory-mapping is disabled, the region
+     * is beyond the map size limit or beyond the end of file. In that case
+     * caller should use {@link #read(ISqlJetMemoryPointer, int, long)}.
+     *
+     * @param offset
+     * @param amount
+     * @return
+     * @throws SqlJetIOException
+     */
+    ByteBuffer fetch(long offset, int amount) throws SqlJetIOException;
+
 }
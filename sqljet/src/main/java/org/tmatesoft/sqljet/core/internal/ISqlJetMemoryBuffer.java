@@ -19,6 +19,7 @@ package org.tmatesoft.sqljet.core.internal;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
 /**
@@ -205,6 +206,16 @@ public interface ISqlJetMemoryBuffer {
      */
     int writeToFile(int pointer, RandomAccessFile file, FileChannel channel, long position, int count) throws IOException;
 
+    /**
+     * Returns {@link ByteBuffer} which shares memory chunk at pointer with
+     * this buffer, for channel operations which take several buffers at once.
+     *
+     * @param pointer
+     * @param count
+     * @return
+     */
+    ByteBuffer getByteBuffer(int pointer, int count);
+
     /**
      * @param dstPos
      * @param src
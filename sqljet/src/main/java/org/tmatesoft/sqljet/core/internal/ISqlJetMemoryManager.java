@@ -88,4 +88,37 @@ public interface ISqlJetMemoryManager {
      */
     void free(ISqlJetMemoryBuffer buffer);
 
+    /**
+     * Set limit of off-heap slab which {@link SqlJetMemoryBufferType#SLAB}
+     * buffers are carved from. Slab reserves direct memory by regions when
+     * it needs them, regions which are already reserved are kept when the
+     * limit is lowered. Zero disables slab. Page cache takes its buffers
+     * from slab when SqlJetPage.BUFFER_TYPE system property is SLAB.
+     * 
+     * @param size
+     *            limit of slab in bytes.
+     */
+    void setSlabSize(long size);
+
+    /**
+     * Get limit of off-heap slab.
+     * 
+     * @return limit of slab in bytes.
+     */
+    long getSlabSize();
+
+    /**
+     * Get bytes of direct memory which slab has reserved.
+     * 
+     * @return reserved bytes.
+     */
+    long getSlabReserved();
+
+    /**
+     * Get bytes of slab slots which are allocated and not freed yet.
+     * 
+     * @return occupied bytes.
+     */
+    long getSlabUsed();
+
 }
@@ -19,6 +19,7 @@ package org.tmatesoft.sqljet.core.internal;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
 /**
@@ -322,6 +323,15 @@ public interface ISqlJetMemoryPointer {
      */
     int writeToFile(int pointer, RandomAccessFile file, FileChannel channel, long position, int count) throws IOException;
 
+    /**
+     * Returns {@link ByteBuffer} which shares count bytes at current address
+     * with this pointer.
+     *
+     * @param count
+     * @return
+     */
+    ByteBuffer getByteBuffer(int count);
+
     /**
      * @return
      */
@@ -203,4 +203,19 @@ public interface ISqlJetPageCache {
      */
     void setCacheSize(final int cacheSize);
 
+    /**
+     * Set the policy which chooses unpinned pages to recycle when the cache is
+     * full.
+     * 
+     * @param policy
+     */
+    void setPolicy(final SqlJetPageCachePolicy policy);
+
+    /**
+     * Get the replacement policy of the pager-cache.
+     * 
+     * @return
+     */
+    SqlJetPageCachePolicy getPolicy();
+
 }
@@ -78,6 +78,18 @@ public interface ISqlJetPager {
     // int SQLJET_DEFAULT_JOURNAL_SIZE_LIMIT = -1;
     int SQLJET_DEFAULT_JOURNAL_SIZE_LIMIT = SqlJetUtility.getIntSysProp("SQLJET_DEFAULT_JOURNAL_SIZE_LIMIT", -1);
 
+    /**
+     * Default number of bytes of database file which are read through
+     * memory-mapping, zero disables memory-mapped reads.
+     */
+    long SQLJET_DEFAULT_MMAP_SIZE = SqlJetUtility.getLongSysProp("SQLJET_DEFAULT_MMAP_SIZE", 0);
+
+    /**
+     * Default number of pages which are read at once when pages are read
+     * sequentially, one or less disables read-ahead.
+     */
+    int SQLJET_DEFAULT_READ_AHEAD = SqlJetUtility.getIntSysProp("SQLJET_DEFAULT_READ_AHEAD", 16);
+
     /**
      * In-memory database's "file-name".
      */
@@ -196,7 +208,7 @@ public interface ISqlJetPager {
      * @param journalMode
      * @return
      */
-    void setJournalMode(final SqlJetPagerJournalMode journalMode);
+    void setJournalMode(final SqlJetPagerJournalMode journalMode) throws SqlJetException;
 
     /**
      * Get the size-limit used for persistent journal files.
@@ -290,6 +302,52 @@ public interface ISqlJetPager {
      */
     int getMaxPageCount();
 
+    /**
+     * Set the maximum number of bytes of the database file which are read
+     * through memory-mapping instead of file reads, like "PRAGMA mmap_size"
+     * does. Zero disables memory-mapped reads.
+     * 
+     * @param mmapSize
+     */
+    void setMmapSize(final long mmapSize);
+
+    /**
+     * Return the limit of memory-mapped part of database file.
+     * 
+     * @return
+     */
+    long getMmapSize();
+
+    /**
+     * Set the number of pages which are read at once when pages missing from
+     * cache are read in sequential order, like in scans of tables and
+     * indices. One or less disables read-ahead.
+     * 
+     * @param pages
+     */
+    void setReadAhead(final int pages);
+
+    /**
+     * Return the number of pages which are read at once by sequential reads.
+     * 
+     * @return
+     */
+    int getReadAhead();
+
+    /**
+     * Set the replacement policy of page cache.
+     * 
+     * @param policy
+     */
+    void setCachePolicy(final SqlJetPageCachePolicy policy);
+
+    /**
+     * Return the replacement policy of page cache.
+     * 
+     * @return
+     */
+    SqlJetPageCachePolicy getCachePolicy();
+
     /**
      * Change the maximum number of in-memory pages that are allowed.
      * 
@@ -1,8 +1,10 @@
 package org.tmatesoft.sqljet.core.internal;
 
 /**
- * Types of buffers implementation.
+ * Types of buffers implementation. SLAB buffers are slots of off-heap slab of
+ * memory manager, if slab is exhausted or disabled then buffers of default
+ * type are allocated instead.
  */
 public enum SqlJetMemoryBufferType {
-    ARRAY, BUFFER, DIRECT
+    ARRAY, BUFFER, DIRECT, SLAB
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+/**
+ * SqlJetPageCachePolicy.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal;
+
+/**
+ * Replacement policies of page cache, see
+ * {@link ISqlJetPageCache#setPolicy(SqlJetPageCachePolicy)}.
+ * 
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ * 
+ */
+public enum SqlJetPageCachePolicy {
+
+    /** Recycle least recently used page */
+    LRU,
+
+    /**
+     * 2Q: pages which were used once, like pages of full table scan, are
+     * recycled before pages which were used again after some time, like
+     * interior pages of b-trees.
+     */
+    TWO_Q
+
+}
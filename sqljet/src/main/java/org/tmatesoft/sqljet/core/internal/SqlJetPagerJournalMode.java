@@ -40,6 +40,9 @@ public enum SqlJetPagerJournalMode {
     TRUNCATE,
     
     /** In-memory journal file */
-    MEMORY
+    MEMORY,
+
+    /** Write-ahead log file */
+    WAL
     
 }
@@ -149,6 +149,16 @@ public final class SqlJetUtility {
         }
     }
 
+    public static long getLongSysProp(final String propName, final long defValue) throws SqlJetError {
+        if (null == propName)
+            throw new SqlJetError("Undefined property name");
+        try {
+            return Long.valueOf(System.getProperty(propName, Long.toString(defValue)));
+        } catch (Throwable t) {
+            throw new SqlJetError("Error while get long value for property " + propName, t);
+        }
+    }
+
     /**
      * @param string
      * @param b
@@ -544,18 +554,46 @@ public final class SqlJetUtility {
     }
 
     public static byte getVarint(ISqlJetMemoryPointer p, int offset, long[] v) {
+        v[0] = getVarintValue(p, offset);
+        return (byte) getVarintLength(p, offset);
+    }
+
+    /**
+     * Reads a 64-bit variable-length integer from memory starting at
+     * p[offset]. Unlike {@link #getVarint(ISqlJetMemoryPointer, int, long[])}
+     * it doesn't need an array to return value, length of integer could be
+     * got by {@link #getVarintLength(ISqlJetMemoryPointer, int)}.
+     *
+     * @param p
+     * @param offset
+     * @return value of integer.
+     */
+    public static long getVarintValue(ISqlJetMemoryPointer p, int offset) {
         long l = 0;
-        for (byte i = 0; i < 8; i++) {
-            final int b = SqlJetUtility.getUnsignedByte(p, i + offset);
+        for (int i = 0; i < 8; i++) {
+            final int b = p.getByteUnsigned(i + offset);
             l = (l << 7) | (b & 0x7f);
             if ((b & 0x80) == 0) {
-                v[0] = l;
-                return ++i;
+                return l;
+            }
+        }
+        return (l << 8) | p.getByteUnsigned(8 + offset);
+    }
+
+    /**
+     * Returns count of bytes of variable-length integer which starts at
+     * p[offset].
+     *
+     * @param p
+     * @param offset
+     * @return length of integer, from 1 to 9.
+     */
+    public static int getVarintLength(ISqlJetMemoryPointer p, int offset) {
+        for (int i = 0; i < 8; i++) {
+            if ((p.getByteUnsigned(i + offset) & 0x80) == 0) {
+                return i + 1;
             }
         }
-        final int b = SqlJetUtility.getUnsignedByte(p, 8 + offset);
-        l = (l << 8) | b;
-        v[0] = l;
         return 9;
     }
 
@@ -573,67 +611,66 @@ public final class SqlJetUtility {
     }
 
     public static byte getVarint32(ISqlJetMemoryPointer p, int offset, int[] v) {
+        final long packed = getVarint32Packed(p, offset);
+        v[0] = unpackVarintValue(packed);
+        return (byte) unpackVarintLength(packed);
+    }
 
-        int x = SqlJetUtility.getUnsignedByte(p, 0 + offset);
-        if (x < 0x80) {
-            v[0] = x;
-            return 1;
-        }
-
-        int a, b;
-        int i = 0;
+    /**
+     * Reads a 32-bit variable-length integer from memory starting at
+     * p[offset] without allocation of array for result: value and count of
+     * read bytes are packed into one long, use
+     * {@link #unpackVarintValue(long)} and {@link #unpackVarintLength(long)}
+     * to get them.
+     *
+     * @param p
+     * @param offset
+     * @return count of bytes in high 32 bits and value in low 32 bits.
+     */
+    public static long getVarint32Packed(ISqlJetMemoryPointer p, int offset) {
 
-        a = SqlJetUtility.getUnsignedByte(p, i + offset);
+        int a = p.getByteUnsigned(offset);
         /* a: p0 (unmasked) */
         if ((a & 0x80) == 0) {
-            v[0] = a;
-            return 1;
+            return packVarint(a, 1);
         }
 
-        i++;
-        b = SqlJetUtility.getUnsignedByte(p, i + offset);
+        int b = p.getByteUnsigned(offset + 1);
         /* b: p1 (unmasked) */
         if ((b & 0x80) == 0) {
             a &= 0x7f;
             a = a << 7;
-            v[0] = a | b;
-            return 2;
+            return packVarint(a | b, 2);
         }
 
-        i++;
         a = a << 14;
-        a |= SqlJetUtility.getUnsignedByte(p, i + offset);
+        a |= p.getByteUnsigned(offset + 2);
         /* a: p0<<14 | p2 (unmasked) */
         if ((a & 0x80) == 0) {
             a &= (0x7f << 14) | (0x7f);
             b &= 0x7f;
             b = b << 7;
-            v[0] = a | b;
-            return 3;
+            return packVarint(a | b, 3);
         }
 
-        i++;
         b = b << 14;
-        b |= SqlJetUtility.getUnsignedByte(p, i + offset);
+        b |= p.getByteUnsigned(offset + 3);
         /* b: p1<<14 | p3 (unmasked) */
         if ((b & 0x80) == 0) {
             b &= (0x7f << 14) | (0x7f);
             a &= (0x7f << 14) | (0x7f);
             a = a << 7;
-            v[0] = a | b;
-            return 4;
+            return packVarint(a | b, 4);
         }
 
-        i++;
         a = a << 14;
-        a |= SqlJetUtility.getUnsignedByte(p, i + offset);
+        a |= p.getByteUnsigned(offset + 4);
         /* a: p0<<28 | p2<<14 | p4 (unmasked) */
         if ((a & 0x80) == 0) {
             a &= (0x7f << 28) | (0x7f << 14) | (0x7f);
             b &= (0x7f << 28) | (0x7f << 14) | (0x7f);
             b = b << 7;
-            v[0] = a | b;
-            return 5;
+            return packVarint(a | b, 5);
         }
 
         /*
@@ -641,16 +678,31 @@ public final class SqlJetUtility {
          * that case we are not in any hurry. Use the (relatively slow)
          * general-purpose sqlite3GetVarint() routine to extract the value.
          */
-        {
-            long[] v64 = new long[1];
-            byte n;
-
-            i -= 4;
-            n = getVarint(p, offset, v64);
-            assert (n > 5 && n <= 9);
-            v[0] = (int) v64[0];
-            return n;
-        }
+        final int n = getVarintLength(p, offset);
+        assert (n > 5 && n <= 9);
+        return packVarint((int) getVarintValue(p, offset), n);
+    }
+
+    private static long packVarint(int value, int length) {
+        return ((long) length << 32) | (value & 0xffffffffL);
+    }
+
+    /**
+     * @param packed
+     *            result of {@link #getVarint32Packed(ISqlJetMemoryPointer, int)}.
+     * @return value of integer.
+     */
+    public static int unpackVarintValue(long packed) {
+        return (int) packed;
+    }
+
+    /**
+     * @param packed
+     *            result of {@link #getVarint32Packed(ISqlJetMemoryPointer, int)}.
+     * @return count of bytes of integer.
+     */
+    public static int unpackVarintLength(long packed) {
+        return (int) (packed >>> 32);
     }
 
     /**
@@ -756,6 +808,62 @@ public final class SqlJetUtility {
         }
     }
 
+    /**
+     * Compares UTF-8 text with string by code points, without decoding of
+     * text into {@link String}. As {@link #toString(ISqlJetMemoryPointer, SqlJetEncoding)}
+     * does, text ends at first zero byte. Malformed bytes are compared as
+     * replacement character U+FFFD.
+     *
+     * @param text
+     *            UTF-8 bytes between position and limit.
+     * @param s
+     * @return negative, zero or positive value as text is less, equal or
+     *         greater than s.
+     */
+    public static int compareUtf8(ByteBuffer text, String s) {
+        int i = text.position();
+        final int end = text.limit();
+        int j = 0;
+        final int len = s.length();
+        while (i < end) {
+            int c = text.get(i++) & 0xff;
+            if (c == 0) {
+                break;
+            }
+            if (c >= 0x80) {
+                final int n = c >= 0xf0 ? 3 : c >= 0xe0 ? 2 : c >= 0xc0 ? 1 : -1;
+                if (n < 0 || i + n > end) {
+                    c = 0xfffd;
+                } else {
+                    int v = c & (0x3f >> n);
+                    int k = 0;
+                    for (; k < n; k++) {
+                        final int b = text.get(i + k) & 0xff;
+                        if ((b & 0xc0) != 0x80) {
+                            break;
+                        }
+                        v = (v << 6) | (b & 0x3f);
+                    }
+                    if (k == n) {
+                        c = v;
+                        i += n;
+                    } else {
+                        c = 0xfffd;
+                    }
+                }
+            }
+            if (j >= len) {
+                return 1;
+            }
+            final int d = s.codePointAt(j);
+            if (c != d) {
+                return c < d ? -1 : 1;
+            }
+            j += Character.charCount(d);
+        }
+        return j < len ? -1 : 0;
+    }
+
     /**
      * Get {@link ByteBuffer} from {@link String}.
      *
@@ -46,6 +46,7 @@ import org.tmatesoft.sqljet.core.internal.SqlJetBtreeTableCreateFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetDbFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
 import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
 import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
 import org.tmatesoft.sqljet.core.internal.SqlJetSavepointOperation;
@@ -545,6 +546,98 @@ public class SqlJetBtree implements ISqlJetBtree {
         }
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetBtree#setMmapSize(long)
+     */
+    public void setMmapSize(long mmapSize) {
+        assert (db.getMutex().held());
+        enter();
+        try {
+            pBt.pPager.setMmapSize(mmapSize);
+        } finally {
+            leave();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetBtree#getMmapSize()
+     */
+    public long getMmapSize() {
+        assert (db.getMutex().held());
+        enter();
+        try {
+            return pBt.pPager.getMmapSize();
+        } finally {
+            leave();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetBtree#setReadAhead(int)
+     */
+    public void setReadAhead(int pages) {
+        assert (db.getMutex().held());
+        enter();
+        try {
+            pBt.pPager.setReadAhead(pages);
+        } finally {
+            leave();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetBtree#getReadAhead()
+     */
+    public int getReadAhead() {
+        assert (db.getMutex().held());
+        enter();
+        try {
+            return pBt.pPager.getReadAhead();
+        } finally {
+            leave();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.ISqlJetBtree#setCachePolicy(org.tmatesoft
+     * .sqljet.core.internal.SqlJetPageCachePolicy)
+     */
+    public void setCachePolicy(SqlJetPageCachePolicy policy) {
+        assert (db.getMutex().held());
+        enter();
+        try {
+            pBt.pPager.setCachePolicy(policy);
+        } finally {
+            leave();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetBtree#getCachePolicy()
+     */
+    public SqlJetPageCachePolicy getCachePolicy() {
+        assert (db.getMutex().held());
+        enter();
+        try {
+            return pBt.pPager.getCachePolicy();
+        } finally {
+            leave();
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -572,7 +665,7 @@ public class SqlJetBtree implements ISqlJetBtree {
         }
     }
 
-    public void setJournalMode(SqlJetPagerJournalMode mode) {
+    public void setJournalMode(SqlJetPagerJournalMode mode) throws SqlJetException {
         assert (db.getMutex().held());
         enter();
         try {
@@ -748,11 +841,18 @@ public class SqlJetBtree implements ISqlJetBtree {
                 if (SqlJetUtility.memcmp(page1, zMagicHeader, 16) != 0) {
                     throw new SqlJetException(rc);
                 }
-                if (SqlJetUtility.getUnsignedByte(page1, 18) > 1) {
-                    pBt.readOnly = true;
-                }
-                if (SqlJetUtility.getUnsignedByte(page1, 19) > 1) {
-                    throw new SqlJetException(rc);
+                if (SqlJetUtility.getUnsignedByte(page1, 18) == 2 && SqlJetUtility.getUnsignedByte(page1, 19) == 2) {
+                    /* The database is in WAL mode. */
+                    if (pBt.pPager.getJournalMode() != SqlJetPagerJournalMode.WAL) {
+                        pBt.pPager.setJournalMode(SqlJetPagerJournalMode.WAL);
+                    }
+                } else {
+                    if (SqlJetUtility.getUnsignedByte(page1, 18) > 1) {
+                        pBt.readOnly = true;
+                    }
+                    if (SqlJetUtility.getUnsignedByte(page1, 19) > 1) {
+                        throw new SqlJetException(rc);
+                    }
                 }
 
                 /*
@@ -862,6 +962,27 @@ public class SqlJetBtree implements ISqlJetBtree {
         SqlJetUtility.put4byte(data, 36 + 7 * 4, pBt.incrVacuum ? 1 : 0);
     }
 
+    /**
+     * Make the file format version numbers at offsets 18 and 19 of page 1
+     * match the journal mode: both are 2 for a database in WAL mode and 1 for
+     * a database which uses a rollback journal.
+     */
+    private void updateFileFormat() throws SqlJetException {
+        assert (pBt.mutex.held());
+        final SqlJetMemPage pP1 = pBt.pPage1;
+        assert (pP1 != null);
+        final ISqlJetMemoryPointer data = pP1.aData;
+        final boolean isWal = SqlJetUtility.getUnsignedByte(data, 18) == 2
+                && SqlJetUtility.getUnsignedByte(data, 19) == 2;
+        final boolean walMode = pBt.pPager.getJournalMode() == SqlJetPagerJournalMode.WAL;
+        if (isWal != walMode) {
+            final byte version = (byte) (walMode ? 2 : 1);
+            pP1.pDbPage.write();
+            SqlJetUtility.putUnsignedByte(data, 18, version);
+            SqlJetUtility.putUnsignedByte(data, 19, version);
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -930,6 +1051,7 @@ public class SqlJetBtree implements ISqlJetBtree {
                         } else {
                             pBt.pPager.begin(mode == SqlJetTransactionMode.EXCLUSIVE);
                             newDatabase();
+                            updateFileFormat();
                         }
                     }
 
@@ -0,0 +1,421 @@
+/**
+ * SqlJetBtreeBuilder.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.btree;
+
+import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.get4byte;
+import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.memcpy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeBuilder;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.btree.SqlJetBtree.TransMode;
+
+/**
+ * Builds b-tree bottom-up from entries which come in key order.
+ *
+ * Cells are appended to the current leaf page until it is filled up to the
+ * fill factor, then leaf is closed and its divider is passed to the level
+ * above, which is filled the same way. For INTKEY tables divider is the
+ * largest key of the left child, for indexes divider is the entry which
+ * follows the left child: it is moved into the parent as in
+ * balance_nonroot(). A page is closed only when it is known that its right
+ * sibling will get at least one cell, because b-tree pages (except root) can't
+ * be empty. When all entries are appended, the top node is copied into the
+ * root page, so the root page number of b-tree stays the same.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+class SqlJetBtreeBuilder implements ISqlJetBtreeBuilder {
+
+    /** Space reserved ahead of cell for left child pointer */
+    private static final int CHILD_SIZE = 4;
+
+    private final SqlJetBtreeCursor pCur;
+    private final SqlJetBtreeShared pBt;
+
+    /** Flags of pages without PTF_LEAF */
+    private final int flags;
+    private final boolean intKey;
+
+    /** Bytes of page which may be used by loaded cells */
+    private final int limit;
+
+    /** Interior levels, from the lowest to the top */
+    private final List<Level> levels = new ArrayList<Level>();
+
+    /** Leaf page which is filled now */
+    private SqlJetMemPage leaf;
+
+    /** Buffer for new cells, with space for child pointer ahead */
+    private final ISqlJetMemoryPointer cellSpace;
+    private final ISqlJetMemoryPointer cell;
+
+    /** Buffer for dividers of INTKEY tables */
+    private final ISqlJetMemoryPointer divider;
+
+    /** Index entry which didn't fit into the leaf, with child pointer space */
+    private ISqlJetMemoryPointer pending;
+    private int pendingSize;
+
+    private long count;
+    private long lastKey;
+    private int lastPgno;
+    private boolean finished;
+
+    /**
+     * Cursor should be writable and opened on empty b-tree.
+     *
+     * @param pCur
+     * @param fillFactor
+     *            percent of page space which may be used by loaded cells.
+     * @throws SqlJetException
+     */
+    SqlJetBtreeBuilder(SqlJetBtreeCursor pCur, int fillFactor) throws SqlJetException {
+        assert (pCur.pBtree.holdsMutex());
+        if (fillFactor < MIN_FILL_FACTOR || fillFactor > MAX_FILL_FACTOR) {
+            throw new SqlJetException(SqlJetErrorCode.MISUSE, "Fill factor should be between " + MIN_FILL_FACTOR
+                    + " and " + MAX_FILL_FACTOR + ": " + fillFactor);
+        }
+        this.pCur = pCur;
+        this.pBt = pCur.pBt;
+        final SqlJetMemPage pRoot = pBt.getAndInitPage(pCur.pgnoRoot);
+        try {
+            if (!pRoot.leaf || pRoot.nCell > 0) {
+                throw new SqlJetException(SqlJetErrorCode.MISUSE, "B-tree to load should be empty");
+            }
+            this.flags = SqlJetUtility.getUnsignedByte(pRoot.aData, pRoot.hdrOffset) & ~SqlJetMemPage.PTF_LEAF;
+            this.intKey = pRoot.intKey;
+            this.lastPgno = pRoot.pgno;
+        } finally {
+            SqlJetMemPage.releasePage(pRoot);
+        }
+        this.limit = pBt.usableSize * fillFactor / 100;
+        this.cellSpace = SqlJetUtility.allocatePtr(pBt.pageSize + CHILD_SIZE);
+        this.cell = cellSpace.getMoved(CHILD_SIZE);
+        this.divider = SqlJetUtility.allocatePtr(CHILD_SIZE + 9);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetBtreeBuilder#getCount()
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.ISqlJetBtreeBuilder#append(org.tmatesoft
+     * .sqljet.core.internal.ISqlJetMemoryPointer, long,
+     * org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer, int)
+     */
+    public void append(ISqlJetMemoryPointer pKey, long nKey, ISqlJetMemoryPointer pData, int nData)
+            throws SqlJetException {
+        checkState();
+        if (intKey && count > 0 && nKey <= lastKey) {
+            throw new SqlJetException(SqlJetErrorCode.MISUSE, "Keys should be appended in ascending order: " + nKey
+                    + " after " + lastKey);
+        }
+        if (leaf == null) {
+            leaf = newPage(true);
+        }
+        final int sz = leaf.fillInCell(cell, pKey, nKey, pData, nData, 0);
+        assert (sz == leaf.cellSizePtr(cell));
+        if (intKey) {
+            if (!fits(leaf, sz)) {
+                final int sepSize = CHILD_SIZE + SqlJetUtility.putVarint(divider.getMoved(CHILD_SIZE), lastKey);
+                nextLeaf(divider, sepSize);
+            }
+            leaf.insertCell(leaf.nCell, cell, sz, null, 0);
+        } else if (pending != null) {
+            nextLeaf(pending, pendingSize);
+            pending = null;
+            leaf.insertCell(leaf.nCell, cell, sz, null, 0);
+        } else if (fits(leaf, sz)) {
+            leaf.insertCell(leaf.nCell, cell, sz, null, 0);
+        } else {
+            // it becomes divider if more entries follow.
+            pending = copy(cellSpace, CHILD_SIZE + sz);
+            pendingSize = CHILD_SIZE + sz;
+        }
+        lastKey = nKey;
+        count++;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetBtreeBuilder#finish()
+     */
+    public void finish() throws SqlJetException {
+        checkState();
+        finished = true;
+        if (leaf == null) {
+            return;
+        }
+        try {
+            if (pending != null) {
+                final int sz = pendingSize - CHILD_SIZE;
+                if (leaf.nFree < sz + 2) {
+                    final int idx = leaf.nCell - 1;
+                    final ISqlJetMemoryPointer last = leaf.findCell(idx);
+                    final int lastSize = leaf.cellSizePtr(last);
+                    final ISqlJetMemoryPointer sep = SqlJetUtility.allocatePtr(CHILD_SIZE + lastSize);
+                    memcpy(sep, CHILD_SIZE, last, 0, lastSize);
+                    leaf.dropCell(idx, lastSize);
+                    nextLeaf(sep, CHILD_SIZE + lastSize);
+                }
+                leaf.insertCell(leaf.nCell, pending.getMoved(CHILD_SIZE), sz, null, 0);
+                pending = null;
+            }
+            SqlJetMemPage top = leaf;
+            if (!levels.isEmpty()) {
+                closePage(leaf, 0);
+                levels.get(0).addChild(leaf.pgno);
+                SqlJetMemPage.releasePage(leaf);
+                leaf = null;
+                for (int i = 0; i < levels.size(); i++) {
+                    top = levels.get(i).finish();
+                }
+            }
+            leaf = null;
+            moveToRoot(top);
+        } finally {
+            releaseAll();
+        }
+    }
+
+    private void checkState() throws SqlJetException {
+        assert (pCur.pBtree.holdsMutex());
+        assert (pBt.inTransaction == TransMode.WRITE);
+        if (finished) {
+            throw new SqlJetException(SqlJetErrorCode.MISUSE, "B-tree is already built");
+        }
+    }
+
+    /**
+     * Copies top node into root page and frees its page.
+     */
+    private void moveToRoot(SqlJetMemPage top) throws SqlJetException {
+        final SqlJetMemPage pRoot = pBt.getAndInitPage(pCur.pgnoRoot);
+        try {
+            pRoot.pDbPage.write();
+            top.copyNodeContent(pRoot);
+            top.freePage();
+        } finally {
+            SqlJetMemPage.releasePage(top);
+            SqlJetMemPage.releasePage(pRoot);
+        }
+        pCur.clearCursor();
+    }
+
+    /**
+     * Releases pages which are still referenced after failure.
+     */
+    private void releaseAll() throws SqlJetException {
+        if (leaf != null) {
+            SqlJetMemPage.releasePage(leaf);
+            leaf = null;
+        }
+        for (final Level level : levels) {
+            if (level.page != null) {
+                SqlJetMemPage.releasePage(level.page);
+                level.page = null;
+            }
+        }
+    }
+
+    /**
+     * Closes current leaf, passes it with its divider to the level above and
+     * starts new leaf.
+     */
+    private void nextLeaf(ISqlJetMemoryPointer sep, int sepSize) throws SqlJetException {
+        closePage(leaf, 0);
+        final Level parent = getLevel(0);
+        parent.addChild(leaf.pgno);
+        SqlJetMemPage.releasePage(leaf);
+        leaf = null;
+        parent.addSeparator(sep, sepSize);
+        leaf = newPage(true);
+    }
+
+    private Level getLevel(int depth) {
+        if (depth == levels.size()) {
+            levels.add(new Level(depth));
+        }
+        return levels.get(depth);
+    }
+
+    private SqlJetMemPage newPage(boolean isLeaf) throws SqlJetException {
+        final int[] pgno = new int[1];
+        final SqlJetMemPage page = pBt.allocatePage(pgno, lastPgno, false);
+        lastPgno = pgno[0];
+        page.zeroPage(isLeaf ? flags | SqlJetMemPage.PTF_LEAF : flags);
+        return page;
+    }
+
+    /**
+     * Checks that cell of given size fits into page without exceeding fill
+     * factor. First cell fits always.
+     */
+    private boolean fits(SqlJetMemPage page, int sz) {
+        if (page.nCell == 0) {
+            return true;
+        }
+        return sz + 2 <= page.nFree && pBt.usableSize - page.nFree + sz + 2 <= limit;
+    }
+
+    /**
+     * Sets right child of interior page and pointer map entries for pages
+     * which it refers to.
+     */
+    private void closePage(SqlJetMemPage page, int rightChild) throws SqlJetException {
+        if (!page.leaf) {
+            SqlJetUtility.put4byte(page.aData, page.hdrOffset + 8, rightChild);
+        }
+        if (pBt.autoVacuum) {
+            page.setChildPtrmaps();
+        }
+    }
+
+    private static ISqlJetMemoryPointer copy(ISqlJetMemoryPointer src, int size) {
+        final ISqlJetMemoryPointer dst = SqlJetUtility.allocatePtr(size);
+        memcpy(dst, src, size);
+        return dst;
+    }
+
+    /**
+     * Interior level of b-tree: gets children and separators between them
+     * alternately, starting and ending with child.
+     */
+    private class Level {
+
+        private final int depth;
+
+        /** Page which is filled now */
+        private SqlJetMemPage page;
+
+        /** Child which waits for separator, it is right child of page */
+        private int child;
+
+        /** Separator which didn't fit into the page */
+        private ISqlJetMemoryPointer overflow;
+        private int overflowSize;
+
+        /** Child which follows overflow separator */
+        private int nextChild;
+
+        public Level(int depth) {
+            this.depth = depth;
+        }
+
+        public void addChild(int pgno) {
+            if (overflow != null) {
+                assert (nextChild == 0);
+                nextChild = pgno;
+            } else {
+                assert (child == 0);
+                child = pgno;
+            }
+        }
+
+        public void addSeparator(ISqlJetMemoryPointer sep, int sz) throws SqlJetException {
+            assert (child != 0);
+            if (overflow != null) {
+                // page is full and it has right sibling now.
+                next(overflow, overflowSize);
+                page.insertCell(page.nCell, sep, sz, null, nextChild);
+                child = 0;
+                nextChild = 0;
+                overflow = null;
+                return;
+            }
+            if (page == null) {
+                page = newPage(false);
+            }
+            if (fits(page, sz)) {
+                page.insertCell(page.nCell, sep, sz, null, child);
+                child = 0;
+            } else {
+                overflow = copy(sep, sz);
+                overflowSize = sz;
+            }
+        }
+
+        /**
+         * Closes the last page of level and passes it to the level above, or
+         * returns it if this level is the top one.
+         */
+        public SqlJetMemPage finish() throws SqlJetException {
+            if (overflow != null) {
+                if (page.nFree < overflowSize + 2) {
+                    // move the last cell to the next page to not leave it empty.
+                    final int idx = page.nCell - 1;
+                    final ISqlJetMemoryPointer last = page.findCell(idx);
+                    final int lastSize = page.cellSizePtr(last);
+                    final ISqlJetMemoryPointer sep = copy(last, lastSize);
+                    final int lastChild = get4byte(sep);
+                    page.dropCell(idx, lastSize);
+                    final int rightChild = child;
+                    child = lastChild;
+                    next(sep, lastSize);
+                    child = rightChild;
+                }
+                page.insertCell(page.nCell, overflow, overflowSize, null, child);
+                child = nextChild;
+                nextChild = 0;
+                overflow = null;
+            }
+            closePage(page, child);
+            final SqlJetMemPage closed = page;
+            page = null;
+            if (depth + 1 < levels.size()) {
+                levels.get(depth + 1).addChild(closed.pgno);
+                SqlJetMemPage.releasePage(closed);
+                return null;
+            }
+            return closed;
+        }
+
+        /**
+         * Closes page with current child as right one, passes it to the level
+         * above with given separator and starts new page.
+         */
+        private void next(ISqlJetMemoryPointer sep, int sz) throws SqlJetException {
+            closePage(page, child);
+            final Level parent = getLevel(depth + 1);
+            parent.addChild(page.pgno);
+            SqlJetMemPage.releasePage(page);
+            page = null;
+            parent.addSeparator(sep, sz);
+            page = newPage(false);
+        }
+
+    }
+
+}
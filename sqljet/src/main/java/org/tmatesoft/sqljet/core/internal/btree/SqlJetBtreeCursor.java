@@ -29,6 +29,7 @@ import java.util.Arrays;
 
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeBuilder;
 import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeCursor;
 import org.tmatesoft.sqljet.core.internal.ISqlJetConfig;
 import org.tmatesoft.sqljet.core.internal.ISqlJetDbHandle;
@@ -80,9 +81,12 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
     /** The root page of this tree */
     int pgnoRoot;
 
-    /** A parse of the cell we are pointing at */
+    /** A parse of the cell we are pointing at, it is reused for each cell */
     SqlJetBtreeCellInfo info = new SqlJetBtreeCellInfo();
 
+    /** Scratch for count of bytes returned by fetchPayload() in moveTo() */
+    private final int[] available = new int[1];
+
     /** True if writable */
     boolean wrFlag;
 
@@ -444,7 +448,7 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
      */
     private void getCellInfo() {
         if (this.info.nSize == 0) {
-            this.info = this.apPage[iPage].parseCell(this.aiIdx[iPage]);
+            this.apPage[iPage].parseCell(this.aiIdx[iPage], this.info);
             this.validNKey = true;
         }
     }
@@ -555,44 +559,41 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
             }
             for (;;) {
                 ISqlJetMemoryPointer pCellKey;
-                long[] nCellKey = new long[1];
+                long nCellKey;
                 int idx = this.aiIdx[this.iPage];
                 this.info.nSize = 0;
                 this.validNKey = true;
                 if (pPage.intKey) {
-                    ISqlJetMemoryPointer pCell;
-                    pCell = SqlJetUtility.pointer(pPage.findCell(idx), pPage.childPtrSize);
+                    int pCell = pPage.findCellOffset(idx) + pPage.childPtrSize;
                     if (pPage.hasData) {
-                        int[] dummy = new int[1];
-                        SqlJetUtility.movePtr(pCell, SqlJetUtility.getVarint32(pCell, dummy));
+                        pCell += SqlJetUtility.getVarintLength(pPage.aData, pCell);
                     }
-                    SqlJetUtility.getVarint(pCell, nCellKey);
-                    if (nCellKey[0] == intKey) {
+                    nCellKey = SqlJetUtility.getVarintValue(pPage.aData, pCell);
+                    if (nCellKey == intKey) {
                         c = 0;
-                    } else if (nCellKey[0] < intKey) {
+                    } else if (nCellKey < intKey) {
                         c = -1;
                     } else {
-                        assert (nCellKey[0] > intKey);
+                        assert (nCellKey > intKey);
                         c = +1;
                     }
                 } else {
-                    int[] available = new int[1];
-                    pCellKey = this.fetchPayload(available, false);
-                    nCellKey[0] = this.info.nKey;
-                    if (available[0] >= nCellKey[0]) {
-                        c = pIdxKey.recordCompare((int) nCellKey[0], pCellKey);
+                    pCellKey = this.fetchPayload(this.available, false);
+                    nCellKey = this.info.nKey;
+                    if (this.available[0] >= nCellKey) {
+                        c = pIdxKey.recordCompare((int) nCellKey, pCellKey);
                     } else {
-                        pCellKey = SqlJetUtility.allocatePtr((int) nCellKey[0]);
+                        pCellKey = SqlJetUtility.allocatePtr((int) nCellKey);
                         try {
-                            this.key(0, (int) nCellKey[0], pCellKey);
+                            this.key(0, (int) nCellKey, pCellKey);
                         } finally {
-                            c = pIdxKey.recordCompare((int) nCellKey[0], pCellKey);
+                            c = pIdxKey.recordCompare((int) nCellKey, pCellKey);
                             // sqlite3_free(pCellKey);
                         }
                     }
                 }
                 if (c == 0) {
-                    this.info.nKey = nCellKey[0];
+                    this.info.nKey = nCellKey;
                     if (pPage.intKey && !pPage.leaf) {
                         lwr = idx;
                         upr = lwr - 1;
@@ -607,7 +608,7 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
                     upr = idx - 1;
                 }
                 if (lwr > upr) {
-                    this.info.nKey = nCellKey[0];
+                    this.info.nKey = nCellKey;
                     break;
                 }
                 this.aiIdx[this.iPage] = (int) ((lwr + upr) / 2);
@@ -1740,6 +1741,27 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
         pCur.pKey = null;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetBtreeCursor#getBuilder(int)
+     */
+    public ISqlJetBtreeBuilder getBuilder(int fillFactor) throws SqlJetException {
+        assert (cursorHoldsMutex(this));
+        assert (pBt.inTransaction == TransMode.WRITE);
+        assert (!pBt.readOnly);
+        assert (wrFlag);
+        if (pBtree.checkReadLocks(pgnoRoot, this, 0)) {
+            throw new SqlJetException(SqlJetErrorCode.LOCKED);
+        }
+        if (eState == CursorState.FAULT) {
+            throw new SqlJetException(error);
+        }
+        pBt.saveAllCursors(pgnoRoot, this);
+        clearCursor();
+        return new SqlJetBtreeBuilder(this, fillFactor);
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -1864,11 +1886,36 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
                 pCur.apPage[pCur.iPage].nOverflow = 0;
                 pCur.eState = CursorState.INVALID;
             }
+        } else if (pPage.intKey && CursorState.VALID == pCur.eState && pCur.isRightmost()) {
+            /*
+             * The new entry is the last one in the table and the cursor still
+             * points to it. Keep the cursor there, so moveTo() of the next
+             * appended entry with a larger key returns at once and last()
+             * doesn't descend from the root.
+             */
+            pCur.info.nKey = nKey;
+            pCur.validNKey = true;
+            pCur.atLast = true;
         }
         assert (pCur.apPage[pCur.iPage].nOverflow == 0);
 
     }
 
+    /**
+     * Checks whether the cursor points to the last cell of the rightmost leaf
+     * of the b-tree.
+     *
+     * @return
+     */
+    private boolean isRightmost() {
+        for (int i = 0; i < iPage; i++) {
+            if (aiIdx[i] != apPage[i].nCell) {
+                return false;
+            }
+        }
+        return apPage[iPage].leaf && aiIdx[iPage] == apPage[iPage].nCell - 1;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -1948,6 +1995,15 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
         final SqlJetBtreeCursor pCur = this;
         assert (cursorHoldsMutex(pCur));
         assert (pCur.pBtree.db.getMutex().held());
+
+        /*
+         * If the cursor already points to the last entry, this is a no-op.
+         */
+        if (CursorState.VALID == pCur.eState && pCur.atLast) {
+            pCur.getCellInfo();
+            return false;
+        }
+
         pCur.moveToRoot();
         if (CursorState.INVALID == pCur.eState) {
             assert (pCur.apPage[pCur.iPage].nCell == 0);
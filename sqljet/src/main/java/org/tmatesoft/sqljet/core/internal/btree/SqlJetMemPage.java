@@ -19,8 +19,11 @@ package org.tmatesoft.sqljet.core.internal.btree;
 
 import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.get2byte;
 import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.get4byte;
-import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.getVarint;
-import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.getVarint32;
+import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.getVarint32Packed;
+import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.getVarintLength;
+import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.getVarintValue;
+import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.unpackVarintLength;
+import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.unpackVarintValue;
 import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.memcpy;
 import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.memset;
 import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.movePtr;
@@ -381,7 +384,15 @@ public class SqlJetMemPage extends SqlJetCloneable {
      * This routine works only for pages that do not contain overflow cells.
      */
     public ISqlJetMemoryPointer findCell(int i) {
-        return pointer(aData, maskPage & get2byte(aData, cellOffset + 2 * i));
+        return pointer(aData, findCellOffset(i));
+    }
+
+    /**
+     * Returns offset of i-th cell content in page data, as
+     * {@link #findCell(int)} but without allocation of pointer.
+     */
+    int findCellOffset(int i) {
+        return maskPage & get2byte(aData, cellOffset + 2 * i);
     }
 
     /**
@@ -411,41 +422,57 @@ public class SqlJetMemPage extends SqlJetCloneable {
      * @return
      */
     SqlJetBtreeCellInfo parseCellPtr(ISqlJetMemoryPointer pCell) {
+        return parseCellPtr(pCell, new SqlJetBtreeCellInfo());
+    }
+
+    /**
+     * Parses cell content block into given CellInfo structure, so callers
+     * which parse cells often could reuse it.
+     *
+     * @param pCell
+     *            Pointer to the cell text.
+     * @param pInfo
+     *            Structure which is filled.
+     * @return pInfo
+     */
+    SqlJetBtreeCellInfo parseCellPtr(ISqlJetMemoryPointer pCell, SqlJetBtreeCellInfo pInfo) {
 
         int n; /* Number bytes in cell content header */
-        int[] nPayload = new int[1]; /* Number of bytes of cell payload */
+        int nPayload; /* Number of bytes of cell payload */
 
         assert (pBt.mutex.held());
 
-        SqlJetBtreeCellInfo pInfo = new SqlJetBtreeCellInfo();
         pInfo.pCell = pCell;
         n = childPtrSize;
         assert (n == 4 - 4 * (leaf ? 1 : 0));
         if (intKey) {
             if (hasData) {
-                n += getVarint32(pCell, n, nPayload);
+                final long v = getVarint32Packed(pCell, n);
+                nPayload = unpackVarintValue(v);
+                n += unpackVarintLength(v);
             } else {
-                nPayload[0] = 0;
+                nPayload = 0;
             }
-            long[] pInfo_nKey = new long[1];
-            n += getVarint(pCell, n, pInfo_nKey);
-            pInfo.nKey = pInfo_nKey[0];
-            pInfo.nData = nPayload[0];
+            pInfo.nKey = getVarintValue(pCell, n);
+            n += getVarintLength(pCell, n);
+            pInfo.nData = nPayload;
         } else {
             pInfo.nData = 0;
-            n += getVarint32(pCell, n, nPayload);
-            pInfo.nKey = nPayload[0];
+            final long v = getVarint32Packed(pCell, n);
+            nPayload = unpackVarintValue(v);
+            n += unpackVarintLength(v);
+            pInfo.nKey = nPayload;
         }
-        pInfo.nPayload = nPayload[0];
+        pInfo.nPayload = nPayload;
         pInfo.nHeader = n;
-        if (nPayload[0] <= this.maxLocal) {
+        if (nPayload <= this.maxLocal) {
             /*
              * This is the (easy) common case where the entire payload fits on
              * the local page. No overflow is required.
              */
             int nSize; /* Total size of cell content in bytes */
-            nSize = nPayload[0] + n;
-            pInfo.nLocal = nPayload[0];
+            nSize = nPayload + n;
+            pInfo.nLocal = nPayload;
             pInfo.iOverflow = 0;
             if ((nSize & ~3) == 0) {
                 nSize = 4; /* Minimum cell size is 4 */
@@ -468,7 +495,7 @@ public class SqlJetMemPage extends SqlJetCloneable {
 
             minLocal = this.minLocal;
             maxLocal = this.maxLocal;
-            surplus = minLocal + (nPayload[0] - minLocal) % (pBt.usableSize - 4);
+            surplus = minLocal + (nPayload - minLocal) % (pBt.usableSize - 4);
             if (surplus <= maxLocal) {
                 pInfo.nLocal = surplus;
             } else {
@@ -491,6 +518,19 @@ public class SqlJetMemPage extends SqlJetCloneable {
         return parseCellPtr(findCell(iCell));
     }
 
+    /**
+     * Parses cell into given CellInfo structure.
+     *
+     * @param iCell
+     *            The cell index. First cell is 0
+     * @param info
+     *            Structure which is filled.
+     * @return info
+     */
+    public SqlJetBtreeCellInfo parseCell(int iCell, SqlJetBtreeCellInfo info) {
+        return parseCellPtr(findCell(iCell), info);
+    }
+
     /**
      * Set up a raw page so that it looks like a database page holding no
      * entries.
@@ -664,51 +704,47 @@ public class SqlJetMemPage extends SqlJetCloneable {
 
 		final SqlJetMemPage pPage = this;
 
-		final ISqlJetMemoryPointer pIter = pCell.getMoved(pPage.childPtrSize);
-		int[] nSize = { 0 };
+		int iter = pPage.childPtrSize;
+		int nSize;
 
 		if (pPage.intKey) {
 			if (pPage.hasData) {
-				pIter.movePointer(SqlJetUtility.getVarint32(pIter, nSize));
+				final long v = getVarint32Packed(pCell, iter);
+				nSize = unpackVarintValue(v);
+				iter += unpackVarintLength(v);
 			} else {
-				nSize[0] = 0;
+				nSize = 0;
 			}
 
 			/*
-			 * pIter now points at the 64-bit integer key value, a variable
-			 * length* integer. The following block moves pIter to point at the
-			 * first byte* past the end of the key value.
+			 * iter now points at the 64-bit integer key value, a variable
+			 * length integer. Move iter to point at the first byte past the
+			 * end of the key value.
 			 */
-			int pEnd = pIter.getPointer() + 9;
-			// while( (*pIter++)&0x80 && pIter<pEnd );
-			while (pIter.getPointer() < pEnd) {
-				int b = pIter.getByteUnsigned();
-				pIter.movePointer(1);
-				if ((b & 0x80) == 0) {
-					break;
-				}
-			}
+			iter += getVarintLength(pCell, iter);
 		} else {
-			pIter.movePointer(SqlJetUtility.getVarint32(pIter, nSize));
+			final long v = getVarint32Packed(pCell, iter);
+			nSize = unpackVarintValue(v);
+			iter += unpackVarintLength(v);
 		}
 
-		if (nSize[0] > pPage.maxLocal) {
+		if (nSize > pPage.maxLocal) {
 			int minLocal = pPage.minLocal;
-			nSize[0] = minLocal + (nSize[0] - minLocal)
+			nSize = minLocal + (nSize - minLocal)
 					% (pPage.pBt.usableSize - 4);
-			if (nSize[0] > pPage.maxLocal) {
-				nSize[0] = minLocal;
+			if (nSize > pPage.maxLocal) {
+				nSize = minLocal;
 			}
-			nSize[0] += 4;
+			nSize += 4;
 		}
-		nSize[0] += (pIter.getPointer() - pCell.getPointer());
+		nSize += iter;
 
 		/* The minimum size of any cell is 4 bytes. */
-		if (nSize[0] < 4) {
-			nSize[0] = 4;
+		if (nSize < 4) {
+			nSize = 4;
 		}
 
-		return nSize[0];
+		return nSize;
 	}
 
 
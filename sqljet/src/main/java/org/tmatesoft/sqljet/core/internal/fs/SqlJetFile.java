@@ -20,8 +20,13 @@ package org.tmatesoft.sqljet.core.internal.fs;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -30,6 +35,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
@@ -70,30 +78,22 @@ public class SqlJetFile implements ISqlJetFile {
 
     public static final int SQLJET_DEFAULT_SECTOR_SIZE = 512;
 
-    private long timer_start = 0;
-    private long timer_elapsed = 0;
-
-    /**
-     * @return
-     */
-    private long TIMER_ELAPSED() {
-        return timer_elapsed;
-    }
-
     /**
+     * Timer is kept in local variables by callers since reads and writes
+     * could run concurrently.
      *
+     * @return start time or zero if performance isn't logged.
      */
-    private void TIMER_END() {
-        if (SQLJET_LOG_FILES_PERFORMANCE)
-            timer_elapsed = System.nanoTime() - timer_start;
+    private static long TIMER_START() {
+        return SQLJET_LOG_FILES_PERFORMANCE ? System.nanoTime() : 0;
     }
 
     /**
-     *
+     * @param start
+     * @return time elapsed since start.
      */
-    private void TIMER_START() {
-        if (SQLJET_LOG_FILES_PERFORMANCE)
-            timer_start = System.nanoTime();
+    private static long TIMER_ELAPSED(long start) {
+        return SQLJET_LOG_FILES_PERFORMANCE ? System.nanoTime() - start : 0;
     }
 
     /**
@@ -142,13 +142,48 @@ public class SqlJetFile implements ISqlJetFile {
         private Map<Thread, LockInfo> lockInfoMap = new ConcurrentHashMap<Thread, LockInfo>();
         /** Malloced space holding fd's awaiting a close() */
         private List<RandomAccessFile> pending = new ArrayList<RandomAccessFile>();
+        /** Number of times when some lock on this file was released */
+        private volatile long releases = 0;
+        /** Signalled when some lock on this file is released */
+        private final Condition released = openFilesMutex.newCondition();
     };
 
+    /**
+     * File which could not be locked by current thread, and number of its
+     * lock releases seen before that attempt.
+     */
+    private static class BusyFile {
+        private final OpenFile openFile;
+        private final long releases;
+
+        public BusyFile(OpenFile openFile, long releases) {
+            this.openFile = openFile;
+            this.releases = releases;
+        }
+    }
+
+    private static final ThreadLocal<BusyFile> busyFile = new ThreadLocal<BusyFile>();
+
     private final static Map<String, OpenFile> openFiles = new HashMap<String, OpenFile>();
 
+    /**
+     * Guards {@link #openFiles} and lock states of files. Locks are explicit
+     * rather than monitors since they are held during file locking calls, and
+     * threads which wait for monitor can't be unmounted from their carrier
+     * threads.
+     */
+    private final static ReentrantLock openFilesMutex = new ReentrantLock();
+
+    /** Guards lock state, mapping and channel position of this file. */
+    private final ReentrantLock mutex = new ReentrantLock();
+
     private SqlJetFileType fileType;
     private Set<SqlJetFileOpenPermission> permissions;
-    private RandomAccessFile file;
+    private volatile RandomAccessFile file;
+
+    /** Locks taken by {@link #lockRange(long, long, boolean)}, by offsets */
+    private final Map<Long, FileLock> rangeLocks = new HashMap<Long, FileLock>();
+    private final String mode;
     private File filePath;
     private String filePathResolved;
     private boolean noLock;
@@ -161,6 +196,18 @@ public class SqlJetFile implements ISqlJetFile {
 
     private SqlJetFileLockManager fileLockManager;
 
+    /** Size of single mapped region, multiple of any page size. */
+    private static final long MAP_CHUNK_SIZE = 1L << 28;
+
+    /** Limit of memory-mapped part of file, zero if mapping is disabled. */
+    private long mapSize;
+
+    /**
+     * Mapped regions of {@link #MAP_CHUNK_SIZE} bytes, mapped on demand. The
+     * array is replaced rather than modified so it could be read without lock.
+     */
+    private volatile MappedByteBuffer[] maps;
+
     /**
      * @param fileSystem
      * @param file
@@ -168,11 +215,15 @@ public class SqlJetFile implements ISqlJetFile {
      * @param permissions
      * @param type
      * @param noLock
+     * @param mode
+     *            mode in which file was opened, to reopen it.
      */
 
     SqlJetFile(final SqlJetFileSystem fileSystem, final RandomAccessFile file, final File filePath,
-            final SqlJetFileType fileType, final Set<SqlJetFileOpenPermission> permissions, final boolean noLock) {
+            final SqlJetFileType fileType, final Set<SqlJetFileOpenPermission> permissions, final boolean noLock,
+            final String mode) {
         this.file = file;
+        this.mode = mode;
         this.filePath = filePath;
         this.filePathResolved = filePath.getAbsolutePath();
         this.fileType = fileType;
@@ -201,13 +252,18 @@ public class SqlJetFile implements ISqlJetFile {
      *
      * @see org.tmatesoft.sqljet.core.ISqlJetFile#getPermissions()
      */
-    public synchronized Set<SqlJetFileOpenPermission> getPermissions() {
-        // return clone to avoid manipulations with file's permissions
-        HashSet<SqlJetFileOpenPermission> permissionsCopy = new HashSet<SqlJetFileOpenPermission>();
-        for (SqlJetFileOpenPermission permission : permissions) {
-            permissionsCopy.add(permission);
+    public Set<SqlJetFileOpenPermission> getPermissions() {
+        mutex.lock();
+        try {
+            // return clone to avoid manipulations with file's permissions
+            HashSet<SqlJetFileOpenPermission> permissionsCopy = new HashSet<SqlJetFileOpenPermission>();
+            for (SqlJetFileOpenPermission permission : permissions) {
+                permissionsCopy.add(permission);
+            }
+            return permissionsCopy;
+        } finally {
+            mutex.unlock();
         }
-        return permissionsCopy;
     }
 
     /*
@@ -215,13 +271,29 @@ public class SqlJetFile implements ISqlJetFile {
      *
      * @see org.tmatesoft.sqljet.core.ISqlJetFile#close()
      */
-    public synchronized void close() throws SqlJetException {
+    public void close() throws SqlJetException {
+        mutex.lock();
+        try {
+            doClose();
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    private void doClose() throws SqlJetException {
         if (null == file)
             return;
 
-        synchronized (openFiles) {
+        maps = null;
+
+        openFilesMutex.lock();
+        try {
 
             unlock(SqlJetLockType.NONE);
+            while (!rangeLocks.isEmpty()) {
+                final FileLock rangeLock = rangeLocks.values().iterator().next();
+                unlockRange(rangeLock.position(), rangeLock.size());
+            }
 
             /*
              * If there are outstanding locks, do not actually close the file
@@ -229,6 +301,10 @@ public class SqlJetFile implements ISqlJetFile {
              * file descriptor to pOpen->aPending. It will be automatically
              * closed when the last lock is cleared.
              */
+            if (!noLock && null != openCount && openCount.numLock > 0) {
+                openCount.pending.add(file);
+                return;
+            }
             if (!noLock && null != openCount && null != openCount.lockInfoMap && openCount.lockInfoMap.size() > 0) {
                 for (LockInfo l : openCount.lockInfoMap.values()) {
                     if (l.sharedLockCount > 0) {
@@ -261,6 +337,8 @@ public class SqlJetFile implements ISqlJetFile {
                 channel = null;
             }
 
+        } finally {
+            openFilesMutex.unlock();
         }
 
         if (filePath != null && permissions.contains(SqlJetFileOpenPermission.DELETEONCLOSE)) {
@@ -279,21 +357,26 @@ public class SqlJetFile implements ISqlJetFile {
      *
      * @see org.tmatesoft.sqljet.core.ISqlJetFile#read(byte[], int, long)
      */
-    public synchronized int read(ISqlJetMemoryPointer buffer, int amount, long offset) throws SqlJetIOException {
+    public int read(ISqlJetMemoryPointer buffer, int amount, long offset) throws SqlJetIOException {
         assert (amount > 0);
         assert (offset >= 0);
         assert (buffer != null);
         assert (buffer.remaining() >= amount);
-        assert (file != null);
-        assert (channel != null);
-        try {
-            TIMER_START();
-            final int read = buffer.readFromFile(file, channel, offset, amount);
-            TIMER_END();
-            OSTRACE("READ %s %5d %7d %d\n", this.filePath, read, offset, TIMER_ELAPSED());
-            return read < 0 ? 0 : read;
-        } catch (IOException e) {
-            throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_READ, e);
+        for (;;) {
+            final RandomAccessFile file = this.file;
+            final FileChannel channel = this.channel;
+            assert (file != null);
+            assert (channel != null);
+            try {
+                final long start = TIMER_START();
+                final int read = buffer.readFromFile(file, channel, offset, amount);
+                OSTRACE("READ %s %5d %7d %d\n", this.filePath, read, offset, TIMER_ELAPSED(start));
+                return read < 0 ? 0 : read;
+            } catch (IOException e) {
+                if (!recover(channel, e)) {
+                    throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_READ, e);
+                }
+            }
         }
     }
 
@@ -302,20 +385,77 @@ public class SqlJetFile implements ISqlJetFile {
      *
      * @see org.tmatesoft.sqljet.core.ISqlJetFile#write(byte[], int, long)
      */
-    public synchronized void write(ISqlJetMemoryPointer buffer, int amount, long offset) throws SqlJetIOException {
+    public void write(ISqlJetMemoryPointer buffer, int amount, long offset) throws SqlJetIOException {
         assert (amount > 0);
         assert (offset >= 0);
         assert (buffer != null);
         assert (buffer.remaining() >= amount);
-        assert (file != null);
-        assert (channel != null);
-        try {
-            TIMER_START();
-            final int write = buffer.writeToFile(file, channel, offset, amount);
-            TIMER_END();
-            OSTRACE("WRITE %s %5d %7d %d\n", this.filePath, write, offset, TIMER_ELAPSED());
-        } catch (IOException e) {
-            throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_WRITE, e);
+        for (;;) {
+            final RandomAccessFile file = this.file;
+            final FileChannel channel = this.channel;
+            assert (file != null);
+            assert (channel != null);
+            try {
+                final long start = TIMER_START();
+                final int write = buffer.writeToFile(file, channel, offset, amount);
+                OSTRACE("WRITE %s %5d %7d %d\n", this.filePath, write, offset, TIMER_ELAPSED(start));
+                return;
+            } catch (IOException e) {
+                if (!recover(channel, e)) {
+                    throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_WRITE, e);
+                }
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#write(java.util.List, int, long)
+     */
+    public void write(List<ISqlJetMemoryPointer> buffers, int amount, long offset) throws SqlJetIOException {
+        assert (buffers != null);
+        assert (amount > 0);
+        assert (offset >= 0);
+        if (buffers.size() == 1) {
+            write(buffers.get(0), amount, offset);
+            return;
+        }
+        final ByteBuffer[] b = new ByteBuffer[buffers.size()];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = buffers.get(i).getByteBuffer(amount);
+        }
+        final long total = (long) amount * b.length;
+        for (;;) {
+            final FileChannel channel = this.channel;
+            assert (channel != null);
+            try {
+                final long start = TIMER_START();
+                /*
+                 * Gathering write has no positional form, so writes which use
+                 * position of channel are serialized. Positional reads and
+                 * writes aren't affected by it.
+                 */
+                mutex.lock();
+                try {
+                    for (int i = 0; i < b.length; i++) {
+                        b[i].rewind();
+                    }
+                    channel.position(offset);
+                    long written = 0;
+                    while (written < total) {
+                        written += channel.write(b);
+                    }
+                } finally {
+                    mutex.unlock();
+                }
+                OSTRACE("WRITE %s %5d %7d %d\n", this.filePath, total, offset, TIMER_ELAPSED(start));
+                return;
+            } catch (IOException e) {
+                if (!recover(channel, e)) {
+                    throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_WRITE, e);
+                }
+            }
         }
     }
 
@@ -324,13 +464,25 @@ public class SqlJetFile implements ISqlJetFile {
      *
      * @see org.tmatesoft.sqljet.core.ISqlJetFile#truncate(long)
      */
-    public synchronized void truncate(long size) throws SqlJetIOException {
-        assert (size >= 0);
-        assert (file != null);
+    public void truncate(long size) throws SqlJetIOException {
+        mutex.lock();
         try {
-            file.setLength(size);
-        } catch (IOException e) {
-            throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_TRUNCATE, e);
+            assert (size >= 0);
+            assert (file != null);
+            for (;;) {
+                final FileChannel channel = this.channel;
+                try {
+                    maps = null;
+                    file.setLength(size);
+                    return;
+                } catch (IOException e) {
+                    if (!recover(channel, e)) {
+                        throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_TRUNCATE, e);
+                    }
+                }
+            }
+        } finally {
+            mutex.unlock();
         }
     }
 
@@ -339,14 +491,20 @@ public class SqlJetFile implements ISqlJetFile {
      *
      * @see org.tmatesoft.sqljet.core.ISqlJetFile#sync(boolean, boolean)
      */
-    public synchronized void sync(Set<SqlJetSyncFlags> syncFlags) throws SqlJetIOException {
-        assert (file != null);
-        try {
-            OSTRACE("SYNC    %s\n", this.filePath);
-            boolean syncMetaData = syncFlags != null && syncFlags.contains(SqlJetSyncFlags.NORMAL);
-            channel.force(syncMetaData);
-        } catch (IOException e) {
-            throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_FSYNC, e);
+    public void sync(Set<SqlJetSyncFlags> syncFlags) throws SqlJetIOException {
+        for (;;) {
+            final FileChannel channel = this.channel;
+            assert (channel != null);
+            try {
+                OSTRACE("SYNC    %s\n", this.filePath);
+                boolean syncMetaData = syncFlags != null && syncFlags.contains(SqlJetSyncFlags.NORMAL);
+                channel.force(syncMetaData);
+                return;
+            } catch (IOException e) {
+                if (!recover(channel, e)) {
+                    throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_FSYNC, e);
+                }
+            }
         }
     }
 
@@ -355,12 +513,17 @@ public class SqlJetFile implements ISqlJetFile {
      *
      * @see org.tmatesoft.sqljet.core.ISqlJetFile#fileSize()
      */
-    public synchronized long fileSize() throws SqlJetException {
-        assert (file != null);
-        try {
-            return channel.size();
-        } catch (IOException e) {
-            throw new SqlJetException(SqlJetErrorCode.IOERR, e);
+    public long fileSize() throws SqlJetException {
+        for (;;) {
+            final FileChannel channel = this.channel;
+            assert (channel != null);
+            try {
+                return channel.size();
+            } catch (IOException e) {
+                if (!recover(channel, e)) {
+                    throw new SqlJetException(SqlJetErrorCode.IOERR, e);
+                }
+            }
         }
     }
 
@@ -369,8 +532,13 @@ public class SqlJetFile implements ISqlJetFile {
      *
      * @see org.tmatesoft.sqljet.core.ISqlJetFile#lockType()
      */
-    public synchronized SqlJetLockType getLockType() {
-        return lockType;
+    public SqlJetLockType getLockType() {
+        mutex.lock();
+        try {
+            return lockType;
+        } finally {
+            mutex.unlock();
+        }
     }
 
     /*
@@ -381,7 +549,69 @@ public class SqlJetFile implements ISqlJetFile {
      * SqlJetLockType)
      */
 
-    public synchronized boolean lock(final SqlJetLockType lockType) throws SqlJetIOException {
+    public boolean lock(final SqlJetLockType lockType) throws SqlJetIOException {
+        mutex.lock();
+        try {
+            final OpenFile openFile = this.openCount;
+            final long releases = openFile != null ? openFile.releases : 0;
+            boolean locked;
+            for (;;) {
+                final FileChannel channel = this.channel;
+                try {
+                    locked = doLock(lockType);
+                    break;
+                } catch (SqlJetIOException e) {
+                    if (!(e.getCause() instanceof IOException) || !recover(channel, (IOException) e.getCause())) {
+                        throw e;
+                    }
+                }
+            }
+            if (!locked && openFile != null && this.lockType.compareTo(lockType) < 0) {
+                busyFile.set(new BusyFile(openFile, releases));
+            } else if (locked && busyFile.get() != null) {
+                busyFile.remove();
+            }
+            return locked;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Waits until other connection of this process releases its lock on the
+     * file which current thread failed to lock last time, or until timeout
+     * elapses. Locks held by other processes aren't tracked, so waiting for
+     * them always takes whole timeout.
+     *
+     * @param timeout
+     *            maximal time to wait in milliseconds.
+     * @return true if some lock on the file was released, false if timeout
+     *         elapsed.
+     * @throws InterruptedException
+     */
+    public static boolean waitForUnlock(long timeout) throws InterruptedException {
+        final BusyFile busy = busyFile.get();
+        busyFile.remove();
+        if (busy == null) {
+            Thread.sleep(timeout);
+            return false;
+        }
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        openFilesMutex.lock();
+        try {
+            while (busy.openFile.releases == busy.releases) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = busy.openFile.released.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            openFilesMutex.unlock();
+        }
+    }
+
+    private boolean doLock(final SqlJetLockType lockType) throws SqlJetIOException {
         assert (lockType != null);
         assert (file != null);
 
@@ -448,7 +678,8 @@ public class SqlJetFile implements ISqlJetFile {
 
         assert (lockInfo != null);
         try {
-            synchronized (openFiles) {
+            openFilesMutex.lock();
+            try {
 
                 /*
                  * If some thread using this PID has a lock via a different
@@ -569,6 +800,8 @@ public class SqlJetFile implements ISqlJetFile {
                 lockInfo.lockType = lockType;
                 return true;
 
+            } finally {
+                openFilesMutex.unlock();
             }
 
         } catch (IOException e) {
@@ -588,7 +821,25 @@ public class SqlJetFile implements ISqlJetFile {
      * org.tmatesoft.sqljet.core.ISqlJetFile#unlock(org.tmatesoft.sqljet.core
      * .SqlJetLockType)
      */
-    public synchronized boolean unlock(final SqlJetLockType lockType) throws SqlJetIOException {
+    public boolean unlock(final SqlJetLockType lockType) throws SqlJetIOException {
+        mutex.lock();
+        try {
+            for (;;) {
+                final FileChannel channel = this.channel;
+                try {
+                    return doUnlock(lockType);
+                } catch (SqlJetIOException e) {
+                    if (!(e.getCause() instanceof IOException) || !recover(channel, (IOException) e.getCause())) {
+                        throw e;
+                    }
+                }
+            }
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    private boolean doUnlock(final SqlJetLockType lockType) throws SqlJetIOException {
         assert (lockType != null);
         assert (file != null);
 
@@ -610,7 +861,8 @@ public class SqlJetFile implements ISqlJetFile {
         if (this.lockType.compareTo(lockType) <= 0)
             return true;
 
-        synchronized (openFiles) {
+        openFilesMutex.lock();
+        try {
 
             assert (lockInfo != null);
             assert (lockInfo.sharedLockCount > 0);
@@ -675,31 +927,125 @@ public class SqlJetFile implements ISqlJetFile {
                      * whose close was deferred because of outstanding locks.
                      */
                     openCount.numLock--;
-                    assert (openCount.numLock >= 0);
-                    if (openCount.numLock == 0 && null != openCount.pending && openCount.pending.size() > 0) {
-                        for (final RandomAccessFile f : openCount.pending) {
-                            f.close();
-                        }
-                        openCount.pending.clear();
-                    }
+                    closePending();
 
                 }
                 this.lockType = lockType;
 
+                /* Wake up connections which wait for this lock. */
+                openCount.releases++;
+                openCount.released.signalAll();
+
             } catch (IOException e) {
                 throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_LOCK, e);
             }
+        } finally {
+            openFilesMutex.unlock();
         }
 
         return true;
     }
 
+    /**
+     * Closes file descriptors whose close was deferred because of outstanding
+     * locks, when there are no more locks against the file. Is called with
+     * {@link #openFilesMutex} held.
+     */
+    private void closePending() throws IOException {
+        assert (openCount.numLock >= 0);
+        if (openCount.numLock == 0 && null != openCount.pending && openCount.pending.size() > 0) {
+            for (final RandomAccessFile f : openCount.pending) {
+                f.close();
+            }
+            openCount.pending.clear();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#lockRange(long,
+     * long, boolean)
+     */
+    public boolean lockRange(long offset, long length, boolean shared) throws SqlJetIOException {
+        mutex.lock();
+        try {
+            if (noLock || rangeLocks.containsKey(offset)) {
+                return true;
+            }
+            for (;;) {
+                final FileChannel channel = this.channel;
+                openFilesMutex.lock();
+                try {
+                    final FileLock rangeLock = fileLockManager.tryLock(offset, length, shared);
+                    if (null == rangeLock) {
+                        return false;
+                    }
+                    rangeLocks.put(offset, rangeLock);
+                    openCount.numLock++;
+                    OSTRACE("LOCK RANGE %s %d %d %s\n", this.filePath, offset, length, shared ? "shared" : "exclusive");
+                    return true;
+                } catch (OverlappingFileLockException e) {
+                    return false;
+                } catch (IOException e) {
+                    if (!recover(channel, e)) {
+                        throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_LOCK, e);
+                    }
+                } finally {
+                    openFilesMutex.unlock();
+                }
+            }
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#unlockRange(long,
+     * long)
+     */
+    public void unlockRange(long offset, long length) throws SqlJetIOException {
+        mutex.lock();
+        try {
+            final FileLock rangeLock = rangeLocks.remove(offset);
+            if (null == rangeLock) {
+                return;
+            }
+            openFilesMutex.lock();
+            try {
+                rangeLock.release();
+                openCount.numLock--;
+                closePending();
+                openCount.releases++;
+                openCount.released.signalAll();
+                OSTRACE("UNLOCK RANGE %s %d %d\n", this.filePath, offset, length);
+            } catch (IOException e) {
+                throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_UNLOCK, e);
+            } finally {
+                openFilesMutex.unlock();
+            }
+        } finally {
+            mutex.unlock();
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
      * @see org.tmatesoft.sqljet.core.ISqlJetFile#checkReservedLock()
      */
-    public synchronized boolean checkReservedLock() {
+    public boolean checkReservedLock() {
+        mutex.lock();
+        try {
+            return doCheckReservedLock();
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    private boolean doCheckReservedLock() {
 
         boolean reserved = false;
         try {
@@ -712,7 +1058,8 @@ public class SqlJetFile implements ISqlJetFile {
             if (null == lockInfo)
                 return false;
 
-            synchronized (openFiles) {
+            openFilesMutex.lock();
+            try {
 
                 /* Check if a thread in this process holds such a lock */
                 if (SqlJetLockType.SHARED.compareTo(lockInfo.lockType) < 0)
@@ -733,6 +1080,8 @@ public class SqlJetFile implements ISqlJetFile {
                 } catch (IOException e) {
                 }
 
+            } finally {
+                openFilesMutex.unlock();
             }
 
             return false;
@@ -760,32 +1109,99 @@ public class SqlJetFile implements ISqlJetFile {
     final static Set<SqlJetDeviceCharacteristics> noDeviceCharacteristircs = SqlJetUtility
             .noneOf(SqlJetDeviceCharacteristics.class);
 
-	private FileChannel channel;
+	private volatile FileChannel channel;
 
     public Set<SqlJetDeviceCharacteristics> deviceCharacteristics() {
         return noDeviceCharacteristircs;
     }
 
-    private synchronized void findLockInfo() {
-        synchronized (openFiles) {
-            if (null == openCount) {
-                final OpenFile fileOpenCount = openFiles.get(filePathResolved);
-                if (null != fileOpenCount) {
-                    openCount = fileOpenCount;
-                    openCount.numRef++;
-                } else {
-                    openCount = new OpenFile();
-                    openFiles.put(filePathResolved, openCount);
+    /**
+     * Channel is closed for all threads when some thread which does I/O on it
+     * is interrupted. In this case file is reopened and locks which it held
+     * are taken again on new channel.
+     *
+     * @param channel
+     *            channel on which I/O failed.
+     * @param e
+     *            the failure.
+     * @return true if file is reopened and I/O should be retried, false if the
+     *         failure should be reported: I/O failed for other reason, file
+     *         could not be reopened or current thread is interrupted.
+     */
+    private boolean recover(final FileChannel channel, final IOException e) {
+        if (channel == null || (channel.isOpen() && !(e instanceof ClosedChannelException))) {
+            return false;
+        }
+        final boolean reopened = reopen(channel);
+        return reopened && !(e instanceof ClosedByInterruptException) && !Thread.currentThread().isInterrupted();
+    }
+
+    private boolean reopen(final FileChannel closed) {
+        mutex.lock();
+        try {
+            if (null == file) {
+                return false;
+            } else if (closed != channel) {
+                return true;
+            } else if (!filePath.isFile()) {
+                return false;
+            }
+            final RandomAccessFile newFile = SqlJetFileUtil.openFile(filePath, mode);
+            final FileChannel newChannel = newFile.getChannel();
+            boolean relocked = false;
+            openFilesMutex.lock();
+            try {
+                relocked = fileLockManager.reopen(closed, newChannel);
+            } finally {
+                openFilesMutex.unlock();
+                if (!relocked) {
+                    newFile.close();
                 }
             }
-            final LockInfo fileLockInfo = openCount.lockInfoMap.get(Thread.currentThread());
-            if (null != fileLockInfo) {
-                lockInfo = fileLockInfo;
-                lockInfo.numRef++;
-            } else {
-                lockInfo = new LockInfo();
-                openCount.lockInfoMap.put(Thread.currentThread(), lockInfo);
+            if (!relocked) {
+                OSTRACE("REOPEN  %s failed: locks are lost\n", this.filePath);
+                return false;
+            }
+            file = newFile;
+            channel = newChannel;
+            OSTRACE("REOPEN  %s\n", this.filePath);
+            return true;
+        } catch (IOException e) {
+            OSTRACE("REOPEN  %s failed: %s\n", this.filePath, e.getMessage());
+            return false;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    private void findLockInfo() {
+        mutex.lock();
+        try {
+            openFilesMutex.lock();
+            try {
+                if (null == openCount) {
+                    final OpenFile fileOpenCount = openFiles.get(filePathResolved);
+                    if (null != fileOpenCount) {
+                        openCount = fileOpenCount;
+                        openCount.numRef++;
+                    } else {
+                        openCount = new OpenFile();
+                        openFiles.put(filePathResolved, openCount);
+                    }
+                }
+                final LockInfo fileLockInfo = openCount.lockInfoMap.get(Thread.currentThread());
+                if (null != fileLockInfo) {
+                    lockInfo = fileLockInfo;
+                    lockInfo.numRef++;
+                } else {
+                    lockInfo = new LockInfo();
+                    openCount.lockInfoMap.put(Thread.currentThread(), lockInfo);
+                }
+            } finally {
+                openFilesMutex.unlock();
             }
+        } finally {
+            mutex.unlock();
         }
     }
 
@@ -793,7 +1209,8 @@ public class SqlJetFile implements ISqlJetFile {
      *
      */
     private void releaseLockInfo() {
-        synchronized (openFiles) {
+        openFilesMutex.lock();
+        try {
             if (null != lockInfo) {
                 lockInfo.numRef--;
                 if (0 == lockInfo.numRef) {
@@ -810,6 +1227,8 @@ public class SqlJetFile implements ISqlJetFile {
                     this.openCount = null;
                 }
             }
+        } finally {
+            openFilesMutex.unlock();
         }
     }
 
@@ -822,4 +1241,96 @@ public class SqlJetFile implements ISqlJetFile {
         return false;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#setMapSize(long)
+     */
+    public void setMapSize(long mapSize) {
+        mutex.lock();
+        try {
+            assert (mapSize >= 0);
+            if (mapSize != this.mapSize) {
+                this.mapSize = mapSize;
+                this.maps = null;
+            }
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#fetch(long, int)
+     */
+    public ByteBuffer fetch(long offset, int amount) throws SqlJetIOException {
+        assert (amount > 0);
+        assert (offset >= 0);
+        final int chunk = (int) (offset / MAP_CHUNK_SIZE);
+        final int position = (int) (offset % MAP_CHUNK_SIZE);
+        final MappedByteBuffer[] maps = this.maps;
+        MappedByteBuffer map = maps != null && chunk < maps.length ? maps[chunk] : null;
+        if (map == null || map.capacity() < position + amount) {
+            map = map(chunk, position + amount);
+            if (map == null) {
+                return null;
+            }
+        }
+        final ByteBuffer view = map.duplicate();
+        view.limit(position + amount).position(position);
+        return view.slice();
+    }
+
+    /**
+     * Maps region of file if it isn't mapped yet or it is shorter than
+     * required.
+     *
+     * @param chunk
+     *            number of region.
+     * @param required
+     *            count of bytes from the start of region which should be
+     *            mapped.
+     * @return mapped region or null if it could not be mapped.
+     */
+    private MappedByteBuffer map(int chunk, int required) {
+        mutex.lock();
+        try {
+            final FileChannel channel = this.channel;
+            final long start = chunk * MAP_CHUNK_SIZE;
+            if (channel == null || start + required > mapSize || required > MAP_CHUNK_SIZE) {
+                return null;
+            }
+            final MappedByteBuffer[] maps = this.maps;
+            MappedByteBuffer map = maps != null && chunk < maps.length ? maps[chunk] : null;
+            if (map != null && map.capacity() >= required) {
+                return map;
+            }
+            /* The file could grow since region was mapped, remap it. */
+            try {
+                final long size = Math.min(Math.min(MAP_CHUNK_SIZE, mapSize - start), channel.size() - start);
+                if (size < required) {
+                    return null;
+                }
+                map = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            } catch (IOException e) {
+                /* Mapping could fail if address space is exhausted, so disable it. */
+                OSTRACE("MMAP %s failed: %s\n", this.filePath, e.getMessage());
+                mapSize = 0;
+                this.maps = null;
+                return null;
+            }
+            final MappedByteBuffer[] newMaps = new MappedByteBuffer[maps != null && maps.length > chunk ? maps.length
+                    : chunk + 1];
+            if (maps != null) {
+                System.arraycopy(maps, 0, newMaps, 0, maps.length);
+            }
+            newMaps[chunk] = map;
+            this.maps = newMaps;
+            return map;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
 }
@@ -18,6 +18,7 @@
 package org.tmatesoft.sqljet.core.internal.fs;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 
 /**
@@ -28,7 +29,7 @@ import java.nio.channels.FileLock;
 public class SqlJetFileLock extends FileLock {
 
     final private SqlJetFileLockManager manager;
-    final private FileLock fileLock;
+    private volatile FileLock fileLock;
 
     private long locksCount;
 
@@ -74,4 +75,29 @@ public class SqlJetFileLock extends FileLock {
     public void addLock() {
         locksCount++;
     }
+
+    /**
+     * @param channel
+     * @return true if lock is taken on this channel.
+     */
+    public boolean isOwnedBy(FileChannel channel) {
+        return fileLock.channel() == channel;
+    }
+
+    /**
+     * Takes the same lock again on other channel, when channel which held it
+     * was closed.
+     *
+     * @param channel
+     * @return true if lock is taken.
+     * @throws IOException
+     */
+    public boolean relock(FileChannel channel) throws IOException {
+        final FileLock lock = channel.tryLock(position(), size(), isShared());
+        if (lock == null) {
+            return false;
+        }
+        fileLock = lock;
+        return true;
+    }
 }
@@ -20,10 +20,12 @@ package org.tmatesoft.sqljet.core.internal.fs;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * @author TMate Software Ltd.
@@ -33,7 +35,7 @@ import java.util.concurrent.ConcurrentHashMap;
 public class SqlJetFileLockManager {
 
     private String filePath;
-    private FileChannel fileChannel;
+    private volatile FileChannel fileChannel;
 
     public SqlJetFileLockManager(String filePath, FileChannel fileChannel) {
         this.filePath = filePath;
@@ -42,6 +44,13 @@ public class SqlJetFileLockManager {
 
     private static final Map<String, List<SqlJetFileLock>> locks = new ConcurrentHashMap<String, List<SqlJetFileLock>>();
 
+    /**
+     * Guards {@link #locks}. Explicit lock is used instead of monitor since it
+     * is held during file locking calls, and threads which wait for monitor
+     * can't be unmounted from their carrier threads.
+     */
+    private static final ReentrantLock locksMutex = new ReentrantLock();
+
     private interface ILockCreator {
         FileLock createLock(long position, long size, boolean shared) throws IOException;
     }
@@ -60,7 +69,8 @@ public class SqlJetFileLockManager {
 
     private FileLock createLock(long position, long size, boolean shared, ILockCreator lockCreator)
             throws IOException {
-		synchronized (locks) {
+		locksMutex.lock();
+		try {
 			final SqlJetFileLock lock = getLock(position, size);
 			if (lock != null) {
 				if (shared) {
@@ -72,6 +82,8 @@ public class SqlJetFileLockManager {
 			} else {
 				return addLock(lockCreator.createLock(position, size, shared));
 			}
+		} finally {
+			locksMutex.unlock();
 		}
     }
 
@@ -119,8 +131,44 @@ public class SqlJetFileLockManager {
         }
     }
 
+    /**
+     * Switches to reopened channel of file and takes on it locks which were
+     * held by closed channel.
+     *
+     * @param closed
+     *            channel which was closed.
+     * @param channel
+     *            new channel of the same file.
+     * @return false if some of locks could not be taken again.
+     * @throws IOException
+     */
+    public boolean reopen(FileChannel closed, FileChannel channel) throws IOException {
+        locksMutex.lock();
+        try {
+            fileChannel = channel;
+            final List<SqlJetFileLock> list = locks.get(filePath);
+            if (list != null) {
+                for (SqlJetFileLock lock : list) {
+                    if (lock.isOwnedBy(closed)) {
+                        try {
+                            if (!lock.relock(channel)) {
+                                return false;
+                            }
+                        } catch (OverlappingFileLockException e) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            return true;
+        } finally {
+            locksMutex.unlock();
+        }
+    }
+
     public void deleteLock(SqlJetFileLock lock) {
-		synchronized (locks) {
+		locksMutex.lock();
+		try {
 			if (locks.containsKey(filePath)) {
 				final List<SqlJetFileLock> list = locks.get(filePath);
 				list.remove(lock);
@@ -128,6 +176,8 @@ public class SqlJetFileLockManager {
 					locks.remove(filePath);
 				}
 			}
+		} finally {
+			locksMutex.unlock();
 		}
     }
 }
@@ -17,6 +17,8 @@
  */
 package org.tmatesoft.sqljet.core.internal.fs;
 
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Set;
 
 import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
@@ -47,6 +49,23 @@ public class SqlJetMemJournal implements ISqlJetFile {
         return true;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#setMapSize(long)
+     */
+    public void setMapSize(long mapSize) {
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#fetch(long, int)
+     */
+    public ByteBuffer fetch(long offset, int amount) {
+        return null;
+    }
+
     /*
      * Space to hold the rollback journal is allocated in increments of* this
      * many bytes.
@@ -130,6 +149,18 @@ public class SqlJetMemJournal implements ISqlJetFile {
 
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#write(java.util.List, int, long)
+     */
+    public void write(List<ISqlJetMemoryPointer> buffers, int amount, long offset) {
+        for (final ISqlJetMemoryPointer buffer : buffers) {
+            write(buffer, amount, offset);
+            offset += amount;
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -185,14 +216,10 @@ public class SqlJetMemJournal implements ISqlJetFile {
     public void truncate(long size) {
         SqlJetMemJournal p = this;
 
-        FileChunk pChunk;
         assert (size == 0);
-        pChunk = p.pFirst;
-        while (pChunk != null) {
-            pChunk = pChunk.pNext;
-        }
-
-        // sqlite3MemJournalOpen(pJfd);
+        p.pFirst = null;
+        p.endpoint = new FilePoint();
+        p.readpoint = new FilePoint();
 
     }
 
@@ -302,4 +329,23 @@ public class SqlJetMemJournal implements ISqlJetFile {
         return false;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#lockRange(long, long,
+     * boolean)
+     */
+    public boolean lockRange(long offset, long length, boolean shared) {
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#unlockRange(long,
+     * long)
+     */
+    public void unlockRange(long offset, long length) {
+    }
+
 }
@@ -19,6 +19,7 @@ package org.tmatesoft.sqljet.core.internal.memory;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
@@ -324,11 +325,11 @@ public class SqlJetByteArrayBuffer implements ISqlJetMemoryBuffer {
         assert (pointer >= 0);
         assert (pointer < buffer.length);
         assert (file != null);
+        assert (channel != null);
         assert (position >= 0);
         assert (count > 0);
 
-        file.seek(position);
-        return file.read(buffer, pointer, count);
+        return SqlJetBytesUtility.read(channel, ByteBuffer.wrap(buffer, pointer, count), position);
     }
 
     /*
@@ -344,12 +345,24 @@ public class SqlJetByteArrayBuffer implements ISqlJetMemoryBuffer {
         assert (pointer >= 0);
         assert (pointer < buffer.length);
         assert (file != null);
+        assert (channel != null);
         assert (position >= 0);
         assert (count > 0);
 
-        file.seek(position);
-        file.write(buffer, pointer, count);
-        return count;
+        return SqlJetBytesUtility.write(channel, ByteBuffer.wrap(buffer, pointer, count), position);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetMemoryBuffer#getByteBuffer(int, int)
+     */
+    public ByteBuffer getByteBuffer(int pointer, int count) {
+        assert (buffer != null);
+        assert (pointer >= 0);
+        assert (pointer + count <= buffer.length);
+
+        return ByteBuffer.wrap(buffer, pointer, count);
     }
 
     /*
@@ -17,6 +17,10 @@
  */
 package org.tmatesoft.sqljet.core.internal.memory;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
 /**
  * @author TMate Software Ltd.
  * @author Sergey Scherbina (sergey.scherbina@gmail.com)
@@ -41,6 +45,39 @@ public class SqlJetBytesUtility {
         return INT_UNSIGNED_MASK & value;
     }
 
+    /**
+     * Reads remaining bytes of buffer from the given position of file. It
+     * doesn't use the file pointer, so concurrent reads of the same file
+     * don't need to be serialized.
+     *
+     * @return count of bytes read, or -1 if position is at end of file.
+     */
+    static int read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                return total > 0 ? total : -1;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Writes remaining bytes of buffer to the given position of file without
+     * using of file pointer.
+     *
+     * @return count of bytes written.
+     */
+    static int write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            total += channel.write(buffer, position + total);
+        }
+        return total;
+    }
+
     /*
      * Methods for unpacking primitive values from byte arrays starting at given
      * offsets.
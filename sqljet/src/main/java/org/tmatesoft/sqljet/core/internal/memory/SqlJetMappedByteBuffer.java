@@ -0,0 +1,271 @@
+/**
+ * SqlJetMappedByteBuffer.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.memory;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryBuffer;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * Buffer which reads directly from a read-only view of memory-mapped file.
+ *
+ * The first modification copies the content into a private heap buffer, so
+ * that changes never go to the mapping itself. All pointers to this buffer
+ * see the private copy after that.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetMappedByteBuffer extends SqlJetDirectByteBuffer {
+
+    private boolean mapped;
+
+    /**
+     * @param view
+     *            read-only view of the mapped region.
+     */
+    public SqlJetMappedByteBuffer(ByteBuffer view) {
+        map(view);
+    }
+
+    /**
+     * Points this buffer to other mapped region, any private copy is
+     * discarded.
+     *
+     * @param view
+     *            read-only view of the mapped region.
+     */
+    public void map(ByteBuffer view) {
+        assert (view != null);
+        assert (view.position() == 0);
+        assert (buffer == null || view.capacity() == buffer.capacity());
+        buffer = view;
+        mapped = true;
+    }
+
+    /**
+     * @return true if content is still read from the mapping.
+     */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * Makes private copy of content, so the buffer stays readable when mapped
+     * region becomes invalid, for example when file is truncated.
+     */
+    public void detach() {
+        unmap(0, 0);
+    }
+
+    /**
+     * Makes private copy of content before it will be changed. The copying is
+     * skipped when whole buffer is going to be overwritten.
+     */
+    private void unmap(int pointer, int count) {
+        if (!mapped) {
+            return;
+        }
+        final ByteBuffer copy = ByteBuffer.allocate(buffer.capacity());
+        if (pointer > 0 || count < copy.capacity()) {
+            final ByteBuffer view = buffer.duplicate();
+            view.clear();
+            copy.put(view);
+            copy.clear();
+        }
+        buffer = copy;
+        mapped = false;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.memory.SqlJetDirectByteBuffer#allocate(int)
+     */
+    @Override
+    public void allocate(int size) {
+        assert (size > 0);
+
+        buffer = ByteBuffer.allocate(size);
+        mapped = false;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.memory.SqlJetByteBuffer#free()
+     */
+    @Override
+    public void free() {
+        super.free();
+        mapped = false;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.memory.SqlJetByteBuffer#putByte(int, byte)
+     */
+    @Override
+    public void putByte(int pointer, byte value) {
+        unmap(pointer, 1);
+        super.putByte(pointer, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.memory.SqlJetByteBuffer#putByteUnsigned(int, int)
+     */
+    @Override
+    public void putByteUnsigned(int pointer, int value) {
+        unmap(pointer, 1);
+        super.putByteUnsigned(pointer, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.memory.SqlJetByteBuffer#putShort(int, short)
+     */
+    @Override
+    public void putShort(int pointer, short value) {
+        unmap(pointer, 2);
+        super.putShort(pointer, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.memory.SqlJetByteBuffer#putShortUnsigned(int, int)
+     */
+    @Override
+    public void putShortUnsigned(int pointer, int value) {
+        unmap(pointer, 2);
+        super.putShortUnsigned(pointer, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.memory.SqlJetByteBuffer#putInt(int, int)
+     */
+    @Override
+    public void putInt(int pointer, int value) {
+        unmap(pointer, 4);
+        super.putInt(pointer, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.memory.SqlJetByteBuffer#putIntUnsigned(int, long)
+     */
+    @Override
+    public void putIntUnsigned(int pointer, long value) {
+        unmap(pointer, 4);
+        super.putIntUnsigned(pointer, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.memory.SqlJetByteBuffer#putLong(int, long)
+     */
+    @Override
+    public void putLong(int pointer, long value) {
+        unmap(pointer, 8);
+        super.putLong(pointer, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.memory.SqlJetByteBuffer#readFromFile(int,
+     * java.io.RandomAccessFile, java.nio.channels.FileChannel, long, int)
+     */
+    @Override
+    public int readFromFile(int pointer, RandomAccessFile file, FileChannel channel, long position, int count)
+            throws IOException {
+        unmap(pointer, count);
+        return super.readFromFile(pointer, file, channel, position, count);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.memory.SqlJetByteBuffer#copyFrom(int,
+     * org.tmatesoft.sqljet.core.internal.ISqlJetMemoryBuffer, int, int)
+     */
+    @Override
+    public void copyFrom(int dstPos, ISqlJetMemoryBuffer src, int srcPos, int count) {
+        final byte[] b = new byte[count];
+        src.getBytes(srcPos, b, 0, count);
+        putBytes(dstPos, b, 0, count);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.memory.SqlJetDirectByteBuffer#fill(int, int, byte)
+     */
+    @Override
+    public void fill(int from, int count, byte value) {
+        unmap(from, count);
+        super.fill(from, count, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.memory.SqlJetDirectByteBuffer#putBytes(int, byte[], int, int)
+     */
+    @Override
+    public void putBytes(int pointer, byte[] bytes, int from, int count) {
+        unmap(pointer, count);
+        super.putBytes(pointer, bytes, from, count);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.memory.SqlJetByteBuffer#compareTo(int,
+     * org.tmatesoft.sqljet.core.internal.ISqlJetMemoryBuffer, int)
+     */
+    @Override
+    public int compareTo(int pointer, ISqlJetMemoryBuffer buffer, int bufferPointer) {
+        final int thisCount = getSize() - pointer;
+        final int bufferCount = buffer.getSize() - bufferPointer;
+        final int count = thisCount > bufferCount ? bufferCount : thisCount;
+        final byte[] a = new byte[count];
+        final byte[] b = new byte[count];
+        getBytes(pointer, a, 0, count);
+        buffer.getBytes(bufferPointer, b, 0, count);
+        final int cmp = SqlJetUtility.memcmp(a, b, count);
+        if (cmp != 0) {
+            return cmp;
+        }
+        return thisCount == bufferCount ? 0 : (thisCount > bufferCount ? 1 : -1);
+    }
+
+}
@@ -17,6 +17,8 @@
  */
 package org.tmatesoft.sqljet.core.internal.memory;
 
+import java.nio.ByteBuffer;
+
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryBuffer;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryManager;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
@@ -33,6 +35,9 @@ public class SqlJetMemoryManager implements ISqlJetMemoryManager {
     private SqlJetMemoryBufferType defaultBufferType = SqlJetUtility.getEnumSysProp(
             "SqlJetMemoryManager.defaultBufferType", SqlJetMemoryBufferType.ARRAY);
 
+    private final SqlJetSlabAllocator slab = new SqlJetSlabAllocator(SqlJetUtility.getLongSysProp(
+            "SqlJetMemoryManager.slabSize", 0));
+
     /*
      * (non-Javadoc)
      * 
@@ -99,6 +104,14 @@ public class SqlJetMemoryManager implements ISqlJetMemoryManager {
      */
     public ISqlJetMemoryBuffer allocate(int size, SqlJetMemoryBufferType bufferType) {
         if (size >= 0) {
+            if (bufferType == SqlJetMemoryBufferType.SLAB) {
+                final ByteBuffer slot = slab.allocate(size);
+                if (slot != null) {
+                    return new SqlJetSlabBuffer(slab, slot);
+                }
+                bufferType = defaultBufferType != SqlJetMemoryBufferType.SLAB ? defaultBufferType
+                        : SqlJetMemoryBufferType.ARRAY;
+            }
             final ISqlJetMemoryBuffer buffer;
             switch (bufferType) {
             case ARRAY:
@@ -129,9 +142,47 @@ public class SqlJetMemoryManager implements ISqlJetMemoryManager {
      * (org.tmatesoft.sqljet.core.sandbox.internal.memory.ISqlJetMemoryBuffer)
      */
     public void free(final ISqlJetMemoryBuffer buffer) {
-        if (buffer != null) {
+        if (buffer != null && buffer.isAllocated()) {
             buffer.free();
         }
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.ISqlJetMemoryManager#setSlabSize(long)
+     */
+    public void setSlabSize(long size) {
+        slab.setSize(size);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetMemoryManager#getSlabSize()
+     */
+    public long getSlabSize() {
+        return slab.getSize();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.ISqlJetMemoryManager#getSlabReserved()
+     */
+    public long getSlabReserved() {
+        return slab.getReserved();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetMemoryManager#getSlabUsed()
+     */
+    public long getSlabUsed() {
+        return slab.getUsed();
+    }
+
 }
@@ -19,6 +19,7 @@ package org.tmatesoft.sqljet.core.internal.memory;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryBuffer;
@@ -345,6 +346,18 @@ public final class SqlJetMemoryPointer implements ISqlJetMemoryPointer {
         return buffer.writeToFile(pointer, file, channel, position, count);
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer#getByteBuffer(int)
+     */
+    final public ByteBuffer getByteBuffer(int count) {
+        assert (buffer != null);
+        assert (pointer + count <= buffer.getSize());
+
+        return buffer.getByteBuffer(pointer, count);
+    }
+
     /**
      * @param pointer
      * @return
@@ -0,0 +1,180 @@
+/**
+ * SqlJetSlabAllocator.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.memory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * Off-heap slab of fixed-size slots. Direct memory is reserved by large
+ * regions, each region is carved into slots of one size, and freed slots are
+ * kept for reuse by buffers of the same size. So buffers of page cache live
+ * outside of Java heap and neither are scanned by garbage collector nor are
+ * allocated and released by JVM each time.
+ * 
+ * Single direct buffer can't exceed 2Gb, so slab of bigger size consists of
+ * several regions.
+ * 
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ * 
+ */
+class SqlJetSlabAllocator {
+
+    /** Bytes of direct memory reserved at once */
+    static final int REGION_SIZE = SqlJetUtility.getIntSysProp("SqlJetMemoryManager.slabRegionSize", 1 << 24);
+
+    /** Limit of reserved memory */
+    private long size;
+
+    /** Bytes of all regions */
+    private long reserved;
+
+    /** Bytes of slots which are in use */
+    private long used;
+
+    /** Free slots of each size */
+    private final Map<Integer, ArrayList<ByteBuffer>> freeSlots = new HashMap<Integer, ArrayList<ByteBuffer>>();
+
+    /** Zeroes to clean slots */
+    private byte[] zeroes = new byte[0];
+
+    /** Guards all fields above */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    SqlJetSlabAllocator(long size) {
+        this.size = Math.max(size, 0);
+    }
+
+    long getSize() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void setSize(long size) {
+        lock.lock();
+        try {
+            this.size = Math.max(size, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getReserved() {
+        lock.lock();
+        try {
+            return reserved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getUsed() {
+        lock.lock();
+        try {
+            return used;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes free slot of given size and fills it with zeroes.
+     * 
+     * @param slotSize
+     * @return slot or null if slab is exhausted.
+     */
+    ByteBuffer allocate(int slotSize) {
+        lock.lock();
+        try {
+            if (slotSize <= 0 || slotSize > REGION_SIZE) {
+                return null;
+            }
+            ArrayList<ByteBuffer> slots = freeSlots.get(slotSize);
+            if (slots == null || slots.isEmpty()) {
+                slots = reserve(slotSize);
+                if (slots == null) {
+                    return null;
+                }
+            }
+            final ByteBuffer slot = slots.remove(slots.size() - 1);
+            if (zeroes.length < slotSize) {
+                zeroes = new byte[slotSize];
+            }
+            slot.clear();
+            slot.put(zeroes, 0, slotSize);
+            slot.clear();
+            used += slotSize;
+            return slot;
+    
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns slot which was taken by {@link #allocate(int)}.
+     * 
+     * @param slot
+     */
+    void free(ByteBuffer slot) {
+        final int slotSize = slot.capacity();
+        lock.lock();
+        try {
+            freeSlots.get(slotSize).add(slot);
+            used -= slotSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ArrayList<ByteBuffer> reserve(int slotSize) {
+        final long available = Math.min(size - reserved, REGION_SIZE);
+        final int count = (int) (available / slotSize);
+        if (count <= 0) {
+            return null;
+        }
+        final ByteBuffer region;
+        try {
+            region = ByteBuffer.allocateDirect(count * slotSize);
+        } catch (OutOfMemoryError e) {
+            return null;
+        }
+        reserved += region.capacity();
+        ArrayList<ByteBuffer> slots = freeSlots.get(slotSize);
+        if (slots == null) {
+            slots = new ArrayList<ByteBuffer>(count);
+            freeSlots.put(slotSize, slots);
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            region.limit((i + 1) * slotSize).position(i * slotSize);
+            slots.add(region.slice());
+        }
+        return slots;
+    }
+
+}
@@ -0,0 +1,74 @@
+/**
+ * SqlJetSlabBuffer.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.memory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Direct buffer which is slot of off-heap slab. Slot is returned to slab when
+ * buffer is freed.
+ * 
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ * 
+ */
+public class SqlJetSlabBuffer extends SqlJetDirectByteBuffer {
+
+    private final SqlJetSlabAllocator slab;
+
+    /** True if buffer is slot of slab */
+    private boolean slot;
+
+    SqlJetSlabBuffer(SqlJetSlabAllocator slab, ByteBuffer slot) {
+        super(slot);
+        this.slab = slab;
+        this.slot = true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.memory.SqlJetDirectByteBuffer#allocate
+     * (int)
+     */
+    @Override
+    public void allocate(int size) {
+        free();
+        buffer = slab.allocate(size);
+        slot = buffer != null;
+        if (!slot) {
+            buffer = ByteBuffer.allocateDirect(size);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.internal.memory.SqlJetByteBuffer#free()
+     */
+    @Override
+    public void free() {
+        if (buffer != null && slot) {
+            slab.free(buffer);
+        }
+        buffer = null;
+        slot = false;
+    }
+
+}
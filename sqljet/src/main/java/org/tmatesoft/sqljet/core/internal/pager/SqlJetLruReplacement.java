@@ -0,0 +1,73 @@
+/**
+ * SqlJetLruReplacement.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
+
+/**
+ * Recycles least recently unpinned page.
+ * 
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ * 
+ */
+class SqlJetLruReplacement extends SqlJetPageReplacement {
+
+    private final PageList lru = new PageList();
+
+    @Override
+    SqlJetPageCachePolicy getPolicy() {
+        return SqlJetPageCachePolicy.LRU;
+    }
+
+    @Override
+    void created(SqlJetPage page) {
+    }
+
+    @Override
+    void pinned(SqlJetPage page) {
+        if (page.isLru) {
+            lru.remove(page);
+        }
+    }
+
+    @Override
+    void unpinned(SqlJetPage page) {
+        if (!page.isLru) {
+            lru.add(page);
+        }
+    }
+
+    @Override
+    void removed(SqlJetPage page) {
+        if (page.isLru) {
+            lru.remove(page);
+        }
+    }
+
+    @Override
+    SqlJetPage evict(int capacity) {
+        return lru.removeTail();
+    }
+
+    @Override
+    SqlJetPage peek(int capacity) {
+        return lru.getTail();
+    }
+
+}
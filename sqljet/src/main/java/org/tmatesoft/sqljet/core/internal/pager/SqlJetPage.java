@@ -29,6 +29,7 @@ import org.tmatesoft.sqljet.core.internal.SqlJetMemoryBufferType;
 import org.tmatesoft.sqljet.core.internal.SqlJetPageFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetMappedByteBuffer;
 
 /**
  * @author TMate Software Ltd.
@@ -80,6 +81,21 @@ public class SqlJetPage implements ISqlJetPage {
     /** Previous element in list of dirty pages */
     SqlJetPage pDirtyPrev;
 
+    /** Next (less recently unpinned) element in list of unpinned pages */
+    SqlJetPage pLruNext;
+
+    /** Previous (more recently unpinned) element in list of unpinned pages */
+    SqlJetPage pLruPrev;
+
+    /** True if page is in list of unpinned pages of replacement policy */
+    boolean isLru;
+
+    /** True if page is in "main" queue of 2Q replacement policy */
+    boolean isHot;
+
+    /** When page was unpinned, to find coldest page of caches in group */
+    long lastUnpinned;
+
     /**
      * 
      */
@@ -246,6 +262,14 @@ public class SqlJetPage implements ISqlJetPage {
 
         pPager.getContent(this);
 
+        /*
+         * Mapped content belongs to the old location in the file, which may be
+         * overwritten or truncated away, so the page keeps a private copy.
+         */
+        if (pData != null && pData.getBuffer() instanceof SqlJetMappedByteBuffer) {
+            ((SqlJetMappedByteBuffer) pData.getBuffer()).detach();
+        }
+
         /*
          * If the journal needs to be sync()ed before page pPg->pgno can be
          * written to, store pPg->pgno in local variable needSyncPgno.
@@ -17,20 +17,17 @@
  */
 package org.tmatesoft.sqljet.core.internal.pager;
 
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.internal.ISqlJetPage;
 import org.tmatesoft.sqljet.core.internal.ISqlJetPageCache;
 import org.tmatesoft.sqljet.core.internal.ISqlJetPageCallback;
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
 import org.tmatesoft.sqljet.core.internal.SqlJetPageFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetMappedByteBuffer;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetSlabBuffer;
 
 /**
  * A complete page cache is an instance of this structure.
@@ -48,6 +45,17 @@ public class SqlJetPageCache implements ISqlJetPageCache {
     public static final int PAGE_CACHE_SIZE_DEFAULT = 2000;
     public static final int PAGE_CACHE_SIZE_MINIMUM = 10;
 
+    /**
+     * System property name for cache replacement policy configuration.
+     */
+    public static final String SQLJET_PAGE_CACHE_POLICY = "SQLJET.PAGE_CACHE_POLICY";
+
+    /**
+     * System property name for configuration of memory budget shared by page
+     * caches of all databases, in bytes.
+     */
+    public static final String SQLJET_PAGE_CACHE_BUDGET = "SQLJET.PAGE_CACHE_BUDGET";
+
     private static final int N_SORT_BUCKET = 25;
 
     /** List of dirty pages in LRU order */
@@ -66,6 +74,8 @@ public class SqlJetPageCache implements ISqlJetPageCache {
     boolean bPurgeable;
     /** Call to try make a page clean */
     ISqlJetPageCallback xStress;
+    /** Replacement policy */
+    SqlJetPageCachePolicy policy = SqlJetUtility.getEnumSysProp(SQLJET_PAGE_CACHE_POLICY, SqlJetPageCachePolicy.LRU);
     PCache pCache = new PCache();
     ISqlJetPage pPage1;
 
@@ -75,6 +85,37 @@ public class SqlJetPageCache implements ISqlJetPageCache {
             nMax = cacheSize;
     }
 
+    /**
+     * Set memory budget, in bytes of pages, which is shared by page caches of
+     * all databases. When a cache needs a page beyond the budget, the coldest
+     * unpinned page of all caches is recycled. Pinned and dirty pages are
+     * never recycled, so the budget can be exceeded for a while. Zero, which
+     * is default unless SQLJET.PAGE_CACHE_BUDGET system property is set,
+     * means no shared budget.
+     * 
+     * Only caches which were created while the budget was set share it, so
+     * the budget should be set before databases are opened.
+     * 
+     * @param budget
+     */
+    public static void setBudget(long budget) {
+        SqlJetPageCacheGroup.GLOBAL.setBudget(budget);
+    }
+
+    /**
+     * @return memory budget shared by page caches of all databases.
+     */
+    public static long getBudget() {
+        return SqlJetPageCacheGroup.GLOBAL.getBudget();
+    }
+
+    /**
+     * @return bytes of pages held by caches which share memory budget.
+     */
+    public static long getBudgetUsage() {
+        return SqlJetPageCacheGroup.GLOBAL.getBytes();
+    }
+
     /*
      * Remove page pPage from the list of dirty pages.
      */
@@ -162,6 +203,9 @@ public class SqlJetPageCache implements ISqlJetPageCache {
         this.szPage = szPage;
         this.bPurgeable = purgeable;
         this.xStress = stress;
+        if (purgeable && pCache != null) {
+            pCache.joinGroup();
+        }
         // this.nMax = 100;
         // this.nMin = 10;
     }
@@ -200,7 +244,7 @@ public class SqlJetPageCache implements ISqlJetPageCache {
         }
 
         if (pCache != null) {
-            pPage = pCache.fetch(pgno, createFlag);
+            pPage = pCache.fetch(pgno, createFlag, false);
         }
 
         if (pPage == null && createFlag) {
@@ -223,7 +267,7 @@ public class SqlJetPageCache implements ISqlJetPageCache {
             }
             pCache.cleanUnpinned();
 
-            pPage = pCache.fetch(pgno, true);
+            pPage = pCache.fetch(pgno, true, true);
         }
 
         if (pPage != null) {
@@ -390,6 +434,19 @@ public class SqlJetPageCache implements ISqlJetPageCache {
         }
     }
 
+    /**
+     * Copies content of pages with page numbers more than pgno out of the
+     * memory-mapped file, so these pages stay readable after the file is
+     * truncated.
+     * 
+     * @param pgno
+     */
+    public void detachMapped(int pgno) {
+        if (pCache != null) {
+            pCache.detachMapped(pgno + 1);
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -527,6 +584,35 @@ public class SqlJetPageCache implements ISqlJetPageCache {
      */
     public void setCacheSize(int mxPage) {
         nMax = mxPage;
+        if (pCache != null) {
+            pCache.enforceMax();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.ISqlJetPageCache#setPolicy(org.tmatesoft
+     * .sqljet.core.internal.SqlJetPageCachePolicy)
+     */
+    public void setPolicy(SqlJetPageCachePolicy policy) {
+        assert (policy != null);
+        if (this.policy != policy) {
+            this.policy = policy;
+            if (pCache != null) {
+                pCache.setReplacement(SqlJetPageReplacement.create(policy));
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetPageCache#getPolicy()
+     */
+    public SqlJetPageCachePolicy getPolicy() {
+        return policy;
     }
 
     /*
@@ -543,18 +629,257 @@ public class SqlJetPageCache implements ISqlJetPageCache {
         }
     }
 
+    /**
+     * Pages are kept in open-addressing hash table with linear probing which
+     * is keyed directly by page numbers, unpinned pages are tracked by
+     * {@link SqlJetPageReplacement} through fields of pages, so neither lookup
+     * nor pinning or unpinning of page allocates anything.
+     * 
+     * Page cache is accessed only by its pager, which is guarded by mutex of
+     * database connection, so PCache is not synchronized. Caches which share
+     * memory budget are guarded by their own locks, since pages of them are
+     * recycled by other caches of group.
+     */
     class PCache {
 
-        /** Hash table for fast lookup by key */
-        private Map<Integer, SqlJetPage> apHash = new LinkedHashMap<Integer, SqlJetPage>();
+        private static final int MIN_CAPACITY = 16;
+
+        /** Keys of hash table, zero is empty slot since pages start from 1 */
+        private int[] keys = new int[MIN_CAPACITY];
 
-        private Set<Integer> unpinned = new LinkedHashSet<Integer>();
+        /** Values of hash table */
+        private SqlJetPage[] pages = new SqlJetPage[MIN_CAPACITY];
+
+        /** Number of pages in hash table */
+        private int nPage;
+
+        /** Chooses unpinned pages to recycle */
+        private SqlJetPageReplacement replacement = SqlJetPageReplacement.create(policy);
 
         /** Largest key seen since xTruncate() */
         private int iMaxKey;
 
-        public synchronized int getPageCount() {
-            return apHash.size();
+        /** Group which shares memory budget with this cache */
+        private SqlJetPageCacheGroup group;
+
+        /** Guards the cache while it is in group */
+        private final ReentrantLock mutex = new ReentrantLock();
+
+        /** Stamp of coldest page which is known to group */
+        volatile long published = SqlJetPageCacheGroup.NONE;
+
+        /** Key of the cache in heap of group, guarded by lock of group */
+        long heapKey = SqlJetPageCacheGroup.NONE;
+
+        PCache() {
+            if (bPurgeable) {
+                joinGroup();
+            }
+        }
+
+        /**
+         * Joins the global group of page caches if memory budget is set. Can
+         * be called only while the cache is empty.
+         */
+        void joinGroup() {
+            assert (nPage == 0);
+            if (group == null && SqlJetPageCacheGroup.GLOBAL.isEnabled()) {
+                group = SqlJetPageCacheGroup.GLOBAL;
+                group.join(this);
+            }
+        }
+
+        void lock() {
+            mutex.lock();
+        }
+
+        boolean tryLock() {
+            return mutex.tryLock();
+        }
+
+        /**
+         * Tells group about coldest unpinned page before the cache is
+         * unlocked, since pinning, unpinning and recycling of pages change it.
+         */
+        void unlock() {
+            try {
+                final SqlJetPageCacheGroup group = this.group;
+                if (group != null) {
+                    group.coldestChanged(this, coldest());
+                }
+            } finally {
+                mutex.unlock();
+            }
+        }
+
+        /**
+         * @return stamp of unpinned page which would be recycled next.
+         */
+        long coldest() {
+            final SqlJetPage page = replacement.peek(nMax);
+            return page != null ? page.lastUnpinned : SqlJetPageCacheGroup.NONE;
+        }
+
+        private void account(int count) {
+            if (group != null) {
+                if (count > 0) {
+                    group.allocated(count * (long) szPage);
+                } else {
+                    group.freed(-count * (long) szPage);
+                }
+            }
+        }
+
+        public int getPageCount() {
+            if (group != null) {
+                lock();
+                try {
+                    return nPage;
+                } finally {
+                    unlock();
+                }
+            }
+            return nPage;
+        }
+
+        private int slot(int key) {
+            final int h = key * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & (keys.length - 1);
+        }
+
+        private SqlJetPage get(int key) {
+            final int mask = keys.length - 1;
+            for (int i = slot(key);; i = (i + 1) & mask) {
+                final int k = keys[i];
+                if (k == key) {
+                    return pages[i];
+                } else if (k == 0) {
+                    return null;
+                }
+            }
+        }
+
+        private void put(int key, SqlJetPage page) {
+            if ((nPage + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            final int mask = keys.length - 1;
+            int i = slot(key);
+            while (keys[i] != 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == 0) {
+                nPage++;
+            }
+            keys[i] = key;
+            pages[i] = page;
+        }
+
+        private SqlJetPage remove(int key) {
+            final int mask = keys.length - 1;
+            int i = slot(key);
+            while (keys[i] != key) {
+                if (keys[i] == 0) {
+                    return null;
+                }
+                i = (i + 1) & mask;
+            }
+            final SqlJetPage page = pages[i];
+            nPage--;
+            /*
+             * Shift following entries of the probe sequence back into the
+             * freed slot, so lookups never need tombstones.
+             */
+            for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                final int home = slot(keys[j]);
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    pages[i] = pages[j];
+                    i = j;
+                }
+            }
+            keys[i] = 0;
+            pages[i] = null;
+            return page;
+        }
+
+        private void resize(int capacity) {
+            final int[] oldKeys = keys;
+            final SqlJetPage[] oldPages = pages;
+            keys = new int[capacity];
+            pages = new SqlJetPage[capacity];
+            nPage = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldPages[i]);
+                }
+            }
+        }
+
+        /**
+         * Switches to other replacement policy, all unpinned pages are handed
+         * over to it.
+         */
+        void setReplacement(SqlJetPageReplacement newReplacement) {
+            if (group != null) {
+                lock();
+                try {
+                    doSetReplacement(newReplacement);
+                } finally {
+                    unlock();
+                }
+            } else {
+                doSetReplacement(newReplacement);
+            }
+        }
+
+        private void doSetReplacement(SqlJetPageReplacement newReplacement) {
+            for (int i = 0; i < pages.length; i++) {
+                final SqlJetPage page = pages[i];
+                if (page != null) {
+                    final boolean unpinned = page.isLru;
+                    replacement.removed(page);
+                    newReplacement.created(page);
+                    if (unpinned) {
+                        newReplacement.unpinned(page);
+                    }
+                }
+            }
+            replacement = newReplacement;
+        }
+
+        private void discard(SqlJetPage page) {
+            replacement.removed(page);
+            remove(page.pgno);
+            account(-1);
+            free(page);
+        }
+
+        /**
+         * Returns slot of off-heap slab which is buffer of removed page, unless
+         * the page is still referenced. Buffers on heap are left to garbage
+         * collector.
+         */
+        private void free(SqlJetPage page) {
+            if (page.nRef == 0 && page.pData != null && page.pData.getBuffer() instanceof SqlJetSlabBuffer) {
+                SqlJetUtility.memoryManager.free(page.pData.getBuffer());
+                page.pData = null;
+            }
+        }
+
+        /**
+         * Recycles unpinned page chosen by replacement policy. Is called with
+         * lock of the cache held if the cache is in group.
+         */
+        boolean recycle() {
+            final SqlJetPage page = replacement.evict(nMax);
+            if (page != null) {
+                remove(page.pgno);
+                account(-1);
+                free(page);
+                return true;
+            }
+            return false;
         }
 
         /**
@@ -596,51 +921,55 @@ public class SqlJetPageCache implements ISqlJetPageCache {
          * proceed to step 5.
          * 
          * 5. Otherwise, allocate and return a new page buffer.
+         * 
+         * If the cache shares memory budget with other caches and the budget
+         * is exhausted, coldest unpinned page of all caches is recycled. If
+         * there is no such page then NULL is returned, unless overBudget is
+         * true: pinned and dirty pages can't be recycled, so the budget can
+         * be exceeded when they take all of it.
          */
-        public synchronized SqlJetPage fetch(final int key, final boolean createFlag) {
-
-            class FetchOut {
-                SqlJetPage go_to(SqlJetPage pPage) {
-                    if (pPage != null && key > iMaxKey) {
-                        iMaxKey = key;
-                    }
-                    return pPage;
+        public SqlJetPage fetch(final int key, final boolean createFlag, final boolean overBudget) {
+            if (group != null) {
+                lock();
+                try {
+                    return doFetch(key, createFlag, overBudget);
+                } finally {
+                    unlock();
                 }
             }
+            return doFetch(key, createFlag, overBudget);
+        }
 
-            FetchOut fetch_out = new FetchOut();
-
-            SqlJetPage pPage = null;
+        private SqlJetPage doFetch(final int key, final boolean createFlag, final boolean overBudget) {
 
             /* Search the hash table for an existing entry. */
-            if (apHash.size() > 0) {
-                pPage = apHash.get(key);
-            }
+            SqlJetPage pPage = nPage > 0 ? get(key) : null;
 
-            if (pPage != null || !createFlag) {
-                return fetch_out.go_to(pPage);
+            if (pPage != null) {
+                replacement.pinned(pPage);
+                return pPage;
+            } else if (!createFlag) {
+                return null;
             }
 
-            /* Step 3 of header comment. */
-            if (bPurgeable && getPageCount() == nMax) {
+            /* Steps 3 and 4 of header comment. */
+            if (bPurgeable && nPage >= nMax && !recycle()) {
                 return null;
             }
-
-            /*
-             * If a usable page buffer has still not been found, attempt to
-             * allocate a new one.
-             */
-            if (pPage == null) {
-                pPage = new SqlJetPage(szPage);
+            if (group != null && !group.makeRoom(szPage) && !overBudget) {
+                return null;
             }
 
-            if (pPage != null) {
-                pPage.pgno = key;
-                pPage.pCache = SqlJetPageCache.this;
-                apHash.put(key, pPage);
+            pPage = new SqlJetPage(szPage);
+            pPage.pgno = key;
+            pPage.pCache = SqlJetPageCache.this;
+            put(key, pPage);
+            account(1);
+            replacement.created(pPage);
+            if (key > iMaxKey) {
+                iMaxKey = key;
             }
-
-            return fetch_out.go_to(pPage);
+            return pPage;
         }
 
         /**
@@ -662,12 +991,27 @@ public class SqlJetPageCache implements ISqlJetPageCache {
          * calls to xFetch().
          * 
          */
-        public synchronized void unpin(ISqlJetPage page, boolean discard) {
-            final int pageNumber = page.getPageNumber();
-            if (discard || (bPurgeable && getPageCount() == nMax)) {
-                apHash.remove(pageNumber);
-            } else if (!unpinned.contains(pageNumber)) {
-                unpinned.add(pageNumber);
+        public void unpin(ISqlJetPage page, boolean discard) {
+            if (group != null) {
+                lock();
+                try {
+                    doUnpin((SqlJetPage) page, discard);
+                } finally {
+                    unlock();
+                }
+            } else {
+                doUnpin((SqlJetPage) page, discard);
+            }
+        }
+
+        private void doUnpin(SqlJetPage pPage, boolean discard) {
+            if (discard || (bPurgeable && nPage > nMax)) {
+                discard(pPage);
+            } else {
+                if (group != null) {
+                    pPage.lastUnpinned = group.tick();
+                }
+                replacement.unpinned(pPage);
             }
         }
 
@@ -679,15 +1023,30 @@ public class SqlJetPageCache implements ISqlJetPageCache {
          * guaranteed not to be pinned.
          * 
          */
-        public synchronized void rekey(ISqlJetPage page, int oldKey, int newKey) {
+        public void rekey(ISqlJetPage page, int oldKey, int newKey) {
+            if (group != null) {
+                lock();
+                try {
+                    doRekey((SqlJetPage) page, oldKey, newKey);
+                } finally {
+                    unlock();
+                }
+            } else {
+                doRekey((SqlJetPage) page, oldKey, newKey);
+            }
+        }
 
-            SqlJetPage pPage = (SqlJetPage) page;
+        private void doRekey(SqlJetPage pPage, int oldKey, int newKey) {
 
             assert (pPage.pgno == oldKey);
 
-            apHash.remove(oldKey);
-            apHash.put(newKey, pPage);
+            final SqlJetPage pOld = get(newKey);
+            if (pOld != null) {
+                discard(pOld);
+            }
+            remove(oldKey);
             pPage.pgno = newKey;
+            put(newKey, pPage);
 
             if (newKey > iMaxKey) {
                 iMaxKey = newKey;
@@ -703,20 +1062,72 @@ public class SqlJetPageCache implements ISqlJetPageCache {
          * they can be safely discarded.
          * 
          */
-        public synchronized void truncate(int iLimit) {
+        public void truncate(int iLimit) {
+            if (group != null) {
+                lock();
+                try {
+                    doTruncate(iLimit);
+                } finally {
+                    unlock();
+                }
+            } else {
+                doTruncate(iLimit);
+            }
+        }
+
+        private void doTruncate(int iLimit) {
             if (iLimit <= iMaxKey) {
-                List<Integer> l = new LinkedList<Integer>();
-                for (Integer i : apHash.keySet()) {
-                    if (i >= iLimit) {
-                        l.add(i);
+                final int count = nPage;
+                final int[] oldKeys = keys;
+                final SqlJetPage[] oldPages = pages;
+                keys = new int[oldKeys.length];
+                pages = new SqlJetPage[oldPages.length];
+                nPage = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] == 0) {
+                        continue;
+                    } else if (oldKeys[i] < iLimit) {
+                        put(oldKeys[i], oldPages[i]);
+                    } else {
+                        replacement.removed(oldPages[i]);
+                        free(oldPages[i]);
                     }
                 }
-                for (Integer i : l)
-                    apHash.remove(i);
+                account(nPage - count);
                 iMaxKey = iLimit - 1;
             }
         }
 
+        /**
+         * Copies content of pages with keys from iLimit out of the
+         * memory-mapped file.
+         */
+        public void detachMapped(int iLimit) {
+            if (group != null) {
+                lock();
+                try {
+                    doDetachMapped(iLimit);
+                } finally {
+                    unlock();
+                }
+            } else {
+                doDetachMapped(iLimit);
+            }
+        }
+
+        private void doDetachMapped(int iLimit) {
+            if (iLimit > iMaxKey) {
+                return;
+            }
+            for (int i = 0; i < pages.length; i++) {
+                final SqlJetPage page = pages[i];
+                if (page != null && page.pgno >= iLimit && page.pData != null
+                        && page.pData.getBuffer() instanceof SqlJetMappedByteBuffer) {
+                    ((SqlJetMappedByteBuffer) page.pData.getBuffer()).detach();
+                }
+            }
+        }
+
         /**
          * The xDestroy() method is used to delete a cache allocated by
          * xCreate(). All resources associated with the specified cache should
@@ -724,38 +1135,73 @@ public class SqlJetPageCache implements ISqlJetPageCache {
          * [sqlite3_pcache*] handle invalid, and will not use it with any other
          * sqlite3_pcache_methods functions.
          */
-        public synchronized void destroy() {
-            apHash.clear();
-            unpinned.clear();
+        public void destroy() {
+            final SqlJetPageCacheGroup group = this.group;
+            if (group != null) {
+                lock();
+                try {
+                    doDestroy();
+                    group.leave(this);
+                    this.group = null;
+                } finally {
+                    unlock();
+                }
+            } else {
+                doDestroy();
+            }
+        }
+
+        private void doDestroy() {
+            for (int i = 0; i < pages.length; i++) {
+                if (pages[i] != null) {
+                    replacement.removed(pages[i]);
+                    free(pages[i]);
+                }
+            }
+            account(-nPage);
+            keys = new int[MIN_CAPACITY];
+            pages = new SqlJetPage[MIN_CAPACITY];
+            nPage = 0;
         }
 
         /**
-         * 
+         * Recycles unpinned page chosen by replacement policy, if there is one.
          */
         public void cleanUnpinned() {
-            final Iterator<Integer> i = unpinned.iterator();
-            while (i.hasNext()) {
-                final Integer next = i.next();
-                if (next == null) {
-                    i.remove();
-                    continue;
-                }
-                final SqlJetPage p = apHash.get(next);
-                if (p == null) {
-                    i.remove();
-                    continue;
+            if (group != null) {
+                lock();
+                try {
+                    recycle();
+                } finally {
+                    unlock();
                 }
-                if(p.getRefCount()>0){
-                    i.remove();
-                    continue;                    
+            } else {
+                recycle();
+            }
+        }
+
+        /**
+         * Discards least recently unpinned pages while the cache holds more
+         * pages than it is configured to.
+         */
+        public void enforceMax() {
+            if (group != null) {
+                lock();
+                try {
+                    doEnforceMax();
+                } finally {
+                    unlock();
                 }
-                final Set<SqlJetPageFlags> flags = p.getFlags();
-                if (flags.contains(SqlJetPageFlags.DIRTY) || flags.contains(SqlJetPageFlags.NEED_SYNC)) {
-                    continue;
+            } else {
+                doEnforceMax();
+            }
+        }
+
+        private void doEnforceMax() {
+            while (bPurgeable && nPage > nMax) {
+                if (!recycle()) {
+                    break;
                 }
-                apHash.remove(next);
-                i.remove();
-                return;
             }
         }
 
@@ -0,0 +1,242 @@
+/**
+ * SqlJetPageCacheGroup.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * Page caches which share one memory budget, like caches of SQLite's pcache1
+ * which share its global limit. When the cache of some database needs a new
+ * page while all caches of group together hold more bytes than the budget
+ * allows, the coldest unpinned page of whole group is recycled, whichever
+ * database it belongs to.
+ * 
+ * Bytes of member caches are counted atomically, so caches don't take the
+ * lock of the group while they fit into the budget. The lock is taken only to
+ * recycle pages of other caches, which are found through a heap of members
+ * ordered by their coldest unpinned pages. Keys of the heap are kept not
+ * greater than stamps of coldest pages: a cache whose coldest page becomes
+ * colder than its key posts itself to {@link #changed}, and such caches are
+ * put back into the heap before it is used. Other caches are locked by
+ * tryLock only, so a cache which waits for the group while holding its own
+ * lock can't deadlock with the one which recycles.
+ * 
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ * 
+ */
+class SqlJetPageCacheGroup {
+
+    static final SqlJetPageCacheGroup GLOBAL = new SqlJetPageCacheGroup(SqlJetUtility.getLongSysProp(
+            SqlJetPageCache.SQLJET_PAGE_CACHE_BUDGET, 0));
+
+    /** Stamp of cache which has no unpinned pages */
+    static final long NONE = Long.MAX_VALUE;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Members in order of their coldest pages, guarded by {@link #lock} */
+    private final PriorityQueue<Entry> heap = new PriorityQueue<Entry>();
+
+    /** Members whose coldest page became colder than their key in heap */
+    private final ConcurrentLinkedQueue<SqlJetPageCache.PCache> changed = new ConcurrentLinkedQueue<SqlJetPageCache.PCache>();
+
+    /** Limit of bytes of all pages in member caches, zero means no limit */
+    private volatile long budget;
+
+    /** Bytes of all pages in member caches */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /** Counter which stamps unpinned pages, to compare pages of caches */
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * Member of heap. Entries are not removed from heap when member gets new
+     * key, entry which doesn't match {@link SqlJetPageCache.PCache#heapKey}
+     * is dropped when it is polled.
+     */
+    private static class Entry implements Comparable<Entry> {
+
+        final long key;
+        final SqlJetPageCache.PCache cache;
+
+        Entry(long key, SqlJetPageCache.PCache cache) {
+            this.key = key;
+            this.cache = cache;
+        }
+
+        public int compareTo(Entry o) {
+            return key < o.key ? -1 : (key == o.key ? 0 : 1);
+        }
+
+    }
+
+    SqlJetPageCacheGroup(long budget) {
+        this.budget = Math.max(budget, 0);
+    }
+
+    boolean isEnabled() {
+        return budget > 0;
+    }
+
+    long getBudget() {
+        return budget;
+    }
+
+    long getBytes() {
+        return bytes.get();
+    }
+
+    void setBudget(long budget) {
+        lock.lock();
+        try {
+            this.budget = Math.max(budget, 0);
+            doMakeRoom(0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void join(SqlJetPageCache.PCache cache) {
+        cache.published = NONE;
+        cache.heapKey = NONE;
+    }
+
+    /**
+     * Is called when cache is empty, its entries in heap are dropped when
+     * they are polled.
+     */
+    void leave(SqlJetPageCache.PCache cache) {
+        lock.lock();
+        try {
+            cache.heapKey = NONE;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long tick() {
+        return clock.incrementAndGet();
+    }
+
+    void allocated(long size) {
+        bytes.addAndGet(size);
+    }
+
+    void freed(long size) {
+        bytes.addAndGet(-size);
+    }
+
+    /**
+     * Is called by cache with its own lock held, when stamp of its coldest
+     * page could have become lower than the one which it published.
+     */
+    void coldestChanged(SqlJetPageCache.PCache cache, long stamp) {
+        if (stamp < cache.published) {
+            cache.published = stamp;
+            changed.add(cache);
+        }
+    }
+
+    /**
+     * Recycles coldest pages of member caches until size more bytes fit into
+     * the budget. Is called with lock of the cache which needs room held.
+     * 
+     * @return false if budget could not be met since all pages are either
+     *         pinned, dirty or belong to caches which are busy.
+     */
+    boolean makeRoom(long size) {
+        final long limit = budget;
+        if (limit <= 0 || bytes.get() + size <= limit) {
+            return true;
+        }
+        lock.lock();
+        try {
+            return doMakeRoom(size);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean doMakeRoom(long size) {
+        SqlJetPageCache.PCache cache;
+        while ((cache = changed.poll()) != null) {
+            final long key = cache.published;
+            if (key < cache.heapKey) {
+                cache.heapKey = key;
+                heap.add(new Entry(key, cache));
+            }
+        }
+        List<Entry> busy = null;
+        try {
+            while (budget > 0 && bytes.get() + size > budget) {
+                final Entry entry = heap.poll();
+                if (entry == null) {
+                    return false;
+                } else if (entry.key != entry.cache.heapKey) {
+                    continue;
+                }
+                cache = entry.cache;
+                if (!cache.tryLock()) {
+                    if (busy == null) {
+                        busy = new ArrayList<Entry>();
+                    }
+                    busy.add(entry);
+                    continue;
+                }
+                try {
+                    final long stamp = cache.coldest();
+                    if (stamp != entry.key) {
+                        push(cache, stamp);
+                    } else if (cache.recycle()) {
+                        push(cache, cache.coldest());
+                    } else {
+                        push(cache, NONE);
+                    }
+                } finally {
+                    cache.unlock();
+                }
+            }
+            return true;
+        } finally {
+            if (busy != null) {
+                heap.addAll(busy);
+            }
+        }
+    }
+
+    /**
+     * Puts cache into heap with new key. Is called with lock of the cache
+     * held.
+     */
+    private void push(SqlJetPageCache.PCache cache, long key) {
+        cache.heapKey = key;
+        cache.published = key;
+        if (key != NONE) {
+            heap.add(new Entry(key, cache));
+        }
+    }
+
+}
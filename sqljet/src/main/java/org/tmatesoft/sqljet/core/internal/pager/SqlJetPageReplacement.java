@@ -0,0 +1,140 @@
+/**
+ * SqlJetPageReplacement.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
+
+/**
+ * Replacement policy of page cache: keeps track of unpinned pages and chooses
+ * which of them to recycle. Pages are linked into policy's lists through
+ * {@link SqlJetPage#pLruNext} and {@link SqlJetPage#pLruPrev}, so policies
+ * don't allocate anything while pages are pinned and unpinned.
+ * 
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ * 
+ */
+abstract class SqlJetPageReplacement {
+
+    static SqlJetPageReplacement create(SqlJetPageCachePolicy policy) {
+        switch (policy) {
+        case TWO_Q:
+            return new SqlJetTwoQueueReplacement();
+        default:
+            return new SqlJetLruReplacement();
+        }
+    }
+
+    abstract SqlJetPageCachePolicy getPolicy();
+
+    /**
+     * New page was put into the cache, it is pinned.
+     */
+    abstract void created(SqlJetPage page);
+
+    /**
+     * Page was fetched from the cache.
+     */
+    abstract void pinned(SqlJetPage page);
+
+    /**
+     * Page became eligible for recycling.
+     */
+    abstract void unpinned(SqlJetPage page);
+
+    /**
+     * Page was discarded from the cache.
+     */
+    abstract void removed(SqlJetPage page);
+
+    /**
+     * Chooses unpinned page to recycle and forgets it.
+     * 
+     * @param capacity
+     *            configured size of the cache.
+     * @return page which should be discarded from the cache or null if there
+     *         are no unpinned pages.
+     */
+    abstract SqlJetPage evict(int capacity);
+
+    /**
+     * Returns page which would be recycled by {@link #evict(int)}, if there
+     * is one, but doesn't forget it.
+     * 
+     * @param capacity
+     *            configured size of the cache.
+     */
+    abstract SqlJetPage peek(int capacity);
+
+    /**
+     * Doubly-linked list of pages, the head is the most recently added page.
+     */
+    static class PageList {
+
+        SqlJetPage head;
+        SqlJetPage tail;
+
+        void add(SqlJetPage page) {
+            assert (!page.isLru);
+            page.isLru = true;
+            page.pLruPrev = null;
+            page.pLruNext = head;
+            if (head != null) {
+                head.pLruPrev = page;
+            } else {
+                tail = page;
+            }
+            head = page;
+        }
+
+        void remove(SqlJetPage page) {
+            assert (page.isLru);
+            if (page.pLruPrev != null) {
+                page.pLruPrev.pLruNext = page.pLruNext;
+            } else {
+                head = page.pLruNext;
+            }
+            if (page.pLruNext != null) {
+                page.pLruNext.pLruPrev = page.pLruPrev;
+            } else {
+                tail = page.pLruPrev;
+            }
+            page.pLruNext = null;
+            page.pLruPrev = null;
+            page.isLru = false;
+        }
+
+        SqlJetPage getTail() {
+            return tail;
+        }
+
+        SqlJetPage removeTail() {
+            final SqlJetPage page = tail;
+            if (page != null) {
+                remove(page);
+            }
+            return page;
+        }
+
+        boolean isEmpty() {
+            return head == null;
+        }
+
+    }
+
+}
@@ -18,9 +18,13 @@
 package org.tmatesoft.sqljet.core.internal.pager;
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.logging.Logger;
 
@@ -42,6 +46,7 @@ import org.tmatesoft.sqljet.core.internal.SqlJetFileAccesPermission;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
 import org.tmatesoft.sqljet.core.internal.SqlJetLockType;
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
 import org.tmatesoft.sqljet.core.internal.SqlJetPageFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetPagerFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
@@ -51,6 +56,8 @@ import org.tmatesoft.sqljet.core.internal.SqlJetSavepointOperation;
 import org.tmatesoft.sqljet.core.internal.SqlJetSyncFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 import org.tmatesoft.sqljet.core.internal.fs.SqlJetFile;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetMappedByteBuffer;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetMemoryPointer;
 import org.tmatesoft.sqljet.core.table.ISqlJetBusyHandler;
 
 /**
@@ -116,6 +123,9 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
      */
     private static final int MAX_SECTOR_SIZE = 0x0100000;
 
+    /** Maximum number of consecutive pages written by single write */
+    private static final int SQLJET_WRITE_RUN_PAGES = SqlJetUtility.getIntSysProp("SQLJET_WRITE_RUN_PAGES", 64);
+
     /**
      * An instance of the following structure is allocated for each active
      * savepoint and statement transaction in the system. All such structures
@@ -271,6 +281,24 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
     /** Size limit for persistent journal files */
     long journalSizeLimit;
 
+    /** Number of bytes of database file which are read through mapping */
+    long mmapSize;
+
+    /** Number of pages which are read at once by sequential reads */
+    int readAhead = SQLJET_DEFAULT_READ_AHEAD;
+
+    /** Pages which were read ahead, null until read-ahead happens */
+    private ISqlJetMemoryPointer readAheadBuffer;
+
+    /** First page in readAheadBuffer */
+    private int readAheadFirst;
+
+    /** Count of pages in readAheadBuffer, zero if it is invalid */
+    private int readAheadCount;
+
+    /** Page which was read from database file last time */
+    private int lastReadPage;
+
     /** Pointer to page cache object */
     SqlJetPageCache pageCache;
 
@@ -291,6 +319,9 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
     /** Number of elements in aSavepoint[] */
     int nSavepoint;
 
+    /** Write-ahead log, not null if the pager is in WAL mode */
+    SqlJetWal wal;
+
     /**
      * The size of the header and of each page in the journal is determined by
      * the following macros.
@@ -457,6 +488,8 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
 
         this.journalSizeLimit = SQLJET_DEFAULT_JOURNAL_SIZE_LIMIT;
 
+        setMmapSize(SQLJET_DEFAULT_MMAP_SIZE);
+
         setSectorSize();
         if (memDb) {
             journalMode = SqlJetPagerJournalMode.MEMORY;
@@ -584,8 +617,90 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
      * org.tmatesoft.sqljet.core.ISqlJetPager#setJournalMode(org.tmatesoft.sqljet
      * .core.SqlJetPagerJournalMode)
      */
-    public void setJournalMode(final SqlJetPagerJournalMode journalMode) {
-        this.journalMode = journalMode;
+    public void setJournalMode(final SqlJetPagerJournalMode journalMode) throws SqlJetException {
+        if (journalMode == this.journalMode) {
+            return;
+        }
+        if (journalMode == SqlJetPagerJournalMode.WAL) {
+            /* In-memory and temporary databases can't use a write-ahead log. */
+            if (memDb || tempFile || null == fd) {
+                return;
+            }
+            if (SqlJetPagerState.SHARED.compareTo(state) < 0) {
+                throw new SqlJetException(SqlJetErrorCode.MISUSE,
+                        "Journal mode can't be changed inside of write transaction");
+            }
+            openWal();
+            if (SqlJetPagerState.SHARED == state) {
+                wal.beginRead();
+            }
+        } else {
+            if (null != wal) {
+                leaveWal();
+            }
+            this.journalMode = journalMode;
+        }
+    }
+
+    /**
+     * Switches the pager to WAL mode.
+     *
+     * @throws SqlJetException
+     */
+    private void openWal() throws SqlJetException {
+        assert (null == wal);
+        wal = new SqlJetWal(fileSystem, fileName, fd, readOnly, busyHandler);
+        journalMode = SqlJetPagerJournalMode.WAL;
+    }
+
+    /**
+     * Leaves WAL mode: copies the whole log into the database file, deletes
+     * the log and marks the database file as a rollback-journal one again.
+     * This is possible only when no other connection uses the log.
+     *
+     * @throws SqlJetException
+     */
+    private void leaveWal() throws SqlJetException {
+        assert (null != wal);
+        if (pageCache.getRefCount() > 0) {
+            throw new SqlJetException(SqlJetErrorCode.MISUSE, "Journal mode can't be changed inside of transaction");
+        }
+        if (SqlJetPagerState.UNLOCK != state) {
+            unlock();
+        }
+        if (wal.getUsers() > 1) {
+            throw new SqlJetException(SqlJetErrorCode.BUSY);
+        }
+        final Set<SqlJetSyncFlags> walSync = noSync ? null : syncFlags;
+        waitOnLock(SqlJetLockType.SHARED);
+        try {
+            waitOnLock(SqlJetLockType.EXCLUSIVE);
+            if (!wal.checkpoint(walSync)) {
+                throw new SqlJetException(SqlJetErrorCode.BUSY);
+            }
+            if (fd.fileSize() > 19) {
+                final ISqlJetMemoryPointer version = SqlJetUtility.allocatePtr(2);
+                SqlJetUtility.putUnsignedByte(version, 0, (byte) 1);
+                SqlJetUtility.putUnsignedByte(version, 1, (byte) 1);
+                fd.write(version, 2, 18);
+                if (null != walSync) {
+                    fd.sync(walSync);
+                }
+            }
+            wal.close(walSync);
+            wal = null;
+        } finally {
+            unlock();
+            reset();
+        }
+    }
+
+    /**
+     * Returns true if the rollback journal of the transaction is kept in
+     * memory, which is the case for MEMORY and WAL journal modes.
+     */
+    private boolean isMemoryJournal() {
+        return journalMode == SqlJetPagerJournalMode.MEMORY || journalMode == SqlJetPagerJournalMode.WAL;
     }
 
     /*
@@ -675,6 +790,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
         assert (pageSize >= SQLJET_MIN_PAGE_SIZE && pageSize <= SQLJET_MAX_PAGE_SIZE);
         if (pageSize != this.pageSize && (!this.memDb || this.dbSize == 0) && pageCache.getRefCount() == 0) {
             reset();
+            resetReadAhead();
             this.pageSize = pageSize;
             if (!this.memDb)
                 setSectorSize();
@@ -747,6 +863,127 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
         return mxPgno;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetPager#setMmapSize(long)
+     */
+    public void setMmapSize(long mmapSize) {
+        this.mmapSize = mmapSize > 0 ? mmapSize : 0;
+        if (null != fd) {
+            fd.setMapSize(this.mmapSize);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetPager#getMmapSize()
+     */
+    public long getMmapSize() {
+        return mmapSize;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetPager#setReadAhead(int)
+     */
+    public void setReadAhead(int pages) {
+        this.readAhead = pages > 1 ? pages : 0;
+        resetReadAhead();
+        readAheadBuffer = null;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetPager#getReadAhead()
+     */
+    public int getReadAhead() {
+        return readAhead;
+    }
+
+    /**
+     * Forgets pages which were read ahead. Is called when content of database
+     * file could change: when lock on file is released or when this pager is
+     * going to write.
+     */
+    private void resetReadAhead() {
+        readAheadCount = 0;
+        lastReadPage = 0;
+    }
+
+    /**
+     * Reads page from database file if it either was read ahead or is read
+     * sequentially after previous page. In the latter case next pages are
+     * read too by one read of file. Pages are read ahead only while pager is
+     * in read transaction and database isn't in WAL mode, so file doesn't
+     * change until they are used.
+     *
+     * @param data
+     *            buffer of page.
+     * @param pageNumber
+     *            number of page.
+     * @return true if page has been read.
+     * @throws SqlJetException
+     */
+    private boolean readAhead(final ISqlJetMemoryPointer data, int pageNumber) throws SqlJetException {
+        if (readAhead < 2 || state != SqlJetPagerState.SHARED || null != wal) {
+            resetReadAhead();
+            return false;
+        }
+        final boolean sequential = pageNumber == lastReadPage + 1;
+        lastReadPage = pageNumber;
+        if (pageNumber < readAheadFirst || pageNumber >= readAheadFirst + readAheadCount) {
+            if (!sequential) {
+                return false;
+            }
+            int count = Math.min(readAhead, getPageCount() - pageNumber + 1);
+            final int pendingPage = (int) (ISqlJetFile.PENDING_BYTE / pageSize) + 1;
+            if (pageNumber < pendingPage) {
+                count = Math.min(count, pendingPage - pageNumber);
+            }
+            if (count < 2) {
+                return false;
+            }
+            if (null == readAheadBuffer || readAheadBuffer.remaining() < readAhead * pageSize) {
+                readAheadBuffer = SqlJetUtility.allocatePtr(readAhead * pageSize);
+            }
+            readAheadCount = 0;
+            try {
+                fd.read(readAheadBuffer, count * pageSize, ((long) (pageNumber - 1)) * pageSize);
+            } catch (SqlJetIOException e) {
+                /* File is shorter than expected, let page be read alone. */
+                return false;
+            }
+            readAheadFirst = pageNumber;
+            readAheadCount = count;
+        }
+        SqlJetUtility.memcpy(data, 0, readAheadBuffer, (pageNumber - readAheadFirst) * pageSize, pageSize);
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.ISqlJetPager#setCachePolicy(org.tmatesoft
+     * .sqljet.core.internal.SqlJetPageCachePolicy)
+     */
+    public void setCachePolicy(SqlJetPageCachePolicy policy) {
+        pageCache.setPolicy(policy);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetPager#getCachePolicy()
+     */
+    public SqlJetPageCachePolicy getCachePolicy() {
+        return pageCache.getPolicy();
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -797,7 +1034,9 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
         } else {
             assert (null != fd || tempFile);
             long l = 0;
-            if (null != fd) {
+            if (null != wal && wal.isReading() && wal.getDbSize() >= 0) {
+                l = ((long) wal.getDbSize()) * pageSize;
+            } else if (null != fd) {
                 try {
                     l = fd.fileSize();
                 } catch (SqlJetException e) {
@@ -876,6 +1115,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
             } catch (SqlJetException e) {
                 // TODO: handle exception
             }
+            sjfd = null;
         }
         aSavepoint = null;
         nSavepoint = 0;
@@ -907,6 +1147,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
      *
      */
     private void unlock() {
+        resetReadAhead();
         if (SqlJetPagerLockingMode.EXCLUSIVE != lockingMode) {
 
             /*
@@ -926,6 +1167,11 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
                 pagesAlwaysRollback = null;
             }
 
+            if (null != wal) {
+                wal.endWrite();
+                wal.endRead();
+            }
+
             try {
                 if (null != fd)
                     fd.unlock(SqlJetLockType.NONE);
@@ -984,6 +1230,13 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
         pagesInJournal = null;
         pagesAlwaysRollback = null;
         releaseAllSavepoint();
+        if (null != wal) {
+            try {
+                wal.close(noSync ? null : syncFlags);
+            } finally {
+                wal = null;
+            }
+        }
         if (null != fd)
             fd.close();
 
@@ -1058,7 +1311,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
 
             } else {
                 try {
-                    readDbPage(page, pageNumber);
+                    readDbPage(page, pageNumber, true);
                 } catch (SqlJetIOException e) {
                     if (SqlJetIOErrorCode.IOERR_SHORT_READ != e.getIoErrorCode()) {
                         dropPage(page);
@@ -1094,10 +1347,10 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
      * @param page
      * @throws SqlJetIOException
      */
-    void getContent(final ISqlJetPage page) throws SqlJetIOException {
+    void getContent(final ISqlJetPage page) throws SqlJetException {
         final Set<SqlJetPageFlags> flags = page.getFlags();
         if (null != flags && flags.contains(SqlJetPageFlags.NEED_READ)) {
-            readDbPage(page, page.getPageNumber());
+            readDbPage(page, page.getPageNumber(), false);
             flags.remove(SqlJetPageFlags.NEED_READ);
         }
     }
@@ -1168,15 +1421,31 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
      * @param pageNumber
      * @throws SqlJetIOException
      */
-    private void readDbPage(final ISqlJetPage page, int pageNumber) throws SqlJetIOException {
+    private void readDbPage(final ISqlJetPage page, int pageNumber, boolean fresh) throws SqlJetException {
         assert (!memDb);
         assert (null != fd || tempFile);
         if (null == fd) {
             throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_SHORT_READ);
         }
         final long offset = ((long) (pageNumber - 1)) * pageSize;
-        final ISqlJetMemoryPointer data = page.getData();
-        fd.read(data, pageSize, offset);
+        ISqlJetMemoryPointer data = page.getData();
+        if (null == wal || !wal.isReading() || !wal.readPage(pageNumber, data, pageSize)) {
+            final ByteBuffer view = mmapSize > 0 ? fd.fetch(offset, pageSize) : null;
+            if (null == view) {
+                if (!readAhead(data, pageNumber)) {
+                    fd.read(data, pageSize, offset);
+                }
+            } else if (data.getBuffer() instanceof SqlJetMappedByteBuffer) {
+                ((SqlJetMappedByteBuffer) data.getBuffer()).map(view);
+            } else if (fresh) {
+                /* Nobody refers the page yet so its buffer could be replaced. */
+                SqlJetUtility.memoryManager.free(data.getBuffer());
+                data = new SqlJetMemoryPointer(new SqlJetMappedByteBuffer(view), 0);
+                ((SqlJetPage) page).pData = data;
+            } else {
+                data.copyFrom(new SqlJetMemoryPointer(new SqlJetMappedByteBuffer(view), 0), pageSize);
+            }
+        }
         if (1 == pageNumber) {
             SqlJetUtility.memcpy(dbFileVers, 0, data, 24, dbFileVers.remaining());
         }
@@ -1345,7 +1614,25 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
 
                 }
 
-                if (pageCache.getPageCount() > 0) {
+                /*
+                 * If some other connection has switched the database to WAL
+                 * mode then follow it.
+                 */
+                if (null == wal && !tempFile && SqlJetWal.isActive(fileName, fd)) {
+                    openWal();
+                }
+
+                if (null != wal) {
+                    /*
+                     * In WAL mode the database file itself doesn't reflect
+                     * changes, so take a snapshot of the log and discard the
+                     * cache if anything was committed since the previous read
+                     * transaction.
+                     */
+                    if (!wal.isReading() && wal.beginRead() && pageCache.getPageCount() > 0) {
+                        reset();
+                    }
+                } else if (pageCache.getPageCount() > 0) {
                     /*
                      * The shared-lock has just been acquired on the database
                      * file and there are already pages in the cache (from a
@@ -1707,7 +1994,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
             }
             for (ii = 0; rc == null && ii < nJRec && journalOff < szJ; ii++) {
                 try {
-                    playbackOnePage(true, journalOff, true, pDone);
+                    journalOff = playbackOnePage(true, journalOff, true, pDone);
                 } catch (SqlJetException e) {
                     rc = e;
                     assert (e.getErrorCode() != SqlJetErrorCode.DONE);
@@ -1722,11 +2009,11 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
          * pDone) will be skipped. Out-of-range pages are also skipped.
          */
         if (pSavepoint != null) {
-            final long offset = pSavepoint.iSubRec * ((long)(4 + pageSize));
+            long offset = pSavepoint.iSubRec * ((long)(4 + pageSize));
             for (ii = pSavepoint.iSubRec; rc == null && ii < stmtNRec; ii++) {
                 assert (offset == ii * ((long)(4 + pageSize)));
                 try {
-                    playbackOnePage(false, offset, true, pDone);
+                    offset = playbackOnePage(false, offset, true, pDone);
                 } catch (SqlJetException e) {
                     rc = e;
                     assert (e.getErrorCode() != SqlJetErrorCode.DONE);
@@ -1865,7 +2152,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
         }
         releaseAllSavepoint();
         if (journalOpen) {
-            if (journalMode == SqlJetPagerJournalMode.MEMORY) {
+            if (isMemoryJournal()) {
                 boolean isMemoryJournal = jfd.isMemJournal();
                 try {
                     jfd.close();
@@ -1933,6 +2220,10 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
             assert (null == pagesInJournal);
         }
 
+        if (null != wal) {
+            wal.endWrite();
+        }
+
         if (!exclusiveMode()) {
             if (null != fd) {
                 try {
@@ -2154,7 +2445,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
             if (pgno > dbFileSize) {
                 dbFileSize = pgno;
             }
-        } else if (!isMainJrnl && pPg == null) {
+        } else if ((!isMainJrnl || (null != wal && isSavepnt)) && pPg == null) {
             /*
              * If this is a rollback of a savepoint and data was not written to
              * the database and the page is not in-memory, there is a potential
@@ -2600,6 +2891,8 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
             newSize = ((long)pageSize) * pageNumber;
             if (currentSize != newSize) {
                 if (currentSize > newSize) {
+                    /* Cached pages must not refer the region being cut off. */
+                    pageCache.detachMapped(pageNumber);
                     fd.truncate(newSize);
                 } else {
                     final ISqlJetMemoryPointer b = SqlJetUtility.allocatePtr(1);
@@ -2646,7 +2939,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
          */
         if (needSync) {
             assert (!tempFile);
-            if (journalMode != SqlJetPagerJournalMode.MEMORY) {
+            if (!isMemoryJournal()) {
                 assert (journalOpen);
 
                 final Set<SqlJetDeviceCharacteristics> dc = fd.deviceCharacteristics();
@@ -2768,12 +3061,26 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
      */
     public void begin(boolean exclusive) throws SqlJetException {
         assert (state != SqlJetPagerState.UNLOCK);
+        resetReadAhead();
         if (state == SqlJetPagerState.SHARED) {
             assert (pagesInJournal == null);
             assert (!memDb);
             if (fd.lock(SqlJetLockType.RESERVED)) {
                 state = SqlJetPagerState.RESERVED;
-                if (exclusive) {
+                if (null != wal) {
+                    /*
+                     * The writer must see the last committed state of the log.
+                     * An EXCLUSIVE lock is never needed since the database
+                     * file is not written until checkpoint.
+                     */
+                    try {
+                        wal.beginWrite();
+                    } catch (SqlJetException e) {
+                        fd.unlock(SqlJetLockType.SHARED);
+                        state = SqlJetPagerState.SHARED;
+                        throw e;
+                    }
+                } else if (exclusive) {
                     waitOnLock(SqlJetLockType.EXCLUSIVE);
                 }
                 dirtyCache = false;
@@ -2870,7 +3177,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
          */
         assert (fd != null || noSync);
 
-        if (noSync || journalMode == SqlJetPagerJournalMode.MEMORY
+        if (noSync || isMemoryJournal()
                 || fd.deviceCharacteristics().contains(SqlJetDeviceCharacteristics.IOCAP_SAFE_APPEND)) {
             put32bits(zHeader, aJournalMagic.remaining(), 0xffffffff);
         } else {
@@ -2956,7 +3263,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
      */
     private void openSubJournal() throws SqlJetException {
         if (journalOpen && sjfd == null) {
-            if (journalMode == SqlJetPagerJournalMode.MEMORY) {
+            if (isMemoryJournal()) {
                 sjfd = fileSystem.memJournalOpen();
             } else {
                 sjfd = openTemp(SqlJetFileType.SUBJOURNAL, null);
@@ -2997,7 +3304,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
                     fileType = SqlJetFileType.MAIN_JOURNAL;
                 }
                 try {
-                    if (journalMode == SqlJetPagerJournalMode.MEMORY) {
+                    if (isMemoryJournal()) {
                         jfd = fileSystem.memJournalOpen();
                     } else {
                         jfd = fileSystem.open(journal, fileType, flags);
@@ -3091,7 +3398,9 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
          * function has already been called, it is a no-op.
          */
         try {
-            if (state != SqlJetPagerState.SYNCED && !memDb && dirtyCache) {
+            if (null != wal && wal.isWriting()) {
+                walCommit(this.noSync || noSync);
+            } else if (state != SqlJetPagerState.SYNCED && !memDb && dirtyCache) {
 
                 /*
                  * If a master journal file name has already been written to the
@@ -3206,13 +3515,26 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
          */
         waitOnLock(SqlJetLockType.EXCLUSIVE);
 
+        /* If the file has not yet been opened, open it now. */
+        if (null == fd) {
+            assert (tempFile);
+            fd = openTemp(type, permissions);
+        }
+
+        /*
+         * The list is sorted by page number, so the file is written in
+         * ascending order and runs of consecutive pages are written by single
+         * gathering write.
+         */
+        final List<ISqlJetMemoryPointer> run = new ArrayList<ISqlJetMemoryPointer>();
+        int runStart = 0;
+        int prevPageNumber = 0;
+
         for (ISqlJetPage page = pList; page != null; page = page.getDirty()) {
 
-            /* If the file has not yet been opened, open it now. */
-            if (null == fd) {
-                assert (tempFile);
-                fd = openTemp(type, permissions);
-            }
+            final int pageNumber = page.getPageNumber();
+            assert (pageNumber > prevPageNumber);
+            prevPageNumber = pageNumber;
 
             /*
              * If there are dirty pages in the page cache with page numbers
@@ -3220,27 +3542,108 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
              * called to make the file smaller (presumably by auto-vacuum code).
              * Do not write any such pages to the file.
              */
-            if (page.getPageNumber() <= dbSize && !page.getFlags().contains(SqlJetPageFlags.DONT_WRITE)) {
+            if (pageNumber <= dbSize && !page.getFlags().contains(SqlJetPageFlags.DONT_WRITE)) {
 
-                final long offset = ((long) (page.getPageNumber() - 1)) * pageSize;
-                PAGERTRACE("STORE %s page %d hash(%08x)\n", PAGERID(), pList.getPageNumber(), pageHash(pList));
+                PAGERTRACE("STORE %s page %d hash(%08x)\n", PAGERID(), pageNumber, pageHash(page));
 
-                ISqlJetMemoryPointer pData = page.getData();
-
-                fd.write(pData, pageSize, offset);
-                if (page.getPageNumber() == 1) {
-                    SqlJetUtility.memcpy(dbFileVers, 0, pData, 24, dbFileVers.remaining());
+                if (!run.isEmpty() && (pageNumber != runStart + run.size() || run.size() >= SQLJET_WRITE_RUN_PAGES)) {
+                    writePageRun(runStart, run);
+                    run.clear();
                 }
-                if (page.getPageNumber() > dbFileSize) {
-                    dbFileSize = page.getPageNumber();
+                if (run.isEmpty()) {
+                    runStart = pageNumber;
                 }
+                run.add(page.getData());
+
             } else {
-                PAGERTRACE("NOSTORE %s page %d\n", PAGERID(), pList.getPageNumber());
+                PAGERTRACE("NOSTORE %s page %d\n", PAGERID(), pageNumber);
             }
 
             page.setHash(pageHash(page));
         }
 
+        if (!run.isEmpty()) {
+            writePageRun(runStart, run);
+        }
+
+    }
+
+    /**
+     * Writes content of consecutive pages starting from page number runStart
+     * to the database file.
+     *
+     * @param runStart
+     * @param run
+     * @throws SqlJetException
+     */
+    private void writePageRun(int runStart, List<ISqlJetMemoryPointer> run) throws SqlJetException {
+        final long offset = ((long) (runStart - 1)) * pageSize;
+        if (run.size() == 1) {
+            fd.write(run.get(0), pageSize, offset);
+        } else {
+            fd.write(run, pageSize, offset);
+        }
+        if (runStart == 1) {
+            SqlJetUtility.memcpy(dbFileVers, 0, run.get(0), 24, dbFileVers.remaining());
+        }
+        final int runEnd = runStart + run.size() - 1;
+        if (runEnd > dbFileSize) {
+            dbFileSize = runEnd;
+        }
+    }
+
+    /**
+     * Commits the transaction in WAL mode: appends all dirty pages to the log,
+     * the last of them as the commit frame. The database file is not touched
+     * until the log is checkpointed, which happens here when the log has grown
+     * large enough.
+     *
+     * @param noSync
+     * @throws SqlJetException
+     */
+    private void walCommit(boolean noSync) throws SqlJetException {
+        final List<ISqlJetPage> pages = new ArrayList<ISqlJetPage>();
+        for (ISqlJetPage page = pageCache.getDirtyList(); page != null; page = page.getDirty()) {
+            if (page.getPageNumber() <= dbSize && !page.getFlags().contains(SqlJetPageFlags.DONT_WRITE)) {
+                pages.add(page);
+            }
+        }
+        final Set<SqlJetSyncFlags> walSync = noSync || !fullSync ? null : syncFlags;
+        if (pages.isEmpty()) {
+            if (!wal.hasUncommittedFrames()) {
+                return;
+            }
+            /*
+             * Everything has been spilled to the log already, write page 1
+             * once more to mark the commit.
+             */
+            final ISqlJetPage page1 = getPage(1);
+            try {
+                wal.writeFrames(Collections.singletonList(page1), pageSize, dbSize, walSync);
+            } finally {
+                page1.unref();
+            }
+        } else {
+            wal.writeFrames(pages, pageSize, dbSize, walSync);
+            for (final ISqlJetPage page : pages) {
+                if (page.getPageNumber() == 1) {
+                    SqlJetUtility.memcpy(dbFileVers, 0, page.getData(), 24, dbFileVers.remaining());
+                }
+                page.setHash(pageHash(page));
+            }
+        }
+        pageCache.cleanAll();
+
+        if (wal.needsCheckpoint()) {
+            try {
+                wal.checkpoint(noSync ? null : syncFlags);
+            } catch (SqlJetException e) {
+                /*
+                 * The transaction is committed already, the log will be
+                 * checkpointed by one of the next transactions.
+                 */
+            }
+        }
     }
 
     /**
@@ -3305,7 +3708,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
 
         if (null == master || setMaster)
             return;
-        if (journalMode == SqlJetPagerJournalMode.MEMORY)
+        if (isMemoryJournal())
             return;
 
         setMaster = true;
@@ -3416,7 +3819,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
 
         PAGERTRACE("COMMIT %s\n", PAGERID());
 
-        assert (state == SqlJetPagerState.SYNCED || memDb || !dirtyCache);
+        assert (state == SqlJetPagerState.SYNCED || memDb || !dirtyCache || null != wal);
         try {
             endTransaction(setMaster);
         } catch (SqlJetException e) {
@@ -3510,11 +3913,27 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
         }
 
         assert (pPg.getFlags().contains(SqlJetPageFlags.DIRTY));
-        if (errCode == null) {
+        if (errCode == null && null != wal) {
+            /*
+             * In WAL mode the page is spilled into the log as an uncommitted
+             * frame, the database file stays untouched.
+             */
+            try {
+                pPg.pDirty = null;
+                if (pPg.getPageNumber() > dbSize && subjRequiresPage(pPg)) {
+                    subjournalPage(pPg);
+                }
+                if (pPg.getPageNumber() <= dbSize && !pPg.getFlags().contains(SqlJetPageFlags.DONT_WRITE)) {
+                    wal.writeFrames(Collections.<ISqlJetPage> singletonList(pPg), pageSize, 0, null);
+                }
+            } catch (SqlJetException e) {
+                error(e);
+            }
+        } else if (errCode == null) {
             try {
                 if (pPg.getFlags().contains(SqlJetPageFlags.NEED_SYNC)) {
                     syncJournal();
-                    if (fullSync && journalMode != SqlJetPagerJournalMode.MEMORY
+                    if (fullSync && !isMemoryJournal()
                             && !fd.deviceCharacteristics().contains(SqlJetDeviceCharacteristics.IOCAP_SAFE_APPEND)) {
                         nRec = 0;
                         writeJournalHdr();
@@ -3546,7 +3965,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
              * Either there is no active journal or the sub-journal is open or
              * the journal is always stored in memory
              */
-            assert (this.nSavepoint == 0 || this.sjfd != null || journalMode == SqlJetPagerJournalMode.MEMORY);
+            assert (this.nSavepoint == 0 || this.sjfd != null || isMemoryJournal());
 
             /*
              * Grow the Pager.aSavepoint array using realloc(). Return
@@ -3555,7 +3974,9 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
              * the for(...) loop below.
              */
             aNew = new PagerSavepoint[nSavepoint];
-            SqlJetUtility.memcpy(aNew, aSavepoint, nSavepoint);
+            if (aSavepoint != null) {
+                SqlJetUtility.memcpy(aNew, aSavepoint, nSavepoint);
+            }
             this.aSavepoint = aNew;
             ii = this.nSavepoint;
             this.nSavepoint = nSavepoint;
@@ -3563,6 +3984,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
             /* Populate the PagerSavepoint structures just allocated. */
             for (/* no-op */; ii < nSavepoint; ii++) {
                 assert (dbSizeValid);
+                aNew[ii] = new PagerSavepoint();
                 aNew[ii].nOrig = dbSize;
                 if (journalOpen && journalOff > 0) {
                     aNew[ii].iOffset = journalOff;
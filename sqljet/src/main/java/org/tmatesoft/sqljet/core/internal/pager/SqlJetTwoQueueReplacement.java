@@ -0,0 +1,146 @@
+/**
+ * SqlJetTwoQueueReplacement.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import java.util.BitSet;
+
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
+
+/**
+ * 2Q replacement (T. Johnson, D. Shasha, "2Q: A Low Overhead High Performance
+ * Buffer Management Replacement Algorithm").
+ * 
+ * Pages which come into the cache are put in "in" queue. Pages are recycled
+ * from "in" queue while it holds more than quarter of the cache, and numbers
+ * of recycled pages are remembered in "out" queue of size of half of the
+ * cache. Page which is read again while its number is in "out" queue goes to
+ * "main" queue, from which pages are recycled only when "in" queue is small.
+ * So a scan of big table, which touches each page once, can't push hot pages
+ * out of "main" queue.
+ * 
+ * Unlike original algorithm "in" queue is kept in order of unpinning rather
+ * than of reading, since only unpinned pages are linked into queues.
+ * 
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ * 
+ */
+class SqlJetTwoQueueReplacement extends SqlJetPageReplacement {
+
+    /** Unpinned pages of "in" queue */
+    private final PageList in = new PageList();
+
+    /** Unpinned pages of "main" queue */
+    private final PageList main = new PageList();
+
+    /** Count of cached pages of "in" queue, either pinned or not */
+    private int inCount;
+
+    /** Ring buffer of numbers of pages recycled from "in" queue */
+    private int[] out = new int[0];
+    private int outHead;
+    private int outCount;
+
+    /** Numbers of pages which are in "out" queue */
+    private final BitSet outSet = new BitSet();
+
+    @Override
+    SqlJetPageCachePolicy getPolicy() {
+        return SqlJetPageCachePolicy.TWO_Q;
+    }
+
+    @Override
+    void created(SqlJetPage page) {
+        page.isHot = outSet.get(page.pgno);
+        if (!page.isHot) {
+            inCount++;
+        }
+    }
+
+    @Override
+    void pinned(SqlJetPage page) {
+        if (page.isLru) {
+            (page.isHot ? main : in).remove(page);
+        }
+    }
+
+    @Override
+    void unpinned(SqlJetPage page) {
+        if (!page.isLru) {
+            (page.isHot ? main : in).add(page);
+        }
+    }
+
+    @Override
+    void removed(SqlJetPage page) {
+        pinned(page);
+        if (!page.isHot) {
+            inCount--;
+        }
+    }
+
+    @Override
+    SqlJetPage evict(int capacity) {
+        final SqlJetPage page = peek(capacity);
+        if (page == null) {
+            return null;
+        }
+        (page.isHot ? main : in).remove(page);
+        if (!page.isHot) {
+            inCount--;
+            remember(page.pgno, Math.max(capacity / 2, 1));
+        }
+        return page;
+    }
+
+    @Override
+    SqlJetPage peek(int capacity) {
+        SqlJetPage page = null;
+        if (inCount > Math.max(capacity / 4, 1) || main.isEmpty()) {
+            page = in.getTail();
+        }
+        return page != null ? page : main.getTail();
+    }
+
+    private void remember(int pgno, int outSize) {
+        if (out.length != outSize) {
+            final int[] ring = new int[outSize];
+            final int count = Math.min(outCount, outSize);
+            for (int i = 0; i < outCount; i++) {
+                final int p = out[(outHead + i) % out.length];
+                if (i < outCount - count) {
+                    outSet.clear(p);
+                } else {
+                    ring[i - (outCount - count)] = p;
+                }
+            }
+            out = ring;
+            outHead = 0;
+            outCount = count;
+        }
+        if (outCount == out.length) {
+            outSet.clear(out[outHead]);
+            outHead = (outHead + 1) % out.length;
+            outCount--;
+        }
+        out[(outHead + outCount) % out.length] = pgno;
+        outCount++;
+        outSet.set(pgno);
+    }
+
+}
@@ -0,0 +1,458 @@
+/**
+ * SqlJetWal.java
+ * Copyright (C) 2009-2010 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.ISqlJetPage;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileAccesPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetSyncFlags;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.pager.SqlJetWalIndex.CheckpointPlan;
+import org.tmatesoft.sqljet.core.internal.pager.SqlJetWalIndex.Snapshot;
+import org.tmatesoft.sqljet.core.table.ISqlJetBusyHandler;
+
+/**
+ * Write-ahead log of one pager.
+ *
+ * In WAL mode the database file is not changed by transactions. Instead
+ * modified pages are appended to the log file as frames and a transaction is
+ * committed by the frame which carries the new size of the database. Readers
+ * take a snapshot of the last committed frame when they start and look up
+ * pages in the log before reading them from the database file, so a writer
+ * never blocks readers and readers never block a writer.
+ *
+ * From time to time the log is checkpointed: the most recent images of pages
+ * which are not needed by any active reader anymore are copied into the
+ * database file. When the whole log has been copied the next writer starts it
+ * over from the beginning.
+ *
+ * The log file has the same format as the SQLite one. The wal-index which
+ * SQLite keeps in the shared memory file is kept by {@link SqlJetWalIndex} in
+ * the memory of the process, hence only one process at a time may use the
+ * database in WAL mode, connections of other processes get BUSY until it
+ * closes the database.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+class SqlJetWal {
+
+    /**
+     * Suffix of the log file name.
+     */
+    static final String WAL = "-wal";
+
+    /**
+     * Number of frames in the log after which a commit runs a checkpoint.
+     */
+    static final int SQLJET_WAL_AUTOCHECKPOINT = SqlJetUtility.getIntSysProp("SQLJET_WAL_AUTOCHECKPOINT", 1000);
+
+    private final ISqlJetFileSystem fileSystem;
+    private final File walFile;
+    private final ISqlJetFile db;
+    private final boolean readOnly;
+    private final SqlJetWalIndex index;
+    private ISqlJetFile file;
+
+    /** Snapshot of the current read transaction */
+    private Snapshot snapshot;
+    private int lastGeneration = -1;
+    private int lastFrame = -1;
+
+    /** True while this pager has a write transaction open */
+    private boolean writing;
+
+    /** Pages of frames written by the current transaction */
+    private final List<Integer> frames = new ArrayList<Integer>();
+
+    /** Latest uncommitted frame of each page */
+    private final Map<Integer, Integer> uncommitted = new HashMap<Integer, Integer>();
+
+    /** Running checksum of the current transaction */
+    private final long[] cksum = new long[2];
+
+    private Set<SqlJetSyncFlags> closeSync;
+
+    /**
+     * Opens the log of the database and its shared index.
+     *
+     * @param fileSystem
+     * @param dbFile
+     *            name of the database file.
+     * @param db
+     *            opened database file.
+     * @param readOnly
+     *            true if the database is read-only. In this case the log is
+     *            opened only if it exists.
+     * @param busyHandler
+     *            busy handler of the pager, may be null.
+     * @throws SqlJetException
+     *             BUSY if another process uses the database in WAL mode.
+     */
+    SqlJetWal(final ISqlJetFileSystem fileSystem, final File dbFile, final ISqlJetFile db, final boolean readOnly,
+            final ISqlJetBusyHandler busyHandler) throws SqlJetException {
+        this.fileSystem = fileSystem;
+        this.walFile = getWalFile(dbFile);
+        this.db = db;
+        this.readOnly = readOnly;
+        this.index = SqlJetWalIndex.acquire(getKey(dbFile));
+        try {
+            if (!readOnly) {
+                file = fileSystem.open(walFile, SqlJetFileType.WAL, SqlJetUtility.of(
+                        SqlJetFileOpenPermission.READWRITE, SqlJetFileOpenPermission.CREATE));
+            } else if (fileSystem.access(walFile, SqlJetFileAccesPermission.EXISTS)) {
+                file = fileSystem.open(walFile, SqlJetFileType.WAL, SqlJetUtility
+                        .of(SqlJetFileOpenPermission.READONLY));
+            }
+            index.open(fileSystem, dbFile, db, file, readOnly, busyHandler);
+        } catch (SqlJetException e) {
+            if (file != null) {
+                file.close();
+                file = null;
+            }
+            SqlJetWalIndex.release(index, null);
+            throw e;
+        }
+    }
+
+    static File getWalFile(final File dbFile) {
+        return new File(dbFile.getParentFile(), dbFile.getName() + WAL);
+    }
+
+    private static String getKey(final File dbFile) {
+        try {
+            return dbFile.getCanonicalPath();
+        } catch (IOException e) {
+            return dbFile.getAbsolutePath();
+        }
+    }
+
+    /**
+     * Returns true if the database is being used in WAL mode: either some
+     * pager of this process has its log open, or another process holds the
+     * log, or a non-empty log was left by a previous session.
+     *
+     * @param dbFile
+     *            name of the database file.
+     * @param db
+     *            database file opened by the caller.
+     * @throws SqlJetException
+     */
+    static boolean isActive(final File dbFile, final ISqlJetFile db) throws SqlJetException {
+        if (SqlJetWalIndex.isOpen(getKey(dbFile))) {
+            return true;
+        }
+        final File walFile = getWalFile(dbFile);
+        return (walFile.isFile() && walFile.length() > 0) || SqlJetWalIndex.isLockedByProcess(db);
+    }
+
+    /**
+     * Returns number of pagers of this process which have the log open.
+     */
+    int getUsers() {
+        return index.getRefCount();
+    }
+
+    /**
+     * Starts a read transaction.
+     *
+     * @return true if the log has changed since the previous read transaction
+     *         of this pager, which means that the cached pages are stale.
+     */
+    boolean beginRead() {
+        assert (snapshot == null);
+        snapshot = index.beginRead();
+        return snapshot.generation != lastGeneration || snapshot.mxFrame != lastFrame;
+    }
+
+    void endRead() {
+        if (snapshot != null) {
+            lastGeneration = snapshot.generation;
+            lastFrame = snapshot.mxFrame;
+            index.endRead(snapshot);
+            snapshot = null;
+        }
+    }
+
+    boolean isReading() {
+        return snapshot != null;
+    }
+
+    /**
+     * Returns size of the database in pages as seen by the read transaction,
+     * or -1 if the size should be taken from the database file.
+     */
+    int getDbSize() {
+        assert (snapshot != null);
+        return snapshot.mxFrame > 0 ? snapshot.dbSize : -1;
+    }
+
+    /**
+     * Reads the image of the page from the log.
+     *
+     * @return false if the log has no image of the page for the current
+     *         transaction and it should be read from the database file.
+     * @throws SqlJetException
+     */
+    boolean readPage(final int pgno, final ISqlJetMemoryPointer data, final int pageSize) throws SqlJetException {
+        assert (snapshot != null);
+        int frame = 0;
+        if (writing) {
+            final Integer f = uncommitted.get(pgno);
+            if (f != null) {
+                frame = f.intValue();
+            }
+        }
+        if (frame == 0) {
+            frame = index.findFrame(snapshot, pgno);
+        }
+        if (frame == 0) {
+            return false;
+        }
+        if (file == null) {
+            /* The log has been created by another pager after this one. */
+            file = fileSystem.open(walFile, SqlJetFileType.WAL, SqlJetUtility.of(SqlJetFileOpenPermission.READONLY));
+        }
+        final int walPageSize = index.getPageSize();
+        final int amount = Math.min(pageSize, walPageSize);
+        file.read(data, amount, getFrameOffset(frame, walPageSize) + SqlJetWalIndex.WAL_FRAME_HDR_SIZE);
+        if (amount < pageSize) {
+            SqlJetUtility.memset(data, amount, (byte) 0, pageSize - amount);
+        }
+        return true;
+    }
+
+    private static long getFrameOffset(final int frame, final int pageSize) {
+        return SqlJetWalIndex.WAL_HDR_SIZE + ((long) (frame - 1)) * (SqlJetWalIndex.WAL_FRAME_HDR_SIZE + pageSize);
+    }
+
+    /**
+     * Starts a write transaction. The caller must hold the RESERVED lock on
+     * the database, so there is only one writer at a time.
+     *
+     * @throws SqlJetException
+     *             BUSY if another connection has committed since the read
+     *             transaction of this pager was started.
+     */
+    void beginWrite() throws SqlJetException {
+        assert (snapshot != null);
+        if (readOnly || file == null) {
+            throw new SqlJetException(SqlJetErrorCode.READONLY);
+        }
+        if (!index.isCurrent(snapshot)) {
+            throw new SqlJetException(SqlJetErrorCode.BUSY);
+        }
+        index.restart(snapshot, fileSystem.randomness(4));
+        index.getChecksum(cksum);
+        frames.clear();
+        uncommitted.clear();
+        writing = true;
+    }
+
+    boolean isWriting() {
+        return writing;
+    }
+
+    /**
+     * Appends pages to the log. If dbSize is positive then the last page is
+     * written as a commit frame and the transaction is published to readers.
+     *
+     * @param pages
+     *            pages to write.
+     * @param pageSize
+     *            page size of the database.
+     * @param dbSize
+     *            database size in pages after commit, or zero if the pages
+     *            are spilled from the cache in the middle of a transaction.
+     * @param syncFlags
+     *            flags to sync the log with at commit, or null to skip sync.
+     * @throws SqlJetException
+     */
+    void writeFrames(final List<ISqlJetPage> pages, final int pageSize, final int dbSize,
+            final Set<SqlJetSyncFlags> syncFlags) throws SqlJetException {
+        assert (writing);
+        int frame = index.getFrameCount() + frames.size();
+        if (frame == 0) {
+            final ISqlJetMemoryPointer hdr = SqlJetUtility.allocatePtr(SqlJetWalIndex.WAL_HDR_SIZE);
+            index.initHeader(pageSize, hdr);
+            index.getChecksum(cksum);
+            file.write(hdr, SqlJetWalIndex.WAL_HDR_SIZE, 0);
+        } else if (index.getPageSize() != pageSize) {
+            throw new SqlJetException(SqlJetErrorCode.ERROR, "Page size of the database differs from the log");
+        }
+        final boolean bigEndian = index.isBigEndianChecksum();
+        final long salt1 = index.getSalt1();
+        final long salt2 = index.getSalt2();
+        final ISqlJetMemoryPointer hdr = SqlJetUtility.allocatePtr(SqlJetWalIndex.WAL_FRAME_HDR_SIZE);
+        for (int i = 0; i < pages.size(); i++) {
+            final ISqlJetPage page = pages.get(i);
+            final int pgno = page.getPageNumber();
+            final ISqlJetMemoryPointer data = page.getData();
+            frame++;
+            SqlJetUtility.put4byte(hdr, 0, pgno);
+            SqlJetUtility.put4byte(hdr, 4, dbSize > 0 && i == pages.size() - 1 ? dbSize : 0);
+            SqlJetUtility.put4byteUnsigned(hdr, 8, salt1);
+            SqlJetUtility.put4byteUnsigned(hdr, 12, salt2);
+            SqlJetWalIndex.checksum(bigEndian, hdr, 0, 8, cksum);
+            SqlJetWalIndex.checksum(bigEndian, data, 0, pageSize, cksum);
+            SqlJetUtility.put4byteUnsigned(hdr, 16, cksum[0]);
+            SqlJetUtility.put4byteUnsigned(hdr, 20, cksum[1]);
+            final long offset = getFrameOffset(frame, pageSize);
+            file.write(hdr, SqlJetWalIndex.WAL_FRAME_HDR_SIZE, offset);
+            file.write(data, pageSize, offset + SqlJetWalIndex.WAL_FRAME_HDR_SIZE);
+            frames.add(pgno);
+            uncommitted.put(pgno, frame);
+        }
+        if (dbSize > 0) {
+            if (syncFlags != null) {
+                file.sync(syncFlags);
+            }
+            index.commit(frames, dbSize, cksum, snapshot);
+            frames.clear();
+            uncommitted.clear();
+        }
+    }
+
+    /**
+     * Returns true if the current transaction has written frames which are
+     * not committed yet.
+     */
+    boolean hasUncommittedFrames() {
+        return !frames.isEmpty();
+    }
+
+    /**
+     * Ends the write transaction. Uncommitted frames are abandoned and will
+     * be overwritten by the next transaction.
+     */
+    void endWrite() {
+        frames.clear();
+        uncommitted.clear();
+        writing = false;
+    }
+
+    /**
+     * Returns true if the log has grown enough to be checkpointed.
+     */
+    boolean needsCheckpoint() {
+        return SQLJET_WAL_AUTOCHECKPOINT > 0 && index.getFrameCount() >= SQLJET_WAL_AUTOCHECKPOINT
+                && !index.isCheckpointed();
+    }
+
+    /**
+     * Copies frames which are not needed by active readers into the database
+     * file.
+     *
+     * @param syncFlags
+     *            flags to sync files with, or null to skip sync.
+     * @return true if the whole log has been copied into the database.
+     * @throws SqlJetException
+     */
+    boolean checkpoint(final Set<SqlJetSyncFlags> syncFlags) throws SqlJetException {
+        if (readOnly || file == null) {
+            return index.isCheckpointed();
+        }
+        final CheckpointPlan plan = index.planCheckpoint();
+        if (plan == null) {
+            return index.isCheckpointed();
+        }
+        boolean done = false;
+        try {
+            if (syncFlags != null) {
+                file.sync(syncFlags);
+            }
+            final int pageSize = plan.pageSize;
+            final ISqlJetMemoryPointer buffer = SqlJetUtility.allocatePtr(pageSize);
+            for (final Map.Entry<Integer, Integer> entry : plan.pages.entrySet()) {
+                final int pgno = entry.getKey();
+                if (pgno > plan.dbSize) {
+                    continue;
+                }
+                file.read(buffer, pageSize, getFrameOffset(entry.getValue(), pageSize)
+                        + SqlJetWalIndex.WAL_FRAME_HDR_SIZE);
+                db.write(buffer, pageSize, ((long) (pgno - 1)) * pageSize);
+            }
+            if (plan.complete) {
+                final long size = ((long) plan.dbSize) * pageSize;
+                if (db.fileSize() > size) {
+                    db.truncate(size);
+                }
+            }
+            if (syncFlags != null) {
+                db.sync(syncFlags);
+            }
+            done = true;
+        } finally {
+            index.finishCheckpoint(plan, done);
+        }
+        return index.isCheckpointed();
+    }
+
+    /**
+     * Closes the log. The last pager of the process which closes the log
+     * checkpoints it and deletes the log file.
+     *
+     * @param syncFlags
+     *            flags to sync files with, or null to skip sync.
+     * @throws SqlJetException
+     */
+    void close(final Set<SqlJetSyncFlags> syncFlags) throws SqlJetException {
+        endRead();
+        endWrite();
+        closeSync = syncFlags;
+        try {
+            SqlJetWalIndex.release(index, this);
+        } finally {
+            if (file != null) {
+                file.close();
+                file = null;
+            }
+        }
+    }
+
+    /**
+     * Called by {@link SqlJetWalIndex#release(SqlJetWalIndex, SqlJetWal)} when
+     * this is the last pager which uses the log.
+     */
+    void closeLast() throws SqlJetException {
+        if (readOnly || file == null) {
+            return;
+        }
+        if (checkpoint(closeSync)) {
+            file.close();
+            file = null;
+            fileSystem.delete(walFile, false);
+        }
+    }
+
+}
@@ -0,0 +1,829 @@
+/**
+ * SqlJetWalIndex.java
+ * Copyright (C) 2009-2010 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetIOErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetIOException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetLockType;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.table.ISqlJetBusyHandler;
+
+/**
+ * In-memory index of a write-ahead log file. It plays the role of the SQLite
+ * "wal-index" (the -shm file): it maps page numbers to the frames of the log
+ * which hold their most recent images, tracks the last committed frame, the
+ * number of frames already copied back into the database file and the read
+ * snapshots of all connections.
+ *
+ * There is exactly one index per database file in the process, shared by all
+ * pagers which have the database open in WAL mode. The index is built by
+ * scanning the log when the first pager opens it. State of the log is guarded
+ * by a lock of the index which is never held during I/O.
+ *
+ * Since the index lives in memory of one process, only one process at a time
+ * may use the database in WAL mode. While the index is open it holds a lock
+ * on byte {@link #WAL_LOCK_BYTE} of the database file: an exclusive one if the
+ * database is writable and a shared one otherwise. Other processes probe that
+ * byte to find out that the database is in WAL mode, and fail to open their
+ * own index with BUSY.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+class SqlJetWalIndex {
+
+    /** Magic number of a log with big-endian checksums. */
+    static final int WAL_MAGIC_BE = 0x377f0683;
+
+    /** Magic number of a log with little-endian checksums. */
+    static final int WAL_MAGIC_LE = 0x377f0682;
+
+    /** Version of the log file format. */
+    static final int WAL_VERSION = 3007000;
+
+    /** Size of the log file header. */
+    static final int WAL_HDR_SIZE = 32;
+
+    /** Size of the header of each frame. */
+    static final int WAL_FRAME_HDR_SIZE = 24;
+
+    /**
+     * Byte of the database file locked by the process which uses the log. It
+     * lies beyond the largest possible database, so locking it doesn't get in
+     * the way of reads and writes.
+     */
+    static final long WAL_LOCK_BYTE = 1L << 48;
+
+    /**
+     * Read snapshot of one connection. A reader sees all frames up to and
+     * including mxFrame of the log generation it was taken from. If useWal is
+     * false then all those frames had already been copied to the database file
+     * when the snapshot was taken and the reader does not look into the log
+     * at all.
+     */
+    static class Snapshot {
+        int generation;
+        int mxFrame;
+        int dbSize;
+        boolean useWal;
+    }
+
+    /**
+     * Frames which a checkpoint should copy into the database file.
+     */
+    static class CheckpointPlan {
+        int generation;
+        int pageSize;
+        /** Last frame to copy */
+        int limit;
+        /** Size of the database in pages as of the limit frame */
+        int dbSize;
+        /** True if the plan covers every committed frame */
+        boolean complete;
+        /** Page number to frame number, in page order */
+        TreeMap<Integer, Integer> pages = new TreeMap<Integer, Integer>();
+    }
+
+    private static final Map<String, SqlJetWalIndex> indexes = new HashMap<String, SqlJetWalIndex>();
+
+    /** Guards {@link #indexes} and reference counts of indexes */
+    private static final ReentrantLock indexesLock = new ReentrantLock();
+
+    /** Signalled when an index which was being closed is dropped */
+    private static final Condition indexClosed = indexesLock.newCondition();
+
+    private final String path;
+    private int refCount;
+    private boolean closing;
+
+    /** Guards state of the log */
+    private final ReentrantLock mutex = new ReentrantLock();
+
+    /**
+     * Guards opening of the index: {@link #lockFile}, {@link #lockShared} and
+     * {@link #recovered}. Is held while the log is scanned, readers of the
+     * index don't wait for it.
+     */
+    private final ReentrantLock openLock = new ReentrantLock();
+
+    /** Database file handle which holds the lock of {@link #WAL_LOCK_BYTE} */
+    private ISqlJetFile lockFile;
+    private boolean lockShared;
+    private boolean recovered;
+
+    /** Incremented each time the log is restarted from the beginning */
+    private int generation;
+
+    private int pageSize;
+    private boolean bigEndianChecksum = true;
+    private long salt1;
+    private long salt2;
+
+    /** Checksum of the header or of the last committed frame */
+    private final long[] checksum = new long[2];
+
+    /** Last committed frame */
+    private int mxFrame;
+
+    /** Number of frames already copied into the database file */
+    private int nBackfill;
+
+    /** Database size in pages as of mxFrame */
+    private int dbSize;
+
+    /** Page number of every frame */
+    private int[] framePage = new int[64];
+
+    /** Database size for commit frames, zero for others */
+    private int[] frameCommit = new int[64];
+
+    /** Frames of every page in ascending order */
+    private final Map<Integer, List<Integer>> pageFrames = new HashMap<Integer, List<Integer>>();
+
+    private final List<Snapshot> readers = new ArrayList<Snapshot>();
+
+    private boolean checkpointing;
+
+    private SqlJetWalIndex(final String path) {
+        this.path = path;
+    }
+
+    /**
+     * Returns the index of the given database, creating it if it is not open
+     * yet in this process. If the index is being closed by its last pager
+     * then waits until it is dropped and creates a new one. The index must be
+     * opened by {@link #open} before use.
+     */
+    static SqlJetWalIndex acquire(final String path) throws SqlJetException {
+        indexesLock.lock();
+        try {
+            for (;;) {
+                SqlJetWalIndex index = indexes.get(path);
+                if (index == null) {
+                    index = new SqlJetWalIndex(path);
+                    indexes.put(path, index);
+                }
+                if (!index.closing) {
+                    index.refCount++;
+                    return index;
+                }
+                try {
+                    indexClosed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SqlJetException(SqlJetErrorCode.INTERRUPT, e);
+                }
+            }
+        } finally {
+            indexesLock.unlock();
+        }
+    }
+
+    /**
+     * Releases the index. If this is the last reference then the log is given
+     * a chance to checkpoint itself before the index is dropped. Pagers which
+     * acquire the index meanwhile wait until it is dropped, but the checkpoint
+     * itself runs without holding any lock of the index.
+     */
+    static void release(final SqlJetWalIndex index, final SqlJetWal wal) throws SqlJetException {
+        indexesLock.lock();
+        try {
+            if (index.refCount > 1) {
+                index.refCount--;
+                return;
+            }
+            index.closing = true;
+        } finally {
+            indexesLock.unlock();
+        }
+        try {
+            if (wal != null) {
+                wal.closeLast();
+            }
+        } finally {
+            try {
+                index.unlockProcess();
+            } finally {
+                indexesLock.lock();
+                try {
+                    index.refCount--;
+                    indexes.remove(index.path);
+                    indexClosed.signalAll();
+                } finally {
+                    indexesLock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if some pager in this process has the given database open
+     * in WAL mode.
+     */
+    static boolean isOpen(final String path) {
+        indexesLock.lock();
+        try {
+            return indexes.containsKey(path);
+        } finally {
+            indexesLock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if another process uses the database in WAL mode, which is
+     * found out by probing the lock of {@link #WAL_LOCK_BYTE}.
+     *
+     * @param db
+     *            database file opened by the caller.
+     */
+    static boolean isLockedByProcess(final ISqlJetFile db) throws SqlJetException {
+        if (!db.lockRange(WAL_LOCK_BYTE, 1, true)) {
+            return true;
+        }
+        db.unlockRange(WAL_LOCK_BYTE, 1);
+        return false;
+    }
+
+    int getRefCount() {
+        indexesLock.lock();
+        try {
+            return refCount;
+        } finally {
+            indexesLock.unlock();
+        }
+    }
+
+    /**
+     * Opens the index for a pager. The first pager takes the lock of the
+     * process, waits until connections of other processes which have started
+     * their transactions before that leave the database, and builds the index
+     * from the log file. Frames following the last valid commit frame are
+     * ignored.
+     *
+     * @param fileSystem
+     * @param dbFile
+     *            name of the database file.
+     * @param db
+     *            database file opened by the pager.
+     * @param log
+     *            log file opened by the pager, or null if there is no log.
+     * @param readOnly
+     *            true if the pager is read-only.
+     * @param busyHandler
+     *            busy handler of the pager, may be null.
+     * @throws SqlJetException
+     *             BUSY if another process uses the database.
+     */
+    void open(final ISqlJetFileSystem fileSystem, final File dbFile, final ISqlJetFile db, final ISqlJetFile log,
+            final boolean readOnly, final ISqlJetBusyHandler busyHandler) throws SqlJetException {
+        openLock.lock();
+        try {
+            lockProcess(fileSystem, dbFile, readOnly);
+            if (recovered) {
+                return;
+            }
+            if (!lockShared) {
+                waitForOtherProcesses(db, busyHandler);
+            }
+            final SqlJetWalIndex scan = new SqlJetWalIndex(path);
+            scan.reset(fileSystem.randomness(4));
+            if (log != null) {
+                scan.readLog(log);
+            }
+            mutex.lock();
+            try {
+                install(scan);
+            } finally {
+                mutex.unlock();
+            }
+            recovered = true;
+        } finally {
+            openLock.unlock();
+        }
+    }
+
+    /**
+     * Takes the lock of {@link #WAL_LOCK_BYTE} on a handle of the database
+     * file owned by the index, or upgrades it to the exclusive one when a
+     * writable pager joins the index which was opened by read-only pagers.
+     */
+    private void lockProcess(final ISqlJetFileSystem fileSystem, final File dbFile, final boolean readOnly)
+            throws SqlJetException {
+        if (lockFile != null && (readOnly || !lockShared)) {
+            return;
+        }
+        final ISqlJetFile file = fileSystem.open(dbFile, SqlJetFileType.MAIN_DB, SqlJetUtility
+                .of(readOnly ? SqlJetFileOpenPermission.READONLY : SqlJetFileOpenPermission.READWRITE));
+        final boolean shared = file.getPermissions().contains(SqlJetFileOpenPermission.READONLY);
+        if (lockFile != null && shared) {
+            /* The database file isn't writable, shared lock is enough then. */
+            file.close();
+            return;
+        }
+        boolean locked = false;
+        try {
+            if (lockFile != null) {
+                lockFile.unlockRange(WAL_LOCK_BYTE, 1);
+                locked = file.lockRange(WAL_LOCK_BYTE, 1, shared);
+                if (!locked) {
+                    lockFile.lockRange(WAL_LOCK_BYTE, 1, true);
+                }
+            } else {
+                locked = file.lockRange(WAL_LOCK_BYTE, 1, shared);
+            }
+        } finally {
+            if (!locked) {
+                file.close();
+            }
+        }
+        if (!locked) {
+            throw new SqlJetException(SqlJetErrorCode.BUSY, "Write-ahead log is used by another process");
+        }
+        if (lockFile != null) {
+            lockFile.close();
+        }
+        lockFile = file;
+        lockShared = shared;
+    }
+
+    /**
+     * Releases the lock of the process, called when the index is dropped.
+     */
+    private void unlockProcess() throws SqlJetException {
+        openLock.lock();
+        try {
+            if (lockFile != null) {
+                try {
+                    lockFile.unlockRange(WAL_LOCK_BYTE, 1);
+                } finally {
+                    lockFile.close();
+                    lockFile = null;
+                }
+            }
+        } finally {
+            openLock.unlock();
+        }
+    }
+
+    /**
+     * Connections of other processes check the lock of the process when they
+     * start a transaction, so those which have started it before the lock was
+     * taken may still read the database file or even write it. Waits until
+     * they are done by passing through the EXCLUSIVE lock of the database.
+     */
+    private static void waitForOtherProcesses(final ISqlJetFile db, final ISqlJetBusyHandler busyHandler)
+            throws SqlJetException {
+        final SqlJetLockType held = db.getLockType();
+        try {
+            if (SqlJetLockType.NONE == held && !db.lock(SqlJetLockType.SHARED)) {
+                throw new SqlJetException(SqlJetErrorCode.BUSY);
+            }
+            int n = 0;
+            while (!db.lock(SqlJetLockType.EXCLUSIVE)) {
+                if (null == busyHandler || !busyHandler.call(n++)) {
+                    throw new SqlJetException(SqlJetErrorCode.BUSY);
+                }
+            }
+        } finally {
+            db.unlock(held);
+        }
+    }
+
+    /**
+     * Takes state of the log scanned into the other index.
+     */
+    private void install(final SqlJetWalIndex scan) {
+        generation = scan.generation;
+        pageSize = scan.pageSize;
+        bigEndianChecksum = scan.bigEndianChecksum;
+        salt1 = scan.salt1;
+        salt2 = scan.salt2;
+        checksum[0] = scan.checksum[0];
+        checksum[1] = scan.checksum[1];
+        mxFrame = scan.mxFrame;
+        nBackfill = scan.nBackfill;
+        dbSize = scan.dbSize;
+        framePage = scan.framePage;
+        frameCommit = scan.frameCommit;
+        pageFrames.clear();
+        pageFrames.putAll(scan.pageFrames);
+    }
+
+    private void readLog(final ISqlJetFile file) throws SqlJetException {
+        final long fileSize = file.fileSize();
+        if (fileSize < WAL_HDR_SIZE) {
+            return;
+        }
+        final ISqlJetMemoryPointer hdr = SqlJetUtility.allocatePtr(WAL_HDR_SIZE);
+        file.read(hdr, WAL_HDR_SIZE, 0);
+        final int magic = SqlJetUtility.get4byte(hdr, 0);
+        final int szPage = SqlJetUtility.get4byte(hdr, 8);
+        if ((magic != WAL_MAGIC_BE && magic != WAL_MAGIC_LE) || SqlJetUtility.get4byte(hdr, 4) != WAL_VERSION
+                || szPage < 512 || szPage > 65536 || ((szPage - 1) & szPage) != 0) {
+            return;
+        }
+        final boolean bigEndian = magic == WAL_MAGIC_BE;
+        final long[] cksum = new long[2];
+        checksum(bigEndian, hdr, 0, 24, cksum);
+        if (cksum[0] != SqlJetUtility.get4byteUnsigned(hdr, 24) || cksum[1] != SqlJetUtility.get4byteUnsigned(hdr, 28)) {
+            return;
+        }
+
+        this.bigEndianChecksum = bigEndian;
+        this.pageSize = szPage;
+        this.generation = SqlJetUtility.get4byte(hdr, 12);
+        this.salt1 = SqlJetUtility.get4byteUnsigned(hdr, 16);
+        this.salt2 = SqlJetUtility.get4byteUnsigned(hdr, 20);
+        this.checksum[0] = cksum[0];
+        this.checksum[1] = cksum[1];
+
+        final int frameSize = WAL_FRAME_HDR_SIZE + szPage;
+        final ISqlJetMemoryPointer frame = SqlJetUtility.allocatePtr(frameSize);
+        int nFrame = 0;
+        for (long offset = WAL_HDR_SIZE; offset + frameSize <= fileSize; offset += frameSize) {
+            try {
+                file.read(frame, frameSize, offset);
+            } catch (SqlJetIOException e) {
+                if (e.getIoErrorCode() == SqlJetIOErrorCode.IOERR_SHORT_READ) {
+                    break;
+                }
+                throw e;
+            }
+            final int pgno = SqlJetUtility.get4byte(frame, 0);
+            final int commit = SqlJetUtility.get4byte(frame, 4);
+            if (pgno <= 0 || SqlJetUtility.get4byteUnsigned(frame, 8) != salt1
+                    || SqlJetUtility.get4byteUnsigned(frame, 12) != salt2) {
+                break;
+            }
+            checksum(bigEndian, frame, 0, 8, cksum);
+            checksum(bigEndian, frame, WAL_FRAME_HDR_SIZE, szPage, cksum);
+            if (cksum[0] != SqlJetUtility.get4byteUnsigned(frame, 16)
+                    || cksum[1] != SqlJetUtility.get4byteUnsigned(frame, 20)) {
+                break;
+            }
+            appendFrame(++nFrame, pgno, commit);
+            if (commit > 0) {
+                commitFrames(nFrame, commit, cksum);
+            }
+        }
+        dropFramesAfter(mxFrame);
+    }
+
+    private void reset(final byte[] newSalt) {
+        mxFrame = 0;
+        nBackfill = 0;
+        dbSize = 0;
+        pageFrames.clear();
+        salt1 = (salt1 + 1) & 0xffffffffL;
+        salt2 = SqlJetUtility.get4byteUnsigned(newSalt);
+        checksum[0] = 0;
+        checksum[1] = 0;
+    }
+
+    private void appendFrame(final int frame, final int pgno, final int commit) {
+        if (frame > framePage.length) {
+            int size = framePage.length;
+            while (size < frame) {
+                size <<= 1;
+            }
+            final int[] pages = new int[size];
+            final int[] commits = new int[size];
+            System.arraycopy(framePage, 0, pages, 0, framePage.length);
+            System.arraycopy(frameCommit, 0, commits, 0, frameCommit.length);
+            framePage = pages;
+            frameCommit = commits;
+        }
+        framePage[frame - 1] = pgno;
+        frameCommit[frame - 1] = commit;
+        List<Integer> frames = pageFrames.get(pgno);
+        if (frames == null) {
+            frames = new ArrayList<Integer>(2);
+            pageFrames.put(pgno, frames);
+        }
+        frames.add(frame);
+    }
+
+    private void commitFrames(final int frame, final int dbSize, final long[] cksum) {
+        this.mxFrame = frame;
+        this.dbSize = dbSize;
+        this.checksum[0] = cksum[0];
+        this.checksum[1] = cksum[1];
+    }
+
+    private void dropFramesAfter(final int frame) {
+        for (List<Integer> frames : pageFrames.values()) {
+            while (!frames.isEmpty() && frames.get(frames.size() - 1) > frame) {
+                frames.remove(frames.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Takes a read snapshot of the last committed state of the log.
+     */
+    Snapshot beginRead() {
+        mutex.lock();
+        try {
+            final Snapshot snapshot = new Snapshot();
+            snapshot.generation = generation;
+            snapshot.mxFrame = mxFrame;
+            snapshot.dbSize = dbSize;
+            snapshot.useWal = mxFrame > nBackfill;
+            readers.add(snapshot);
+            return snapshot;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    void endRead(final Snapshot snapshot) {
+        mutex.lock();
+        try {
+            readers.remove(snapshot);
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Returns true if nothing was committed to the log since the snapshot was
+     * taken.
+     */
+    boolean isCurrent(final Snapshot snapshot) {
+        mutex.lock();
+        try {
+            return snapshot.generation == generation && snapshot.mxFrame == mxFrame;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Returns the frame which holds the image of the page as seen by the
+     * snapshot or zero if the page should be read from the database file.
+     */
+    int findFrame(final Snapshot snapshot, final int pgno) {
+        mutex.lock();
+        try {
+            if (!snapshot.useWal || snapshot.generation != generation) {
+                return 0;
+            }
+            final List<Integer> frames = pageFrames.get(pgno);
+            if (frames != null) {
+                for (int i = frames.size() - 1; i >= 0; i--) {
+                    final int frame = frames.get(i);
+                    if (frame <= snapshot.mxFrame) {
+                        return frame;
+                    }
+                }
+            }
+            return 0;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Starts the log over from the first frame if all of it has been copied
+     * into the database and no reader except the writer itself still uses
+     * it. The writer snapshot is moved to the new generation of the log.
+     */
+    boolean restart(final Snapshot writer, final byte[] newSalt) {
+        mutex.lock();
+        try {
+            if (mxFrame == 0 || nBackfill != mxFrame || checkpointing) {
+                return false;
+            }
+            for (Snapshot reader : readers) {
+                if (reader != writer && reader.generation == generation && reader.useWal) {
+                    return false;
+                }
+            }
+            generation++;
+            reset(newSalt);
+            writer.generation = generation;
+            writer.mxFrame = 0;
+            writer.dbSize = 0;
+            writer.useWal = false;
+            return true;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Starts a new log header. Used before the first frame of a generation is
+     * written.
+     */
+    void initHeader(final int pageSize, final ISqlJetMemoryPointer hdr) {
+        mutex.lock();
+        try {
+            assert (mxFrame == 0);
+            this.pageSize = pageSize;
+            this.bigEndianChecksum = true;
+            SqlJetUtility.put4byte(hdr, 0, WAL_MAGIC_BE);
+            SqlJetUtility.put4byte(hdr, 4, WAL_VERSION);
+            SqlJetUtility.put4byte(hdr, 8, pageSize);
+            SqlJetUtility.put4byte(hdr, 12, generation);
+            SqlJetUtility.put4byteUnsigned(hdr, 16, salt1);
+            SqlJetUtility.put4byteUnsigned(hdr, 20, salt2);
+            checksum[0] = 0;
+            checksum[1] = 0;
+            checksum(true, hdr, 0, 24, checksum);
+            SqlJetUtility.put4byteUnsigned(hdr, 24, checksum[0]);
+            SqlJetUtility.put4byteUnsigned(hdr, 28, checksum[1]);
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Publishes frames written by the writer. The frames are numbered from
+     * mxFrame+1 on and the last one of them is the commit frame.
+     */
+    void commit(final List<Integer> pages, final int dbSize, final long[] cksum, final Snapshot writer) {
+        mutex.lock();
+        try {
+            int frame = mxFrame;
+            for (int i = 0; i < pages.size(); i++) {
+                appendFrame(++frame, pages.get(i), i == pages.size() - 1 ? dbSize : 0);
+            }
+            commitFrames(frame, dbSize, cksum);
+            writer.generation = generation;
+            writer.mxFrame = mxFrame;
+            writer.dbSize = dbSize;
+            writer.useWal = mxFrame > nBackfill;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Chooses frames which could be copied into the database without
+     * disturbing any reader. Returns null if there is nothing to do or another
+     * checkpoint is running.
+     */
+    CheckpointPlan planCheckpoint() {
+        mutex.lock();
+        try {
+            if (checkpointing) {
+                return null;
+            }
+            int limit = mxFrame;
+            for (Snapshot reader : readers) {
+                if (reader.generation != generation) {
+                    limit = 0;
+                } else if (reader.mxFrame < limit) {
+                    limit = reader.mxFrame;
+                }
+            }
+            if (limit <= nBackfill) {
+                return null;
+            }
+            final CheckpointPlan plan = new CheckpointPlan();
+            plan.generation = generation;
+            plan.pageSize = pageSize;
+            plan.limit = limit;
+            plan.dbSize = frameCommit[limit - 1];
+            plan.complete = limit == mxFrame;
+            for (int frame = nBackfill + 1; frame <= limit; frame++) {
+                plan.pages.put(framePage[frame - 1], frame);
+            }
+            checkpointing = true;
+            return plan;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    void finishCheckpoint(final CheckpointPlan plan, final boolean done) {
+        mutex.lock();
+        try {
+            if (done && plan.generation == generation) {
+                nBackfill = plan.limit;
+            }
+            checkpointing = false;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    boolean isCheckpointed() {
+        mutex.lock();
+        try {
+            return nBackfill == mxFrame;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    int getFrameCount() {
+        mutex.lock();
+        try {
+            return mxFrame;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    int getPageSize() {
+        mutex.lock();
+        try {
+            return pageSize;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    boolean isBigEndianChecksum() {
+        mutex.lock();
+        try {
+            return bigEndianChecksum;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    long getSalt1() {
+        mutex.lock();
+        try {
+            return salt1;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    long getSalt2() {
+        mutex.lock();
+        try {
+            return salt2;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    void getChecksum(final long[] cksum) {
+        mutex.lock();
+        try {
+            cksum[0] = checksum[0];
+            cksum[1] = checksum[1];
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Continues the cumulative log checksum over length bytes of data, which
+     * must be a multiple of 8.
+     */
+    static void checksum(final boolean bigEndian, final ISqlJetMemoryPointer data, final int offset,
+            final int length, final long[] cksum) {
+        assert (length % 8 == 0);
+        long s1 = cksum[0];
+        long s2 = cksum[1];
+        for (int i = offset; i < offset + length; i += 8) {
+            s1 = (s1 + word(bigEndian, data, i) + s2) & 0xffffffffL;
+            s2 = (s2 + word(bigEndian, data, i + 4) + s1) & 0xffffffffL;
+        }
+        cksum[0] = s1;
+        cksum[1] = s2;
+    }
+
+    private static long word(final boolean bigEndian, final ISqlJetMemoryPointer data, final int offset) {
+        final int v = SqlJetUtility.get4byte(data, offset);
+        return (bigEndian ? v : Integer.reverseBytes(v)) & 0xffffffffL;
+    }
+
+}
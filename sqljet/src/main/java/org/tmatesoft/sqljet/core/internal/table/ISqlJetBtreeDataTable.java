@@ -20,6 +20,7 @@ package org.tmatesoft.sqljet.core.internal.table;
 import java.util.Map;
 
 import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetRowBuffer;
 import org.tmatesoft.sqljet.core.schema.ISqlJetIndexDef;
 import org.tmatesoft.sqljet.core.schema.ISqlJetTableDef;
 import org.tmatesoft.sqljet.core.schema.SqlJetConflictAction;
@@ -192,10 +193,41 @@ public interface ISqlJetBtreeDataTable extends ISqlJetBtreeTable {
      */
     long insertWithRowId(SqlJetConflictAction onConflict, long rowId, Object[] values) throws SqlJetException;
 
+    /**
+     * Inserts values of row buffer, ROWID is value of INTEGER PRIMARY KEY
+     * column if it is set, otherwise it is generated.
+     * 
+     * @param onConflict
+     * @param row
+     * @return ROWID of inserted record.
+     * @throws SqlJetException
+     */
+    long insertRow(SqlJetConflictAction onConflict, SqlJetRowBuffer row) throws SqlJetException;
+
     /**
      * @param indexName
      * @return
      */
     ISqlJetBtreeIndexTable getIndex(String indexName);
 
-}
\ No newline at end of file
+    /**
+     * Loads rows into empty table, rows should be in ROWID order.
+     * 
+     * @param rows
+     * @param fillFactor
+     * @return count of loaded rows
+     * @throws SqlJetException
+     */
+    long load(Iterable<Object[]> rows, int fillFactor) throws SqlJetException;
+
+    /**
+     * Inserts many rows at once, keys of indexes are inserted in key order.
+     * 
+     * @param rows
+     * @param onConflict
+     * @return count of rows in batch
+     * @throws SqlJetException
+     */
+    long insertBatch(Iterable<Object[]> rows, SqlJetConflictAction onConflict) throws SqlJetException;
+
+}
@@ -17,6 +17,8 @@
  */
 package org.tmatesoft.sqljet.core.internal.table;
 
+import java.util.List;
+
 import org.tmatesoft.sqljet.core.SqlJetException;
 
 /**
@@ -104,5 +106,47 @@ public interface ISqlJetBtreeIndexTable extends ISqlJetBtreeTable {
      * @throws SqlJetException
      */
     int compareKeys(Object[] firstKey, Object[] lastKey) throws SqlJetException;
-    
-}
\ No newline at end of file
+
+    /**
+     * Collects key for bulk build of empty index or for insertion of many
+     * keys. Keys are sorted and written into index by {@link #build(boolean)}
+     * or {@link #insertKeys()}.
+     * 
+     * @param rowId
+     * @param key
+     * @throws SqlJetException
+     */
+    void buildKey(long rowId, Object... key) throws SqlJetException;
+
+    /**
+     * Builds empty index bottom-up from keys collected by
+     * {@link #buildKey(long, Object...)}.
+     * 
+     * @param unique
+     *            if true then keys without NULL values should be unique.
+     * @throws SqlJetException
+     *             with {@link org.tmatesoft.sqljet.core.SqlJetErrorCode#CONSTRAINT}
+     *             if keys aren't unique.
+     */
+    void build(boolean unique) throws SqlJetException;
+
+    /**
+     * Inserts keys collected by {@link #buildKey(long, Object...)} into index
+     * in key order, so pages of index are visited sequentially.
+     * 
+     * @throws SqlJetException
+     */
+    void insertKeys() throws SqlJetException;
+
+    /**
+     * Finds keys which violate uniqueness: they are equal to other keys in
+     * list or to keys which are in index already. Keys which contain NULL
+     * never conflict. Keys are looked up in index in key order.
+     * 
+     * @param keys
+     * @return for each key true if it conflicts.
+     * @throws SqlJetException
+     */
+    boolean[] findConflicts(List<Object[]> keys) throws SqlJetException;
+
+}
@@ -17,6 +17,7 @@
  */
 package org.tmatesoft.sqljet.core.internal.table;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import org.tmatesoft.sqljet.core.SqlJetEncoding;
@@ -38,18 +39,54 @@ public interface ISqlJetBtreeRecord extends ISqlJetReleasable {
 
     /**
      * @return the fieldsCount
+     * @throws SqlJetException
      */
-    int getFieldsCount();
+    int getFieldsCount() throws SqlJetException;
 
     /**
      * @return
+     * @throws SqlJetException
+     */
+    List<ISqlJetVdbeMem> getFields() throws SqlJetException;
+
+    /**
+     * Returns value of one field. Header of record is parsed only up to this
+     * field and only this value is read, so it is cheaper than
+     * {@link #getFields()} for wide records.
+     * 
+     * @param field
+     * @return value of field or null if record has no such field.
+     * @throws SqlJetException
+     */
+    ISqlJetVdbeMem getField(int field) throws SqlJetException;
+
+    /**
+     * Returns serial type of field as it is stored in record header, without
+     * reading of the value.
+     * 
+     * @param field
+     * @return serial type, 0 (NULL) if record has no such field.
+     * @throws SqlJetException
      */
-    List<ISqlJetVdbeMem> getFields();
+    int getSerialType(int field) throws SqlJetException;
+
+    /**
+     * Returns content of TEXT or BLOB field as read-only buffer. If value
+     * lies on the current page then buffer shares page's memory, so it is
+     * valid only until cursor is moved or transaction is finished.
+     * 
+     * @param field
+     * @return bytes of value in database encoding, or null if field is not
+     *         TEXT or BLOB.
+     * @throws SqlJetException
+     */
+    ByteBuffer getRawField(int field) throws SqlJetException;
 
     /**
      * @return
+     * @throws SqlJetException
      */
-    ISqlJetMemoryPointer getRawRecord();
+    ISqlJetMemoryPointer getRawRecord() throws SqlJetException;
 
     /**
      * @param field
@@ -62,11 +99,11 @@ public interface ISqlJetBtreeRecord extends ISqlJetReleasable {
      * @param field
      * @return
      */
-    long getIntField(int field);
+    long getIntField(int field) throws SqlJetException;
 
     /**
      * @param field
      * @return
      */
-    double getRealField(int field);
+    double getRealField(int field) throws SqlJetException;
 }
\ No newline at end of file
@@ -17,6 +17,8 @@
  */
 package org.tmatesoft.sqljet.core.internal.table;
 
+import java.nio.ByteBuffer;
+
 import org.tmatesoft.sqljet.core.SqlJetEncoding;
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.SqlJetValueType;
@@ -177,6 +179,34 @@ public interface ISqlJetBtreeTable {
      */
     ISqlJetMemoryPointer getBlob(int field) throws SqlJetException;
 
+    /**
+     * Get content of TEXT or BLOB field without copying it, when it is
+     * possible. Buffer is valid only until cursor is moved.
+     * 
+     * @param field
+     *            number of field begin from zero
+     * @return read-only buffer with field's bytes in database encoding, or
+     *         null if field is NULL or is not TEXT or BLOB.
+     * @throws SqlJetException
+     */
+    ByteBuffer getBuffer(int field) throws SqlJetException;
+
+    /**
+     * Compares field's value as string with given string. For TEXT fields
+     * in UTF-8 database comparison is done in place, without decoding of
+     * field into {@link String}.
+     * 
+     * @param field
+     *            number of field begin from zero
+     * @param value
+     *            string to compare with.
+     * @return negative, zero or positive value as field's value is less,
+     *         equal or greater than given string by code points. NULL is
+     *         less than any string.
+     * @throws SqlJetException
+     */
+    int compareString(int field, String value) throws SqlJetException;
+
     /**
      * Get values as objects.
      * 
@@ -20,6 +20,7 @@ package org.tmatesoft.sqljet.core.internal.table;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -28,11 +29,13 @@ import org.tmatesoft.sqljet.core.SqlJetEncoding;
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.internal.ISqlJetBtree;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeBuilder;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
 import org.tmatesoft.sqljet.core.internal.ISqlJetVdbeMem;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 import org.tmatesoft.sqljet.core.internal.schema.SqlJetTableDef;
 import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetBtreeRecord;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetRowBuffer;
 import org.tmatesoft.sqljet.core.schema.ISqlJetColumnConstraint;
 import org.tmatesoft.sqljet.core.schema.ISqlJetColumnDef;
 import org.tmatesoft.sqljet.core.schema.ISqlJetColumnDefault;
@@ -52,6 +55,12 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
 
     final static private String[] rowIdNames = { "ROWID", "_ROWID_", "OID" };
 
+    /**
+     * Count of rows which are checked and inserted at once by
+     * {@link #insertBatch(Iterable, SqlJetConflictAction)}.
+     */
+    public static final int SQLJET_BATCH_SIZE = SqlJetUtility.getIntSysProp("SQLJET_BATCH_SIZE", 10000);
+
     private SqlJetTableDef tableDef;
     private Map<String, ISqlJetIndexDef> indexesDefs;
 
@@ -59,6 +68,15 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
 
     private ISqlJetBtreeDataTable sequenceTable;
 
+    /**
+     * Last ROWID of AUTOINCREMENT table. It is read from sequence table once
+     * and written back when table is closed or its transaction commits,
+     * instead of update of sequence table on each insert.
+     */
+    private long sequence;
+    private boolean sequenceRead;
+    private boolean sequenceChanged;
+
     private enum Action {
         INSERT, UPDATE, DELETE
     };
@@ -79,18 +97,22 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
 
     @Override
     public void close() throws SqlJetException {
-        if (indexesTables != null) {
-            for (String key : indexesTables.keySet()) {
-                ISqlJetBtreeIndexTable table = indexesTables.get(key);
-                table.close();
+        try {
+            flushSequence();
+        } finally {
+            if (indexesTables != null) {
+                for (String key : indexesTables.keySet()) {
+                    ISqlJetBtreeIndexTable table = indexesTables.get(key);
+                    table.close();
+                }
             }
+            if (null != sequenceTable) {
+                sequenceTable.close();
+            }
+            super.close();
+            defaults.release();
+            defaults = null;
         }
-        if (null != sequenceTable) {
-            sequenceTable.close();
-        }
-        super.close();
-        defaults.release();
-        defaults = null;
     }
 
     /**
@@ -198,16 +220,85 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
             if (onConflict == SqlJetConflictAction.REPLACE) {
                 rowId = getRowIdForReplace(rowId, values, row);
             }
+            boolean generatedRowId = false;
             if (rowId < 1) {
-                rowId = getRowIdForRow(row, true);
+                rowId = getRowIdForRow(row, false);
+                if (rowId < 1) {
+                    rowId = newRowId();
+                    generatedRowId = true;
+                }
             }
-            doInsert(onConflict, rowId, row);
+            doInsert(onConflict, rowId, generatedRowId, row);
             return rowId;
         } finally {
             unlock();
         }
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeDataTable#insertRow
+     * (org.tmatesoft.sqljet.core.schema.SqlJetConflictAction,
+     * org.tmatesoft.sqljet.core.internal.vdbe.SqlJetRowBuffer)
+     */
+    public long insertRow(SqlJetConflictAction onConflict, SqlJetRowBuffer row) throws SqlJetException {
+        if (!indexesDefs.isEmpty()) {
+            // keys of indexes are built from values.
+            return insertWithRowId(onConflict, 0, row.getValues());
+        }
+        lock();
+        try {
+            int primaryKeyColumnNumber = -1;
+            long rowId = 0;
+            if (tableDef.isRowIdPrimaryKey()) {
+                primaryKeyColumnNumber = tableDef.getColumnNumber(tableDef.getRowIdPrimaryKeyColumnName());
+                if (primaryKeyColumnNumber == -1 || primaryKeyColumnNumber >= row.size())
+                    throw new SqlJetException(SqlJetErrorCode.ERROR);
+                rowId = getRowIdForRow(row, primaryKeyColumnNumber);
+            }
+            boolean generatedRowId = false;
+            if (rowId < 1) {
+                rowId = newRowId();
+                generatedRowId = true;
+            }
+            checkNotNull(onConflict, row, primaryKeyColumnNumber);
+            if (doActionWithIndexes(Action.INSERT, onConflict, rowId, generatedRowId)) {
+                final SqlJetEncoding encoding = btree.getDb().getOptions().getEncoding();
+                final ISqlJetMemoryPointer pData = getRecordEncoder().encode(encoding, row, primaryKeyColumnNumber);
+                getCursor().insert(null, rowId, pData, getRecordEncoder().getSize(), 0, true);
+                goToRow(rowId);
+            }
+            return rowId;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Same as {@link #getRowIdForRow(Object[], boolean)} for value in row
+     * buffer.
+     *
+     * @return ROWID or 0 if column is NULL.
+     */
+    private long getRowIdForRow(SqlJetRowBuffer row, int primaryKeyColumnNumber) throws SqlJetException {
+        final long rowId;
+        if (row.isInteger(primaryKeyColumnNumber)) {
+            rowId = row.getInteger(primaryKeyColumnNumber);
+        } else if (row.isNull(primaryKeyColumnNumber)) {
+            return 0;
+        } else if (!row.isFloat(primaryKeyColumnNumber) && row.getValue(primaryKeyColumnNumber) instanceof Long) {
+            rowId = (Long) row.getValue(primaryKeyColumnNumber);
+        } else {
+            throw new SqlJetException(SqlJetErrorCode.MISUSE, "INTEGER PRIMARY KEY column must have only integer value");
+        }
+        if (rowId < 1) {
+            throw new SqlJetException(SqlJetErrorCode.MISUSE, "INTEGER PRIMARY KEY column must be more than zero");
+        }
+        return rowId;
+    }
+
     private void adjustRowIdPosition(Object[] values, final Object[] row) {
         if (row != null && row.length > 1 && tableDef.isRowIdPrimaryKey()) {
             if (values == null || (values.length < row.length && row[values.length] == null)) {
@@ -351,77 +442,337 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
      */
     @Override
     public long newRowId() throws SqlJetException {
-        if (!tableDef.isAutoincremented()) {
+        if (!tableDef.isAutoincremented() || !readSequence()) {
             return super.newRowId();
         }
+        final long newRowId = newRowId(sequence);
+        sequence = newRowId;
+        sequenceChanged = true;
+        return newRowId;
+    }
+
+    /**
+     * Reads last ROWID of AUTOINCREMENT table from sequence table, if it
+     * hasn't been read yet.
+     *
+     * @return false if database hasn't sequence table.
+     * @throws SqlJetException
+     */
+    private boolean readSequence() throws SqlJetException {
         if (null == sequenceTable) {
             sequenceTable = btree.getSchema().openSequenceTable();
             if (null == sequenceTable) {
-                return super.newRowId();
-            }
-            return locateSequence();
-        } else {
-            final String s = sequenceTable.getString(0);
-            if (null == s || !tableDef.getName().equalsIgnoreCase(s)) {
-                return locateSequence();
-            } else {
-                return updateSequence();
+                return false;
             }
         }
+        if (!sequenceRead) {
+            sequence = locateSequence() ? sequenceTable.getInteger(1) : 0;
+            sequenceRead = true;
+        }
+        return true;
     }
 
     /**
-     * @return
+     * Moves sequence table to the row of this table.
+     *
+     * @return false if there is no such row.
      * @throws SqlJetException
      */
-    private long locateSequence() throws SqlJetException {
+    private boolean locateSequence() throws SqlJetException {
+        final String current = sequenceTable.eof() ? null : sequenceTable.getString(0);
+        if (null != current && tableDef.getName().equalsIgnoreCase(current)) {
+            return true;
+        }
         for (sequenceTable.first(); !sequenceTable.eof(); sequenceTable.next()) {
             final String s = sequenceTable.getString(0);
             if (null != s && tableDef.getName().equalsIgnoreCase(s)) {
-                return updateSequence();
+                return true;
             }
         }
-        final long newRowId = super.newRowId();
-        sequenceTable.insert(null, tableDef.getName(), newRowId);
-        return newRowId;
+        return false;
     }
 
     /**
+     * Writes last ROWID of AUTOINCREMENT table to sequence table, unless
+     * sequence table already has larger value.
+     *
+     * @throws SqlJetException
+     */
+    private void flushSequence() throws SqlJetException {
+        if (!sequenceChanged) {
+            return;
+        }
+        sequenceChanged = false;
+        if (!locateSequence()) {
+            sequenceTable.insert(null, tableDef.getName(), sequence);
+        } else if (sequenceTable.getInteger(1) < sequence) {
+            sequenceTable.updateCurrent(null, tableDef.getName(), sequence);
+        }
+    }
+
+    /**
+     * @param row
      * @return
      * @throws SqlJetException
      */
-    private long updateSequence() throws SqlJetException {
-        final long lastRowId = sequenceTable.getInteger(1);
-        final long newRowId = newRowId(lastRowId);
-        sequenceTable.updateCurrent(null, tableDef.getName(), newRowId);
-        return newRowId;
+    private void doInsert(SqlJetConflictAction onConflict, final long rowId, boolean generatedRowId,
+            final Object[] row) throws SqlJetException {
+        final ISqlJetMemoryPointer pData = getRawRecord(rowId, row);
+        if (doActionWithIndexes(Action.INSERT, onConflict, rowId, generatedRowId, row)) {
+            getCursor().insert(null, rowId, pData, getRecordEncoder().getSize(), 0, true);
+            goToRow(rowId);
+        }
     }
 
     /**
+     * Encodes row into record. If table has INTEGER PRIMARY KEY column then
+     * its value is not stored in record, in row it is replaced by rowId.
+     * Record is held by {@link #getRecordEncoder()} which also knows its
+     * size.
+     *
+     * @param rowId
      * @param row
      * @return
      * @throws SqlJetException
      */
-    private void doInsert(SqlJetConflictAction onConflict, final long rowId, final Object[] row) throws SqlJetException {
-        final ISqlJetMemoryPointer pData;
+    private ISqlJetMemoryPointer getRawRecord(final long rowId, final Object[] row) throws SqlJetException {
         final SqlJetEncoding encoding = btree.getDb().getOptions().getEncoding();
         if (!tableDef.isRowIdPrimaryKey()) {
-            ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(encoding, row); 
-            pData = rec.getRawRecord();
-            rec.release();
+            return getRecordEncoder().encode(encoding, row);
         } else {
             final int primaryKeyColumnNumber = tableDef.getColumnNumber(tableDef.getRowIdPrimaryKeyColumnName());
             if (primaryKeyColumnNumber == -1 || primaryKeyColumnNumber >= row.length)
                 throw new SqlJetException(SqlJetErrorCode.ERROR);
             row[primaryKeyColumnNumber] = null;
-            ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(encoding, row); 
-            pData = rec.getRawRecord();
-            rec.release();
-            row[primaryKeyColumnNumber] = rowId;
+            try {
+                return getRecordEncoder().encode(encoding, row);
+            } finally {
+                row[primaryKeyColumnNumber] = rowId;
+            }
         }
-        if (doActionWithIndexes(Action.INSERT, onConflict, rowId, row)) {
-            getCursor().insert(null, rowId, pData, pData.remaining(), 0, true);
-            goToRow(rowId);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeDataTable#insertBatch
+     * (java.lang.Iterable, org.tmatesoft.sqljet.core.schema.SqlJetConflictAction)
+     */
+    public long insertBatch(Iterable<Object[]> rows, SqlJetConflictAction onConflict) throws SqlJetException {
+        lock();
+        try {
+            long count = 0;
+            final List<BatchRow> batch = new ArrayList<BatchRow>();
+            for (final Object[] values : rows) {
+                final Object[] row = getValuesRowForInsert(values);
+                adjustRowIdPosition(values, row);
+                try {
+                    checkNotNull(onConflict, row);
+                } catch (SqlJetException e) {
+                    if (SqlJetConflictAction.FAIL == onConflict && !batch.isEmpty()) {
+                        // FAIL keeps rows which precede the failed one.
+                        insertBatch(batch, onConflict);
+                    }
+                    throw e;
+                }
+                batch.add(new BatchRow(values, row, getRowIdForRow(row, false)));
+                count++;
+                if (batch.size() == SQLJET_BATCH_SIZE) {
+                    insertBatch(batch, onConflict);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                insertBatch(batch, onConflict);
+            }
+            return count;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Row of batch which is inserted by {@link SqlJetBtreeDataTable#insertBatch(Iterable, SqlJetConflictAction)}.
+     */
+    private static class BatchRow {
+
+        final Object[] values;
+        final Object[] row;
+        long rowId;
+
+        /**
+         * Row conflicts with other row of batch or with table, it is inserted
+         * as by {@link SqlJetBtreeDataTable#insert(SqlJetConflictAction, Object...)}.
+         */
+        boolean conflict;
+
+        public BatchRow(Object[] values, Object[] row, long rowId) {
+            this.values = values == null ? null : values.clone();
+            this.row = row;
+            this.rowId = rowId;
+        }
+    }
+
+    /**
+     * Inserts one chunk of batch. At first all rows are checked for ROWID and
+     * unique indexes conflicts, so chunk is either failed without changes or
+     * inserted entirely. Rows without conflicts are inserted into table, keys
+     * of them are collected and then inserted into each index in key order.
+     * Conflicting rows (only for IGNORE and REPLACE) are inserted one by one.
+     * For FAIL chunk with conflicts is inserted row by row in its order, so
+     * rows which precede the first failed row are kept.
+     *
+     * @param batch
+     * @param onConflict
+     * @throws SqlJetException
+     */
+    private void insertBatch(List<BatchRow> batch, SqlJetConflictAction onConflict) throws SqlJetException {
+        final List<BatchRow> withRowId = new ArrayList<BatchRow>();
+        for (final BatchRow r : batch) {
+            if (r.rowId > 0) {
+                withRowId.add(r);
+            }
+        }
+        Collections.sort(withRowId, new Comparator<BatchRow>() {
+            public int compare(BatchRow r1, BatchRow r2) {
+                return r1.rowId < r2.rowId ? -1 : (r1.rowId > r2.rowId ? 1 : 0);
+            }
+        });
+        BatchRow prev = null;
+        for (final BatchRow r : withRowId) {
+            if (prev != null && prev.rowId == r.rowId) {
+                setConflict(prev, onConflict, "Record with given ROWID already exists");
+                setConflict(r, onConflict, "Record with given ROWID already exists");
+            } else if (isRowIdExists(r.rowId, false)) {
+                setConflict(r, onConflict, "Record with given ROWID already exists");
+            }
+            prev = r;
+        }
+        for (final ISqlJetIndexDef indexDef : indexesDefs.values()) {
+            if (isUnique(indexDef)) {
+                final List<Object[]> keys = new ArrayList<Object[]>(batch.size());
+                for (final BatchRow r : batch) {
+                    keys.add(getKeyForIndex(r.row, indexDef));
+                }
+                final boolean[] conflicts = indexesTables.get(indexDef.getName()).findConflicts(keys);
+                for (int i = 0; i < conflicts.length; i++) {
+                    if (conflicts[i]) {
+                        setConflict(batch.get(i), onConflict, "Insert fails: unique index " + indexDef.getName());
+                    }
+                }
+            }
+        }
+
+        if (SqlJetConflictAction.FAIL == onConflict) {
+            for (final BatchRow r : batch) {
+                if (r.conflict) {
+                    for (final BatchRow failed : batch) {
+                        insertWithRowId(onConflict, 0, failed.values);
+                    }
+                    return;
+                }
+            }
+        }
+
+        // rows with given ROWID go first, so new ROWIDs don't take them.
+        for (final BatchRow r : withRowId) {
+            if (!r.conflict) {
+                insertBatchRow(r);
+            }
+        }
+        for (final BatchRow r : batch) {
+            if (r.conflict) {
+                insertWithRowId(onConflict, 0, r.values);
+            }
+        }
+        for (final BatchRow r : batch) {
+            if (!r.conflict && r.rowId < 1) {
+                r.rowId = newRowId();
+                insertBatchRow(r);
+            }
+        }
+        clearRecordCache();
+        for (final ISqlJetIndexDef indexDef : indexesDefs.values()) {
+            indexesTables.get(indexDef.getName()).insertKeys();
+        }
+    }
+
+    private void setConflict(BatchRow r, SqlJetConflictAction onConflict, String message) throws SqlJetException {
+        if (onConflict != SqlJetConflictAction.IGNORE && onConflict != SqlJetConflictAction.REPLACE
+                && onConflict != SqlJetConflictAction.FAIL) {
+            throw new SqlJetException(SqlJetErrorCode.CONSTRAINT, message);
+        }
+        r.conflict = true;
+    }
+
+    private void insertBatchRow(BatchRow r) throws SqlJetException {
+        final ISqlJetMemoryPointer pData = getRawRecord(r.rowId, r.row);
+        getCursor().insert(null, r.rowId, pData, getRecordEncoder().getSize(), 0, true);
+        for (final ISqlJetIndexDef indexDef : indexesDefs.values()) {
+            indexesTables.get(indexDef.getName()).buildKey(r.rowId, getKeyForIndex(r.row, indexDef));
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeDataTable#load(java
+     * .lang.Iterable, int)
+     */
+    public long load(Iterable<Object[]> rows, int fillFactor) throws SqlJetException {
+        lock();
+        try {
+            final ISqlJetBtreeBuilder builder = getCursor().getBuilder(fillFactor);
+            clearRecordCache();
+            long rowId = 0;
+            for (final Object[] values : rows) {
+                final Object[] row = getValuesRowForInsert(values);
+                adjustRowIdPosition(values, row);
+                final long rowIdForRow = getRowIdForRow(row, false);
+                rowId = rowIdForRow > 0 ? rowIdForRow : rowId + 1;
+                final ISqlJetMemoryPointer pData = getRawRecord(rowId, row);
+                checkNotNull(null, row);
+                builder.append(null, rowId, pData, getRecordEncoder().getSize());
+                for (final ISqlJetIndexDef indexDef : indexesDefs.values()) {
+                    indexesTables.get(indexDef.getName()).buildKey(rowId, getKeyForIndex(row, indexDef));
+                }
+            }
+            builder.finish();
+            for (final ISqlJetIndexDef indexDef : indexesDefs.values()) {
+                indexesTables.get(indexDef.getName()).build(isUnique(indexDef));
+            }
+            loadSequence(rowId);
+            first();
+            return builder.getCount();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * @param indexDef
+     * @return true if index has UNIQUE or PRIMARY KEY constraint.
+     */
+    private boolean isUnique(final ISqlJetIndexDef indexDef) {
+        return indexDef.isUnique() || tableDef.getColumnIndexConstraint(indexDef.getName()) != null
+                || tableDef.getTableIndexConstraint(indexDef.getName()) != null;
+    }
+
+    /**
+     * Moves sequence of AUTOINCREMENT table to the last loaded ROWID.
+     *
+     * @param lastRowId
+     * @throws SqlJetException
+     */
+    private void loadSequence(long lastRowId) throws SqlJetException {
+        if (!tableDef.isAutoincremented() || lastRowId < 1 || !readSequence()) {
+            return;
+        }
+        if (sequence < lastRowId) {
+            sequence = lastRowId;
+            sequenceChanged = true;
         }
     }
 
@@ -531,28 +882,13 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
         if (newRowId == currentRowId && Arrays.equals(rowCompleted, currentRow))
             return;
 
-        final ISqlJetMemoryPointer pData;
-        final SqlJetEncoding encoding = btree.getDb().getOptions().getEncoding();
-        if (!tableDef.isRowIdPrimaryKey()) {
-            final ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(encoding, rowCompleted);
-            pData = rec.getRawRecord();
-            rec.release();
-        } else {
-            final int primaryKeyColumnNumber = tableDef.getColumnNumber(tableDef.getRowIdPrimaryKeyColumnName());
-            if (primaryKeyColumnNumber == -1 || primaryKeyColumnNumber >= rowCompleted.length)
-                throw new SqlJetException(SqlJetErrorCode.ERROR);
-            rowCompleted[primaryKeyColumnNumber] = null;
-            final ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(encoding, rowCompleted); 
-            pData = rec.getRawRecord();
-            rec.release();
-            rowCompleted[primaryKeyColumnNumber] = newRowId;
-        }
-        if (doActionWithIndexes(Action.UPDATE, onConflict, newRowId, rowCompleted)) {
+        final ISqlJetMemoryPointer pData = getRawRecord(newRowId, rowCompleted);
+        if (doActionWithIndexes(Action.UPDATE, onConflict, newRowId, false, rowCompleted)) {
             final boolean changeRowId = newRowId != currentRowId;
             if (changeRowId) {
                 getCursor().delete();
             }
-            getCursor().insert(null, newRowId, pData, pData.remaining(), 0, changeRowId);
+            getCursor().insert(null, newRowId, pData, getRecordEncoder().getSize(), 0, changeRowId);
             goToRow(newRowId);
         }
 
@@ -616,7 +952,7 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
      * @throws SqlJetException
      */
     private void doDelete() throws SqlJetException {
-        doActionWithIndexes(Action.DELETE, null, 0);
+        doActionWithIndexes(Action.DELETE, null, 0, false);
         final long rowId = getRowId();
         getCursor().delete();
         goToRow(rowId);
@@ -642,12 +978,16 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
     }
 
     /**
+     * @param generatedRowId
+     *            true if rowId is given by {@link #newRowId()}, so there is
+     *            no record with such ROWID and cursor already points to the
+     *            last record.
      * @param row
      * @return
      * @throws SqlJetException
      */
-    private boolean doActionWithIndexes(Action action, SqlJetConflictAction onConflict, long rowId, Object... row)
-            throws SqlJetException {
+    private boolean doActionWithIndexes(Action action, SqlJetConflictAction onConflict, long rowId,
+            boolean generatedRowId, Object... row) throws SqlJetException {
 
         if (null == onConflict) {
             onConflict = SqlJetConflictAction.ABORT;
@@ -663,7 +1003,7 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
             currentRow = getValues();
         }
 
-        if (Action.INSERT == action) {
+        if (Action.INSERT == action && !generatedRowId) {
             long oldRowId = getRowId();
             existsRowId = isRowIdExists(rowId, false);
             if (!existsRowId && oldRowId > 0) {
@@ -691,19 +1031,8 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
             }
         }
 
-        if (Action.DELETE != action && hasNull(row)) {
-            final List<ISqlJetColumnDef> columns = tableDef.getNotNullColumns();
-            if (columns != null && columns.size() != 0) {
-                for (ISqlJetColumnDef column : columns) {
-                    final String name = column.getName();
-                    final int index = column.getIndex();
-                    if (row.length < index || null == row[index]) {
-                        if (SqlJetConflictAction.IGNORE != onConflict) {
-                            throw new SqlJetException(String.format("Field '%s' must be not NULL", name));
-                        }
-                    }
-                }
-            }
+        if (Action.DELETE != action) {
+            checkNotNull(onConflict, row);
         }
 
         class IndexKeys {
@@ -736,8 +1065,7 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
 
             // check unique indexes
             if (Action.DELETE != action && !hasNull(key)) {
-                if (indexDef.isUnique() || tableDef.getColumnIndexConstraint(indexDef.getName()) != null
-                        || tableDef.getTableIndexConstraint(indexDef.getName()) != null) {
+                if (isUnique(indexDef)) {
                     final long lookup = indexTable.lookup(false, key);
                     if (lookup != 0) {
                         if (Action.INSERT == action) {
@@ -785,6 +1113,48 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
 
     }
 
+    /**
+     * @param onConflict
+     * @param row
+     * @throws SqlJetException
+     */
+    private void checkNotNull(SqlJetConflictAction onConflict, Object[] row) throws SqlJetException {
+        if (hasNull(row)) {
+            final List<ISqlJetColumnDef> columns = tableDef.getNotNullColumns();
+            if (columns != null && columns.size() != 0) {
+                for (ISqlJetColumnDef column : columns) {
+                    final String name = column.getName();
+                    final int index = column.getIndex();
+                    if (row.length < index || null == row[index]) {
+                        if (SqlJetConflictAction.IGNORE != onConflict) {
+                            throw new SqlJetException(String.format("Field '%s' must be not NULL", name));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #checkNotNull(SqlJetConflictAction, Object[])} for row
+     * buffer, where value of INTEGER PRIMARY KEY column is ROWID.
+     */
+    private void checkNotNull(SqlJetConflictAction onConflict, SqlJetRowBuffer row, int primaryKeyColumnNumber)
+            throws SqlJetException {
+        if (SqlJetConflictAction.IGNORE == onConflict) {
+            return;
+        }
+        final List<ISqlJetColumnDef> columns = tableDef.getNotNullColumns();
+        if (columns != null) {
+            for (ISqlJetColumnDef column : columns) {
+                final int index = column.getIndex();
+                if (index != primaryKeyColumnNumber && index < row.size() && row.isNull(index)) {
+                    throw new SqlJetException(String.format("Field '%s' must be not NULL", column.getName()));
+                }
+            }
+        }
+    }
+
     /**
      * @param row
      * @return
@@ -1063,7 +1433,7 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
             defaults = SqlJetBtreeRecord.getRecord(getEncoding(), getDefaults());
         }
         if (field < defaults.getFieldsCount() && (valueMem == null || valueMem.isNull())) {
-            valueMem = defaults.getFields().get(field);
+            valueMem = defaults.getField(field);
         }
         if (valueMem != null) {
             valueMem.applyAffinity(getFieldAffinity(field), getEncoding());
@@ -17,6 +17,9 @@
  */
 package org.tmatesoft.sqljet.core.internal.table;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 
@@ -24,13 +27,16 @@ import org.tmatesoft.sqljet.core.SqlJetEncoding;
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.internal.ISqlJetBtree;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeBuilder;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
 import org.tmatesoft.sqljet.core.internal.ISqlJetVdbeMem;
 import org.tmatesoft.sqljet.core.internal.SqlJetUnpackedRecordFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 import org.tmatesoft.sqljet.core.internal.schema.SqlJetBaseIndexDef;
 import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetBtreeRecord;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetRecordEncoder;
 import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetUnpackedRecord;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetVdbeSorter;
 import org.tmatesoft.sqljet.core.schema.ISqlJetIndexDef;
 import org.tmatesoft.sqljet.core.schema.ISqlJetIndexedColumn;
 import org.tmatesoft.sqljet.core.schema.ISqlJetSchema;
@@ -46,6 +52,9 @@ public class SqlJetBtreeIndexTable extends SqlJetBtreeTable implements ISqlJetBt
     private ISqlJetIndexDef indexDef;
     private List<String> columns;
 
+    /** Keys collected for bulk build of index */
+    private SqlJetVdbeSorter sorter;
+
     /**
      * Open index by name
      * 
@@ -248,12 +257,10 @@ public class SqlJetBtreeIndexTable extends SqlJetBtreeTable implements ISqlJetBt
     public void insert(long rowId, boolean append, Object... key) throws SqlJetException {
         lock();
         try {
-            final ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(btree.getDb().getOptions().getEncoding(),
-                    SqlJetUtility.addArrays(key, new Object[] { rowId }));
-            final ISqlJetMemoryPointer zKey = rec.getRawRecord();
-            getCursor().insert(zKey, zKey.remaining(), SqlJetUtility.allocatePtr(0), 0, 0, append);
+            final SqlJetRecordEncoder encoder = getRecordEncoder();
+            final ISqlJetMemoryPointer zKey = encoder.encodeKey(btree.getDb().getOptions().getEncoding(), key, rowId);
+            getCursor().insert(zKey, encoder.getSize(), SqlJetUtility.allocatePtr(0), 0, 0, append);
             clearRecordCache();
-            rec.release();
         } finally {
             unlock();
         }
@@ -296,13 +303,13 @@ public class SqlJetBtreeIndexTable extends SqlJetBtreeTable implements ISqlJetBt
         }
     }
 
-    private long getKeyRowId(ISqlJetBtreeRecord record) {
+    private long getKeyRowId(ISqlJetBtreeRecord record) throws SqlJetException {
         if (null == record)
             return 0;
-        final List<ISqlJetVdbeMem> fields = record.getFields();
-        if (null == fields || 0 == fields.size())
+        final int fieldsCount = record.getFieldsCount();
+        if (0 == fieldsCount)
             return 0;
-        return fields.get(fields.size() - 1).intValue();
+        return record.getField(fieldsCount - 1).intValue();
     }
 
     public long getKeyRowId() throws SqlJetException {
@@ -321,16 +328,229 @@ public class SqlJetBtreeIndexTable extends SqlJetBtreeTable implements ISqlJetBt
             try {
                 for (dataTable.first(); !dataTable.eof(); dataTable.next()) {
                     final Object[] key = dataTable.getKeyForIndex(dataTable.getValues(), indexDef);
-                    insert(dataTable.getRowId(), true, key);
+                    buildKey(dataTable.getRowId(), key);
                 }
             } finally {
                 dataTable.close();
             }
+            build(false);
+        } finally {
+            unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeIndexTable#buildKey
+     * (long, java.lang.Object[])
+     */
+    public void buildKey(long rowId, Object... key) throws SqlJetException {
+        lock();
+        try {
+            if (sorter == null) {
+                sorter = new SqlJetVdbeSorter(getKeyInfo(), btree.getDb().getFileSystem(),
+                        SqlJetVdbeSorter.SQLJET_SORTER_MEMORY);
+            }
+            final SqlJetRecordEncoder encoder = getRecordEncoder();
+            sorter.write(encoder.encodeKey(btree.getDb().getOptions().getEncoding(), key, rowId), encoder.getSize());
+        } finally {
+            unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeIndexTable#build
+     * (boolean)
+     */
+    public void build(boolean unique) throws SqlJetException {
+        lock();
+        try {
+            final ISqlJetBtreeBuilder builder = getCursor().getBuilder(ISqlJetBtreeBuilder.MAX_FILL_FACTOR);
+            clearRecordCache();
+            if (sorter != null) {
+                ISqlJetMemoryPointer prev = null;
+                for (boolean more = sorter.rewind(); more; more = sorter.next()) {
+                    final ISqlJetMemoryPointer key = sorter.getKey();
+                    if (unique) {
+                        if (prev != null && keyCompare(prev, key) == 0 && !hasNullField(key)) {
+                            throw new SqlJetException(SqlJetErrorCode.CONSTRAINT, "Index " + indexDef.getName()
+                                    + " is not unique");
+                        }
+                        prev = key;
+                    }
+                    builder.append(key, key.remaining(), null, 0);
+                }
+            }
+            builder.finish();
+            first();
+        } finally {
+            try {
+                if (sorter != null) {
+                    sorter.close();
+                }
+            } finally {
+                sorter = null;
+                unlock();
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeIndexTable#insertKeys
+     * ()
+     */
+    public void insertKeys() throws SqlJetException {
+        lock();
+        try {
+            if (sorter != null) {
+                final ISqlJetMemoryPointer pData = SqlJetUtility.allocatePtr(0);
+                for (boolean more = sorter.rewind(); more; more = sorter.next()) {
+                    final ISqlJetMemoryPointer key = sorter.getKey();
+                    getCursor().insert(key, key.remaining(), pData, 0, 0, false);
+                }
+                clearRecordCache();
+            }
+        } finally {
+            try {
+                if (sorter != null) {
+                    sorter.close();
+                }
+            } finally {
+                sorter = null;
+                unlock();
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeIndexTable#findConflicts
+     * (java.util.List)
+     */
+    public boolean[] findConflicts(final List<Object[]> keys) throws SqlJetException {
+        lock();
+        try {
+            final boolean[] conflicts = new boolean[keys.size()];
+            final SqlJetEncoding encoding = btree.getDb().getOptions().getEncoding();
+            final ISqlJetMemoryPointer[] records = new ISqlJetMemoryPointer[keys.size()];
+            final List<Integer> order = new ArrayList<Integer>(keys.size());
+            for (int i = 0; i < records.length; i++) {
+                final Object[] key = keys.get(i);
+                if (!hasNull(key)) {
+                    final ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(encoding, key);
+                    records[i] = rec.getRawRecord();
+                    rec.release();
+                    order.add(i);
+                }
+            }
+            final SqlJetUnpackedRecord unpacked = new SqlJetUnpackedRecord();
+            unpacked.setFlags(SqlJetUtility.noneOf(SqlJetUnpackedRecordFlags.class));
+            try {
+                final SqlJetException[] error = new SqlJetException[1];
+                Collections.sort(order, new Comparator<Integer>() {
+                    public int compare(Integer i1, Integer i2) {
+                        try {
+                            return compareRecords(records[i1], records[i2], unpacked);
+                        } catch (SqlJetException e) {
+                            error[0] = e;
+                            return 0;
+                        }
+                    }
+                });
+                if (error[0] != null) {
+                    throw error[0];
+                }
+                Integer prev = null;
+                for (final Integer i : order) {
+                    if (prev != null && compareRecords(records[prev], records[i], unpacked) == 0) {
+                        conflicts[prev] = conflicts[i] = true;
+                    } else {
+                        conflicts[i] = lookupSafe(false, false, false, keys.get(i)) != 0;
+                    }
+                    prev = i;
+                }
+            } finally {
+                unpacked.release();
+            }
+            return conflicts;
         } finally {
             unlock();
         }
     }
 
+    /**
+     * Compares two records of keys without rowid.
+     * 
+     * @param r1
+     * @param r2
+     * @param unpacked
+     *            reused to unpack r2.
+     * @return
+     * @throws SqlJetException
+     */
+    private int compareRecords(ISqlJetMemoryPointer r1, ISqlJetMemoryPointer r2, SqlJetUnpackedRecord unpacked)
+            throws SqlJetException {
+        // recordCompare() compares packed record with unpacked one.
+        getKeyInfo().recordUnpack(r2.remaining(), r2, unpacked);
+        return unpacked.recordCompare(r1.remaining(), r1);
+    }
+
+    private static boolean hasNull(Object[] key) {
+        for (final Object value : key) {
+            if (value == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether any field of index key in record is NULL.
+     * 
+     * @param record
+     * @return
+     */
+    private boolean hasNullField(ISqlJetMemoryPointer record) {
+        final long header = SqlJetUtility.getVarint32Packed(record, 0);
+        int idx = SqlJetUtility.unpackVarintLength(header);
+        final int headerSize = SqlJetUtility.unpackVarintValue(header);
+        for (int field = 0; field < getKeyInfo().getNField() && idx < headerSize; field++) {
+            final long value = SqlJetUtility.getVarint32Packed(record, idx);
+            idx += SqlJetUtility.unpackVarintLength(value);
+            if (SqlJetUtility.unpackVarintValue(value) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.internal.table.SqlJetBtreeTable#close()
+     */
+    @Override
+    public void close() throws SqlJetException {
+        try {
+            if (sorter != null) {
+                sorter.close();
+                sorter = null;
+            }
+        } finally {
+            super.close();
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
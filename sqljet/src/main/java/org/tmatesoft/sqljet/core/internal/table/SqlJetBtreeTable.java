@@ -13,7 +13,8 @@
  */
 package org.tmatesoft.sqljet.core.internal.table;
 
-import java.util.List;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.Random;
 import java.util.Stack;
 
@@ -29,6 +30,7 @@ import org.tmatesoft.sqljet.core.internal.SqlJetBtreeTableCreateFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetBtreeRecord;
 import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetKeyInfo;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetRecordEncoder;
 
 /**
  * @author TMate Software Ltd.
@@ -48,6 +50,8 @@ public class SqlJetBtreeTable implements ISqlJetBtreeTable {
     private SqlJetBtreeRecord recordCache;
     private Object[] valueCache;
     private Object[] valuesCache;
+
+    private SqlJetRecordEncoder recordEncoder;
     
     private Stack<State> states;
     
@@ -276,7 +280,6 @@ public class SqlJetBtreeTable implements ISqlJetBtreeTable {
             } finally {
                 unlock();
             }
-            valueCache = new Object[recordCache.getFieldsCount()];
         }
         return recordCache;
     }
@@ -310,12 +313,7 @@ public class SqlJetBtreeTable implements ISqlJetBtreeTable {
         final ISqlJetBtreeRecord r = getRecord();
         if (null == r)
             return null;
-        if (!checkField(r, field))
-            return null;
-        final List<ISqlJetVdbeMem> fields = r.getFields();
-        if (null == fields)
-            return null;
-        return fields.get(field);
+        return r.getField(field);
     }
 
     public Object getValue(int field) throws SqlJetException {
@@ -326,6 +324,9 @@ public class SqlJetBtreeTable implements ISqlJetBtreeTable {
         }
         final Object valueUncached = getValueUncached(field);
         if (valueUncached != null) {
+            if (valueCache == null) {
+                valueCache = new Object[getRecord().getFieldsCount()];
+            }
             valueCache[field] = valueUncached;
         }
         return valueUncached;
@@ -446,6 +447,63 @@ public class SqlJetBtreeTable implements ISqlJetBtreeTable {
         return value.valueBlob();
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeTable#getBuffer(int)
+     */
+    public ByteBuffer getBuffer(int field) throws SqlJetException {
+        final ISqlJetBtreeRecord r = getRecord();
+        if (null == r)
+            return null;
+        final ByteBuffer raw = r.getRawField(field);
+        if (raw != null)
+            return raw;
+        final ISqlJetVdbeMem value = getValueMem(field);
+        if (value == null || value.isNull())
+            return null;
+        final ISqlJetMemoryPointer p;
+        switch (value.getType()) {
+        case TEXT:
+            p = value.valueText(getEncoding());
+            break;
+        case BLOB:
+            p = value.valueBlob();
+            break;
+        default:
+            return null;
+        }
+        return p != null ? ByteBuffer.wrap(SqlJetUtility.readByteBuffer(p)).asReadOnlyBuffer() : null;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeTable#compareString
+     * (int, java.lang.String)
+     */
+    public int compareString(int field, String value) throws SqlJetException {
+        final ISqlJetBtreeRecord r = getRecord();
+        if (r != null && value != null && getEncoding() == SqlJetEncoding.UTF8) {
+            final int type = r.getSerialType(field);
+            if (type >= 13 && (type & 1) == 1) {
+                return SqlJetUtility.compareUtf8(r.getRawField(field), value);
+            }
+        }
+        final String s = getString(field);
+        if (s == null)
+            return value == null ? 0 : -1;
+        if (value == null)
+            return 1;
+        try {
+            return SqlJetUtility.compareUtf8(ByteBuffer.wrap(s.getBytes(SqlJetEncoding.UTF8.getCharsetName())), value);
+        } catch (UnsupportedEncodingException e) {
+            throw new SqlJetException(SqlJetErrorCode.MISUSE, e);
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -458,6 +516,9 @@ public class SqlJetBtreeTable implements ISqlJetBtreeTable {
         } else {
             final ISqlJetBtreeRecord record = getRecord();
             final int fieldsCount = record.getFieldsCount();
+            if (valueCache == null) {
+                valueCache = new Object[fieldsCount];
+            }
             for (int i = 0; i < fieldsCount; i++) {
                 valueCache[i] = getValue(i);
             }
@@ -527,7 +588,11 @@ public class SqlJetBtreeTable implements ISqlJetBtreeTable {
             final boolean last = getCursor().last();
 
             if (last) {
-                v = 1;
+                /* Empty table still continues after previous record number. */
+                if (prev == MAX_ROWID) {
+                    throw new SqlJetException(SqlJetErrorCode.FULL);
+                }
+                v = prev + 1;
             } else {
                 v = getCursor().getKeySize();
                 if (v == MAX_ROWID) {
@@ -540,7 +605,7 @@ public class SqlJetBtreeTable implements ISqlJetBtreeTable {
                     if (prev == MAX_ROWID || useRandomRowid) {
                         throw new SqlJetException(SqlJetErrorCode.FULL);
                     }
-                    if (v < prev) {
+                    if (v <= prev) {
                         v = prev + 1;
                     }
                 }
@@ -576,6 +641,17 @@ public class SqlJetBtreeTable implements ISqlJetBtreeTable {
         }
     }
 
+    /**
+     * @return encoder of records which is owned by this table, so records it
+     *         returns are valid until next encoding by this table.
+     */
+    protected SqlJetRecordEncoder getRecordEncoder() {
+        if (recordEncoder == null) {
+            recordEncoder = new SqlJetRecordEncoder();
+        }
+        return recordEncoder;
+    }
+
     protected void clearRecordCache() {
         if (recordCache != null) {
             recordCache.release();
@@ -19,6 +19,7 @@ package org.tmatesoft.sqljet.core.internal.table;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
@@ -41,6 +42,46 @@ public abstract class SqlJetCursor implements ISqlJetCursor {
     protected final ISqlJetBtreeTable btreeTable;
     protected final SqlJetDb db;
 
+    /**
+     * Transaction's body which returns long value without boxing: result is
+     * kept in the {@link #value} field.
+     */
+    protected static abstract class SqlJetLongReader implements ISqlJetTransaction {
+        protected long value;
+
+        public Object run(SqlJetDb db) throws SqlJetException {
+            value = read();
+            return null;
+        }
+
+        protected abstract long read() throws SqlJetException;
+    }
+
+    /**
+     * Transaction's body which returns double value without boxing: result is
+     * kept in the {@link #value} field.
+     */
+    protected static abstract class SqlJetDoubleReader implements ISqlJetTransaction {
+        protected double value;
+
+        public Object run(SqlJetDb db) throws SqlJetException {
+            value = read();
+            return null;
+        }
+
+        protected abstract double read() throws SqlJetException;
+    }
+
+    protected long readLong(SqlJetLongReader reader) throws SqlJetException {
+        db.runReadTransaction(reader);
+        return reader.value;
+    }
+
+    protected double readDouble(SqlJetDoubleReader reader) throws SqlJetException {
+        db.runReadTransaction(reader);
+        return reader.value;
+    }
+
     SqlJetCursor(ISqlJetBtreeTable table, SqlJetDb db) throws SqlJetException {
         if (db.isInTransaction()) {
             this.btreeTable = table;
@@ -132,16 +173,16 @@ public abstract class SqlJetCursor implements ISqlJetCursor {
     }
 
     public long getInteger(final int field) throws SqlJetException {
-        return (Long) db.runReadTransaction(new ISqlJetTransaction() {
-            public Object run(SqlJetDb db) throws SqlJetException {
+        return readLong(new SqlJetLongReader() {
+            protected long read() throws SqlJetException {
                 return btreeTable.getInteger(field);
             }
         });
     }
 
     public double getFloat(final int field) throws SqlJetException {
-        return (Double) db.runReadTransaction(new ISqlJetTransaction() {
-            public Object run(SqlJetDb db) throws SqlJetException {
+        return readDouble(new SqlJetDoubleReader() {
+            protected double read() throws SqlJetException {
                 return btreeTable.getFloat(field);
             }
         });
@@ -185,6 +226,22 @@ public abstract class SqlJetCursor implements ISqlJetCursor {
         });
     }
 
+    public ByteBuffer getBuffer(final int field) throws SqlJetException {
+        return (ByteBuffer) db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                return btreeTable.getBuffer(field);
+            }
+        });
+    }
+
+    public int compareString(final int field, final String value) throws SqlJetException {
+        return (Integer) db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                return Integer.signum(btreeTable.compareString(field, value));
+            }
+        });
+    }
+
     /*
      * (non-Javadoc)
      * 
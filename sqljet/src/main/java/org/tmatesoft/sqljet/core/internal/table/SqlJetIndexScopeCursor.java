@@ -311,8 +311,8 @@ public class SqlJetIndexScopeCursor extends SqlJetIndexOrderCursor {
      */
     @Override
     public long getRowId() throws SqlJetException {
-        return (Long) db.runSynchronized(new ISqlJetEngineSynchronized() {
-            public Object runSynchronized(SqlJetEngine engine) throws SqlJetException {
+        return readLong(new SqlJetLongReader() {
+            protected long read() throws SqlJetException {
                 if (indexTable != null && !indexTable.eof()) {
                     return indexTable.getKeyRowId();
                 }
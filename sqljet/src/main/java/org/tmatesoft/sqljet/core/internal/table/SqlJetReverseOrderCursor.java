@@ -18,6 +18,7 @@
 package org.tmatesoft.sqljet.core.internal.table;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import org.tmatesoft.sqljet.core.SqlJetException;
@@ -434,4 +435,32 @@ public class SqlJetReverseOrderCursor implements ISqlJetCursor {
     public Object[] getRowValues() throws SqlJetException {
         return cursor.getRowValues();
     }
+
+    /* (non-Javadoc)
+     * @see org.tmatesoft.sqljet.core.table.ISqlJetCursor#getBuffer(int)
+     */
+    public ByteBuffer getBuffer(int field) throws SqlJetException {
+        return cursor.getBuffer(field);
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmatesoft.sqljet.core.table.ISqlJetCursor#getBuffer(java.lang.String)
+     */
+    public ByteBuffer getBuffer(String fieldName) throws SqlJetException {
+        return cursor.getBuffer(fieldName);
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmatesoft.sqljet.core.table.ISqlJetCursor#compareString(int, java.lang.String)
+     */
+    public int compareString(int field, String value) throws SqlJetException {
+        return cursor.compareString(field, value);
+    }
+
+    /* (non-Javadoc)
+     * @see org.tmatesoft.sqljet.core.table.ISqlJetCursor#compareString(java.lang.String, java.lang.String)
+     */
+    public int compareString(String fieldName, String value) throws SqlJetException {
+        return cursor.compareString(fieldName, value);
+    }
 }
@@ -24,6 +24,7 @@ import java.util.TreeSet;
 
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
 import org.tmatesoft.sqljet.core.internal.ISqlJetBtree;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 import org.tmatesoft.sqljet.core.schema.ISqlJetIndexDef;
@@ -32,6 +33,7 @@ import org.tmatesoft.sqljet.core.schema.SqlJetConflictAction;
 import org.tmatesoft.sqljet.core.table.ISqlJetCursor;
 import org.tmatesoft.sqljet.core.table.ISqlJetRunnableWithLock;
 import org.tmatesoft.sqljet.core.table.ISqlJetTable;
+import org.tmatesoft.sqljet.core.table.ISqlJetTableWriter;
 import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
 import org.tmatesoft.sqljet.core.table.SqlJetDb;
 import org.tmatesoft.sqljet.core.table.SqlJetScope;
@@ -50,19 +52,31 @@ public class SqlJetTable implements ISqlJetTable {
     }
 
     private final SqlJetDb db;
-    private ISqlJetBtree btree;
     private String tableName;
     private boolean write;
 
-    public SqlJetTable(SqlJetDb db, ISqlJetBtree btree, String tableName, boolean write) throws SqlJetException {
+    /**
+     * Table doesn't keep btree of the connection, it is resolved by each call
+     * since with concurrent reads it depends on the transaction of calling
+     * thread.
+     */
+    public SqlJetTable(SqlJetDb db, String tableName, boolean write) throws SqlJetException {
         this.db = db;
-        this.btree = btree;
         this.tableName = tableName;
         this.write = write;
         if (null == getDefinition())
             throw new SqlJetException(SqlJetErrorCode.ERROR, "Table not found: " + tableName);
     }
 
+    /**
+     * Opens data table over btree of calling thread. Btree of concurrent read
+     * transaction is read-only, so its cursors are opened for reading only.
+     */
+    private SqlJetBtreeDataTable openDataTable(SqlJetDb db) throws SqlJetException {
+        final ISqlJetBtree btree = db.getBtree();
+        return new SqlJetBtreeDataTable(btree, tableName, write && !btree.getPager().isReadOnly());
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -78,7 +92,7 @@ public class SqlJetTable implements ISqlJetTable {
     }
 
     public ISqlJetTableDef getDefinition() throws SqlJetException {
-        return btree.getSchema().getTable(tableName);
+        return db.getBtree().getSchema().getTable(tableName);
     };
 
     /*
@@ -88,7 +102,7 @@ public class SqlJetTable implements ISqlJetTable {
      * org.tmatesoft.sqljet.core.table.ISqlJetTable#getIndexes(java.lang.String)
      */
     public Set<ISqlJetIndexDef> getIndexesDefs() throws SqlJetException {
-        return btree.getSchema().getIndexes(tableName);
+        return db.getBtree().getSchema().getIndexes(tableName);
     }
 
     /*
@@ -136,7 +150,18 @@ public class SqlJetTable implements ISqlJetTable {
     public ISqlJetCursor open() throws SqlJetException {
         return (ISqlJetCursor) db.runWithLock(new ISqlJetRunnableWithLock() {
             public Object runWithLock(SqlJetDb db) throws SqlJetException {
-                return new SqlJetTableDataCursor(new SqlJetBtreeDataTable(btree, tableName, write), db);
+                return new SqlJetTableDataCursor(openDataTable(db), db);
+            }
+        });
+    }
+
+    public ISqlJetTableWriter openWriter() throws SqlJetException {
+        return (ISqlJetTableWriter) db.runWithLock(new ISqlJetRunnableWithLock() {
+            public Object runWithLock(SqlJetDb db) throws SqlJetException {
+                if (!db.isInTransaction() || db.getTransactionMode() == SqlJetTransactionMode.READ_ONLY) {
+                    throw new SqlJetException(SqlJetErrorCode.MISUSE, "Writer requires active write transaction");
+                }
+                return new SqlJetTableWriter(openDataTable(db), db);
             }
         });
     }
@@ -145,7 +170,7 @@ public class SqlJetTable implements ISqlJetTable {
         final Object[] k = SqlJetUtility.adjustNumberTypes(key);
         return (ISqlJetCursor) db.runWithLock(new ISqlJetRunnableWithLock() {
             public Object runWithLock(SqlJetDb db) throws SqlJetException {
-                final SqlJetBtreeDataTable table = new SqlJetBtreeDataTable(btree, tableName, write);
+                final SqlJetBtreeDataTable table = openDataTable(db);
                 checkIndexName(indexName, table);
                 return new SqlJetIndexScopeCursor(table, db, indexName, k, k);
             }
@@ -155,7 +180,7 @@ public class SqlJetTable implements ISqlJetTable {
     private Object runWriteTransaction(final ISqlJetTableRun op) throws SqlJetException {
         return db.runWriteTransaction(new ISqlJetTransaction() {
             public Object run(SqlJetDb db) throws SqlJetException {
-                final ISqlJetBtreeDataTable table = new SqlJetBtreeDataTable(btree, tableName, write);
+                final ISqlJetBtreeDataTable table = openDataTable(db);
                 try {
                     return op.run(table);
                 } finally {
@@ -211,7 +236,7 @@ public class SqlJetTable implements ISqlJetTable {
     public ISqlJetCursor order(final String indexName) throws SqlJetException {
         return (ISqlJetCursor) db.runWithLock(new ISqlJetRunnableWithLock() {
             public Object runWithLock(SqlJetDb db) throws SqlJetException {
-                final SqlJetBtreeDataTable table = new SqlJetBtreeDataTable(btree, tableName, write);
+                final SqlJetBtreeDataTable table = openDataTable(db);
                 checkIndexName(indexName, table);
                 return new SqlJetIndexOrderCursor(table, db, indexName);
             }
@@ -232,7 +257,7 @@ public class SqlJetTable implements ISqlJetTable {
         final SqlJetScope adjustedScope = SqlJetUtility.adjustScopeNumberTypes(scope);
         return (ISqlJetCursor) db.runWithLock(new ISqlJetRunnableWithLock() {
             public Object runWithLock(SqlJetDb db) throws SqlJetException {
-                final SqlJetBtreeDataTable table = new SqlJetBtreeDataTable(btree, tableName, write);
+                final SqlJetBtreeDataTable table = openDataTable(db);
                 checkIndexName(indexName, table);
                 if (isNeedReverse(getIndexTable(indexName, table), adjustedScope)) {
                     return new SqlJetReverseOrderCursor(new SqlJetIndexScopeCursor(table, db, indexName, adjustedScope.reverse()));
@@ -252,6 +277,23 @@ public class SqlJetTable implements ISqlJetTable {
         });
     }
 
+    public long insertBatch(final Iterable<Object[]> rows, final SqlJetConflictAction onConflict)
+            throws SqlJetException {
+        return (Long) runWriteTransaction(new ISqlJetTableRun() {
+            public Object run(ISqlJetBtreeDataTable table) throws SqlJetException {
+                return table.insertBatch(rows, onConflict);
+            }
+        });
+    }
+
+    public long load(final Iterable<Object[]> rows, final int fillFactor) throws SqlJetException {
+        return (Long) runWriteTransaction(new ISqlJetTableRun() {
+            public Object run(ISqlJetBtreeDataTable table) throws SqlJetException {
+                return table.load(rows, fillFactor);
+            }
+        });
+    }
+
     /**
      * @param indexName
      * @param scope
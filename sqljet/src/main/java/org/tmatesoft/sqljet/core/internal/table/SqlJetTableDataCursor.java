@@ -19,6 +19,7 @@ package org.tmatesoft.sqljet.core.internal.table;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
@@ -49,8 +50,8 @@ public class SqlJetTableDataCursor extends SqlJetRowNumCursor {
     }
 
     public long getRowId() throws SqlJetException {
-        return (Long) db.runReadTransaction(new ISqlJetTransaction() {
-            public Object run(SqlJetDb db) throws SqlJetException {
+        return readLong(new SqlJetLongReader() {
+            protected long read() throws SqlJetException {
                 final ISqlJetBtreeDataTable table = getBtreeDataTable();
                 if (table.eof()) {
                     throw new SqlJetException(SqlJetErrorCode.MISUSE,
@@ -111,8 +112,8 @@ public class SqlJetTableDataCursor extends SqlJetRowNumCursor {
     }
 
     public long getInteger(final String fieldName) throws SqlJetException {
-        return (Long) db.runReadTransaction(new ISqlJetTransaction() {
-            public Object run(SqlJetDb db) throws SqlJetException {
+        return readLong(new SqlJetLongReader() {
+            protected long read() throws SqlJetException {
                 if (SqlJetBtreeDataTable.isFieldNameRowId(fieldName)) {
                     return getBtreeDataTable().getRowId();
                 } else {
@@ -123,8 +124,8 @@ public class SqlJetTableDataCursor extends SqlJetRowNumCursor {
     }
 
     public double getFloat(final String fieldName) throws SqlJetException {
-        return (Double) db.runReadTransaction(new ISqlJetTransaction() {
-            public Object run(SqlJetDb db) throws SqlJetException {
+        return readDouble(new SqlJetDoubleReader() {
+            protected double read() throws SqlJetException {
                 return getBtreeDataTable().getFloat(getFieldSafe(fieldName));
             }
         });
@@ -160,6 +161,22 @@ public class SqlJetTableDataCursor extends SqlJetRowNumCursor {
         });
     }
 
+    public ByteBuffer getBuffer(final String fieldName) throws SqlJetException {
+        return (ByteBuffer) db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                return getBtreeDataTable().getBuffer(getFieldSafe(fieldName));
+            }
+        });
+    }
+
+    public int compareString(final String fieldName, final String value) throws SqlJetException {
+        return (Integer) db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                return Integer.signum(getBtreeDataTable().compareString(getFieldSafe(fieldName), value));
+            }
+        });
+    }
+
     public boolean getBoolean(final String fieldName) throws SqlJetException {
         return (Boolean) db.runReadTransaction(new ISqlJetTransaction() {
             public Object run(SqlJetDb db) throws SqlJetException {
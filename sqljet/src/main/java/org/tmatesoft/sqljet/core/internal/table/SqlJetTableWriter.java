@@ -0,0 +1,205 @@
+/**
+ * SqlJetTableWriter.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.table;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetRowBuffer;
+import org.tmatesoft.sqljet.core.schema.SqlJetConflictAction;
+import org.tmatesoft.sqljet.core.table.ISqlJetRunnableWithLock;
+import org.tmatesoft.sqljet.core.table.ISqlJetTableWriter;
+import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
+import org.tmatesoft.sqljet.core.table.SqlJetDb;
+import org.tmatesoft.sqljet.core.table.engine.ISqlJetEngineTransactionListener;
+import org.tmatesoft.sqljet.core.table.engine.SqlJetEngine;
+
+/**
+ * Implementation of {@link ISqlJetTableWriter}.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetTableWriter implements ISqlJetTableWriter {
+
+    private final ISqlJetBtreeDataTable table;
+    private final SqlJetDb db;
+    private final SqlJetRowBuffer row;
+
+    /**
+     * Set when writer is closed either by {@link #close()} or by end of its
+     * transaction.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Closes writer when its transaction ends, closing of table also writes
+     * sequence of AUTOINCREMENT table before commit.
+     */
+    private final ISqlJetEngineTransactionListener listener = new ISqlJetEngineTransactionListener() {
+        public void transactionEnding(SqlJetEngine engine, boolean commit) throws SqlJetException {
+            closed = true;
+            table.close();
+        }
+    };
+
+    public SqlJetTableWriter(ISqlJetBtreeDataTable table, SqlJetDb db) throws SqlJetException {
+        this.table = table;
+        this.db = db;
+        this.row = new SqlJetRowBuffer(table.getDefinition().getColumns().size());
+        db.addTransactionListener(listener);
+    }
+
+    /**
+     * Closes writer, it does nothing if writer is already closed, for example
+     * because its transaction has ended.
+     */
+    public void close() throws SqlJetException {
+        db.runWithLock(new ISqlJetRunnableWithLock() {
+            public Object runWithLock(SqlJetDb db) throws SqlJetException {
+                if (!closed) {
+                    closed = true;
+                    db.removeTransactionListener(listener);
+                    table.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    private void checkOpen() throws SqlJetException {
+        if (closed) {
+            throw new SqlJetException(SqlJetErrorCode.MISUSE, "Writer is closed");
+        }
+    }
+
+    private void checkField(int field) throws SqlJetException {
+        checkOpen();
+        if (field < 0 || field >= row.size()) {
+            throw new SqlJetException(SqlJetErrorCode.MISUSE, "Incorrect field number: " + field);
+        }
+    }
+
+    public void setNull(int field) throws SqlJetException {
+        setValue(field, null);
+    }
+
+    public void setInteger(int field, long value) throws SqlJetException {
+        checkField(field);
+        row.setInteger(field, value);
+    }
+
+    public void setFloat(int field, double value) throws SqlJetException {
+        checkField(field);
+        row.setFloat(field, value);
+    }
+
+    public void setBoolean(int field, boolean value) throws SqlJetException {
+        setInteger(field, value ? 1 : 0);
+    }
+
+    public void setString(int field, String value) throws SqlJetException {
+        setValue(field, value);
+    }
+
+    public void setBlob(int field, byte[] value) throws SqlJetException {
+        setValue(field, value);
+    }
+
+    public void setValue(int field, Object value) throws SqlJetException {
+        checkField(field);
+        row.setObject(field, value);
+    }
+
+    public void clearRow() {
+        row.clear();
+    }
+
+    public long insertRow(final SqlJetConflictAction onConflict) throws SqlJetException {
+        try {
+            return (Long) runWriteTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    return table.insertRow(onConflict, row);
+                }
+            });
+        } finally {
+            clearRow();
+        }
+    }
+
+    public void updateRow(final SqlJetConflictAction onConflict, final long rowId) throws SqlJetException {
+        try {
+            update(onConflict, rowId, row.getValues());
+        } finally {
+            clearRow();
+        }
+    }
+
+    public long insert(final SqlJetConflictAction onConflict, final Object... values) throws SqlJetException {
+        return (Long) runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                return table.insert(onConflict, values);
+            }
+        });
+    }
+
+    public long insertWithRowId(final SqlJetConflictAction onConflict, final long rowId, final Object... values)
+            throws SqlJetException {
+        return (Long) runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                return table.insertWithRowId(onConflict, rowId, values);
+            }
+        });
+    }
+
+    public void update(final SqlJetConflictAction onConflict, final long rowId, final Object... values)
+            throws SqlJetException {
+        runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                table.update(onConflict, rowId, values);
+                return null;
+            }
+        });
+    }
+
+    public boolean delete(final long rowId) throws SqlJetException {
+        return (Boolean) runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                if (rowId <= 0 || !table.goToRow(rowId)) {
+                    return false;
+                }
+                table.delete();
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Runs operation in transaction of writer, fails if writer is closed.
+     */
+    private Object runWriteTransaction(final ISqlJetTransaction op) throws SqlJetException {
+        checkOpen();
+        return db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                checkOpen();
+                return op.run(db);
+            }
+        });
+    }
+
+}
@@ -49,17 +49,34 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
     private boolean isIndex;
 
     private int fieldsCount = 0;
-    private List<Integer> aType = new ArrayList<Integer>();
-    private List<Integer> aOffset = new ArrayList<Integer>();
-    private List<ISqlJetVdbeMem> fields = new ArrayList<ISqlJetVdbeMem>();
+    private ISqlJetVdbeMem[] fields;
+
+    /*
+     * Header of record which is read from cursor is parsed lazily, only up to
+     * requested field. aType[i] and aOffset[i] are valid for i < fieldsCount.
+     */
+    private int[] aType;
+    private int[] aOffset;
+    private boolean headerParsed = true;
+    private long payloadSize;
+    private ISqlJetMemoryPointer zHeader;
+    private SqlJetVdbeMem headerMem;
+    private int headerIdx;
+    private int headerEnd;
+    private int dataOffset;
 
     private int file_format = ISqlJetOptions.SQLJET_DEFAULT_FILE_FORMAT;
 
     /**
      * @return the fields
      */
-    public List<ISqlJetVdbeMem> getFields() {
-        return Collections.unmodifiableList(fields);
+    public List<ISqlJetVdbeMem> getFields() throws SqlJetException {
+        final int count = getFieldsCount();
+        final ISqlJetVdbeMem[] result = new ISqlJetVdbeMem[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = getField(i);
+        }
+        return Collections.unmodifiableList(Arrays.asList(result));
     }
 
     public SqlJetBtreeRecord(ISqlJetBtreeCursor cursor, boolean isIndex, int fileFormat) throws SqlJetException {
@@ -70,16 +87,15 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
     }
 
     public SqlJetBtreeRecord(List<ISqlJetVdbeMem> values) {
-        fields.addAll(values);
-        fieldsCount = values.size();
+        initFields(values.toArray(new ISqlJetVdbeMem[values.size()]));
     }
 
     public SqlJetBtreeRecord(ISqlJetVdbeMem... values) {
-        initFields(values);
+        initFields(values.clone());
     }
 
     private void initFields(ISqlJetVdbeMem[] values) {
-        fields.addAll(Arrays.asList(values));
+        fields = values;
         fieldsCount = values.length;
     }
 
@@ -112,7 +128,7 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
             } else if (value instanceof InputStream) {
                 mem.setStr(SqlJetUtility.streamToBuffer((InputStream) value), encoding);
                 mem.setTypeFlag(SqlJetVdbeMemFlags.Blob);
-            } else if ("byte[]".equalsIgnoreCase(value.getClass().getCanonicalName())) {
+            } else if (value instanceof byte[]) {
                 mem.setStr(SqlJetUtility.wrapPtr((byte[]) value), encoding);
                 mem.setTypeFlag(SqlJetVdbeMemFlags.Blob);
             } else if (value instanceof SqlJetMemoryPointer) {
@@ -132,20 +148,110 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
      * @see
      * org.tmatesoft.sqljet.core.internal.vdbe.ISqlJetRecord#getFieldsCount()
      */
-    public int getFieldsCount() {
+    public int getFieldsCount() throws SqlJetException {
+        parseHeader(Integer.MAX_VALUE);
         return fieldsCount;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeRecord#getField
+     * (int)
+     */
+    public ISqlJetVdbeMem getField(int field) throws SqlJetException {
+        if (field < 0) {
+            return null;
+        }
+        parseHeader(field);
+        if (field >= fieldsCount) {
+            return null;
+        }
+        if (fields == null) {
+            fields = new ISqlJetVdbeMem[aType.length];
+        }
+        ISqlJetVdbeMem value = fields[field];
+        if (value == null) {
+            value = fetchField(field);
+            fields[field] = value;
+        }
+        return value;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeRecord#getSerialType
+     * (int)
+     */
+    public int getSerialType(int field) throws SqlJetException {
+        if (field < 0) {
+            return 0;
+        }
+        parseHeader(field);
+        if (field >= fieldsCount) {
+            return 0;
+        }
+        if (aType != null) {
+            return aType[field];
+        }
+        return SqlJetVdbeSerialType.serialType((SqlJetVdbeMem) fields[field], file_format);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeRecord#getRawField
+     * (int)
+     */
+    public ByteBuffer getRawField(int field) throws SqlJetException {
+        final int type = getSerialType(field);
+        if (type < 12) {
+            return null;
+        }
+        final int len = SqlJetVdbeSerialType.serialTypeLen(type);
+        if (aType != null && (fields == null || fields[field] == null)) {
+            cursor.enterCursor();
+            try {
+                final int[] avail = { 0 };
+                final ISqlJetMemoryPointer zData = isIndex ? cursor.keyFetch(avail) : cursor.dataFetch(avail);
+                final int offset = aOffset[field];
+                if (offset + len <= avail[0]) {
+                    final ByteBuffer view = SqlJetUtility.pointer(zData, offset).getByteBuffer(len).slice();
+                    if (view.hasArray()) {
+                        return view.asReadOnlyBuffer();
+                    }
+                    /*
+                     * Page memory off heap is a slot of slab which is reused
+                     * by other page once this one is released, or a mapping
+                     * which is invalid once file is truncated, so it isn't
+                     * exposed.
+                     */
+                    final ByteBuffer copy = ByteBuffer.allocate(len);
+                    copy.put(view).flip();
+                    return copy.asReadOnlyBuffer();
+                }
+            } finally {
+                cursor.leaveCursor();
+            }
+        }
+        /* Value is read already or it spills to overflow pages. */
+        final SqlJetVdbeMem mem = (SqlJetVdbeMem) getField(field);
+        return mem.z.getByteBuffer(len).slice().asReadOnlyBuffer();
+    }
+
     /**
-     * Read and parse the table header. Store the results of the parse into the
-     * record header cache fields of the cursor.
+     * Reads size of the record header and prepares lazy parse of the header.
+     * Types and offsets of fields are read by
+     * {@link #parseHeader(int)} when they are requested.
      * 
      * @throws SqlJetException
      */
     private void read() throws SqlJetException {
 
-        long payloadSize; /* Number of bytes in the record */
-
         cursor.enterCursor();
         try {
             /*
@@ -162,23 +268,11 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
                 return;
             }
 
-            int i; /* Loop counter */
             ISqlJetMemoryPointer zData; /* Part of the record being decoded */
-            /* For storing the record being decoded */
-            SqlJetVdbeMem sMem = SqlJetVdbeMem.obtainInstance();
-
-            ISqlJetMemoryPointer zIdx; /* Index into header */
-            ISqlJetMemoryPointer zEndHdr; /*
-                                           * Pointer to first byte after the
-                                           * header
-                                           */
-            int[] offset = { 0 }; /* Offset into the data */
+            int offset; /* Offset into the data */
             int szHdrSz; /* Size of the header size field at start of record */
             int[] avail = { 0 }; /* Number of bytes of available data */
 
-            assert (aType != null);
-            assert (aOffset != null);
-
             /* Figure out how many bytes are in the header */
             if (isIndex) {
                 zData = cursor.keyFetch(avail);
@@ -190,7 +284,9 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
              * database file has been corrupted externally.* assert( zRec!=0 ||
              * avail>=payloadSize || avail>=9 );
              */
-            szHdrSz = SqlJetUtility.getVarint32(zData, offset);
+            final long hdr = SqlJetUtility.getVarint32Packed(zData, 0);
+            offset = SqlJetUtility.unpackVarintValue(hdr);
+            szHdrSz = SqlJetUtility.unpackVarintLength(hdr);
 
             /*
              * The KeyFetch() or DataFetch() above are fast and will get the
@@ -199,47 +295,79 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
              * a single page* in the B-Tree. When that happens, use
              * sqlite3VdbeMemFromBtree() to* acquire the complete header text.
              */
-            if (avail[0] < offset[0]) {
-                sMem.fromBtree(cursor, 0, offset[0], isIndex);
-                zData = sMem.z;
+            if (avail[0] < offset) {
+                headerMem = SqlJetVdbeMem.obtainInstance();
+                headerMem.fromBtree(cursor, 0, offset, isIndex);
+                zData = headerMem.z;
             }
-            zEndHdr = SqlJetUtility.pointer(zData, offset[0]);
-            zIdx = SqlJetUtility.pointer(zData, szHdrSz);
 
             /*
-             * Scan the header and use it to fill in the aType[] and aOffset[]*
-             * arrays. aType[i] will contain the type integer for the i-th*
-             * column and aOffset[i] will contain the offset from the beginning*
-             * of the record to the start of the data for the i-th column
+             * Every serial type takes at least one byte, so size of header
+             * limits count of fields.
              */
-            fieldsCount = 0;
-            for (i = 0; i < ISqlJetLimits.SQLJET_MAX_COLUMN && zIdx.getPointer() < zEndHdr.getPointer()
-                    && offset[0] <= payloadSize; i++, fieldsCount++) {
-                aOffset.add(i, offset[0]);
-                int[] a = { 0 };
-                SqlJetUtility.movePtr(zIdx, SqlJetUtility.getVarint32(zIdx, a));
-                aType.add(i, a[0]);
-                offset[0] += SqlJetVdbeSerialType.serialTypeLen(a[0]);
+            final int maxFields = Math.max(0, Math.min(offset - szHdrSz, ISqlJetLimits.SQLJET_MAX_COLUMN));
+            aType = new int[maxFields];
+            aOffset = new int[maxFields];
+            zHeader = zData;
+            headerIdx = szHdrSz;
+            headerEnd = offset;
+            dataOffset = offset;
+            headerParsed = false;
 
-                fields.add(i, getField(i));
+        } finally {
+            cursor.leaveCursor();
+        }
+    }
 
+    /**
+     * Scans the header until type and offset of given field are known, or
+     * until end of header. aType[i] will contain the type integer for the i-th
+     * column and aOffset[i] will contain the offset from the beginning of the
+     * record to the start of the data for the i-th column.
+     * 
+     * @param field
+     *            highest field which is required.
+     * @throws SqlJetException
+     */
+    private void parseHeader(int field) throws SqlJetException {
+        if (headerParsed || field < fieldsCount) {
+            return;
+        }
+        while (fieldsCount <= field) {
+            if (fieldsCount >= aType.length || headerIdx >= headerEnd || dataOffset > payloadSize) {
+                headerParsed = true;
+                break;
             }
-            sMem.release();
-
-            /*
-             * If we have read more header data than was contained in the
-             * header,* or if the end of the last field appears to be past the
-             * end of the* record, or if the end of the last field appears to be
-             * before the end* of the record (when all fields present), then we
-             * must be dealing* with a corrupt database.
-             */
-            if (zIdx.getPointer() > zEndHdr.getPointer() || offset[0] > payloadSize
-                    || (zIdx.getPointer() == zEndHdr.getPointer() && offset[0] != payloadSize)) {
+            aOffset[fieldsCount] = dataOffset;
+            final long a = SqlJetUtility.getVarint32Packed(zHeader, headerIdx);
+            headerIdx += SqlJetUtility.unpackVarintLength(a);
+            final int type = SqlJetUtility.unpackVarintValue(a);
+            aType[fieldsCount++] = type;
+            dataOffset += SqlJetVdbeSerialType.serialTypeLen(type);
+        }
+        if (!headerParsed) {
+            if (dataOffset > payloadSize) {
                 throw new SqlJetException(SqlJetErrorCode.CORRUPT);
             }
+            return;
+        }
 
-        } finally {
-            cursor.leaveCursor();
+        zHeader = null;
+        if (headerMem != null) {
+            headerMem.release();
+            headerMem = null;
+        }
+
+        /*
+         * If we have read more header data than was contained in the header,*
+         * or if the end of the last field appears to be past the end of the*
+         * record, or if the end of the last field appears to be before the
+         * end* of the record (when all fields present), then we must be
+         * dealing* with a corrupt database.
+         */
+        if (headerIdx > headerEnd || dataOffset > payloadSize
+                || (headerIdx == headerEnd && dataOffset != payloadSize)) {
+            throw new SqlJetException(SqlJetErrorCode.CORRUPT);
         }
     }
 
@@ -271,7 +399,7 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
      * @param pDest
      * @throws SqlJetException
      */
-    private ISqlJetVdbeMem getField(int column) throws SqlJetException {
+    private ISqlJetVdbeMem fetchField(int column) throws SqlJetException {
 
         long payloadSize; /* Number of bytes in the record */
         int len; /* The length of the serialized data for the column */
@@ -306,11 +434,11 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
              * request. In this case, set the value NULL or to P4 if P4 is* a
              * pointer to a Mem object.
              */
-            final Integer aOffsetColumn = aOffset.get(column);
-            final Integer aTypeColumn = aType.get(column);
-            if (aOffsetColumn != null && aTypeColumn != null && aOffsetColumn != 0) {
+            final int aOffsetColumn = aOffset[column];
+            final int aTypeColumn = aType[column];
+            if (aOffsetColumn != 0) {
                 len = SqlJetVdbeSerialType.serialTypeLen(aTypeColumn);
-                sMem.fromBtree(cursor, aOffset.get(column), len, isIndex);
+                sMem.fromBtree(cursor, aOffsetColumn, len, isIndex);
                 zData = sMem.z;
                 SqlJetVdbeSerialType.serialGet(zData, aTypeColumn, pDest);
                 pDest.enc = cursor.getCursorDb().getOptions().getEncoding();
@@ -350,7 +478,7 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
      * @see org.tmatesoft.sqljet.core.ISqlJetRecord#getStringField(int)
      */
     public String getStringField(int field, SqlJetEncoding enc) throws SqlJetException {
-        final ISqlJetVdbeMem f = fields.get(field);
+        final ISqlJetVdbeMem f = getField(field);
         if (null == f)
             return null;
         final ISqlJetMemoryPointer v = f.valueText(enc);
@@ -364,8 +492,8 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
      * 
      * @see org.tmatesoft.sqljet.core.ISqlJetRecord#getIntField(int)
      */
-    public long getIntField(int field) {
-        final ISqlJetVdbeMem f = fields.get(field);
+    public long getIntField(int field) throws SqlJetException {
+        final ISqlJetVdbeMem f = getField(field);
         if (null == f)
             return 0;
         return f.intValue();
@@ -378,8 +506,8 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
      * org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeRecord#getRealField
      * (int)
      */
-    public double getRealField(int field) {
-        final ISqlJetVdbeMem f = fields.get(field);
+    public double getRealField(int field) throws SqlJetException {
+        final ISqlJetVdbeMem f = getField(field);
         if (null == f)
             return 0;
         return f.realValue();
@@ -406,7 +534,8 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
      * field is also a varint which is the offset from the beginning of the
      * record to data0.
      */
-    public ISqlJetMemoryPointer getRawRecord() {
+    public ISqlJetMemoryPointer getRawRecord() throws SqlJetException {
+        final List<ISqlJetVdbeMem> fields = getFields();
         /* A buffer to hold the data for the new record */
         ISqlJetMemoryPointer zNewRecord;
         int nData = 0; /* Number of bytes of data space */
@@ -478,8 +607,16 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
     }
 
     public void release() {
-        for (ISqlJetVdbeMem field : fields) {
-            field.release();
+        if (fields != null) {
+            for (ISqlJetVdbeMem field : fields) {
+                if (field != null) {
+                    field.release();
+                }
+            }
+        }
+        if (headerMem != null) {
+            headerMem.release();
+            headerMem = null;
         }
     }
 }
@@ -50,35 +50,57 @@ public class SqlJetKeyInfo implements ISqlJetKeyInfo {
     ISqlJetCollSeq[] aColl;
 
     public SqlJetUnpackedRecord recordUnpack(int nKey, ISqlJetMemoryPointer pKey) {
+        SqlJetUnpackedRecord p = new SqlJetUnpackedRecord();
+        p.flags = SqlJetUtility.of(SqlJetUnpackedRecordFlags.NEED_DESTROY);
+        return recordUnpack(nKey, pKey, p);
+    }
+
+    /**
+     * Unpacks record into given unpacked record, which values are reused, so
+     * record could be unpacked many times without allocations. Flags of
+     * unpacked record are kept.
+     * 
+     * @param nKey
+     * @param pKey
+     * @param p
+     * @return p
+     */
+    public SqlJetUnpackedRecord recordUnpack(int nKey, ISqlJetMemoryPointer pKey, SqlJetUnpackedRecord p) {
         SqlJetKeyInfo pKeyInfo = this;
         int d;
         int idx;
         int u;
-        int[] szHdr = new int[1];
+        int szHdr;
+        int serial_type;
         SqlJetVdbeMem[] pMem;
 
-        SqlJetUnpackedRecord p = new SqlJetUnpackedRecord();
-
-        p.flags = SqlJetUtility.of(SqlJetUnpackedRecordFlags.NEED_DESTROY);
         p.pKeyInfo = pKeyInfo;
         p.nField = pKeyInfo.nField + 1;
-        p.aMem = pMem = new SqlJetVdbeMem[p.nField];
-        idx = SqlJetUtility.getVarint32(pKey, szHdr);
-        d = szHdr[0];
+        if (p.aMem == null || p.aMem.length < p.nField) {
+            p.release();
+            p.aMem = new SqlJetVdbeMem[p.nField];
+        }
+        pMem = p.aMem;
+        final long hdr = SqlJetUtility.getVarint32Packed(pKey, 0);
+        idx = SqlJetUtility.unpackVarintLength(hdr);
+        szHdr = SqlJetUtility.unpackVarintValue(hdr);
+        d = szHdr;
         u = 0;
 
-        while (idx < szHdr[0] && u < p.nField) {
-            int[] serial_type = new int[1];
-
-            idx += SqlJetUtility.getVarint32(SqlJetUtility.pointer(pKey, idx), serial_type);
-            if (d >= nKey && SqlJetVdbeSerialType.serialTypeLen(serial_type[0]) > 0)
+        while (idx < szHdr && u < p.nField) {
+            final long v = SqlJetUtility.getVarint32Packed(pKey, idx);
+            idx += SqlJetUtility.unpackVarintLength(v);
+            serial_type = SqlJetUtility.unpackVarintValue(v);
+            if (d >= nKey && SqlJetVdbeSerialType.serialTypeLen(serial_type) > 0)
                 break;
-            pMem[u] = SqlJetVdbeMem.obtainInstance();
+            if (pMem[u] == null) {
+                pMem[u] = SqlJetVdbeMem.obtainInstance();
+            }
             pMem[u].enc = pKeyInfo.enc;
             pMem[u].db = pKeyInfo.db;
             pMem[u].flags = SqlJetUtility.noneOf(SqlJetVdbeMemFlags.class);
             pMem[u].zMalloc = null;
-            d += SqlJetVdbeSerialType.serialGet(SqlJetUtility.pointer(pKey, d), serial_type[0], pMem[u]);
+            d += SqlJetVdbeSerialType.serialGet(SqlJetUtility.pointer(pKey, d), serial_type, pMem[u]);
             u++;
         }
         assert (u <= pKeyInfo.nField + 1);
@@ -0,0 +1,409 @@
+/**
+ * SqlJetRecordEncoder.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.vdbe;
+
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+import org.tmatesoft.sqljet.core.SqlJetEncoding;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetLimits;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.table.ISqlJetOptions;
+
+/**
+ * Serializes values straight into record format, without building
+ * {@link SqlJetVdbeMem} for each value as
+ * {@link SqlJetBtreeRecord#getRecord(SqlJetEncoding, Object...)} does.
+ * Produces exactly same bytes as
+ * {@link SqlJetBtreeRecord#getRawRecord()} of such record.
+ *
+ * <p>
+ * Encoded record is written into buffer which is owned by encoder and is
+ * reused by next call of encode, so record should be consumed (for example
+ * passed to {@link org.tmatesoft.sqljet.core.internal.ISqlJetBtreeCursor#insert}
+ * which copies it into page) before encoder is used again. Encoder isn't
+ * thread-safe.
+ * </p>
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetRecordEncoder {
+
+    private static final int INITIAL_SIZE = 256;
+
+    private static final long MAX_6BYTE = ((((long) 0x00008000) << 32) - 1);
+
+    private final int fileFormat;
+
+    private ISqlJetMemoryPointer buffer;
+    private int size;
+
+    private int[] types = new int[16];
+    private Object[] converted = new Object[16];
+
+    public SqlJetRecordEncoder() {
+        this(ISqlJetOptions.SQLJET_DEFAULT_FILE_FORMAT);
+    }
+
+    public SqlJetRecordEncoder(int fileFormat) {
+        this.fileFormat = fileFormat;
+    }
+
+    /**
+     * @return buffer which holds last encoded record from its start.
+     */
+    public ISqlJetMemoryPointer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return size in bytes of last encoded record.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Encodes values into record.
+     *
+     * @param encoding
+     *            encoding of text values.
+     * @param values
+     *            values of record.
+     * @return buffer which holds record, its size is {@link #getSize()}.
+     * @throws SqlJetException
+     */
+    public ISqlJetMemoryPointer encode(SqlJetEncoding encoding, Object... values) throws SqlJetException {
+        return encode(encoding, values, null, -1, values.length, 0);
+    }
+
+    /**
+     * Encodes values of row buffer into record, integer and float values are
+     * written from their primitive slots.
+     *
+     * @param encoding
+     *            encoding of text values.
+     * @param row
+     *            values of record.
+     * @param nullField
+     *            number of field which is encoded as NULL whatever its value
+     *            is, for example INTEGER PRIMARY KEY column, or -1.
+     * @return buffer which holds record, its size is {@link #getSize()}.
+     * @throws SqlJetException
+     */
+    public ISqlJetMemoryPointer encode(SqlJetEncoding encoding, SqlJetRowBuffer row, int nullField)
+            throws SqlJetException {
+        return encode(encoding, null, row, nullField, row.size(), 0);
+    }
+
+    /**
+     * Encodes key of index entry, that is key values followed by rowId.
+     *
+     * @param encoding
+     *            encoding of text values.
+     * @param key
+     *            values of key.
+     * @param rowId
+     *            rowId which is the last field of record.
+     * @return buffer which holds record, its size is {@link #getSize()}.
+     * @throws SqlJetException
+     */
+    public ISqlJetMemoryPointer encodeKey(SqlJetEncoding encoding, Object[] key, long rowId)
+            throws SqlJetException {
+        return encode(encoding, key, null, -1, key.length + 1, rowId);
+    }
+
+    /**
+     * Values are taken either from array or from row buffer. Fields at
+     * positions from count of values up to count are rowId.
+     */
+    private ISqlJetMemoryPointer encode(SqlJetEncoding encoding, Object[] values, SqlJetRowBuffer row,
+            int nullField, int count, long rowId) throws SqlJetException {
+        if (types.length < count) {
+            types = new int[Math.max(count, types.length * 2)];
+            converted = new Object[types.length];
+        }
+        final boolean utf8 = encoding == SqlJetEncoding.UTF8;
+        final int n = row != null ? row.size() : values.length;
+
+        int nHdr = 0;
+        int nData = 0;
+        try {
+            for (int i = 0; i < count; i++) {
+                final int serialType;
+                if (i >= n) {
+                    serialType = intSerialType(rowId);
+                } else if (row == null) {
+                    serialType = serialType(values[i], i, encoding, utf8);
+                } else if (i == nullField) {
+                    serialType = 0;
+                } else if (row.isInteger(i)) {
+                    serialType = intSerialType(row.getInteger(i));
+                } else if (row.isFloat(i)) {
+                    serialType = Double.isNaN(row.getFloat(i)) ? 0 : 7;
+                } else {
+                    serialType = serialType(row.getValue(i), i, encoding, utf8);
+                }
+                types[i] = serialType;
+                nHdr += SqlJetUtility.varintLen(serialType);
+                nData += SqlJetVdbeSerialType.serialTypeLen(serialType);
+            }
+
+            final int nVarint = SqlJetUtility.varintLen(nHdr);
+            nHdr += nVarint;
+            if (nVarint < SqlJetUtility.varintLen(nHdr)) {
+                nHdr++;
+            }
+            size = nHdr + nData;
+            ensureCapacity(size);
+
+            int i = SqlJetUtility.putVarint32(buffer, nHdr);
+            for (int f = 0; f < count; f++) {
+                i += putVarint32(i, types[f]);
+            }
+            for (int f = 0; f < count; f++) {
+                if (f >= n) {
+                    i = putNumber(i, types[f], rowId);
+                } else if (row == null) {
+                    i = putValue(i, types[f], values[f], f, utf8);
+                } else if (f == nullField) {
+                    i = putValue(i, types[f], null, f, utf8);
+                } else if (row.isInteger(f)) {
+                    i = putNumber(i, types[f], row.getInteger(f));
+                } else if (row.isFloat(f)) {
+                    i = putNumber(i, types[f], Double.doubleToLongBits(row.getFloat(f)));
+                } else {
+                    i = putValue(i, types[f], row.getValue(f), f, utf8);
+                }
+            }
+            assert (i == size);
+            return buffer;
+        } finally {
+            for (int i = 0; i < count; i++) {
+                converted[i] = null;
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (buffer == null || buffer.remaining() < capacity) {
+            int newSize = buffer == null ? INITIAL_SIZE : buffer.remaining();
+            while (newSize < capacity) {
+                newSize *= 2;
+            }
+            buffer = SqlJetUtility.allocatePtr(newSize);
+        }
+    }
+
+    private int serialType(Object value, int i, SqlJetEncoding encoding, boolean utf8) throws SqlJetException {
+        if (null == value) {
+            return 0;
+        } else if (value instanceof String) {
+            final int n;
+            if (utf8) {
+                n = utf8Length((String) value);
+            } else {
+                final byte[] bytes = getBytes((String) value, encoding);
+                converted[i] = bytes;
+                n = bytes.length;
+            }
+            return textSerialType(n, true);
+        } else if (value instanceof Long) {
+            return intSerialType(((Long) value).longValue());
+        } else if (value instanceof Integer) {
+            return intSerialType(((Integer) value).intValue());
+        } else if (value instanceof Double) {
+            return Double.isNaN(((Double) value).doubleValue()) ? 0 : 7;
+        } else if (value instanceof byte[]) {
+            return textSerialType(((byte[]) value).length, false);
+        } else if (value instanceof Boolean) {
+            return intSerialType(((Boolean) value).booleanValue() ? 1 : 0);
+        } else if (value instanceof Short) {
+            return intSerialType(((Short) value).shortValue());
+        } else if (value instanceof Byte) {
+            return intSerialType(((Byte) value).byteValue());
+        } else if (value instanceof Float) {
+            return Float.isNaN(((Float) value).floatValue()) ? 0 : 7;
+        } else if (value instanceof ByteBuffer) {
+            return pointerSerialType(SqlJetUtility.fromByteBuffer((ByteBuffer) value), i);
+        } else if (value instanceof InputStream) {
+            return pointerSerialType(SqlJetUtility.streamToBuffer((InputStream) value), i);
+        } else if (value instanceof SqlJetMemoryPointer) {
+            return pointerSerialType((SqlJetMemoryPointer) value, i);
+        } else {
+            throw new SqlJetException(SqlJetErrorCode.MISUSE, "Bad value #" + i + " " + value.toString());
+        }
+    }
+
+    private int pointerSerialType(ISqlJetMemoryPointer p, int i) throws SqlJetException {
+        converted[i] = p;
+        return textSerialType(p.remaining(), false);
+    }
+
+    private static int textSerialType(int n, boolean text) throws SqlJetException {
+        if (n > ISqlJetLimits.SQLJET_MAX_LENGTH) {
+            throw new SqlJetException(SqlJetErrorCode.TOOBIG);
+        }
+        return n * 2 + 12 + (text ? 1 : 0);
+    }
+
+    /**
+     * Same as {@link SqlJetVdbeSerialType#serialType(SqlJetVdbeMem, int)} for
+     * integer values.
+     */
+    private int intSerialType(long i) {
+        if (fileFormat >= 4 && (i & 1) == i) {
+            return 8 + (int) i;
+        }
+        final long u = SqlJetUtility.absolute(i);
+        if (u <= 127)
+            return 1;
+        if (u <= 32767)
+            return 2;
+        if (u <= 8388607)
+            return 3;
+        if (u <= 2147483647)
+            return 4;
+        if (u <= MAX_6BYTE)
+            return 5;
+        return 6;
+    }
+
+    private int putValue(int i, int serialType, Object value, int f, boolean utf8) {
+        if (serialType == 0 || serialType == 8 || serialType == 9) {
+            return i;
+        } else if (serialType <= 7) {
+            final long v;
+            if (serialType == 7) {
+                v = Double.doubleToLongBits(((Number) value).doubleValue());
+            } else if (value instanceof Boolean) {
+                v = ((Boolean) value).booleanValue() ? 1 : 0;
+            } else {
+                v = ((Number) value).longValue();
+            }
+            return putNumber(i, serialType, v);
+        }
+        final int len = SqlJetVdbeSerialType.serialTypeLen(serialType);
+        final Object c = converted[f];
+        if (c instanceof ISqlJetMemoryPointer) {
+            buffer.copyFrom(i, (ISqlJetMemoryPointer) c, 0, len);
+        } else if (c instanceof byte[]) {
+            buffer.putBytes(i, (byte[]) c, len);
+        } else if (value instanceof byte[]) {
+            buffer.putBytes(i, (byte[]) value, len);
+        } else {
+            assert (utf8);
+            putUtf8(i, (String) value);
+        }
+        return i + len;
+    }
+
+    /**
+     * Writes integer, or bits of float for serial type 7.
+     */
+    private int putNumber(int i, int serialType, long v) {
+        if (serialType == 0 || serialType == 8 || serialType == 9) {
+            return i;
+        }
+        final int len = SqlJetVdbeSerialType.serialTypeLen(serialType);
+        for (int k = len - 1; k >= 0; k--) {
+            buffer.putByteUnsigned(i + k, (int) v);
+            v >>>= 8;
+        }
+        return i + len;
+    }
+
+    private int putVarint32(int i, int v) {
+        if (v < 0x80) {
+            buffer.putByteUnsigned(i, v);
+            return 1;
+        }
+        return SqlJetUtility.putVarint32(SqlJetUtility.pointer(buffer, i), v);
+    }
+
+    private static byte[] getBytes(String s, SqlJetEncoding encoding) throws SqlJetException {
+        try {
+            return s.getBytes(encoding.getCharsetName());
+        } catch (UnsupportedEncodingException e) {
+            throw new SqlJetException(SqlJetErrorCode.MISUSE, "Unknown charset " + encoding.name());
+        }
+    }
+
+    /**
+     * @return length of string in UTF-8, where unpaired surrogates are
+     *         replaced by '?' same way as by {@link String#getBytes(String)}.
+     */
+    private static int utf8Length(String s) {
+        final int length = s.length();
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                n++;
+            } else if (c < 0x800) {
+                n += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                if (i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    n += 4;
+                    i++;
+                } else {
+                    n++;
+                }
+            } else if (Character.isLowSurrogate(c)) {
+                n++;
+            } else {
+                n += 3;
+            }
+        }
+        return n;
+    }
+
+    private void putUtf8(int i, String s) {
+        final int length = s.length();
+        for (int k = 0; k < length; k++) {
+            final char c = s.charAt(k);
+            if (c < 0x80) {
+                buffer.putByteUnsigned(i++, c);
+            } else if (c < 0x800) {
+                buffer.putByteUnsigned(i++, 0xc0 | (c >> 6));
+                buffer.putByteUnsigned(i++, 0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && k + 1 < length
+                    && Character.isLowSurrogate(s.charAt(k + 1))) {
+                final int v = Character.toCodePoint(c, s.charAt(++k));
+                buffer.putByteUnsigned(i++, 0xf0 | (v >> 18));
+                buffer.putByteUnsigned(i++, 0x80 | ((v >> 12) & 0x3f));
+                buffer.putByteUnsigned(i++, 0x80 | ((v >> 6) & 0x3f));
+                buffer.putByteUnsigned(i++, 0x80 | (v & 0x3f));
+            } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                buffer.putByteUnsigned(i++, '?');
+            } else {
+                buffer.putByteUnsigned(i++, 0xe0 | (c >> 12));
+                buffer.putByteUnsigned(i++, 0x80 | ((c >> 6) & 0x3f));
+                buffer.putByteUnsigned(i++, 0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+/**
+ * SqlJetRowBuffer.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.vdbe;
+
+import java.util.Arrays;
+
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * Values of row which are set field by field. Integer and float values are
+ * kept in primitive slots, so they are not boxed and
+ * {@link SqlJetRecordEncoder#encode(org.tmatesoft.sqljet.core.SqlJetEncoding, SqlJetRowBuffer, int)}
+ * writes them into record straight from these slots. Other values are kept
+ * as objects, in same form as in arrays of values passed to insert.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetRowBuffer {
+
+    private static final byte OBJECT = 0;
+    private static final byte INTEGER = 1;
+    private static final byte FLOAT = 2;
+
+    private final byte[] kinds;
+    private final long[] integers;
+    private final double[] floats;
+    private final Object[] objects;
+
+    public SqlJetRowBuffer(int size) {
+        kinds = new byte[size];
+        integers = new long[size];
+        floats = new double[size];
+        objects = new Object[size];
+    }
+
+    /**
+     * @return count of fields.
+     */
+    public int size() {
+        return kinds.length;
+    }
+
+    public void setInteger(int field, long value) {
+        kinds[field] = INTEGER;
+        integers[field] = value;
+        objects[field] = null;
+    }
+
+    public void setFloat(int field, double value) {
+        kinds[field] = FLOAT;
+        floats[field] = value;
+        objects[field] = null;
+    }
+
+    /**
+     * Sets value of any type which is accepted by insert, numbers are
+     * adjusted as {@link SqlJetUtility#adjustNumberType(Object)} does.
+     */
+    public void setObject(int field, Object value) {
+        kinds[field] = OBJECT;
+        objects[field] = SqlJetUtility.adjustNumberType(value);
+    }
+
+    public boolean isInteger(int field) {
+        return kinds[field] == INTEGER;
+    }
+
+    public boolean isFloat(int field) {
+        return kinds[field] == FLOAT;
+    }
+
+    public boolean isNull(int field) {
+        return kinds[field] == OBJECT && objects[field] == null;
+    }
+
+    /**
+     * @return value of integer slot, valid if {@link #isInteger(int)}.
+     */
+    public long getInteger(int field) {
+        return integers[field];
+    }
+
+    /**
+     * @return value of float slot, valid if {@link #isFloat(int)}.
+     */
+    public double getFloat(int field) {
+        return floats[field];
+    }
+
+    /**
+     * @return value of field, integer and float values are boxed.
+     */
+    public Object getValue(int field) {
+        switch (kinds[field]) {
+        case INTEGER:
+            return Long.valueOf(integers[field]);
+        case FLOAT:
+            return Double.valueOf(floats[field]);
+        default:
+            return objects[field];
+        }
+    }
+
+    /**
+     * @return new array of all values, integer and float values are boxed.
+     */
+    public Object[] getValues() {
+        final Object[] values = new Object[kinds.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getValue(i);
+        }
+        return values;
+    }
+
+    /**
+     * Sets all fields to NULL.
+     */
+    public void clear() {
+        Arrays.fill(kinds, OBJECT);
+        Arrays.fill(objects, null);
+    }
+
+}
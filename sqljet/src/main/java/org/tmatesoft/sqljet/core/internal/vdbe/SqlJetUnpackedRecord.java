@@ -81,7 +81,7 @@ public class SqlJetUnpackedRecord implements ISqlJetUnpackedRecord {
 
         int d1; /* Offset into aKey[] of next data element */
         int idx1; /* Offset into aKey[] of next header element */
-        int[] szHdr1 = new int[1]; /* Number of bytes in header */
+        int szHdr1; /* Number of bytes in header */
         int i = 0;
         int nField;
         int rc = 0;
@@ -94,24 +94,26 @@ public class SqlJetUnpackedRecord implements ISqlJetUnpackedRecord {
         mem1.flags = SqlJetUtility.noneOf(SqlJetVdbeMemFlags.class);
         mem1.zMalloc = null;
 
-        idx1 = SqlJetUtility.getVarint32(pKey1, szHdr1);
-        d1 = szHdr1[0];
+        final long hdr = SqlJetUtility.getVarint32Packed(pKey1, 0);
+        idx1 = SqlJetUtility.unpackVarintLength(hdr);
+        szHdr1 = SqlJetUtility.unpackVarintValue(hdr);
+        d1 = szHdr1;
         if (pPKey2.flags.contains(SqlJetUnpackedRecordFlags.IGNORE_ROWID)) {
-            szHdr1[0]--;
+            szHdr1--;
         }
         nField = pKeyInfo.nField;
-        while (idx1 < szHdr1[0] && i < pPKey2.nField) {
-            int[] serial_type1 = new int[1];
-
+        while (idx1 < szHdr1 && i < pPKey2.nField) {
             /* Read the serial types for the next element in each key. */
-            idx1 += SqlJetUtility.getVarint32(pKey1, idx1, serial_type1);
-            if (d1 >= nKey1 && SqlJetVdbeSerialType.serialTypeLen(serial_type1[0]) > 0)
+            final long v = SqlJetUtility.getVarint32Packed(pKey1, idx1);
+            idx1 += SqlJetUtility.unpackVarintLength(v);
+            final int serial_type1 = SqlJetUtility.unpackVarintValue(v);
+            if (d1 >= nKey1 && SqlJetVdbeSerialType.serialTypeLen(serial_type1) > 0)
                 break;
 
             /*
              * Extract the values to be compared.
              */
-            d1 += SqlJetVdbeSerialType.serialGet(pKey1, d1, serial_type1[0], mem1);
+            d1 += SqlJetVdbeSerialType.serialGet(pKey1, d1, serial_type1, mem1);
 
             /*
              * Do the comparison
@@ -138,7 +140,7 @@ public class SqlJetUnpackedRecord implements ISqlJetUnpackedRecord {
                 rc = -1;
             } else if (pPKey2.flags.contains(SqlJetUnpackedRecordFlags.PREFIX_MATCH)) {
                 /* Leave rc==0 */
-            } else if (idx1 < szHdr1[0]) {
+            } else if (idx1 < szHdr1) {
                 rc = 1;
             }
         } else if (pKeyInfo.aSortOrder != null && i < pKeyInfo.nField && pKeyInfo.aSortOrder[i]) {
@@ -109,10 +109,8 @@ public class SqlJetVdbeMem extends SqlJetCloneable implements ISqlJetVdbeMem {
     /** Dynamic buffer allocated by sqlite3_malloc() */
     ISqlJetMemoryPointer zMalloc;
 
-    public static final SqlJetVdbeMemPool pool = new SqlJetVdbeMemPool();
-    
     public static SqlJetVdbeMem obtainInstance() {
-        return pool.obtain();
+        return SqlJetVdbeMemPool.getThreadPool().obtain();
     }
 
     SqlJetVdbeMem(SqlJetVdbeMemPool pool) {
@@ -146,7 +144,7 @@ public class SqlJetVdbeMem extends SqlJetCloneable implements ISqlJetVdbeMem {
         enc = null;
         xDel = null;
         zMalloc = null;
-        pool.release(this);
+        SqlJetVdbeMemPool.getThreadPool().release(this);
     }
 
     /**
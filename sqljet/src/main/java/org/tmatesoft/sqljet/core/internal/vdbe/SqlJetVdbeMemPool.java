@@ -1,38 +1,174 @@
 package org.tmatesoft.sqljet.core.internal.vdbe;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * Pool of {@link SqlJetVdbeMem} instances. Each thread has its own pool, so
+ * obtaining and releasing doesn't need any synchronization. Instance which
+ * is released by other thread than it was obtained goes to pool of
+ * releasing thread.
+ *
+ * <p>
+ * Size of each pool is limited by system property
+ * {@link #SQLJET_VDBE_MEM_POOL_SIZE}, zero disables pooling.
+ * </p>
+ */
 public class SqlJetVdbeMemPool {
-    
-    private static final int MAX_POOL_SIZE = 1024;
-    
-    private Queue<SqlJetVdbeMem> queue = new LinkedList<SqlJetVdbeMem>();
-    public static int obtained = 0;
-    public static int released = 0;
-    public static int created = 0;
-    
-    public synchronized SqlJetVdbeMem obtain() {
+
+    public static final String SQLJET_VDBE_MEM_POOL_SIZE = "SQLJET_VDBE_MEM_POOL_SIZE";
+
+    private static final int MAX_POOL_SIZE = SqlJetUtility.getIntSysProp(SQLJET_VDBE_MEM_POOL_SIZE, 1024);
+
+    private static final ThreadLocal<SqlJetVdbeMemPool> threadPool = new ThreadLocal<SqlJetVdbeMemPool>() {
+        @Override
+        protected SqlJetVdbeMemPool initialValue() {
+            final SqlJetVdbeMemPool pool = new SqlJetVdbeMemPool();
+            register(pool);
+            return pool;
+        }
+    };
+
+    /*
+     * Pools of all threads, only to gather statistics. Pool of finished
+     * thread is collected as garbage together with its counters.
+     */
+    private static final List<WeakReference<SqlJetVdbeMemPool>> pools = new ArrayList<WeakReference<SqlJetVdbeMemPool>>();
+    private static final ReentrantLock poolsLock = new ReentrantLock();
+
+    /* grows up to MAX_POOL_SIZE, threads which use few instances keep few. */
+    private SqlJetVdbeMem[] stack = new SqlJetVdbeMem[Math.min(16, MAX_POOL_SIZE)];
+    private int size;
+
+    private long obtained;
+    private long released;
+    private long created;
+
+    /**
+     * @return pool of current thread.
+     */
+    public static SqlJetVdbeMemPool getThreadPool() {
+        return threadPool.get();
+    }
+
+    private static void register(SqlJetVdbeMemPool pool) {
+        poolsLock.lock();
+        try {
+            for (final Iterator<WeakReference<SqlJetVdbeMemPool>> i = pools.iterator(); i.hasNext();) {
+                if (i.next().get() == null) {
+                    i.remove();
+                }
+            }
+            pools.add(new WeakReference<SqlJetVdbeMemPool>(pool));
+        } finally {
+            poolsLock.unlock();
+        }
+    }
+
+    public SqlJetVdbeMem obtain() {
         obtained++;
-        if (!queue.isEmpty()) {
-            return queue.remove();
+        if (size > 0) {
+            final SqlJetVdbeMem mem = stack[--size];
+            stack[size] = null;
+            return mem;
         } else {
             created++;
             return new SqlJetVdbeMem(this);
         }
     }
-    
-    public synchronized void release(SqlJetVdbeMem mem) {
+
+    public void release(SqlJetVdbeMem mem) {
         released++;
-        if (queue.size() < MAX_POOL_SIZE) {
-            queue.add(mem);
+        if (size == stack.length) {
+            if (size >= MAX_POOL_SIZE) {
+                return;
+            }
+            final SqlJetVdbeMem[] grown = new SqlJetVdbeMem[Math.min(size * 2, MAX_POOL_SIZE)];
+            System.arraycopy(stack, 0, grown, 0, size);
+            stack = grown;
         }
+        stack[size++] = mem;
+    }
+
+    /**
+     * @return count of instances obtained from this pool.
+     */
+    public long getObtained() {
+        return obtained;
     }
-    
+
+    /**
+     * @return count of instances released to this pool.
+     */
+    public long getReleased() {
+        return released;
+    }
+
+    /**
+     * @return count of instances created by this pool because it was empty.
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * @return count of instances which are kept in pool now.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return share of obtained instances which were taken from pool and
+     *         weren't created.
+     */
+    public double getHitRate() {
+        return getHitRate(obtained, created);
+    }
+
+    private static double getHitRate(long obtained, long created) {
+        return obtained == 0 ? 0 : (double) (obtained - created) / obtained;
+    }
+
+    /**
+     * Statistics summed over pools of all live threads. Counters of other
+     * threads are read without synchronization so they are approximate.
+     *
+     * @return statistics in the same form as {@link #toString()}.
+     */
+    public static String getStatistics() {
+        long obtained = 0, released = 0, created = 0, size = 0;
+        poolsLock.lock();
+        try {
+            for (final WeakReference<SqlJetVdbeMemPool> ref : pools) {
+                final SqlJetVdbeMemPool pool = ref.get();
+                if (pool != null) {
+                    obtained += pool.obtained;
+                    released += pool.released;
+                    created += pool.created;
+                    size += pool.size;
+                }
+            }
+        } finally {
+            poolsLock.unlock();
+        }
+        return toString(obtained, released, created, size);
+    }
+
     public String toString() {
-        return "\ncreated: " + created + 
-                "\n" + "obtained: " + obtained + 
+        return toString(obtained, released, created, size);
+    }
+
+    private static String toString(long obtained, long released, long created, long size) {
+        return "\ncreated: " + created +
+                "\n" + "obtained: " + obtained +
                 "\n" + "released: " + released +
-                "\n" + "in pool:  " + queue.size();
+                "\n" + "in pool:  " + size +
+                "\n" + "hit rate: " + String.format("%.3f", getHitRate(obtained, created));
     }
 }
@@ -0,0 +1,384 @@
+/**
+ * SqlJetVdbeSorter.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.vdbe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetUnpackedRecordFlags;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * External merge sort of index records, which is used to build indexes
+ * bottom-up (see vdbesort.c of SQLite).
+ *
+ * Records are collected in memory until they exceed memory limit, then they
+ * are sorted and written to temporary file as a sorted run ("packed memory
+ * array", PMA). When all records are written, remaining ones are sorted in
+ * memory and all runs are merged while records are read.
+ *
+ * Records are compared by {@link SqlJetKeyInfo} of index, which includes
+ * rowid at the end of record, so all records are different.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetVdbeSorter {
+
+    /**
+     * Default amount of memory in bytes which is used by records before they
+     * are written to temporary file.
+     */
+    public static final int SQLJET_SORTER_MEMORY = SqlJetUtility.getIntSysProp("SQLJET_SORTER_MEMORY",
+            16 * 1024 * 1024);
+
+    /** Approximate memory overhead of each record kept in memory */
+    private static final int RECORD_OVERHEAD = 32;
+
+    /** Size of buffers used to write and read sorted runs */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final SqlJetKeyInfo keyInfo;
+    private final ISqlJetFileSystem fileSystem;
+    private final int memoryLimit;
+
+    private final Comparator<byte[]> comparator = new Comparator<byte[]>() {
+        public int compare(byte[] r1, byte[] r2) {
+            try {
+                return SqlJetVdbeSorter.this.compare(r1, r2);
+            } catch (SqlJetException e) {
+                throw new SorterException(e);
+            }
+        }
+    };
+
+    private List<byte[]> records = new ArrayList<byte[]>();
+    private long memory;
+    private long count;
+
+    private ISqlJetFile file;
+    private long fileSize;
+    private final List<long[]> runs = new ArrayList<long[]>();
+
+    /** Reused for comparison of records */
+    private SqlJetUnpackedRecord unpacked;
+
+    private PriorityQueue<RunReader> merger;
+    private int next;
+    private byte[] current;
+
+    /**
+     * @param keyInfo
+     *            key info of index which records are sorted.
+     * @param fileSystem
+     *            file system used to create temporary file.
+     * @param memoryLimit
+     *            bytes of records kept in memory.
+     */
+    public SqlJetVdbeSorter(SqlJetKeyInfo keyInfo, ISqlJetFileSystem fileSystem, int memoryLimit) {
+        this.keyInfo = keyInfo;
+        this.fileSystem = fileSystem;
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Returns count of records written to sorter.
+     *
+     * @return
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns count of sorted runs which have been written to temporary file.
+     *
+     * @return
+     */
+    public int getRunsCount() {
+        return runs.size();
+    }
+
+    /**
+     * Adds a copy of record to sorter.
+     *
+     * @param record
+     * @throws SqlJetException
+     */
+    public void write(ISqlJetMemoryPointer record) throws SqlJetException {
+        write(record, record.remaining());
+    }
+
+    /**
+     * Writes first size bytes of buffer as record, buffer is copied.
+     */
+    public void write(ISqlJetMemoryPointer record, int size) throws SqlJetException {
+        assert (merger == null && current == null);
+        final byte[] r = new byte[size];
+        record.getBytes(0, r, size);
+        records.add(r);
+        count++;
+        memory += r.length + RECORD_OVERHEAD;
+        if (memory > memoryLimit) {
+            flush();
+        }
+    }
+
+    /**
+     * Sorts written records and moves to the first one.
+     *
+     * @return false if sorter is empty.
+     * @throws SqlJetException
+     */
+    public boolean rewind() throws SqlJetException {
+        if (runs.isEmpty()) {
+            sort(records);
+            next = 0;
+        } else {
+            flush();
+            merger = new PriorityQueue<RunReader>(runs.size(), new Comparator<RunReader>() {
+                public int compare(RunReader o1, RunReader o2) {
+                    return comparator.compare(o1.record, o2.record);
+                }
+            });
+            for (final long[] run : runs) {
+                final RunReader reader = new RunReader(run[0], run[1]);
+                if (reader.next()) {
+                    merge(reader);
+                }
+            }
+        }
+        return next();
+    }
+
+    /**
+     * Moves to the next record in sort order.
+     *
+     * @return false if there are no more records.
+     * @throws SqlJetException
+     */
+    public boolean next() throws SqlJetException {
+        if (merger == null) {
+            current = next < records.size() ? records.get(next) : null;
+            if (current != null) {
+                // record is needed only until next call.
+                records.set(next++, null);
+            }
+        } else {
+            final RunReader reader = merger.poll();
+            if (reader == null) {
+                current = null;
+            } else {
+                current = reader.record;
+                if (reader.next()) {
+                    merge(reader);
+                }
+            }
+        }
+        return current != null;
+    }
+
+    /**
+     * Returns current record, it is valid until next call of
+     * {@link #next()}.
+     *
+     * @return
+     */
+    public ISqlJetMemoryPointer getKey() {
+        return current != null ? SqlJetUtility.wrapPtr(current) : null;
+    }
+
+    /**
+     * Releases records and deletes temporary file.
+     *
+     * @throws SqlJetException
+     */
+    public void close() throws SqlJetException {
+        records = new ArrayList<byte[]>();
+        merger = null;
+        current = null;
+        runs.clear();
+        if (unpacked != null) {
+            unpacked.release();
+            unpacked = null;
+        }
+        if (file != null) {
+            try {
+                file.close();
+            } finally {
+                file = null;
+            }
+        }
+    }
+
+    private int compare(byte[] r1, byte[] r2) throws SqlJetException {
+        // recordCompare() compares packed record with unpacked one.
+        if (unpacked == null) {
+            unpacked = new SqlJetUnpackedRecord();
+            unpacked.setFlags(SqlJetUtility.noneOf(SqlJetUnpackedRecordFlags.class));
+        }
+        keyInfo.recordUnpack(r2.length, SqlJetUtility.wrapPtr(r2), unpacked);
+        return unpacked.recordCompare(r1.length, SqlJetUtility.wrapPtr(r1));
+    }
+
+    private void merge(RunReader reader) throws SqlJetException {
+        try {
+            merger.add(reader);
+        } catch (SorterException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void sort(List<byte[]> list) throws SqlJetException {
+        try {
+            Collections.sort(list, comparator);
+        } catch (SorterException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Sorts records which are in memory and writes them to temporary file as
+     * a new run. Each record is preceded by its size in 4 bytes.
+     */
+    private void flush() throws SqlJetException {
+        if (records.isEmpty()) {
+            return;
+        }
+        sort(records);
+        if (file == null) {
+            file = fileSystem.open(null, SqlJetFileType.TEMP_JOURNAL, EnumSet.of(SqlJetFileOpenPermission.READWRITE,
+                    SqlJetFileOpenPermission.CREATE, SqlJetFileOpenPermission.EXCLUSIVE,
+                    SqlJetFileOpenPermission.DELETEONCLOSE));
+        }
+        final long start = fileSize;
+        final ISqlJetMemoryPointer buffer = SqlJetUtility.allocatePtr(BUFFER_SIZE);
+        int used = 0;
+        for (final byte[] r : records) {
+            if (used + 4 > BUFFER_SIZE) {
+                used = writeBuffer(buffer, used);
+            }
+            SqlJetUtility.put4byte(buffer, used, r.length);
+            used += 4;
+            int done = 0;
+            while (done < r.length) {
+                if (used == BUFFER_SIZE) {
+                    used = writeBuffer(buffer, used);
+                }
+                final int n = Math.min(r.length - done, BUFFER_SIZE - used);
+                buffer.putBytes(used, r, done, n);
+                used += n;
+                done += n;
+            }
+        }
+        writeBuffer(buffer, used);
+        runs.add(new long[] { start, fileSize });
+        records = new ArrayList<byte[]>();
+        memory = 0;
+    }
+
+    private int writeBuffer(ISqlJetMemoryPointer buffer, int used) throws SqlJetException {
+        if (used > 0) {
+            file.write(buffer, used, fileSize);
+            fileSize += used;
+        }
+        return 0;
+    }
+
+    /**
+     * Reads records of one sorted run.
+     */
+    private class RunReader {
+
+        private final ISqlJetMemoryPointer buffer = SqlJetUtility.allocatePtr(BUFFER_SIZE);
+        private final byte[] size = new byte[4];
+
+        /** Offset of buffer in file and end of run */
+        private long offset;
+        private final long end;
+
+        /** Bytes in buffer and position of next byte */
+        private int length;
+        private int position;
+
+        private byte[] record;
+
+        public RunReader(long start, long end) {
+            this.offset = start;
+            this.end = end;
+        }
+
+        public boolean next() throws SqlJetException {
+            if (offset + position >= end) {
+                record = null;
+                return false;
+            }
+            read(size);
+            record = new byte[SqlJetUtility.get4byte(SqlJetUtility.wrapPtr(size))];
+            read(record);
+            return true;
+        }
+
+        private void read(byte[] to) throws SqlJetException {
+            int done = 0;
+            while (done < to.length) {
+                if (position == length) {
+                    offset += length;
+                    length = (int) Math.min(BUFFER_SIZE, end - offset);
+                    position = 0;
+                    file.read(buffer, length, offset);
+                }
+                final int n = Math.min(to.length - done, length - position);
+                buffer.getBytes(position, to, done, n);
+                position += n;
+                done += n;
+            }
+        }
+
+    }
+
+    /**
+     * Passes {@link SqlJetException} through {@link Comparator}.
+     */
+    private static class SorterException extends RuntimeException {
+
+        private static final long serialVersionUID = -3468294237622101372L;
+
+        public SorterException(SqlJetException cause) {
+            super(cause);
+        }
+
+        @Override
+        public SqlJetException getCause() {
+            return (SqlJetException) super.getCause();
+        }
+
+    }
+
+}
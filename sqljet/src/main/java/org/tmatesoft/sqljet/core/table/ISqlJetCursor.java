@@ -18,6 +18,7 @@
 package org.tmatesoft.sqljet.core.table;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import org.tmatesoft.sqljet.core.SqlJetException;
@@ -292,6 +293,65 @@ public interface ISqlJetCursor {
      */
     Object[] getRowValues() throws SqlJetException;
 
+    // Low-level access
+
+    /**
+     * Returns bytes of TEXT or BLOB field as read-only buffer. When value is
+     * stored on the current page and the page is held on heap, the buffer
+     * shares memory with the page and no copy is made, so the buffer is valid
+     * only until the cursor is moved, the row is modified or the transaction
+     * ends. Pages held off heap, in slab or memory-mapped file, are copied.
+     * TEXT is returned in database encoding. For NULL field the default value
+     * of column is returned, as a copy, when {@link #getString(int)} returns
+     * it too.
+     *
+     * @param field
+     *            index of the field
+     * @return field's bytes, or null if field is NULL or is not TEXT or BLOB.
+     * @throws SqlJetException
+     */
+    ByteBuffer getBuffer(int field) throws SqlJetException;
+
+    /**
+     * Returns bytes of TEXT or BLOB field as read-only buffer.
+     *
+     * @param fieldName
+     *            name of the field
+     * @return field's bytes, or null if field is NULL or is not TEXT or BLOB.
+     * @throws SqlJetException
+     * @see #getBuffer(int)
+     */
+    ByteBuffer getBuffer(String fieldName) throws SqlJetException;
+
+    /**
+     * Compares field's value as string with given string, by Unicode code
+     * points, which is the order of BINARY collation. In UTF-8 databases TEXT
+     * fields are compared in place, without creating a {@link String}.
+     *
+     * @param field
+     *            index of the field
+     * @param value
+     *            string to compare with, may be null.
+     * @return negative, zero or positive value as field's value is less,
+     *         equal or greater than value. NULL is less than any string.
+     * @throws SqlJetException
+     */
+    int compareString(int field, String value) throws SqlJetException;
+
+    /**
+     * Compares field's value as string with given string.
+     *
+     * @param fieldName
+     *            name of the field
+     * @param value
+     *            string to compare with, may be null.
+     * @return negative, zero or positive value as field's value is less,
+     *         equal or greater than value. NULL is less than any string.
+     * @throws SqlJetException
+     * @see #compareString(int, String)
+     */
+    int compareString(String fieldName, String value) throws SqlJetException;
+
     // Modification
 
     /**
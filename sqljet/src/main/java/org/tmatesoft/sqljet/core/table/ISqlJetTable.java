@@ -462,4 +462,99 @@ public interface ISqlJetTable {
      * @throws SqlJetException
      */
     void clear() throws SqlJetException;
+
+    /**
+     * <p>
+     * Loads rows into empty table at once, it is much faster than insertion
+     * of the same rows one by one.
+     * </p>
+     * 
+     * <p>
+     * Each row is values of fields as for {@link #insert(Object...)}. Rows
+     * should be ordered by ROWID: if table has INTEGER PRIMARY KEY column then
+     * its values should ascend, if value of this column is null or table
+     * hasn't such column then ROWID of previous row plus one is used.
+     * </p>
+     * 
+     * <p>
+     * Table pages are filled up to fill factor: 100 packs them densely and
+     * suits tables which are only read, lower values leave free space for
+     * rows which are inserted later. All relevant indexes are built after
+     * rows are loaded, from sorted keys.
+     * </p>
+     * 
+     * <p>
+     * Can be used without of active transaction, in this case method begins and
+     * ends own internal transaction.
+     * </p>
+     * 
+     * @param rows
+     *            values of rows in ROWID order.
+     * @param fillFactor
+     *            percent of page space which is used by loaded rows, from 10
+     *            to 100.
+     * @return count of loaded rows.
+     * @throws SqlJetException
+     *             if table isn't empty, rows aren't in ROWID order or values
+     *             of unique index aren't unique.
+     */
+    long load(Iterable<Object[]> rows, int fillFactor) throws SqlJetException;
+
+    /**
+     * <p>
+     * Inserts many rows at once. Each row is values of fields as for
+     * {@link #insert(Object...)}.
+     * </p>
+     * 
+     * <p>
+     * Rows are processed by chunks. At first all rows of chunk are checked
+     * against ROWIDs and unique indexes of table and against each other, then
+     * rows are inserted into table and keys of each index are sorted and
+     * inserted into index in key order, so pages of indexes are read and
+     * written mostly sequentially.
+     * </p>
+     * 
+     * <p>
+     * If some row of chunk violates constraint then ABORT and ROLLBACK
+     * actions throw exception before chunk is changed, rows of previous chunks
+     * are kept unless transaction is rolled back. FAIL action inserts such
+     * chunk row by row and throws exception at the failed row, so all rows
+     * which precede it in batch are kept unless transaction is rolled back.
+     * For IGNORE and REPLACE actions conflicting rows are inserted one by one
+     * after other rows of chunk, so ROWIDs are given to rows not in their
+     * order in batch.
+     * </p>
+     * 
+     * <p>
+     * Can be used without of active transaction, in this case method begins and
+     * ends own internal transaction, which is rolled back if insertion fails.
+     * </p>
+     * 
+     * @param rows
+     *            values of rows.
+     * @param onConflict
+     *            {@link SqlJetConflictAction}.
+     * @return count of rows in batch.
+     * @throws SqlJetException
+     */
+    long insertBatch(Iterable<Object[]> rows, SqlJetConflictAction onConflict) throws SqlJetException;
+
+    /**
+     * <p>
+     * Opens writer of this table which keeps cursors of table and its indexes
+     * open until writer is closed. It is much faster to insert, update or
+     * delete many rows by one writer than by methods of this interface, which
+     * open and close these cursors for each row.
+     * </p>
+     * 
+     * <p>
+     * Writer can be used only inside of write transaction, in which it has
+     * been opened.
+     * </p>
+     * 
+     * @return writer of this table.
+     * @throws SqlJetException
+     *             if there is no active write transaction.
+     */
+    ISqlJetTableWriter openWriter() throws SqlJetException;
 }
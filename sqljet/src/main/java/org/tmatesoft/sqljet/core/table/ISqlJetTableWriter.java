@@ -0,0 +1,222 @@
+/**
+ * ISqlJetTableWriter.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.schema.SqlJetConflictAction;
+
+/**
+ * <p>
+ * Writer of table which keeps cursors of table, its indexes and sequence
+ * table open between operations, so it is much cheaper than
+ * {@link ISqlJetTable#insert(Object...)} when many rows are modified in one
+ * transaction.
+ * </p>
+ *
+ * <p>
+ * Writer is opened by {@link ISqlJetTable#openWriter()} inside of write
+ * transaction and belongs to it: if writer isn't closed before transaction
+ * ends then it is closed by commit or rollback, and its methods fail with
+ * {@link org.tmatesoft.sqljet.core.SqlJetErrorCode#MISUSE} after that.
+ * </p>
+ *
+ * <p>
+ * Values of row could be passed either as array, as for
+ * {@link ISqlJetTable#insert(Object...)}, or set into row buffer of writer
+ * field by field, for example:
+ * </p>
+ *
+ * <pre>
+ * final ISqlJetTableWriter writer = table.openWriter();
+ * try {
+ *     for (int i = 0; i &lt; count; i++) {
+ *         writer.setInteger(1, i);
+ *         writer.setString(2, names[i]);
+ *         writer.insertRow(null);
+ *     }
+ * } finally {
+ *     writer.close();
+ * }
+ * </pre>
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public interface ISqlJetTableWriter {
+
+    /**
+     * Closes writer and all its cursors. It does nothing if writer is already
+     * closed by end of its transaction.
+     *
+     * @throws SqlJetException
+     */
+    void close() throws SqlJetException;
+
+    // Row buffer
+
+    /**
+     * Sets field of row buffer to NULL.
+     *
+     * @param field
+     *            number of field begining from zero.
+     * @throws SqlJetException
+     */
+    void setNull(int field) throws SqlJetException;
+
+    /**
+     * Sets integer value of field in row buffer.
+     *
+     * @param field
+     *            number of field begining from zero.
+     * @param value
+     * @throws SqlJetException
+     */
+    void setInteger(int field, long value) throws SqlJetException;
+
+    /**
+     * Sets float value of field in row buffer.
+     *
+     * @param field
+     *            number of field begining from zero.
+     * @param value
+     * @throws SqlJetException
+     */
+    void setFloat(int field, double value) throws SqlJetException;
+
+    /**
+     * Sets boolean value of field in row buffer.
+     *
+     * @param field
+     *            number of field begining from zero.
+     * @param value
+     * @throws SqlJetException
+     */
+    void setBoolean(int field, boolean value) throws SqlJetException;
+
+    /**
+     * Sets string value of field in row buffer.
+     *
+     * @param field
+     *            number of field begining from zero.
+     * @param value
+     * @throws SqlJetException
+     */
+    void setString(int field, String value) throws SqlJetException;
+
+    /**
+     * Sets BLOB value of field in row buffer.
+     *
+     * @param field
+     *            number of field begining from zero.
+     * @param value
+     * @throws SqlJetException
+     */
+    void setBlob(int field, byte[] value) throws SqlJetException;
+
+    /**
+     * Sets value of field in row buffer, value could be any of types which
+     * are accepted by {@link ISqlJetTable#insert(Object...)}.
+     *
+     * @param field
+     *            number of field begining from zero.
+     * @param value
+     * @throws SqlJetException
+     */
+    void setValue(int field, Object value) throws SqlJetException;
+
+    /**
+     * Sets all fields of row buffer to NULL.
+     */
+    void clearRow();
+
+    /**
+     * Inserts row from row buffer and clears buffer.
+     *
+     * @param onConflict
+     *            {@link SqlJetConflictAction}.
+     * @return ROWID of inserted record.
+     * @throws SqlJetException
+     */
+    long insertRow(SqlJetConflictAction onConflict) throws SqlJetException;
+
+    /**
+     * Replaces values of record with specified ROWID by row buffer and clears
+     * buffer.
+     *
+     * @param onConflict
+     *            {@link SqlJetConflictAction}.
+     * @param rowId
+     *            ROWID of record.
+     * @throws SqlJetException
+     */
+    void updateRow(SqlJetConflictAction onConflict, long rowId) throws SqlJetException;
+
+    // Arrays of values
+
+    /**
+     * Inserts record as {@link ISqlJetTable#insertOr(SqlJetConflictAction, Object...)}.
+     *
+     * @param onConflict
+     *            {@link SqlJetConflictAction}.
+     * @param values
+     *            Values for the new record.
+     * @return ROWID of inserted record.
+     * @throws SqlJetException
+     */
+    long insert(SqlJetConflictAction onConflict, Object... values) throws SqlJetException;
+
+    /**
+     * Inserts record as
+     * {@link ISqlJetTable#insertWithRowIdOr(SqlJetConflictAction, long, Object...)}.
+     *
+     * @param onConflict
+     *            {@link SqlJetConflictAction}.
+     * @param rowId
+     *            ROWID of record.
+     * @param values
+     *            Values for the new record.
+     * @return ROWID of inserted record.
+     * @throws SqlJetException
+     */
+    long insertWithRowId(SqlJetConflictAction onConflict, long rowId, Object... values) throws SqlJetException;
+
+    /**
+     * Replaces values of record with specified ROWID.
+     *
+     * @param onConflict
+     *            {@link SqlJetConflictAction}.
+     * @param rowId
+     *            ROWID of record.
+     * @param values
+     *            New values of record.
+     * @throws SqlJetException
+     */
+    void update(SqlJetConflictAction onConflict, long rowId, Object... values) throws SqlJetException;
+
+    /**
+     * Deletes record with specified ROWID.
+     *
+     * @param rowId
+     *            ROWID of record.
+     * @return false if there is no such record.
+     * @throws SqlJetException
+     */
+    boolean delete(long rowId) throws SqlJetException;
+
+}
@@ -19,6 +19,14 @@ package org.tmatesoft.sqljet.core.table;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
@@ -69,6 +77,11 @@ public class SqlJetDb extends SqlJetEngine {
     
     private SqlJetDb temporaryDb;
 
+    private final ReentrantLock asyncLock = new ReentrantLock();
+    private ExecutorService writeExecutor;
+    private ExecutorService defaultReadExecutor;
+    private Executor readExecutor;
+
     /**
      * <p>
      * Creates connection to database but not open it. Doesn't open database
@@ -194,7 +207,7 @@ public class SqlJetDb extends SqlJetEngine {
         refreshSchema();
         return (SqlJetTable) runWithLock(new ISqlJetRunnableWithLock() {
             public Object runWithLock(SqlJetDb db) throws SqlJetException {
-                return new SqlJetTable(db, btree, tableName, writable);
+                return new SqlJetTable(db, tableName, writable);
             }
         });
     }
@@ -242,6 +255,134 @@ public class SqlJetDb extends SqlJetEngine {
         }, mode);
     }
 
+    /**
+     * <p>
+     * Runs write transaction asynchronously. Write transactions of this
+     * database are queued to its single writer thread and run one after other
+     * in order of calls, so caller doesn't wait for locks.
+     * </p>
+     * 
+     * @param op
+     *            transaction to run.
+     * @return future result of the {@link ISqlJetTransaction#run(SqlJetDb)}
+     *         call, failure is reported by {@link Future#get()} as
+     *         {@link java.util.concurrent.ExecutionException} which cause is
+     *         {@link SqlJetException}.
+     * @throws SqlJetException
+     *             if database is closed or read-only.
+     */
+    public Future<Object> runWriteTransactionAsync(final ISqlJetTransaction op) throws SqlJetException {
+        checkOpen();
+        if (!writable) {
+            throw new SqlJetException(SqlJetErrorCode.MISUSE, "Can't start write transaction on read-only database");
+        }
+        final FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+            public Object call() throws Exception {
+                return runWriteTransaction(op);
+            }
+        });
+        asyncLock.lock();
+        try {
+            if (writeExecutor == null) {
+                writeExecutor = Executors.newSingleThreadExecutor(asyncThreadFactory("writer"));
+            }
+            writeExecutor.execute(task);
+        } finally {
+            asyncLock.unlock();
+        }
+        return task;
+    }
+
+    /**
+     * <p>
+     * Runs read-only transaction asynchronously on executor which is set by
+     * {@link #setReadExecutor(Executor)}. By default it runs on threads of
+     * this database. Read transactions run in parallel only if concurrent
+     * reads are enabled by {@link #setConcurrentReads(boolean)}.
+     * </p>
+     * 
+     * @param op
+     *            transaction to run.
+     * @return future result of the {@link ISqlJetTransaction#run(SqlJetDb)}
+     *         call, failure is reported by {@link Future#get()} as
+     *         {@link java.util.concurrent.ExecutionException} which cause is
+     *         {@link SqlJetException}.
+     * @throws SqlJetException
+     *             if database is closed.
+     */
+    public Future<Object> runReadTransactionAsync(final ISqlJetTransaction op) throws SqlJetException {
+        checkOpen();
+        final FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+            public Object call() throws Exception {
+                return runReadTransaction(op);
+            }
+        });
+        getReadExecutor().execute(task);
+        return task;
+    }
+
+    /**
+     * Sets executor for {@link #runReadTransactionAsync(ISqlJetTransaction)}.
+     * Executor isn't shut down when database is closed.
+     * 
+     * @param executor
+     *            executor of read transactions, null to use threads of this
+     *            database.
+     */
+    public void setReadExecutor(final Executor executor) {
+        asyncLock.lock();
+        try {
+            readExecutor = executor;
+        } finally {
+            asyncLock.unlock();
+        }
+    }
+
+    /**
+     * @return executor of {@link #runReadTransactionAsync(ISqlJetTransaction)}.
+     */
+    public Executor getReadExecutor() {
+        asyncLock.lock();
+        try {
+            if (readExecutor != null) {
+                return readExecutor;
+            }
+            if (defaultReadExecutor == null) {
+                defaultReadExecutor = Executors.newCachedThreadPool(asyncThreadFactory("reader"));
+            }
+            return defaultReadExecutor;
+        } finally {
+            asyncLock.unlock();
+        }
+    }
+
+    private ThreadFactory asyncThreadFactory(final String kind) {
+        final String name = "SQLJet " + kind + " " + (getFile() != null ? getFile().getName() : "");
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private void shutdownExecutors() {
+        asyncLock.lock();
+        try {
+            if (writeExecutor != null) {
+                writeExecutor.shutdown();
+                writeExecutor = null;
+            }
+            if (defaultReadExecutor != null) {
+                defaultReadExecutor.shutdown();
+                defaultReadExecutor = null;
+            }
+        } finally {
+            asyncLock.unlock();
+        }
+    }
+
     /**
      * Executes pragma statement. If statement queries pragma value then pragma
      * value will be returned.
@@ -459,6 +600,7 @@ public class SqlJetDb extends SqlJetEngine {
     
     @Override
     protected void closeResources() throws SqlJetException {
+        shutdownExecutors();
         closeTemporaryDatabase();
     }
 
@@ -0,0 +1,249 @@
+/**
+ * SqlJetDbPool.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+
+/**
+ * <p>
+ * Pool of connections to one database file. Read transactions are run on
+ * read-only connections, at most maxReaders of them run at once and others
+ * wait for free connection. Write transactions are run on one writable
+ * connection, so they are serialized. Connections are opened on demand and
+ * stay open until pool is closed, so transactions don't pay for opening
+ * database and reading its schema.
+ * </p>
+ *
+ * <p>
+ * When write transaction changes schema, read-only connections refresh their
+ * schema before next transaction.
+ * </p>
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetDbPool {
+
+    private final File file;
+    private final int maxReaders;
+    private final Semaphore permits;
+    private final LinkedList<Reader> idleReaders = new LinkedList<Reader>();
+    private final ReentrantLock readersLock = new ReentrantLock();
+    private final SqlJetDb writer;
+
+    private volatile int schemaVersion;
+    private volatile boolean closed;
+    private int openReaders;
+
+    private static class Reader {
+        private final SqlJetDb db;
+        private int schemaVersion;
+
+        public Reader(SqlJetDb db, int schemaVersion) {
+            this.db = db;
+            this.schemaVersion = schemaVersion;
+        }
+    }
+
+    /**
+     * Creates pool and opens its writable connection, database file is
+     * created if it doesn't exist.
+     *
+     * @param file
+     *            database file.
+     * @param maxReaders
+     *            maximal count of read-only connections.
+     * @throws SqlJetException
+     */
+    public SqlJetDbPool(final File file, final int maxReaders) throws SqlJetException {
+        if (maxReaders < 1) {
+            throw new SqlJetException(SqlJetErrorCode.MISUSE, "Pool requires at least one reader");
+        }
+        this.file = file;
+        this.maxReaders = maxReaders;
+        this.permits = new Semaphore(maxReaders, true);
+        this.writer = SqlJetDb.open(file, true);
+        this.schemaVersion = writer.getOptions().getSchemaVersion();
+    }
+
+    /**
+     * @return database file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return maximal count of read-only connections.
+     */
+    public int getMaxReaders() {
+        return maxReaders;
+    }
+
+    /**
+     * @return count of read-only connections which are open now.
+     */
+    public int getOpenReaders() {
+        readersLock.lock();
+        try {
+            return openReaders;
+        } finally {
+            readersLock.unlock();
+        }
+    }
+
+    /**
+     * Runs read transaction on one of read-only connections, waits for free
+     * connection if all of them are busy.
+     *
+     * @param op
+     *            transaction to run.
+     * @return result of the {@link ISqlJetTransaction#run(SqlJetDb)} call.
+     * @throws SqlJetException
+     */
+    public Object runReadTransaction(final ISqlJetTransaction op) throws SqlJetException {
+        checkOpen();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SqlJetException(SqlJetErrorCode.INTERRUPT, e);
+        }
+        try {
+            final Reader reader = obtainReader();
+            try {
+                final int version = schemaVersion;
+                if (reader.schemaVersion != version) {
+                    reader.db.refreshSchema();
+                    reader.schemaVersion = version;
+                }
+                return reader.db.runReadTransaction(op);
+            } finally {
+                releaseReader(reader);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Runs write transaction on writable connection.
+     *
+     * @param op
+     *            transaction to run.
+     * @return result of the {@link ISqlJetTransaction#run(SqlJetDb)} call.
+     * @throws SqlJetException
+     */
+    public Object runWriteTransaction(final ISqlJetTransaction op) throws SqlJetException {
+        checkOpen();
+        final Object result = writer.runWriteTransaction(op);
+        schemaVersion = writer.getOptions().getSchemaVersion();
+        return result;
+    }
+
+    /**
+     * Closes all connections. Connections which run transactions now are
+     * closed when transactions end.
+     *
+     * @throws SqlJetException
+     */
+    public void close() throws SqlJetException {
+        closed = true;
+        try {
+            final List<Reader> readers;
+            readersLock.lock();
+            try {
+                readers = new ArrayList<Reader>(idleReaders);
+                idleReaders.clear();
+            } finally {
+                readersLock.unlock();
+            }
+            for (final Reader reader : readers) {
+                closeReader(reader);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void checkOpen() throws SqlJetException {
+        if (closed) {
+            throw new SqlJetException(SqlJetErrorCode.MISUSE, "Pool is closed");
+        }
+    }
+
+    private Reader obtainReader() throws SqlJetException {
+        readersLock.lock();
+        try {
+            if (!idleReaders.isEmpty()) {
+                return idleReaders.removeFirst();
+            }
+            openReaders++;
+        } finally {
+            readersLock.unlock();
+        }
+        boolean success = false;
+        try {
+            final Reader reader = new Reader(SqlJetDb.open(file, false), schemaVersion);
+            success = true;
+            return reader;
+        } finally {
+            if (!success) {
+                readersLock.lock();
+                try {
+                    openReaders--;
+                } finally {
+                    readersLock.unlock();
+                }
+            }
+        }
+    }
+
+    private void releaseReader(final Reader reader) throws SqlJetException {
+        readersLock.lock();
+        try {
+            if (!closed) {
+                idleReaders.addFirst(reader);
+                return;
+            }
+        } finally {
+            readersLock.unlock();
+        }
+        closeReader(reader);
+    }
+
+    private void closeReader(final Reader reader) throws SqlJetException {
+        readersLock.lock();
+        try {
+            openReaders--;
+        } finally {
+            readersLock.unlock();
+        }
+        reader.db.close();
+    }
+
+}
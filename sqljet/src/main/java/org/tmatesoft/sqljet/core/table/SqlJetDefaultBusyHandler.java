@@ -1,6 +1,9 @@
 package org.tmatesoft.sqljet.core.table;
 
+import java.util.Random;
+
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetFile;
 
 /**
  * <p>
@@ -10,7 +13,15 @@ import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
  * <p>
  * Performs some number of retries (by default 10 or SQLJET_BUSY_RETRIES system
  * property value) per every time interval (by default 100 milliseconds or
- * SQLJET_BUSY_SLEEP system property value in milliseconds).
+ * SQLJET_BUSY_SLEEP system property value in milliseconds), so it waits for
+ * lock during retries * interval milliseconds.
+ * </p>
+ * 
+ * <p>
+ * If database is locked by other connection in this process, retry is made as
+ * soon as that connection releases its lock. Otherwise interval between
+ * retries starts from 1 millisecond and doubles up to the time interval, with
+ * random jitter so connections don't retry at the same moments.
  * </p>
  * 
  * @author TMate Software Ltd.
@@ -32,10 +43,17 @@ public class SqlJetDefaultBusyHandler implements ISqlJetBusyHandler {
     private static final int DEFAULT_RETRIES = 10;
     private static final int DEFAULT_SLEEP = 100;
 
+    private static final int MIN_SLEEP = 1;
+
     private int retries;
     private int sleep;
     private boolean cancel = false;
 
+    /** Start of waiting for lock, busy handler is shared by threads. */
+    private final ThreadLocal<Long> started = new ThreadLocal<Long>();
+
+    private final Random random = new Random();
+
     /**
      * Creates busy handler with default parameters.
      */
@@ -48,7 +66,7 @@ public class SqlJetDefaultBusyHandler implements ISqlJetBusyHandler {
      * Creates busy handler with custom parameters.
      * 
      * @param retries number of retries to perform
-     * @param sleep sleep time interval in milliseconds between retries to lock database.
+     * @param sleep longest sleep time interval in milliseconds between retries to lock database.
      */
     public SqlJetDefaultBusyHandler(final int retries, final int sleep) {
         if (retries > 0) {
@@ -82,7 +100,7 @@ public class SqlJetDefaultBusyHandler implements ISqlJetBusyHandler {
     }
 
     /**
-     * Returns sleep time interval in milliseconds between retries to lock database.
+     * Returns longest sleep time interval in milliseconds between retries to lock database.
      * 
      * @return sleep interval time in milliseconds.
      */
@@ -91,7 +109,7 @@ public class SqlJetDefaultBusyHandler implements ISqlJetBusyHandler {
     }
 
     /**
-     * Sets sleep time interval in milliseconds between retries to lock database.
+     * Sets longest sleep time interval in milliseconds between retries to lock database.
      * 
      * @param sleep interval time in milliseconds.
      */
@@ -128,16 +146,35 @@ public class SqlJetDefaultBusyHandler implements ISqlJetBusyHandler {
         if (cancel) {
             cancel = false;
             return false;
-        } else if (number > retries) {
+        }
+        final long now = System.nanoTime();
+        final Long start = started.get();
+        if (number == 0 || start == null) {
+            started.set(now);
+        }
+        final long elapsed = number == 0 || start == null ? 0 : (now - start) / 1000000;
+        final long timeout = (long) retries * sleep;
+        if (number > retries && elapsed >= timeout) {
+            started.remove();
+            return false;
+        }
+        try {
+            SqlJetFile.waitForUnlock(getDelay(number, Math.max(timeout - elapsed, MIN_SLEEP)));
+        } catch (InterruptedException e) {
+            started.remove();
             return false;
-        } else {
-            try {
-                Thread.sleep(sleep);
-            } catch (InterruptedException e) {
-                return false;
-            }
-            return true;
         }
+        return true;
+    }
+
+    /**
+     * @return interval before retry which doubles with every retry up to
+     *         sleep interval, randomized between half and full of it.
+     */
+    private long getDelay(int number, long remaining) {
+        final long delay = Math.min(Math.min((long) MIN_SLEEP << Math.min(number, 20), sleep), remaining);
+        final long half = delay / 2;
+        return Math.max(half + random.nextInt((int) (delay - half) + 1), MIN_SLEEP);
     }
 
 }
\ No newline at end of file
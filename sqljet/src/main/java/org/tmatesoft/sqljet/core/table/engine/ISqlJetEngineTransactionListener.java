@@ -0,0 +1,45 @@
+/**
+ * ISqlJetEngineTransactionListener.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table.engine;
+
+import org.tmatesoft.sqljet.core.SqlJetException;
+
+/**
+ * Object which belongs to transaction of {@link SqlJetEngine}, for example
+ * writer of table which keeps its cursors open between calls. It is notified
+ * once when transaction ends, then it is forgotten by engine.
+ * 
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ * 
+ */
+public interface ISqlJetEngineTransactionListener {
+
+    /**
+     * Called before transaction commits or rolls back, while it is still
+     * active. On commit listener writes its pending changes, failure of it
+     * fails commit. On rollback its failure is ignored.
+     * 
+     * @param engine
+     *            engine which ends transaction.
+     * @param commit
+     *            true if transaction commits, false if it rolls back.
+     * @throws SqlJetException
+     */
+    public void transactionEnding(SqlJetEngine engine, boolean commit) throws SqlJetException;
+}
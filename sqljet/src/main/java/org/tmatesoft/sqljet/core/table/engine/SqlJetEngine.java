@@ -18,9 +18,16 @@
 package org.tmatesoft.sqljet.core.table.engine;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.tmatesoft.sqljet.core.ISqlJetMutex;
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
@@ -31,15 +38,18 @@ import org.tmatesoft.sqljet.core.internal.ISqlJetDbHandle;
 import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
 import org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem;
 import org.tmatesoft.sqljet.core.internal.ISqlJetFileSystemsManager;
+import org.tmatesoft.sqljet.core.internal.ISqlJetPager;
 import org.tmatesoft.sqljet.core.internal.SqlJetBtreeFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
 import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
 import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 import org.tmatesoft.sqljet.core.internal.btree.SqlJetBtree;
 import org.tmatesoft.sqljet.core.internal.db.SqlJetDbHandle;
 import org.tmatesoft.sqljet.core.internal.fs.SqlJetFileSystemsManager;
+import org.tmatesoft.sqljet.core.internal.pager.SqlJetPageCache;
 import org.tmatesoft.sqljet.core.internal.schema.SqlJetSchema;
 import org.tmatesoft.sqljet.core.internal.table.SqlJetOptions;
 import org.tmatesoft.sqljet.core.table.ISqlJetBusyHandler;
@@ -80,6 +90,36 @@ public class SqlJetEngine {
 
 	private boolean transaction;
 	private SqlJetTransactionMode transactionMode;
+	private final List<ISqlJetEngineTransactionListener> transactionListeners = new ArrayList<ISqlJetEngineTransactionListener>();
+
+	private volatile int groupCommitSize;
+	private volatile long groupCommitWindow;
+	private final ReentrantLock groupLock = new ReentrantLock();
+	private final Condition groupChanged = groupLock.newCondition();
+	private final LinkedList<GroupOp> groupQueue = new LinkedList<GroupOp>();
+	private Thread groupLeader;
+	private volatile Thread mutexOwner;
+
+	private volatile boolean concurrentReads;
+	private final ReentrantReadWriteLock engineLock = new ReentrantReadWriteLock();
+	private final ThreadLocal<Reader> currentReader = new ThreadLocal<Reader>();
+	private final LinkedList<Reader> idleReaders = new LinkedList<Reader>();
+	private final ReentrantLock readersLock = new ReentrantLock();
+	private final ReentrantLock openLock = new ReentrantLock();
+
+	/**
+	 * Read-only connection to the same file which runs concurrent read
+	 * transaction of one thread.
+	 */
+	private static class Reader {
+		private final ISqlJetDbHandle dbHandle;
+		private final ISqlJetBtree btree;
+
+		public Reader(ISqlJetDbHandle dbHandle, ISqlJetBtree btree) {
+			this.dbHandle = dbHandle;
+			this.btree = btree;
+		}
+	}
 
 	/**
      *
@@ -181,43 +221,255 @@ public class SqlJetEngine {
 	 * @throws SqlJetException
 	 *             if any trouble with access to file or database format.
 	 */
-	public synchronized void open() throws SqlJetException {
-		if (!open) {
-			dbHandle = new SqlJetDbHandle(fileSystem);
-			dbHandle.setBusyHandler(new SqlJetDefaultBusyHandler());
-			btree = new SqlJetBtree();
-			final Set<SqlJetBtreeFlags> flags = EnumSet
-					.copyOf(writable ? WRITE_FLAGS : READ_FLAGS);
-			final Set<SqlJetFileOpenPermission> permissions = EnumSet
-					.copyOf(writable ? WRITE_PREMISSIONS : READ_PERMISSIONS);
-			final SqlJetFileType type = (file != null ? SqlJetFileType.MAIN_DB
-					: SqlJetFileType.TEMP_DB);
-			btree.open(file, dbHandle, flags, type, permissions);
-
-			// force readonly.
-			ISqlJetFile file = btree.getPager().getFile();
-			if (file != null) {
-				Set<SqlJetFileOpenPermission> realPermissions = btree
-						.getPager().getFile().getPermissions();
-				writable = realPermissions
-						.contains(SqlJetFileOpenPermission.READWRITE);
-			}
-			open = true;
-		} else {
-			throw new SqlJetException(SqlJetErrorCode.MISUSE,
-					"Database is open already");
+	public void open() throws SqlJetException {
+		openLock.lock();
+		try {
+			if (!open) {
+				dbHandle = new SqlJetDbHandle(fileSystem);
+				dbHandle.setBusyHandler(new SqlJetDefaultBusyHandler());
+				btree = new SqlJetBtree();
+				final Set<SqlJetBtreeFlags> flags = EnumSet
+						.copyOf(writable ? WRITE_FLAGS : READ_FLAGS);
+				final Set<SqlJetFileOpenPermission> permissions = EnumSet
+						.copyOf(writable ? WRITE_PREMISSIONS : READ_PERMISSIONS);
+				final SqlJetFileType type = (file != null ? SqlJetFileType.MAIN_DB
+						: SqlJetFileType.TEMP_DB);
+				btree.open(file, dbHandle, flags, type, permissions);
+
+				// force readonly.
+				ISqlJetFile file = btree.getPager().getFile();
+				if (file != null) {
+					Set<SqlJetFileOpenPermission> realPermissions = btree
+							.getPager().getFile().getPermissions();
+					writable = realPermissions
+							.contains(SqlJetFileOpenPermission.READWRITE);
+				}
+				open = true;
+			} else {
+				throw new SqlJetException(SqlJetErrorCode.MISUSE,
+						"Database is open already");
+			}
+		} finally {
+			openLock.unlock();
 		}
 	}
 
 	public Object runSynchronized(ISqlJetEngineSynchronized op)
 			throws SqlJetException {
 		checkOpen();
+		final Reader reader = currentReader.get();
+		if (reader != null) {
+			reader.dbHandle.getMutex().enter();
+			try {
+				return op.runSynchronized(this);
+			} finally {
+				reader.dbHandle.getMutex().leave();
+			}
+		}
+		final boolean exclusive = concurrentReads;
+		if (exclusive) {
+			engineLock.writeLock().lock();
+		}
+		try {
+			dbHandle.getMutex().enter();
+			final Thread owner = mutexOwner;
+			mutexOwner = Thread.currentThread();
+			try {
+				return op.runSynchronized(this);
+			} finally {
+				mutexOwner = owner;
+				dbHandle.getMutex().leave();
+			}
+		} finally {
+			if (exclusive) {
+				engineLock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Returns btree of this connection, or btree of concurrent read
+	 * transaction which is run by current thread.
+	 */
+	public ISqlJetBtree getBtree() {
+		final Reader reader = currentReader.get();
+		return reader != null ? reader.btree : btree;
+	}
+
+	private ISqlJetDbHandle getDbHandle() {
+		final Reader reader = currentReader.get();
+		return reader != null ? reader.dbHandle : dbHandle;
+	}
+
+	/**
+	 * <p>
+	 * Enables or disables concurrent reads. When they are enabled read
+	 * transactions which are run by different threads run in parallel, each
+	 * of them on its own read-only connection to the database file. These
+	 * connections are opened on demand and are reused by following read
+	 * transactions. Write transactions and all other operations remain
+	 * exclusive: they wait until running read transactions end and read
+	 * transactions wait for them.
+	 * </p>
+	 *
+	 * <p>
+	 * Readers don't share any lock while they read, so there are as many of
+	 * them as there were read transactions at once. Each of them has cache
+	 * size, mmap size and read-ahead of this connection. To bound memory
+	 * which page caches of readers take together use
+	 * {@link #setCacheBudget(long)}.
+	 * </p>
+	 * 
+	 * <p>
+	 * Inside of concurrent read transaction it isn't allowed to start write
+	 * transaction. Concurrent reads are disabled by default and aren't
+	 * supported for in-memory and temporary databases.
+	 * </p>
+	 * 
+	 * @param enabled
+	 *            true to enable concurrent reads.
+	 * @throws SqlJetException
+	 */
+	public void setConcurrentReads(final boolean enabled) throws SqlJetException {
+		checkOpen();
+		if (enabled && (file == null || ISqlJetPager.MEMORY_DB.equals(file.getPath()))) {
+			throw new SqlJetException(SqlJetErrorCode.MISUSE,
+					"Concurrent reads aren't supported for in-memory and temporary databases");
+		}
+		engineLock.writeLock().lock();
+		try {
+			concurrentReads = enabled;
+			if (!enabled) {
+				closeReaders();
+			}
+		} finally {
+			engineLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return true if concurrent reads are enabled.
+	 */
+	public boolean isConcurrentReads() {
+		return concurrentReads;
+	}
+
+	private Object runConcurrentRead(final ISqlJetEngineTransaction op)
+			throws SqlJetException {
+		engineLock.readLock().lock();
+		try {
+			final Reader reader = obtainReader();
+			currentReader.set(reader);
+			try {
+				return runSynchronized(new ISqlJetEngineSynchronized() {
+					public Object runSynchronized(SqlJetEngine engine)
+							throws SqlJetException {
+						reader.btree.beginTrans(SqlJetTransactionMode.READ_ONLY);
+						try {
+							refreshSchema();
+							return op.run(SqlJetEngine.this);
+						} finally {
+							reader.btree.closeAllCursors();
+							reader.btree.commit();
+						}
+					}
+				});
+			} finally {
+				currentReader.remove();
+				readersLock.lock();
+				try {
+					idleReaders.addFirst(reader);
+				} finally {
+					readersLock.unlock();
+				}
+			}
+		} finally {
+			engineLock.readLock().unlock();
+		}
+	}
+
+	private Reader obtainReader() throws SqlJetException {
+		readersLock.lock();
+		try {
+			if (!idleReaders.isEmpty()) {
+				return idleReaders.removeFirst();
+			}
+		} finally {
+			readersLock.unlock();
+		}
+		final ISqlJetDbHandle readerHandle = new SqlJetDbHandle(fileSystem);
+		readerHandle.setBusyHandler(dbHandle.getBusyHandler());
+		final ISqlJetBtree readerBtree = new SqlJetBtree();
+		readerBtree.open(file, readerHandle, EnumSet.copyOf(READ_FLAGS), SqlJetFileType.MAIN_DB,
+				EnumSet.copyOf(READ_PERMISSIONS));
+		final Reader reader = new Reader(readerHandle, readerBtree);
 		dbHandle.getMutex().enter();
 		try {
-			return op.runSynchronized(this);
+			configureReader(reader);
 		} finally {
 			dbHandle.getMutex().leave();
 		}
+		return reader;
+	}
+
+	/**
+	 * Applies cache size, mmap size and read-ahead of this connection to
+	 * connection of concurrent reads, so that readers cache and read pages
+	 * as this connection does. Mutex of this connection should be held.
+	 */
+	private void configureReader(final Reader reader) {
+		reader.dbHandle.getMutex().enter();
+		try {
+			reader.btree.setCacheSize(btree.getCacheSize());
+			reader.btree.setMmapSize(btree.getMmapSize());
+			reader.btree.setReadAhead(btree.getReadAhead());
+		} finally {
+			reader.dbHandle.getMutex().leave();
+		}
+	}
+
+	/**
+	 * Applies settings of this connection to idle connections of concurrent
+	 * reads after they were changed. It is called under write lock, when none
+	 * of readers is used.
+	 */
+	private void configureReaders() {
+		if (getBtree() != btree) {
+			return;
+		}
+		final List<Reader> readers;
+		readersLock.lock();
+		try {
+			readers = new ArrayList<Reader>(idleReaders);
+		} finally {
+			readersLock.unlock();
+		}
+		for (final Reader reader : readers) {
+			configureReader(reader);
+		}
+	}
+
+	/**
+	 * Closes connections of concurrent reads, it is called when none of them
+	 * is used.
+	 */
+	private void closeReaders() throws SqlJetException {
+		final List<Reader> readers;
+		readersLock.lock();
+		try {
+			readers = new ArrayList<Reader>(idleReaders);
+			idleReaders.clear();
+		} finally {
+			readersLock.unlock();
+		}
+		for (final Reader reader : readers) {
+			reader.dbHandle.getMutex().enter();
+			try {
+				reader.btree.close();
+			} finally {
+				reader.dbHandle.getMutex().leave();
+			}
+		}
 	}
 
 	/**
@@ -234,6 +486,7 @@ public class SqlJetEngine {
 				public Object runSynchronized(SqlJetEngine engine)
 						throws SqlJetException {
 					if (btree != null) {
+						closeReaders();
 						btree.close();
 						btree = null;
 						open = false;
@@ -276,6 +529,8 @@ public class SqlJetEngine {
 		runSynchronized(new ISqlJetEngineSynchronized() {
 			public Object runSynchronized(SqlJetEngine engine)
 					throws SqlJetException {
+				final ISqlJetBtree btree = getBtree();
+				final ISqlJetDbHandle dbHandle = getDbHandle();
 				btree.enter();
 				try {
 					dbHandle.setOptions(new SqlJetOptions(btree, dbHandle));
@@ -295,17 +550,17 @@ public class SqlJetEngine {
 	 */
 	public ISqlJetOptions getOptions() throws SqlJetException {
 		checkOpen();
-		if (null == btree.getSchema()) {
+		if (null == getBtree().getSchema()) {
 			readSchema();
 		}
-		return dbHandle.getOptions();
+		return getDbHandle().getOptions();
 	}
 
 	/**
 	 * Refreshes database schema.
 	 */
 	public void refreshSchema() throws SqlJetException {
-		if (null == btree.getSchema()
+		if (null == getBtree().getSchema()
 				|| !getOptions().verifySchemaVersion(false)) {
 			readSchema();
 		}
@@ -314,7 +569,7 @@ public class SqlJetEngine {
 	protected SqlJetSchema getSchemaInternal() throws SqlJetException {
 		checkOpen();
 		refreshSchema();
-		return btree.getSchema();
+		return getBtree().getSchema();
 	}
 
 	/**
@@ -344,7 +599,7 @@ public class SqlJetEngine {
 	 *         multiple threads within the same process.
 	 */
 	public ISqlJetMutex getMutex() {
-		return dbHandle.getMutex();
+		return getDbHandle().getMutex();
 	}
 
 	/**
@@ -358,7 +613,8 @@ public class SqlJetEngine {
 		runSynchronized(new ISqlJetEngineSynchronized() {
 			public Object runSynchronized(SqlJetEngine engine)
 					throws SqlJetException {
-				btree.setCacheSize(cacheSize);
+				getBtree().setCacheSize(cacheSize);
+				configureReaders();
 				return null;
 			}
 		});
@@ -375,11 +631,154 @@ public class SqlJetEngine {
 		return (Integer) runSynchronized(new ISqlJetEngineSynchronized() {
 			public Object runSynchronized(SqlJetEngine engine)
 					throws SqlJetException {
-				return btree.getCacheSize();
+				return getBtree().getCacheSize();
+			}
+		});
+	}
+
+	/**
+	 * Set the limit of memory-mapped reads (in bytes). Pages which lie within
+	 * first mmapSize bytes of the database file are read directly from the
+	 * memory-mapped file without copying. Zero, which is default unless
+	 * SQLJET_DEFAULT_MMAP_SIZE system property is set, disables memory-mapped
+	 * reads.
+	 * 
+	 * Note that some systems (Windows, namely) do not allow to truncate a file
+	 * while it is mapped, so vacuum of mapped database could fail there.
+	 * 
+	 * @param mmapSize
+	 *            the count of bytes of the database file which may be mapped.
+	 */
+	public void setMmapSize(final long mmapSize) throws SqlJetException {
+		checkOpen();
+		runSynchronized(new ISqlJetEngineSynchronized() {
+			public Object runSynchronized(SqlJetEngine engine)
+					throws SqlJetException {
+				getBtree().setMmapSize(mmapSize);
+				configureReaders();
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Get the limit of memory-mapped reads (in bytes).
+	 * 
+	 * @return the count of bytes of the database file which may be mapped.
+	 */
+	public long getMmapSize() throws SqlJetException {
+		checkOpen();
+		return (Long) runSynchronized(new ISqlJetEngineSynchronized() {
+			public Object runSynchronized(SqlJetEngine engine)
+					throws SqlJetException {
+				return getBtree().getMmapSize();
+			}
+		});
+	}
+
+	/**
+	 * Set the number of pages which are read at once when pages missing from
+	 * cache are read in sequential order, like in scans of tables and indices
+	 * which were written sequentially. Default is 16 pages unless
+	 * SQLJET_DEFAULT_READ_AHEAD system property is set, one or less disables
+	 * read-ahead. Pages are read ahead only by read transactions and not in
+	 * WAL mode.
+	 * 
+	 * @param pages
+	 *            the count of pages which are read at once.
+	 */
+	public void setReadAhead(final int pages) throws SqlJetException {
+		checkOpen();
+		runSynchronized(new ISqlJetEngineSynchronized() {
+			public Object runSynchronized(SqlJetEngine engine)
+					throws SqlJetException {
+				getBtree().setReadAhead(pages);
+				configureReaders();
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Get the number of pages which are read at once by sequential reads.
+	 * 
+	 * @return the count of pages which are read at once, zero if read-ahead
+	 *         is disabled.
+	 */
+	public int getReadAhead() throws SqlJetException {
+		checkOpen();
+		return (Integer) runSynchronized(new ISqlJetEngineSynchronized() {
+			public Object runSynchronized(SqlJetEngine engine)
+					throws SqlJetException {
+				return getBtree().getReadAhead();
+			}
+		});
+	}
+
+	/**
+	 * Set the replacement policy of page cache. Default is
+	 * {@link SqlJetPageCachePolicy#LRU} unless SQLJET.PAGE_CACHE_POLICY system
+	 * property is set. {@link SqlJetPageCachePolicy#TWO_Q} keeps pages which
+	 * are read repeatedly, like interior pages of indices, in cache while big
+	 * tables are scanned.
+	 * 
+	 * @param policy
+	 *            replacement policy of page cache.
+	 */
+	public void setCachePolicy(final SqlJetPageCachePolicy policy)
+			throws SqlJetException {
+		checkOpen();
+		runSynchronized(new ISqlJetEngineSynchronized() {
+			public Object runSynchronized(SqlJetEngine engine)
+					throws SqlJetException {
+				getBtree().setCachePolicy(policy);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Get the replacement policy of page cache.
+	 * 
+	 * @return replacement policy of page cache.
+	 */
+	public SqlJetPageCachePolicy getCachePolicy() throws SqlJetException {
+		checkOpen();
+		return (SqlJetPageCachePolicy) runSynchronized(new ISqlJetEngineSynchronized() {
+			public Object runSynchronized(SqlJetEngine engine)
+					throws SqlJetException {
+				return getBtree().getCachePolicy();
 			}
 		});
 	}
 
+	/**
+	 * Set memory budget, in bytes, which page caches of all databases share.
+	 * When it is exhausted, the coldest unpinned pages are recycled from
+	 * whichever database holds them. Pinned and dirty pages are never
+	 * recycled, so the budget could be exceeded for a while. Default is zero,
+	 * which means no shared budget, unless SQLJET.PAGE_CACHE_BUDGET system
+	 * property is set.
+	 * 
+	 * Databases which were opened while budget was zero don't share it, so
+	 * it should be set before databases are opened.
+	 * 
+	 * @param bytes
+	 *            memory budget of all page caches, zero to disable it.
+	 */
+	public static void setCacheBudget(long bytes) {
+		SqlJetPageCache.setBudget(bytes);
+	}
+
+	/**
+	 * Get memory budget which page caches of all databases share.
+	 * 
+	 * @return memory budget in bytes, zero if it is disabled.
+	 */
+	public static long getCacheBudget() {
+		return SqlJetPageCache.getBudget();
+	}
+
 	/**
      * Set safety level
      * 
@@ -391,7 +790,7 @@ public class SqlJetEngine {
         runSynchronized(new ISqlJetEngineSynchronized() {
             public Object runSynchronized(SqlJetEngine engine)
                     throws SqlJetException {
-                btree.setSafetyLevel(safetyLevel);
+                getBtree().setSafetyLevel(safetyLevel);
                 return null;
             }
         });
@@ -408,7 +807,7 @@ public class SqlJetEngine {
         runSynchronized(new ISqlJetEngineSynchronized() {
             public Object runSynchronized(SqlJetEngine engine)
                     throws SqlJetException {
-                btree.setJournalMode(journalMode);
+                getBtree().setJournalMode(journalMode);
                 return null;
             }
         });
@@ -425,7 +824,7 @@ public class SqlJetEngine {
         return (SqlJetSafetyLevel) runSynchronized(new ISqlJetEngineSynchronized() {
             public Object runSynchronized(SqlJetEngine engine)
                     throws SqlJetException {
-                return btree.getSafetyLevel();
+                return getBtree().getSafetyLevel();
             }
         });
     }
@@ -441,7 +840,7 @@ public class SqlJetEngine {
         return (SqlJetPagerJournalMode) runSynchronized(new ISqlJetEngineSynchronized() {
             public Object runSynchronized(SqlJetEngine engine)
                     throws SqlJetException {
-                return btree.getJournalMode();
+                return getBtree().getJournalMode();
             }
         });
     }
@@ -452,11 +851,12 @@ public class SqlJetEngine {
 	 * @return true if there is an active running transaction.
 	 */
 	public boolean isInTransaction() {
-		return transaction;
+		return transaction || currentReader.get() != null;
 	}
 
 	public SqlJetTransactionMode getTransactionMode() {
-		return transactionMode;
+		return currentReader.get() != null ? SqlJetTransactionMode.READ_ONLY
+				: transactionMode;
 	}
 
 	/**
@@ -468,6 +868,13 @@ public class SqlJetEngine {
 	public void beginTransaction(final SqlJetTransactionMode mode)
 			throws SqlJetException {
 		checkOpen();
+		if (currentReader.get() != null) {
+			if (mode != SqlJetTransactionMode.READ_ONLY) {
+				throw new SqlJetException(SqlJetErrorCode.MISUSE,
+						"Can't start write transaction inside of concurrent read transaction");
+			}
+			return;
+		}
 		runSynchronized(new ISqlJetEngineSynchronized() {
 			public Object runSynchronized(SqlJetEngine engine)
 					throws SqlJetException {
@@ -485,6 +892,9 @@ public class SqlJetEngine {
 	 */
 	public void commit() throws SqlJetException {
 		checkOpen();
+		if (currentReader.get() != null) {
+			return;
+		}
 		runSynchronized(new ISqlJetEngineSynchronized() {
 			public Object runSynchronized(SqlJetEngine engine)
 					throws SqlJetException {
@@ -502,6 +912,9 @@ public class SqlJetEngine {
 	 */
 	public void rollback() throws SqlJetException {
 		checkOpen();
+		if (currentReader.get() != null) {
+			return;
+		}
 		runSynchronized(new ISqlJetEngineSynchronized() {
 			public Object runSynchronized(SqlJetEngine engine)
 					throws SqlJetException {
@@ -526,6 +939,26 @@ public class SqlJetEngine {
 	protected Object runEngineTransaction(final ISqlJetEngineTransaction op,
 			final SqlJetTransactionMode mode) throws SqlJetException {
 		checkOpen();
+		if (currentReader.get() != null) {
+			if (mode != SqlJetTransactionMode.READ_ONLY) {
+				throw new SqlJetException(SqlJetErrorCode.MISUSE,
+						"Can't start write transaction inside of concurrent read transaction");
+			}
+			return runSynchronized(new ISqlJetEngineSynchronized() {
+				public Object runSynchronized(SqlJetEngine engine)
+						throws SqlJetException {
+					return op.run(SqlJetEngine.this);
+				}
+			});
+		}
+		if (mode == SqlJetTransactionMode.READ_ONLY && concurrentReads && !transaction
+				&& !engineLock.isWriteLockedByCurrentThread()) {
+			return runConcurrentRead(op);
+		}
+		if (mode == SqlJetTransactionMode.WRITE && groupCommitSize > 1
+				&& mutexOwner != Thread.currentThread()) {
+			return runGroupCommit(op);
+		}
 		return runSynchronized(new ISqlJetEngineSynchronized() {
 			public Object runSynchronized(SqlJetEngine engine)
 					throws SqlJetException {
@@ -551,6 +984,231 @@ public class SqlJetEngine {
 		});
 	}
 
+	/**
+	 * Enables group commit: write transactions which are run concurrently by
+	 * different threads are merged into one underlying transaction, so they share one journal
+	 * and one sync of the database file. The thread which comes first leads
+	 * the group: if other transactions are queued already it waits up to
+	 * windowMillis for more of them, otherwise it doesn't wait at all, and
+	 * then it runs up to maxOps queued transactions at once. Transactions
+	 * which come while a group runs are queued for the next group. Each
+	 * transaction runs in its own statement subtransaction, so failure of
+	 * one transaction rolls back only its own changes and is reported only
+	 * to its own caller.
+	 * 
+	 * Bodies of all transactions of the group are run by the thread of the
+	 * leader, while threads which started them wait for the group to be
+	 * committed. So transaction's body should not depend on the calling
+	 * thread, like on its thread locals, locks held by it or its interrupt
+	 * status.
+	 * 
+	 * Transaction which is reported as committed is durable only as far as
+	 * the whole group is committed, so transaction's body should not have
+	 * side effects beyond the database. Group commit is disabled by default.
+	 * 
+	 * @param maxOps
+	 *            maximal count of transactions in the group, 1 or less
+	 *            disables group commit.
+	 * @param windowMillis
+	 *            how long the first transaction of group waits for others, in
+	 *            milliseconds.
+	 */
+	public void setGroupCommit(final int maxOps, final long windowMillis) {
+		groupCommitWindow = Math.max(windowMillis, 0);
+		groupCommitSize = maxOps > 1 ? maxOps : 0;
+	}
+
+	/**
+	 * @return maximal count of transactions in the group, 0 if group commit
+	 *         is disabled.
+	 */
+	public int getGroupCommitSize() {
+		return groupCommitSize;
+	}
+
+	/**
+	 * @return how long the first transaction of group waits for others, in
+	 *         milliseconds.
+	 */
+	public long getGroupCommitWindow() {
+		return groupCommitWindow;
+	}
+
+	private static class GroupOp {
+		private final ISqlJetEngineTransaction op;
+		private Object result;
+		private Throwable failure;
+		private boolean done;
+
+		public GroupOp(final ISqlJetEngineTransaction op) {
+			this.op = op;
+		}
+	}
+
+	private Object runGroupCommit(final ISqlJetEngineTransaction op)
+			throws SqlJetException {
+		final GroupOp own = new GroupOp(op);
+		boolean interrupted = false;
+		boolean waited = false;
+		try {
+			groupLock.lock();
+			try {
+				groupQueue.add(own);
+				groupChanged.signalAll();
+			} finally {
+				groupLock.unlock();
+			}
+			while (true) {
+				final List<GroupOp> group = new ArrayList<GroupOp>();
+				groupLock.lock();
+				try {
+					while (!own.done && groupLeader != null) {
+						try {
+							groupChanged.await();
+						} catch (InterruptedException e) {
+							interrupted = true;
+						}
+					}
+					if (own.done) {
+						break;
+					}
+					groupLeader = Thread.currentThread();
+					/* Wait for more writers only if others are queued. */
+					if (!waited && groupQueue.size() > 1) {
+						waited = true;
+						final long deadline = System.currentTimeMillis()
+								+ groupCommitWindow;
+						while (groupQueue.size() < groupCommitSize) {
+							final long timeout = deadline
+									- System.currentTimeMillis();
+							if (timeout <= 0 || interrupted) {
+								break;
+							}
+							try {
+								groupChanged.await(timeout, TimeUnit.MILLISECONDS);
+							} catch (InterruptedException e) {
+								interrupted = true;
+							}
+						}
+					}
+					final int size = Math.max(groupCommitSize, 1);
+					while (!groupQueue.isEmpty() && group.size() < size) {
+						group.add(groupQueue.removeFirst());
+					}
+				} finally {
+					groupLock.unlock();
+				}
+				try {
+					runGroup(group);
+				} finally {
+					groupLock.lock();
+					try {
+						for (final GroupOp groupOp : group) {
+							groupOp.done = true;
+						}
+						groupLeader = null;
+						groupChanged.signalAll();
+					} finally {
+						groupLock.unlock();
+					}
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		final Throwable failure = own.failure;
+		if (failure == null) {
+			return own.result;
+		} else if (failure instanceof SqlJetException) {
+			throw (SqlJetException) failure;
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		} else {
+			throw new SqlJetException(failure);
+		}
+	}
+
+	/**
+	 * Runs group of transactions in one write transaction, each of them in
+	 * its own statement subtransaction. If whole transaction fails then its
+	 * failure is reported to all transactions of group which didn't fail by
+	 * themselves.
+	 */
+	private void runGroup(final List<GroupOp> group) {
+		try {
+			runSynchronized(new ISqlJetEngineSynchronized() {
+				public Object runSynchronized(SqlJetEngine engine)
+						throws SqlJetException {
+					if (isTransactionStarted(SqlJetTransactionMode.WRITE)) {
+						for (final GroupOp groupOp : group) {
+							runGroupOp(groupOp, false);
+						}
+						return null;
+					}
+					doBeginTransaction(SqlJetTransactionMode.WRITE);
+					boolean success = false;
+					try {
+						for (final GroupOp groupOp : group) {
+							runGroupOp(groupOp, true);
+						}
+						doCommitTransaction();
+						success = true;
+						return null;
+					} finally {
+						if (!success) {
+							doRollbackTransaction();
+						}
+						transaction = false;
+						transactionMode = null;
+					}
+				}
+			});
+		} catch (Throwable e) {
+			for (final GroupOp groupOp : group) {
+				if (groupOp.failure == null) {
+					groupOp.result = null;
+					groupOp.failure = e;
+				}
+			}
+		}
+	}
+
+	private void runGroupOp(final GroupOp groupOp, final boolean statement)
+			throws SqlJetException {
+		if (!statement) {
+			try {
+				groupOp.result = groupOp.op.run(this);
+			} catch (SqlJetException e) {
+				groupOp.failure = e;
+			} catch (RuntimeException e) {
+				groupOp.failure = e;
+			}
+			return;
+		}
+		btree.beginStmt();
+		boolean success = false;
+		try {
+			groupOp.result = groupOp.op.run(this);
+			success = true;
+		} catch (SqlJetException e) {
+			groupOp.failure = e;
+		} catch (RuntimeException e) {
+			groupOp.failure = e;
+		} finally {
+			if (success) {
+				btree.commitStmt();
+			} else {
+				btree.closeAllCursors();
+				btree.rollbackStmt();
+				refreshSchema();
+			}
+		}
+	}
+
 	private boolean isTransactionStarted(final SqlJetTransactionMode mode) {
 		return transaction
 				&& (transactionMode == mode || mode == SqlJetTransactionMode.READ_ONLY);
@@ -565,6 +1223,7 @@ public class SqlJetEngine {
 	}
 
 	private void doCommitTransaction() throws SqlJetException {
+		endTransaction(true);
 		btree.closeAllCursors();
 		btree.commit();
 		transaction = false;
@@ -572,10 +1231,83 @@ public class SqlJetEngine {
 	}
 
 	private void doRollbackTransaction() throws SqlJetException {
-		btree.closeAllCursors();
-		btree.rollback();
-		transaction = false;
-		transactionMode = null;
+		try {
+			endTransaction(false);
+		} finally {
+			btree.closeAllCursors();
+			btree.rollback();
+			transaction = false;
+			transactionMode = null;
+		}
+	}
+
+	/**
+	 * Registers listener which is notified when current transaction ends. It
+	 * should be called inside of transaction.
+	 * 
+	 * @param listener
+	 * @throws SqlJetException
+	 */
+	public void addTransactionListener(
+			final ISqlJetEngineTransactionListener listener)
+			throws SqlJetException {
+		runSynchronized(new ISqlJetEngineSynchronized() {
+			public Object runSynchronized(SqlJetEngine engine)
+					throws SqlJetException {
+				if (!transaction) {
+					throw new SqlJetException(SqlJetErrorCode.MISUSE,
+							"Transaction listener requires active transaction");
+				}
+				transactionListeners.add(listener);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Forgets listener which was registered by
+	 * {@link #addTransactionListener(ISqlJetEngineTransactionListener)}, for
+	 * example because it was closed before transaction ends.
+	 * 
+	 * @param listener
+	 * @throws SqlJetException
+	 */
+	public void removeTransactionListener(
+			final ISqlJetEngineTransactionListener listener)
+			throws SqlJetException {
+		runSynchronized(new ISqlJetEngineSynchronized() {
+			public Object runSynchronized(SqlJetEngine engine)
+					throws SqlJetException {
+				transactionListeners.remove(listener);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Notifies listeners of transaction which is ending. Failure of listener
+	 * doesn't stop notification of others, the first one is thrown on commit.
+	 */
+	private void endTransaction(boolean commit) throws SqlJetException {
+		if (transactionListeners.isEmpty()) {
+			return;
+		}
+		final List<ISqlJetEngineTransactionListener> listeners = new ArrayList<ISqlJetEngineTransactionListener>(
+				transactionListeners);
+		transactionListeners.clear();
+		SqlJetException failure = null;
+		for (final ISqlJetEngineTransactionListener listener : listeners) {
+			try {
+				listener.transactionEnding(this, commit);
+			} catch (SqlJetException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null && commit) {
+			throw failure;
+		}
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,147 @@
+/**
+ * SqlJetFileReadBenchmark.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.benchmarks;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetFileSystem;
+import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetFileUtil;
+
+/**
+ * Reads random pages of one file from several threads at once. The
+ * "serialized" run holds the file monitor around every read, like
+ * {@link ISqlJetFile#read(ISqlJetMemoryPointer, int, long)} did before it
+ * was switched to positional reads, the "positional" run doesn't.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetFileReadBenchmark {
+
+    private static final int PAGE_SIZE = 4096;
+    private static final int PAGES = SqlJetUtility.getIntSysProp("SqlJetFileReadBenchmark.PAGES", 8192);
+    private static final int READS = SqlJetUtility.getIntSysProp("SqlJetFileReadBenchmark.READS", 200000);
+    private static final int[] THREADS = { 1, 2, 4, 8 };
+
+    private File path;
+    private ISqlJetFile file;
+
+    @Before
+    public void setUp() throws Exception {
+        path = File.createTempFile("read", "benchmark");
+        file = new SqlJetFileSystem().open(path, SqlJetFileType.MAIN_DB,
+                EnumSet.of(SqlJetFileOpenPermission.READWRITE, SqlJetFileOpenPermission.CREATE));
+        final ISqlJetMemoryPointer page = SqlJetUtility.allocatePtr(PAGE_SIZE);
+        final byte[] data = new byte[PAGE_SIZE];
+        final Random random = new Random(1);
+        for (int i = 0; i < PAGES; i++) {
+            random.nextBytes(data);
+            page.putBytes(0, data);
+            file.write(page, PAGE_SIZE, (long) i * PAGE_SIZE);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (file != null) {
+            file.close();
+        }
+        if (path != null) {
+            SqlJetFileUtil.deleteFile(path);
+        }
+    }
+
+    private void print(String s) {
+        System.out.print(s);
+    }
+
+    @Test
+    public void concurrentReads() throws Exception {
+        print("for " + READS + " random reads of " + PAGES + " pages:\n\n");
+        run(true, 1); // just warm up
+        run(false, 1);
+        for (int threads : THREADS) {
+            final long serialized = run(true, threads);
+            final long positional = run(false, threads);
+            print(String.format("%d thread(s): serialized %8d pages/s, positional %8d pages/s\n", threads,
+                    serialized, positional));
+        }
+    }
+
+    private long run(final boolean serialized, final int threads) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        read(serialized, READS / threads, seed);
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        final long time = System.nanoTime();
+        start.countDown();
+        done.await();
+        final long elapsed = System.nanoTime() - time;
+        if (failure.get() != null) {
+            throw new Exception(failure.get());
+        }
+        return (long) (READS / threads) * threads * 1000000000L / Math.max(elapsed, 1);
+    }
+
+    private void read(boolean serialized, int count, long seed) throws Exception {
+        final ISqlJetMemoryPointer page = SqlJetUtility.allocatePtr(PAGE_SIZE);
+        final Random random = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            final long offset = (long) random.nextInt(PAGES) * PAGE_SIZE;
+            final int read;
+            if (serialized) {
+                synchronized (file) {
+                    read = file.read(page, PAGE_SIZE, offset);
+                }
+            } else {
+                read = file.read(page, PAGE_SIZE, offset);
+            }
+            Assert.assertEquals(PAGE_SIZE, read);
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+/**
+ * SqlJetPageCacheBenchmark.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetPage;
+import org.tmatesoft.sqljet.core.internal.ISqlJetPageCallback;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * Measures cost of page cache hits: fetch and release of random pages which
+ * are all resident in the cache, and garbage collections which happen
+ * meanwhile.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetPageCacheBenchmark {
+
+    private static final int PAGE_SIZE = SqlJetUtility.getIntSysProp("SqlJetPageCacheBenchmark.PAGE_SIZE", 512);
+    private static final int FETCHES = SqlJetUtility.getIntSysProp("SqlJetPageCacheBenchmark.FETCHES", 10000000);
+    private static final int[] CACHE_SIZES = { 2000, 20000, 200000 };
+
+    private static final ISqlJetPageCallback NO_STRESS = new ISqlJetPageCallback() {
+        public void pageCallback(ISqlJetPage page) throws SqlJetException {
+        }
+    };
+
+    private void print(String s) {
+        System.out.print(s);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gc.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(gc.getCollectionTime(), 0);
+        }
+        return time;
+    }
+
+    @Test
+    public void fetchHits() throws Exception {
+        print("for " + FETCHES + " fetches of " + PAGE_SIZE + " bytes pages:\n\n");
+        for (final int cacheSize : CACHE_SIZES) {
+            final SqlJetPageCache cache = new SqlJetPageCache();
+            cache.open(PAGE_SIZE, true, NO_STRESS);
+            cache.setCacheSize(cacheSize);
+            for (int pgno = 1; pgno <= cacheSize; pgno++) {
+                cache.release(cache.fetch(pgno, true));
+            }
+            Assert.assertEquals(cacheSize, cache.getPageCount());
+
+            run(cache, cacheSize, FETCHES / 10); // just warm up
+            System.gc();
+
+            final long gcCount = gcCount();
+            final long gcTime = gcTime();
+            final long time = System.nanoTime();
+            run(cache, cacheSize, FETCHES);
+            final long elapsed = System.nanoTime() - time;
+            print(String.format("%6d pages: %6.1f ns/fetch, %d GC(s) took %d ms\n", cacheSize, (double) elapsed
+                    / FETCHES, gcCount() - gcCount, gcTime() - gcTime));
+
+            Assert.assertEquals(cacheSize, cache.getPageCount());
+            cache.close();
+        }
+    }
+
+    private void run(final SqlJetPageCache cache, final int cacheSize, final int count) throws SqlJetException {
+        final Random random = new Random(cacheSize);
+        for (int i = 0; i < count; i++) {
+            final ISqlJetPage page = cache.fetch(random.nextInt(cacheSize) + 1, false);
+            cache.release(page);
+        }
+    }
+
+}
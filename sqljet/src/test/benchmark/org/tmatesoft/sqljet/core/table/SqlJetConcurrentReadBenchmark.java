@@ -0,0 +1,158 @@
+/**
+ * SqlJetConcurrentReadBenchmark.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetVdbeMemPool;
+
+/**
+ * Measures throughput of full scans which read record fields, run by
+ * several threads at once, each thread with its own {@link SqlJetDb} or all
+ * of them with one {@link SqlJetDb}, with and without concurrent reads. Shows
+ * how reads scale with threads and hit rate of {@link SqlJetVdbeMemPool}.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetConcurrentReadBenchmark extends AbstractNewDbTest {
+
+    private static final int ROWS = SqlJetUtility.getIntSysProp("SqlJetConcurrentReadBenchmark.ROWS", 50000);
+    private static final int SCANS = SqlJetUtility.getIntSysProp("SqlJetConcurrentReadBenchmark.SCANS", 10);
+    private static final int MAX_THREADS = SqlJetUtility.getIntSysProp("SqlJetConcurrentReadBenchmark.THREADS", 8);
+
+    private void print(String s) {
+        System.out.print(s);
+    }
+
+    @Test
+    public void concurrentScans() throws Exception {
+        fill();
+        run(1, null); // just warm up
+        print("for " + SCANS + " scans of " + ROWS + " rows by each thread, database per thread:\n\n");
+        for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+            run(threads, null);
+        }
+        print("\npools:" + SqlJetVdbeMemPool.getStatistics() + "\n");
+    }
+
+    @Test
+    public void sharedDbScans() throws Exception {
+        fill();
+        final SqlJetDb shared = SqlJetDb.open(file, false);
+        try {
+            run(1, shared); // just warm up
+            for (final boolean concurrent : new boolean[] { false, true }) {
+                shared.setConcurrentReads(concurrent);
+                print("\nfor " + SCANS + " scans of " + ROWS + " rows by each thread, one database, concurrent reads "
+                        + (concurrent ? "enabled" : "disabled") + ":\n\n");
+                for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+                    run(threads, shared);
+                }
+            }
+        } finally {
+            shared.close();
+        }
+    }
+
+    private void fill() throws SqlJetException {
+        db.createTable("create table t(a integer primary key, b integer, c text, d real)");
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                for (int i = 1; i <= ROWS; i++) {
+                    t.insert(i, i * 2, "value" + i, i / 3.0);
+                }
+                return null;
+            }
+        });
+        db.close();
+        db = null;
+    }
+
+    /**
+     * Runs scans by given count of threads, with shared database if it isn't
+     * null or with database opened by each thread.
+     */
+    private void run(int threads, final SqlJetDb shared) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Object>> results = new ArrayList<Future<Object>>();
+            final long time = System.nanoTime();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        final SqlJetDb db = shared != null ? shared : SqlJetDb.open(file, false);
+                        try {
+                            for (int i = 0; i < SCANS; i++) {
+                                scan(db);
+                            }
+                        } finally {
+                            if (db != shared) {
+                                db.close();
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Object> result : results) {
+                result.get();
+            }
+            final long elapsed = System.nanoTime() - time;
+            final long rows = (long) ROWS * SCANS * threads;
+            print(String.format("%2d threads: %10.0f rows/s\n", threads, rows * 1e9 / elapsed));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void scan(SqlJetDb db) throws SqlJetException {
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    long count = 0;
+                    while (!c.eof()) {
+                        c.getInteger(1);
+                        c.getString(2);
+                        c.getFloat(3);
+                        count++;
+                        c.next();
+                    }
+                    Assert.assertEquals(ROWS, count);
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
+}
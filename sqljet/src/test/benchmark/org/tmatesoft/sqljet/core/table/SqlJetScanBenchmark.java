@@ -0,0 +1,122 @@
+/**
+ * SqlJetScanBenchmark.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * Measures full table scans: time and bytes allocated per row, for scan
+ * which reads only ROWIDs (cell decoding) and scan which reads column of
+ * each row (record decoding too).
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetScanBenchmark extends AbstractNewDbTest {
+
+    private static final int ROWS = SqlJetUtility.getIntSysProp("SqlJetScanBenchmark.ROWS", 100000);
+    private static final int SCANS = SqlJetUtility.getIntSysProp("SqlJetScanBenchmark.SCANS", 10);
+
+    private void print(String s) {
+        System.out.print(s);
+    }
+
+    /**
+     * @return bytes allocated by current thread so far or -1 if JVM doesn't
+     *         count them.
+     */
+    private static long allocatedBytes() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void fullScan() throws Exception {
+        db.createTable("create table t(a integer primary key, b integer, c text)");
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                for (int i = 1; i <= ROWS; i++) {
+                    t.insert(i, i * 2, "value" + i);
+                }
+                return null;
+            }
+        });
+        db.setCacheSize(ROWS);
+
+        print("for " + SCANS + " scans of " + ROWS + " rows:\n\n");
+        run("rowid", false);
+        run("column", true);
+    }
+
+    private void run(final String name, final boolean readColumn) throws SqlJetException {
+        scan(readColumn); // just warm up
+        System.gc();
+
+        final long allocated = allocatedBytes();
+        final long time = System.nanoTime();
+        for (int i = 0; i < SCANS; i++) {
+            scan(readColumn);
+        }
+        final long elapsed = System.nanoTime() - time;
+        final long rows = (long) ROWS * SCANS;
+        if (allocated >= 0) {
+            print(String.format("%6s: %6.1f ns/row, %6.1f bytes/row\n", name, (double) elapsed / rows,
+                    (double) (allocatedBytes() - allocated) / rows));
+        } else {
+            print(String.format("%6s: %6.1f ns/row\n", name, (double) elapsed / rows));
+        }
+    }
+
+    private void scan(final boolean readColumn) throws SqlJetException {
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    long sum = 0;
+                    long count = 0;
+                    while (!c.eof()) {
+                        sum += readColumn ? c.getInteger(1) : c.getRowId();
+                        count++;
+                        c.next();
+                    }
+                    Assert.assertEquals(ROWS, count);
+                    Assert.assertTrue(sum > 0);
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
+}
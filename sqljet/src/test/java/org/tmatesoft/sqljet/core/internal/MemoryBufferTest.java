@@ -17,12 +17,16 @@
  */
 package org.tmatesoft.sqljet.core.internal;
 
+import java.nio.ByteBuffer;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryBuffer;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryManager;
 import org.tmatesoft.sqljet.core.internal.SqlJetMemoryBufferType;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetMappedByteBuffer;
 import org.tmatesoft.sqljet.core.internal.memory.SqlJetMemoryManager;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetSlabBuffer;
 
 /**
  * @author TMate Software Ltd.
@@ -201,4 +205,77 @@ public class MemoryBufferTest {
         memoryManager.free(b);
     }
 
+    @Test
+    public void testMappedCopyOnWrite() {
+        final ByteBuffer view = ByteBuffer.wrap(new byte[] { 1, 2, 3, 4 }).asReadOnlyBuffer();
+        final SqlJetMappedByteBuffer b = new SqlJetMappedByteBuffer(view);
+        final ISqlJetMemoryPointer p = b.getPointer(0);
+        Assert.assertTrue(b.isMapped());
+        Assert.assertEquals(0x01020304, p.getInt(0));
+        p.putByte(1, (byte) 9);
+        Assert.assertFalse(b.isMapped());
+        Assert.assertEquals(0x01090304, p.getInt(0));
+        Assert.assertEquals(2, view.get(1));
+        b.map(view);
+        Assert.assertTrue(b.isMapped());
+        Assert.assertEquals(0x01020304, p.getInt(0));
+    }
+
+    @Test
+    public void testSlab() {
+        final ISqlJetMemoryManager slabManager = new SqlJetMemoryManager();
+        slabManager.setSlabSize(4 * 1024);
+        Assert.assertEquals(4 * 1024, slabManager.getSlabSize());
+        Assert.assertEquals(0, slabManager.getSlabReserved());
+
+        final ISqlJetMemoryBuffer b1 = slabManager.allocate(1024, SqlJetMemoryBufferType.SLAB);
+        Assert.assertTrue(b1 instanceof SqlJetSlabBuffer);
+        Assert.assertEquals(1024, b1.getSize());
+        Assert.assertEquals(4 * 1024, slabManager.getSlabReserved());
+        Assert.assertEquals(1024, slabManager.getSlabUsed());
+        b1.putInt(0, 0x01020304);
+        b1.putInt(1020, -1);
+
+        final ISqlJetMemoryBuffer[] rest = new ISqlJetMemoryBuffer[3];
+        for (int i = 0; i < rest.length; i++) {
+            rest[i] = slabManager.allocate(1024, SqlJetMemoryBufferType.SLAB);
+            Assert.assertTrue(rest[i] instanceof SqlJetSlabBuffer);
+            Assert.assertEquals(0, rest[i].getInt(0));
+        }
+        Assert.assertEquals(0x01020304, b1.getInt(0));
+        Assert.assertEquals(4 * 1024, slabManager.getSlabUsed());
+
+        // slab is exhausted, so buffer of default type is allocated.
+        final ISqlJetMemoryBuffer heap = slabManager.allocate(1024, SqlJetMemoryBufferType.SLAB);
+        Assert.assertFalse(heap instanceof SqlJetSlabBuffer);
+        Assert.assertEquals(1024, heap.getSize());
+
+        // freed slot is reused and cleaned.
+        slabManager.free(b1);
+        Assert.assertFalse(b1.isAllocated());
+        Assert.assertEquals(3 * 1024, slabManager.getSlabUsed());
+        final ISqlJetMemoryBuffer b2 = slabManager.allocate(1024, SqlJetMemoryBufferType.SLAB);
+        Assert.assertTrue(b2 instanceof SqlJetSlabBuffer);
+        Assert.assertEquals(0, b2.getInt(0));
+        Assert.assertEquals(0, b2.getInt(1020));
+        Assert.assertEquals(4 * 1024, slabManager.getSlabReserved());
+
+        slabManager.free(b2);
+        for (ISqlJetMemoryBuffer b : rest) {
+            slabManager.free(b);
+        }
+        Assert.assertEquals(0, slabManager.getSlabUsed());
+    }
+
+    @Test
+    public void testSlabDisabled() {
+        // slab may be enabled for all tests by system property.
+        final ISqlJetMemoryManager noSlabManager = new SqlJetMemoryManager();
+        noSlabManager.setSlabSize(0);
+        final ISqlJetMemoryBuffer b = noSlabManager.allocate(1024, SqlJetMemoryBufferType.SLAB);
+        Assert.assertFalse(b instanceof SqlJetSlabBuffer);
+        Assert.assertEquals(1024, b.getSize());
+        Assert.assertEquals(0, noSlabManager.getSlabUsed());
+    }
+
 }
@@ -17,6 +17,8 @@
  */
 package org.tmatesoft.sqljet.core.internal;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
@@ -115,6 +117,19 @@ public class SqlJetFileMockTest extends SqlJetAbstractFileSystemMockTest {
                 .getBuffer().asArray());
     }
 
+    @Test
+    public void testWriteList() throws Exception {
+        final List<ISqlJetMemoryPointer> buffers = new ArrayList<ISqlJetMemoryPointer>();
+        buffers.add(SqlJetUtility.wrapPtr(new byte[] { 1, 2 }));
+        buffers.add(SqlJetUtility.wrapPtr(new byte[] { 3, 4, 5 }));
+        buffers.add(SqlJetUtility.wrapPtr(new byte[] { 6, 7 }));
+        file.write(buffers, 2, 1);
+        final ISqlJetMemoryPointer rb = SqlJetUtility.allocatePtr(7);
+        Assert.assertEquals(7, file.read(rb, 7, 0));
+        Assert.assertArrayEquals("Buffers should be written one after another", new byte[] { 0, 1, 2, 3, 4, 6, 7 },
+                rb.getBuffer().asArray());
+    }
+
     @Test
     public void testSize() throws Exception {
         final long fileSize = file.fileSize();
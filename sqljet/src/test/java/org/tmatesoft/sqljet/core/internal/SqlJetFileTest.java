@@ -17,6 +17,10 @@
  */
 package org.tmatesoft.sqljet.core.internal;
 
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetFile;
 import org.tmatesoft.sqljet.core.internal.fs.SqlJetFileSystem;
 
 /**
@@ -34,5 +38,68 @@ public class SqlJetFileTest extends SqlJetFileMockTest {
         fileSystem = new SqlJetFileSystem();
         super.setUpInstances();
     }
-    
+
+    @Test
+    public void testWaitForUnlock() throws Exception {
+        Assert.assertTrue(file.lock(SqlJetLockType.SHARED));
+        Assert.assertTrue(file.lock(SqlJetLockType.RESERVED));
+        Assert.assertTrue(file2.lock(SqlJetLockType.SHARED));
+        Assert.assertFalse(file2.lock(SqlJetLockType.RESERVED));
+        final Thread unlocker = new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                    file.unlock(SqlJetLockType.SHARED);
+                } catch (Exception e) {
+                }
+            }
+        };
+        unlocker.start();
+        final long start = System.currentTimeMillis();
+        Assert.assertTrue(SqlJetFile.waitForUnlock(10000));
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        unlocker.join();
+        Assert.assertTrue(file2.lock(SqlJetLockType.RESERVED));
+    }
+
+    @Test
+    public void testWaitForUnlockTimeout() throws Exception {
+        Assert.assertTrue(file.lock(SqlJetLockType.SHARED));
+        Assert.assertTrue(file.lock(SqlJetLockType.RESERVED));
+        Assert.assertTrue(file2.lock(SqlJetLockType.SHARED));
+        Assert.assertFalse(file2.lock(SqlJetLockType.RESERVED));
+        Assert.assertFalse(SqlJetFile.waitForUnlock(10));
+    }
+
+    @Test
+    public void testInterruptedRead() throws Exception {
+        final ISqlJetMemoryPointer b = SqlJetUtility.allocatePtr(1024);
+        SqlJetUtility.memset(b, (byte) 1, 1024);
+        file.write(b, 1024, 0);
+        Assert.assertTrue(file.lock(SqlJetLockType.SHARED));
+        Assert.assertTrue(file.lock(SqlJetLockType.RESERVED));
+        final Thread reader = new Thread() {
+            public void run() {
+                interrupt();
+                try {
+                    file.read(SqlJetUtility.allocatePtr(1024), 1024, 0);
+                } catch (SqlJetException e) {
+                }
+            }
+        };
+        reader.start();
+        reader.join();
+        // interrupt of one thread doesn't break file for others.
+        final ISqlJetMemoryPointer rb = SqlJetUtility.allocatePtr(1024);
+        Assert.assertEquals(1024, file.read(rb, 1024, 0));
+        Assert.assertEquals(1, SqlJetUtility.getUnsignedByte(rb, 512));
+        file.write(b, 1024, 1024);
+        Assert.assertEquals(2048, file.fileSize());
+        // locks are held after file is reopened.
+        Assert.assertTrue(file2.lock(SqlJetLockType.SHARED));
+        Assert.assertFalse(file2.lock(SqlJetLockType.RESERVED));
+        Assert.assertTrue(file.unlock(SqlJetLockType.NONE));
+        Assert.assertTrue(file2.lock(SqlJetLockType.RESERVED));
+    }
+
 }
@@ -171,6 +171,9 @@ public class SqlJetPagerTest extends SqlJetAbstractLoggedTest {
         SqlJetUtility.memset(page2.getData(), (byte) 2, pageSize);
         pager.commitPhaseOne(null, false);
         pager.commitPhaseTwo();
+        // buffers of released pages could be reused, so content is copied.
+        final byte[] data1 = page1.getData().getBuffer().asArray().clone();
+        final byte[] data2 = page2.getData().getBuffer().asArray().clone();
         page1.unref();
         page2.unref();
         pager.close();
@@ -183,11 +186,11 @@ public class SqlJetPagerTest extends SqlJetAbstractLoggedTest {
         logger.info("file size " + Long.toString(fileSize));
         final ISqlJetPage page$1 = pager.acquirePage(pageNumber, true);
         // logger.info("page#"+pageNumber+":"+Arrays.toString(page$1.getData()));
-        Assert.assertArrayEquals(page1.getData().getBuffer().asArray(), page$1.getData().getBuffer().asArray());
+        Assert.assertArrayEquals(data1, page$1.getData().getBuffer().asArray());
 
         final ISqlJetPage page$2 = pager.acquirePage(pageNumber + 1, true);
         // logger.info("page#"+(pageNumber+1)+":"+Arrays.toString(page$2.getData()));
-        Assert.assertArrayEquals(page2.getData().getBuffer().asArray(), page$2.getData().getBuffer().asArray());
+        Assert.assertArrayEquals(data2, page$2.getData().getBuffer().asArray());
 
         pager.begin(true);
         page$1.write();
@@ -207,11 +210,11 @@ public class SqlJetPagerTest extends SqlJetAbstractLoggedTest {
         logger.info("file size " + Long.toString(fileSize));
         final ISqlJetPage page$$1 = pager.acquirePage(pageNumber, true);
         // logger.info("page#"+pageNumber+":"+Arrays.toString(page$$1.getData()));
-        Assert.assertArrayEquals(page1.getData().getBuffer().asArray(), page$$1.getData().getBuffer().asArray());
+        Assert.assertArrayEquals(data1, page$$1.getData().getBuffer().asArray());
 
         final ISqlJetPage page$$2 = pager.acquirePage(pageNumber + 1, true);
         // logger.info("page#"+(pageNumber+1)+":"+Arrays.toString(page$$2.getData()));
-        Assert.assertArrayEquals(page2.getData().getBuffer().asArray(), page$$2.getData().getBuffer().asArray());
+        Assert.assertArrayEquals(data2, page$$2.getData().getBuffer().asArray());
 
     }
 
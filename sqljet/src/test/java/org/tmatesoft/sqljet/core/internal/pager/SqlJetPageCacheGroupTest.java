@@ -0,0 +1,136 @@
+/**
+ * SqlJetPageCacheGroupTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetPage;
+import org.tmatesoft.sqljet.core.internal.ISqlJetPageCallback;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetPageCacheGroupTest {
+
+    private static final int PAGE_SIZE = 512;
+    private static final int BUDGET_PAGES = 100;
+
+    private final List<SqlJetPageCache> caches = new ArrayList<SqlJetPageCache>();
+    private long savedBudget;
+
+    @Before
+    public void setUp() {
+        savedBudget = SqlJetPageCache.getBudget();
+        SqlJetPageCache.setBudget(BUDGET_PAGES * PAGE_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        for (SqlJetPageCache cache : caches) {
+            cache.close();
+        }
+        SqlJetPageCache.setBudget(savedBudget);
+    }
+
+    private SqlJetPageCache open() {
+        final SqlJetPageCache cache = new SqlJetPageCache();
+        cache.open(PAGE_SIZE, true, new ISqlJetPageCallback() {
+            public void pageCallback(ISqlJetPage page) throws SqlJetException {
+            }
+        });
+        cache.setCacheSize(BUDGET_PAGES * 2);
+        caches.add(cache);
+        return cache;
+    }
+
+    private void read(SqlJetPageCache cache, int from, int count) throws SqlJetException {
+        for (int pgno = from; pgno < from + count; pgno++) {
+            final ISqlJetPage page = cache.fetch(pgno, true);
+            assertNotNull(page);
+            cache.release(page);
+        }
+    }
+
+    private long usedPages() {
+        return SqlJetPageCache.getBudgetUsage() / PAGE_SIZE;
+    }
+
+    @Test
+    public void coldestPagesAreRecycledFromOtherCache() throws Exception {
+        final SqlJetPageCache a = open();
+        final SqlJetPageCache b = open();
+        read(a, 1, BUDGET_PAGES);
+        assertEquals(BUDGET_PAGES, a.getPageCount());
+        assertEquals(BUDGET_PAGES, usedPages());
+
+        // pages 1..20 of "a" are made hot again, so "b" takes colder ones.
+        read(a, 1, 20);
+        read(b, 1, 50);
+        assertEquals(50, b.getPageCount());
+        assertEquals(50, a.getPageCount());
+        assertEquals(BUDGET_PAGES, usedPages());
+        for (int pgno = 1; pgno <= 20; pgno++) {
+            final ISqlJetPage page = a.fetch(pgno, false);
+            assertNotNull(page);
+            a.release(page);
+        }
+        assertNull(a.fetch(21, false));
+
+        b.close();
+        assertEquals(50, usedPages());
+    }
+
+    @Test
+    public void pinnedPagesExceedBudget() throws Exception {
+        final SqlJetPageCache a = open();
+        final SqlJetPageCache b = open();
+        final List<ISqlJetPage> pinned = new ArrayList<ISqlJetPage>();
+        for (int pgno = 1; pgno <= BUDGET_PAGES; pgno++) {
+            pinned.add(a.fetch(pgno, true));
+        }
+        read(b, 1, 10);
+        assertTrue(usedPages() > BUDGET_PAGES);
+        for (ISqlJetPage page : pinned) {
+            a.release(page);
+        }
+        read(b, 11, 10);
+        assertEquals(BUDGET_PAGES, usedPages());
+    }
+
+    @Test
+    public void lowerBudgetRecyclesPages() throws Exception {
+        final SqlJetPageCache a = open();
+        read(a, 1, BUDGET_PAGES);
+        SqlJetPageCache.setBudget(BUDGET_PAGES / 2 * PAGE_SIZE);
+        assertEquals(BUDGET_PAGES / 2, a.getPageCount());
+        assertEquals(BUDGET_PAGES / 2, usedPages());
+    }
+
+}
@@ -0,0 +1,155 @@
+/**
+ * SqlJetPageCacheTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetPage;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryManager;
+import org.tmatesoft.sqljet.core.internal.SqlJetMemoryBufferType;
+import org.tmatesoft.sqljet.core.internal.ISqlJetPageCallback;
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetPageCacheTest {
+
+    private static final int CACHE_SIZE = 100;
+    private static final int HOT_PAGES = 20;
+
+    private int nextScanPage = 1000;
+
+    private SqlJetPageCache open(SqlJetPageCachePolicy policy) {
+        final SqlJetPageCache cache = new SqlJetPageCache();
+        cache.open(512, true, new ISqlJetPageCallback() {
+            public void pageCallback(ISqlJetPage page) throws SqlJetException {
+            }
+        });
+        cache.setCacheSize(CACHE_SIZE);
+        cache.setPolicy(policy);
+        assertEquals(policy, cache.getPolicy());
+        return cache;
+    }
+
+    private void read(SqlJetPageCache cache, int pgno) throws SqlJetException {
+        final ISqlJetPage page = cache.fetch(pgno, true);
+        assertNotNull(page);
+        assertEquals(pgno, page.getPageNumber());
+        cache.release(page);
+    }
+
+    private void scan(SqlJetPageCache cache, int count) throws SqlJetException {
+        for (int i = 0; i < count; i++) {
+            read(cache, nextScanPage++);
+        }
+    }
+
+    /**
+     * Hot pages are read between scans, then one long scan follows.
+     * 
+     * @return count of hot pages which are still in cache.
+     */
+    private int hotPagesAfterScan(SqlJetPageCache cache) throws SqlJetException {
+        for (int round = 0; round < 4; round++) {
+            for (int pgno = 1; pgno <= HOT_PAGES; pgno++) {
+                read(cache, pgno);
+            }
+            scan(cache, CACHE_SIZE + HOT_PAGES);
+        }
+        scan(cache, CACHE_SIZE * 10);
+        assertEquals(CACHE_SIZE, cache.getPageCount());
+        int resident = 0;
+        for (int pgno = 1; pgno <= HOT_PAGES; pgno++) {
+            if (cache.pCache.fetch(pgno, false, false) != null) {
+                resident++;
+            }
+        }
+        return resident;
+    }
+
+    @Test
+    public void lruIsFlushedByScan() throws Exception {
+        assertEquals(0, hotPagesAfterScan(open(SqlJetPageCachePolicy.LRU)));
+    }
+
+    @Test
+    public void twoQueueSurvivesScan() throws Exception {
+        assertEquals(HOT_PAGES, hotPagesAfterScan(open(SqlJetPageCachePolicy.TWO_Q)));
+    }
+
+    @Test
+    public void pinnedPagesAreNotRecycled() throws Exception {
+        for (SqlJetPageCachePolicy policy : SqlJetPageCachePolicy.values()) {
+            final SqlJetPageCache cache = open(policy);
+            final ISqlJetPage pinned = cache.fetch(1, true);
+            scan(cache, CACHE_SIZE * 3);
+            assertSame(pinned, cache.fetch(1, false));
+            cache.release(pinned);
+            cache.release(pinned);
+            assertEquals(CACHE_SIZE, cache.getPageCount());
+        }
+    }
+
+    @Test
+    public void switchPolicy() throws Exception {
+        final SqlJetPageCache cache = open(SqlJetPageCachePolicy.LRU);
+        final ISqlJetPage pinned = cache.fetch(1, true);
+        scan(cache, CACHE_SIZE / 2);
+        cache.setPolicy(SqlJetPageCachePolicy.TWO_Q);
+        assertEquals(CACHE_SIZE / 2 + 1, cache.getPageCount());
+        scan(cache, CACHE_SIZE * 3);
+        assertSame(pinned, cache.fetch(1, false));
+        cache.release(pinned);
+        cache.release(pinned);
+        cache.setPolicy(SqlJetPageCachePolicy.LRU);
+        scan(cache, CACHE_SIZE * 3);
+        assertNull(cache.fetch(1, false));
+        assertEquals(CACHE_SIZE, cache.getPageCount());
+    }
+
+    @Test
+    public void slabSlotsAreRecycled() throws Exception {
+        // page buffers are in slab only in slabTest run.
+        Assume.assumeTrue(SqlJetPage.BUFFER_TYPE == SqlJetMemoryBufferType.SLAB);
+        final ISqlJetMemoryManager memoryManager = SqlJetUtility.memoryManager;
+        final long slabSize = memoryManager.getSlabSize();
+        memoryManager.setSlabSize(memoryManager.getSlabReserved() + CACHE_SIZE * 512);
+        try {
+            final long used = memoryManager.getSlabUsed();
+            final SqlJetPageCache cache = open(SqlJetPageCachePolicy.LRU);
+            scan(cache, CACHE_SIZE * 3);
+            assertEquals(CACHE_SIZE, cache.getPageCount());
+            assertEquals(used + CACHE_SIZE * 512, memoryManager.getSlabUsed());
+            cache.close();
+            assertEquals(used, memoryManager.getSlabUsed());
+        } finally {
+            memoryManager.setSlabSize(slabSize);
+        }
+    }
+
+}
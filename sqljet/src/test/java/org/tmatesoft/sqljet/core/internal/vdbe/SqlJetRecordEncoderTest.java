@@ -0,0 +1,134 @@
+/**
+ * SqlJetRecordEncoderTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.vdbe;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetEncoding;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeRecord;
+
+/**
+ * Checks that {@link SqlJetRecordEncoder} produces same records as
+ * {@link SqlJetBtreeRecord#getRawRecord()}.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetRecordEncoderTest {
+
+    private static final SqlJetEncoding[] ENCODINGS = { SqlJetEncoding.UTF8, SqlJetEncoding.UTF16LE,
+            SqlJetEncoding.UTF16BE };
+
+    private static String text(int length) {
+        final StringBuilder s = new StringBuilder();
+        while (s.length() < length) {
+            s.append("a\u00e9\u4e2d");
+        }
+        return s.toString();
+    }
+
+    private static final Object[][] ROWS = {
+            {},
+            { null, "", "abc", new byte[0], new byte[] { 1, 2, 3 } },
+            { 0L, 1L, -1L, 127L, 128L, 32767L, 32768L, 8388607L, 8388608L, 2147483647L, 2147483648L,
+                    140737488355327L, 140737488355328L, Long.MIN_VALUE, Long.MAX_VALUE },
+            { 1, (short) -300, (byte) 7, true, false, 1.5, -2.5f, Double.NaN, Float.NaN, 0.0 },
+            { "\u00e9t\u00e9 \u4e2d\u6587 \ud83d\ude00 \ud800x \udc00", ByteBuffer.wrap(new byte[] { 4, 5 }) },
+            { text(300), new byte[1000], text(100000) } };
+
+    private static byte[] bytes(ISqlJetMemoryPointer p, int size) {
+        final byte[] b = new byte[size];
+        p.getBytes(0, b, size);
+        return b;
+    }
+
+    private static byte[] expected(SqlJetEncoding encoding, Object... values) throws SqlJetException {
+        final ISqlJetBtreeRecord record = SqlJetBtreeRecord.getRecord(encoding, values);
+        try {
+            final ISqlJetMemoryPointer p = record.getRawRecord();
+            return bytes(p, p.remaining());
+        } finally {
+            record.release();
+        }
+    }
+
+    @Test
+    public void encode() throws SqlJetException {
+        final SqlJetRecordEncoder encoder = new SqlJetRecordEncoder();
+        for (final SqlJetEncoding encoding : ENCODINGS) {
+            for (final Object[] row : ROWS) {
+                final ISqlJetMemoryPointer p = encoder.encode(encoding, row);
+                Assert.assertArrayEquals(expected(encoding, row), bytes(p, encoder.getSize()));
+            }
+        }
+    }
+
+    @Test
+    public void encodeKey() throws SqlJetException {
+        final SqlJetRecordEncoder encoder = new SqlJetRecordEncoder();
+        for (final Object[] row : ROWS) {
+            for (final long rowId : new long[] { 1, 1000, Long.MAX_VALUE }) {
+                final ISqlJetMemoryPointer p = encoder.encodeKey(SqlJetEncoding.UTF8, row, rowId);
+                Assert.assertArrayEquals(
+                        expected(SqlJetEncoding.UTF8, SqlJetUtility.addArrays(row, new Object[] { rowId })),
+                        bytes(p, encoder.getSize()));
+            }
+        }
+    }
+
+    @Test
+    public void encodeRowBuffer() throws SqlJetException {
+        final SqlJetRecordEncoder encoder = new SqlJetRecordEncoder();
+        for (final Object[] values : ROWS) {
+            final SqlJetRowBuffer row = new SqlJetRowBuffer(values.length + 1);
+            for (int i = 0; i < values.length; i++) {
+                final Object value = values[i];
+                if (value instanceof Long) {
+                    row.setInteger(i, (Long) value);
+                } else if (value instanceof Double) {
+                    row.setFloat(i, (Double) value);
+                } else {
+                    row.setObject(i, value);
+                }
+            }
+            row.setInteger(values.length, 42);
+            final ISqlJetMemoryPointer p = encoder.encode(SqlJetEncoding.UTF8, row, values.length);
+            Assert.assertArrayEquals(
+                    expected(SqlJetEncoding.UTF8, SqlJetUtility.addArrays(values, new Object[] { null })),
+                    bytes(p, encoder.getSize()));
+        }
+    }
+
+    @Test
+    public void badValue() {
+        try {
+            new SqlJetRecordEncoder().encode(SqlJetEncoding.UTF8, 1, new Object());
+            Assert.fail();
+        } catch (SqlJetException e) {
+            Assert.assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+        }
+    }
+
+}
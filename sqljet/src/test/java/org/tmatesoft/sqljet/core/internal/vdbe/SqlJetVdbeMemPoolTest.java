@@ -0,0 +1,62 @@
+/**
+ * SqlJetVdbeMemPoolTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.vdbe;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetVdbeMemPoolTest {
+
+    @Test
+    public void reuseOnSameThread() {
+        final SqlJetVdbeMemPool pool = SqlJetVdbeMemPool.getThreadPool();
+        final SqlJetVdbeMem mem = SqlJetVdbeMem.obtainInstance();
+        mem.setInt64(42);
+        final long created = pool.getCreated();
+        mem.release();
+        final SqlJetVdbeMem reused = SqlJetVdbeMem.obtainInstance();
+        Assert.assertSame(mem, reused);
+        Assert.assertTrue(reused.isNull());
+        Assert.assertEquals(created, pool.getCreated());
+        Assert.assertTrue(pool.getHitRate() > 0);
+        reused.release();
+    }
+
+    @Test
+    public void poolPerThread() throws Exception {
+        final SqlJetVdbeMemPool[] other = new SqlJetVdbeMemPool[1];
+        final Thread thread = new Thread() {
+            public void run() {
+                other[0] = SqlJetVdbeMemPool.getThreadPool();
+                SqlJetVdbeMem.obtainInstance().release();
+            }
+        };
+        thread.start();
+        thread.join();
+        Assert.assertNotNull(other[0]);
+        Assert.assertNotSame(SqlJetVdbeMemPool.getThreadPool(), other[0]);
+        Assert.assertEquals(1, other[0].getObtained());
+        Assert.assertEquals(1, other[0].getSize());
+    }
+
+}
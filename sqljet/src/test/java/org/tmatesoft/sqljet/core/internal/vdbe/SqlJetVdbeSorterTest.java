@@ -0,0 +1,110 @@
+/**
+ * SqlJetVdbeSorterTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.vdbe;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetEncoding;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetFileSystem;
+import org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeRecord;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetVdbeSorterTest {
+
+    private static final int RECORDS = 20000;
+
+    private SqlJetKeyInfo keyInfo(boolean desc) throws SqlJetException {
+        final SqlJetKeyInfo keyInfo = new SqlJetKeyInfo();
+        keyInfo.setEnc(SqlJetEncoding.UTF8);
+        keyInfo.setNField(1);
+        keyInfo.setSortOrder(0, desc);
+        return keyInfo;
+    }
+
+    private static byte[] bytes(ISqlJetMemoryPointer p) {
+        final byte[] b = new byte[p.remaining()];
+        p.getBytes(b);
+        return b;
+    }
+
+    private void sort(int memory, boolean desc, boolean spill) throws SqlJetException {
+        final SqlJetVdbeSorter sorter = new SqlJetVdbeSorter(keyInfo(desc), new SqlJetFileSystem(), memory);
+        final TreeMap<String, Long> expected = new TreeMap<String, Long>();
+        final Random random = new Random(memory);
+        try {
+            for (long rowId = 1; rowId <= RECORDS; rowId++) {
+                final String key = Long.toString(random.nextLong(), 36);
+                expected.put(key, rowId);
+                final ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(SqlJetEncoding.UTF8, key, rowId);
+                sorter.write(rec.getRawRecord());
+                rec.release();
+            }
+            Assert.assertEquals(RECORDS, sorter.getCount());
+            Assert.assertEquals(spill, sorter.getRunsCount() > 1);
+            int count = 0;
+            for (boolean more = sorter.rewind(); more; more = sorter.next()) {
+                final String expectedKey = desc ? expected.lastKey() : expected.firstKey();
+                final ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(SqlJetEncoding.UTF8, expectedKey,
+                        expected.remove(expectedKey));
+                Assert.assertArrayEquals(bytes(rec.getRawRecord()), bytes(sorter.getKey()));
+                rec.release();
+                count++;
+            }
+            Assert.assertEquals(RECORDS, count);
+            Assert.assertFalse(sorter.next());
+        } finally {
+            sorter.close();
+        }
+    }
+
+    @Test
+    public void sortInMemory() throws SqlJetException {
+        sort(SqlJetVdbeSorter.SQLJET_SORTER_MEMORY, false, false);
+    }
+
+    @Test
+    public void sortRuns() throws SqlJetException {
+        sort(16 * 1024, false, true);
+    }
+
+    @Test
+    public void sortRunsDesc() throws SqlJetException {
+        sort(16 * 1024, true, true);
+    }
+
+    @Test
+    public void sortEmpty() throws SqlJetException {
+        final SqlJetVdbeSorter sorter = new SqlJetVdbeSorter(keyInfo(false), new SqlJetFileSystem(), 1024);
+        try {
+            Assert.assertFalse(sorter.rewind());
+            Assert.assertNull(sorter.getKey());
+        } finally {
+            sorter.close();
+        }
+    }
+
+}
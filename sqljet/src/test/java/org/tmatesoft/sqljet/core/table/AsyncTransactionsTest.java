@@ -0,0 +1,131 @@
+/**
+ * AsyncTransactionsTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class AsyncTransactionsTest extends AbstractNewDbTest {
+
+    private static final int WRITES = 100;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        db.createTable("create table t(a integer primary key, b)");
+    }
+
+    private ISqlJetTransaction insert(final long value) {
+        return new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                return db.getTable("t").insert(null, value);
+            }
+        };
+    }
+
+    private final ISqlJetTransaction count = new ISqlJetTransaction() {
+        public Object run(SqlJetDb db) throws SqlJetException {
+            final ISqlJetCursor c = db.getTable("t").open();
+            try {
+                return c.getRowCount();
+            } finally {
+                c.close();
+            }
+        }
+    };
+
+    @Test
+    public void writesRunInOrder() throws Exception {
+        final List<Future<Object>> results = new ArrayList<Future<Object>>();
+        for (int i = 0; i < WRITES; i++) {
+            results.add(db.runWriteTransactionAsync(insert(i)));
+        }
+        for (int i = 0; i < WRITES; i++) {
+            // rowIds are generated in order of calls.
+            assertEquals(Long.valueOf(i + 1), results.get(i).get());
+        }
+        assertEquals(Long.valueOf(WRITES), db.runReadTransactionAsync(count).get());
+    }
+
+    @Test
+    public void failureIsReported() throws Exception {
+        final Future<Object> result = db.runWriteTransactionAsync(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.getTable("t").insert(null, 1);
+                throw new SqlJetException(SqlJetErrorCode.CONSTRAINT);
+            }
+        });
+        try {
+            result.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(SqlJetErrorCode.CONSTRAINT, ((SqlJetException) e.getCause()).getErrorCode());
+        }
+        // failed transaction is rolled back.
+        assertEquals(Long.valueOf(0), db.runReadTransactionAsync(count).get());
+    }
+
+    @Test
+    public void readExecutor() throws Exception {
+        final AtomicInteger executed = new AtomicInteger();
+        db.setReadExecutor(new Executor() {
+            public void execute(Runnable command) {
+                executed.incrementAndGet();
+                command.run();
+            }
+        });
+        db.runWriteTransactionAsync(insert(1)).get();
+        final Future<Object> result = db.runReadTransactionAsync(count);
+        assertTrue(result.isDone());
+        assertEquals(Long.valueOf(1), result.get());
+        assertEquals(1, executed.get());
+    }
+
+    @Test
+    public void closedDatabase() throws Exception {
+        db.close();
+        try {
+            db.runWriteTransactionAsync(insert(1));
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+        } finally {
+            db = null;
+        }
+    }
+
+}
@@ -76,4 +76,84 @@ public class AutoincrementTest extends AbstractNewDbTest {
             }
         });
     }
+
+    @Test
+    public void writerAppendsAndUpdatesSequence() throws SqlJetException {
+        final ISqlJetTable table = db.getTable("t");
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTableWriter writer = table.openWriter();
+                try {
+                    for (int i = 1; i <= 5000; i++) {
+                        Assert.assertEquals(i, writer.insert(null, null, "row " + i));
+                    }
+                    Assert.assertTrue(writer.delete(5000));
+                    Assert.assertEquals(5001, writer.insert(null, null, "row 5001"));
+                } finally {
+                    writer.close();
+                }
+                return null;
+            }
+        });
+        Assert.assertEquals(5001L, getSequence());
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                table.lookup(null, 5001L).delete();
+                return null;
+            }
+        });
+        Assert.assertEquals(5002L, table.insert(null, "row 5002"));
+        Assert.assertEquals(5002L, getSequence());
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = table.open();
+                long expected = 1;
+                while (!c.eof()) {
+                    if (expected == 5000) {
+                        expected = 5002;
+                    }
+                    Assert.assertEquals(expected, c.getRowId());
+                    Assert.assertEquals("row " + expected, c.getString("a"));
+                    expected++;
+                    c.next();
+                }
+                Assert.assertEquals(5003, expected);
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void writerLeftOpenStoresSequenceOnCommit() throws SqlJetException {
+        final ISqlJetTable table = db.getTable("t");
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTableWriter writer = table.openWriter();
+                for (int i = 1; i <= 3; i++) {
+                    Assert.assertEquals(i, writer.insert(null, null, "row " + i));
+                }
+                return null;
+            }
+        });
+        Assert.assertEquals(3L, getSequence());
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                table.clear();
+                return null;
+            }
+        });
+        Assert.assertEquals(4L, table.insert(null, "row 4"));
+        Assert.assertEquals(4L, getSequence());
+    }
+
+    private long getSequence() throws SqlJetException {
+        return (Long) db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("SQLITE_SEQUENCE").open();
+                Assert.assertFalse(c.eof());
+                Assert.assertEquals("t", c.getString(0));
+                return c.getInteger(1);
+            }
+        });
+    }
 }
@@ -0,0 +1,318 @@
+/**
+ * BatchInsertTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.schema.SqlJetConflictAction;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class BatchInsertTest extends AbstractNewDbTest {
+
+    private static final int ROWS = 25000;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        db.createTable("create table t(a integer primary key, b text, c integer, d text)");
+        db.createIndex("create unique index tb on t(b)");
+        db.createIndex("create index tc on t(c)");
+        db.createIndex("create index tdc on t(d desc, c)");
+    }
+
+    private static List<Object[]> rows(int count, boolean withRowId) {
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        for (long i = 1; i <= count; i++) {
+            rows.add(new Object[] { withRowId ? i : null, "b" + i, i % 100, i % 7 == 0 ? null : "d" + (i % 13) });
+        }
+        Collections.shuffle(rows, new Random(count));
+        return rows;
+    }
+
+    private long count() throws SqlJetException {
+        return (Long) db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    return c.getRowCount();
+                } finally {
+                    c.close();
+                }
+            }
+        });
+    }
+
+    private void assertRows(final int count) throws SqlJetException {
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                ISqlJetCursor c = t.open();
+                try {
+                    assertEquals(count, c.getRowCount());
+                    while (!c.eof()) {
+                        final long i = Long.parseLong(c.getString("b").substring(1));
+                        assertEquals(i % 100, c.getInteger("c"));
+                        final ISqlJetCursor l = t.lookup("tb", "b" + i);
+                        try {
+                            assertEquals(c.getRowId(), l.getRowId());
+                        } finally {
+                            l.close();
+                        }
+                        c.next();
+                    }
+                } finally {
+                    c.close();
+                }
+                for (final String index : Arrays.asList("tc", "tdc")) {
+                    c = t.order(index);
+                    try {
+                        assertEquals(count, c.getRowCount());
+                    } finally {
+                        c.close();
+                    }
+                }
+                c = t.lookup("tc", 42);
+                try {
+                    long n = 0;
+                    while (!c.eof()) {
+                        assertEquals(42, c.getInteger("c"));
+                        n++;
+                        c.next();
+                    }
+                    assertEquals(count / 100, n);
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void insertBatch() throws Exception {
+        assertEquals(ROWS, db.getTable("t").insertBatch(rows(ROWS, false), null));
+        assertRows(ROWS);
+    }
+
+    @Test
+    public void insertBatchWithRowId() throws Exception {
+        db.getTable("t").insertBatch(rows(ROWS, true), null);
+        assertRows(ROWS);
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").lookup(null, 1234);
+                try {
+                    assertEquals("b1234", c.getString("b"));
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+        assertEquals(ROWS + 1, db.getTable("t").insert(null, "x", 0, null));
+    }
+
+    @Test
+    public void insertBatchIntoTable() throws Exception {
+        final List<Object[]> rows = rows(ROWS, false);
+        db.getTable("t").insertBatch(rows.subList(0, ROWS / 2), null);
+        db.getTable("t").insertBatch(rows.subList(ROWS / 2, ROWS), null);
+        assertRows(ROWS);
+    }
+
+    @Test
+    public void abortDuplicateInBatch() throws Exception {
+        final List<Object[]> rows = rows(100, false);
+        rows.add(new Object[] { null, "b50", 1, null });
+        try {
+            db.getTable("t").insertBatch(rows, null);
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.CONSTRAINT, e.getErrorCode());
+        }
+        assertEquals(0, count());
+    }
+
+    @Test
+    public void abortDuplicateInTable() throws Exception {
+        db.getTable("t").insert(null, "b1", 1, null);
+        db.getTable("t").insert(200, "x", 1, null);
+        for (final Object[] row : new Object[][] { { null, "b1", 1, null }, { 200L, "y", 1, null } }) {
+            final List<Object[]> rows = rows(100, false);
+            rows.add(row);
+            try {
+                db.getTable("t").insertBatch(rows, SqlJetConflictAction.ABORT);
+                fail();
+            } catch (SqlJetException e) {
+                assertEquals(SqlJetErrorCode.CONSTRAINT, e.getErrorCode());
+            }
+        }
+        assertEquals(2, count());
+    }
+
+    @Test
+    public void failKeepsPrecedingRows() throws Exception {
+        db.getTable("t").insert(100, "x", 1, null);
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        for (long i = 1; i <= 20; i++) {
+            rows.add(new Object[] { null, "b" + i, i, null });
+            if (i == 10) {
+                rows.add(new Object[] { null, "b5", 1, null });
+            }
+        }
+        db.beginTransaction(SqlJetTransactionMode.WRITE);
+        try {
+            db.getTable("t").insertBatch(rows, SqlJetConflictAction.FAIL);
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.CONSTRAINT, e.getErrorCode());
+        } finally {
+            db.commit();
+        }
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    assertEquals(11, c.getRowCount());
+                    assertEquals("x", c.getString("b"));
+                    c.next();
+                    for (long i = 1; i <= 10; i++) {
+                        assertEquals(100 + i, c.getRowId());
+                        assertEquals("b" + i, c.getString("b"));
+                        c.next();
+                    }
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void ignore() throws Exception {
+        db.getTable("t").insert(5, "b5", -5, "old");
+        final List<Object[]> rows = rows(100, true);
+        rows.add(new Object[] { 1000L, "b10", -10, "new" });
+        rows.add(new Object[] { 20L, "b1000", -20, "new" });
+        db.getTable("t").insertBatch(rows, SqlJetConflictAction.IGNORE);
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                ISqlJetCursor c = t.open();
+                try {
+                    assertEquals(100, c.getRowCount());
+                } finally {
+                    c.close();
+                }
+                c = t.lookup("tb", "b5");
+                try {
+                    assertEquals(-5, c.getInteger("c"));
+                } finally {
+                    c.close();
+                }
+                c = t.lookup("tb", "b1000");
+                try {
+                    assertTrue(c.eof());
+                } finally {
+                    c.close();
+                }
+                c = t.lookup("tdc", "new");
+                try {
+                    assertTrue(c.eof());
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void replace() throws Exception {
+        db.getTable("t").insert(5, "b5", -5, "old");
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        rows.add(new Object[] { null, "b5", 5, "new" });
+        rows.add(new Object[] { null, "b6", 6, "first" });
+        rows.add(new Object[] { null, "b6", 6, "second" });
+        rows.add(new Object[] { null, "b7", 7, "new" });
+        db.getTable("t").insertBatch(rows, SqlJetConflictAction.REPLACE);
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                ISqlJetCursor c = t.open();
+                try {
+                    assertEquals(3, c.getRowCount());
+                } finally {
+                    c.close();
+                }
+                c = t.lookup("tb", "b5");
+                try {
+                    assertEquals("new", c.getString("d"));
+                } finally {
+                    c.close();
+                }
+                c = t.lookup("tb", "b6");
+                try {
+                    assertEquals("second", c.getString("d"));
+                } finally {
+                    c.close();
+                }
+                c = t.lookup("tdc", "old");
+                try {
+                    assertTrue(c.eof());
+                } finally {
+                    c.close();
+                }
+                c = t.lookup("tdc", "first");
+                try {
+                    assertTrue(c.eof());
+                } finally {
+                    c.close();
+                }
+                c = t.lookup("tc", 7);
+                try {
+                    assertFalse(c.eof());
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
+}
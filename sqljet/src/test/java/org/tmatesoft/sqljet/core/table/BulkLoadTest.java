@@ -0,0 +1,329 @@
+/**
+ * BulkLoadTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class BulkLoadTest extends AbstractNewDbTest {
+
+    private static final int ROWS = 20000;
+
+    /**
+     * Generates rows (rowId, "value" + rowId, blob) lazily.
+     */
+    private static Iterable<Object[]> rows(final long first, final int count, final long step, final int blobSize) {
+        return new Iterable<Object[]>() {
+            public Iterator<Object[]> iterator() {
+                return new Iterator<Object[]>() {
+                    private int i = 0;
+
+                    public boolean hasNext() {
+                        return i < count;
+                    }
+
+                    public Object[] next() {
+                        final long rowId = first + step * i++;
+                        final byte[] blob = new byte[blobSize];
+                        for (int j = 0; j < blobSize; j++) {
+                            blob[j] = (byte) (rowId + j);
+                        }
+                        return new Object[] { rowId, "value" + rowId, blob };
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    private void assertRows(final long first, final int count, final long step, final int blobSize)
+            throws SqlJetException {
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                ISqlJetCursor c = t.open();
+                try {
+                    assertEquals(count, c.getRowCount());
+                    long rowId = first;
+                    while (!c.eof()) {
+                        assertEquals(rowId, c.getRowId());
+                        assertEquals("value" + rowId, c.getString("b"));
+                        final byte[] blob = c.getBlobAsArray("c");
+                        assertEquals(blobSize, blob.length);
+                        for (int j = 0; j < blobSize; j++) {
+                            assertEquals((byte) (rowId + j), blob[j]);
+                        }
+                        rowId += step;
+                        c.next();
+                    }
+                    assertEquals(first + step * count, rowId);
+                } finally {
+                    c.close();
+                }
+                for (long i = 0; i < count; i += 97) {
+                    final long rowId = first + step * i;
+                    c = t.lookup("tb", "value" + rowId);
+                    try {
+                        assertFalse(c.eof());
+                        assertEquals(rowId, c.getRowId());
+                    } finally {
+                        c.close();
+                    }
+                    if (t.getDefinition().isRowIdPrimaryKey()) {
+                        c = t.lookup(null, rowId);
+                        try {
+                            assertFalse(c.eof());
+                            assertEquals("value" + rowId, c.getString("b"));
+                        } finally {
+                            c.close();
+                        }
+                    }
+                }
+                if (t.getDefinition().isRowIdPrimaryKey()) {
+                    c = t.lookup(null, first + 1);
+                    try {
+                        assertEquals(step == 1 && count > 1, !c.eof());
+                    } finally {
+                        c.close();
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void load() throws Exception {
+        db.createTable("create table t(a integer primary key, b text, c blob)");
+        db.createIndex("create index tb on t(b)");
+        assertEquals(ROWS, db.getTable("t").load(rows(1, ROWS, 1, 10), 100));
+        assertRows(1, ROWS, 1, 10);
+        db.close();
+        db = SqlJetDb.open(file, true);
+        assertRows(1, ROWS, 1, 10);
+    }
+
+    @Test
+    public void loadOverflow() throws Exception {
+        db.createTable("create table t(a integer primary key, b text, c blob)");
+        db.createIndex("create index tb on t(b)");
+        db.getTable("t").load(rows(5, 500, 3, 3000), 90);
+        assertRows(5, 500, 3, 3000);
+    }
+
+    @Test
+    public void loadAutoVacuum() throws Exception {
+        db.close();
+        file.delete();
+        db = SqlJetDb.open(file, true);
+        db.getOptions().setAutovacuum(true);
+        db.createTable("create table t(a integer primary key, b text, c blob)");
+        db.createIndex("create index tb on t(b)");
+        db.getTable("t").load(rows(1, ROWS, 1, 700), 70);
+        assertRows(1, ROWS, 1, 700);
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.getTable("t").clear();
+                return null;
+            }
+        });
+        assertRows(1, 0, 1, 700);
+    }
+
+    @Test
+    public void loadWithoutPrimaryKey() throws Exception {
+        db.createTable("create table t(b text, c blob)");
+        db.createIndex("create index tb on t(b)");
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 1; i <= ROWS; i++) {
+            rows.add(new Object[] { "value" + i, new byte[] { (byte) (i + 0), (byte) (i + 1) } });
+        }
+        assertEquals(ROWS, db.getTable("t").load(rows, 50));
+        assertRows(1, ROWS, 1, 2);
+    }
+
+    @Test
+    public void fillFactor() throws Exception {
+        db.createTable("create table t(a integer primary key, b text, c blob)");
+        db.createIndex("create index tb on t(b)");
+        db.getTable("t").load(rows(1, ROWS, 1, 10), 50);
+        final long half = file.length();
+        db.close();
+        file.delete();
+        db = SqlJetDb.open(file, true);
+        db.createTable("create table t(a integer primary key, b text, c blob)");
+        db.createIndex("create index tb on t(b)");
+        db.getTable("t").load(rows(1, ROWS, 1, 10), 100);
+        final long full = file.length();
+        assertTrue(full < half);
+    }
+
+    @Test
+    public void insertAfterLoad() throws Exception {
+        db.createTable("create table t(a integer primary key, b text, c blob)");
+        db.createIndex("create index tb on t(b)");
+        db.getTable("t").load(rows(2, ROWS, 2, 10), 100);
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                for (Object[] row : rows(1, ROWS, 2, 10)) {
+                    t.insert(row);
+                }
+                return null;
+            }
+        });
+        assertRows(1, ROWS * 2, 1, 10);
+    }
+
+    @Test
+    public void loadAutoIncrement() throws Exception {
+        db.createTable("create table t(a integer primary key autoincrement, b text, c blob)");
+        db.createIndex("create index tb on t(b)");
+        db.getTable("t").load(rows(1, 100, 1, 1), 100);
+        assertEquals(101L, db.getTable("t").insert(null, "value101", new byte[] { 101 }));
+    }
+
+    @Test
+    public void loadNotEmpty() throws Exception {
+        db.createTable("create table t(a integer primary key, b text, c blob)");
+        db.createIndex("create index tb on t(b)");
+        db.getTable("t").insert(1, "value1", new byte[0]);
+        try {
+            db.getTable("t").load(rows(2, 10, 1, 1), 100);
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+        }
+        assertRows(1, 1, 1, 0);
+    }
+
+    @Test
+    public void loadUnordered() throws Exception {
+        db.createTable("create table t(a integer primary key, b text, c blob)");
+        db.createIndex("create index tb on t(b)");
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        for (Object[] row : rows(1, ROWS, 1, 1)) {
+            rows.add(row);
+        }
+        rows.add(rows.get(ROWS / 2));
+        try {
+            db.getTable("t").load(rows, 100);
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+        }
+        assertRows(1, 0, 1, 1);
+        assertEquals(ROWS, db.getTable("t").load(rows.subList(0, ROWS), 100));
+        assertRows(1, ROWS, 1, 1);
+    }
+
+    @Test
+    public void loadUniqueIndex() throws Exception {
+        db.createTable("create table t(a integer primary key, b text unique, c blob)");
+        try {
+            db.getTable("t").load(rows(1, 100, 1, 1), 100);
+            db.getTable("t").insert(101, "value1", null);
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.CONSTRAINT, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void loadUniqueIndexDuplicates() throws Exception {
+        db.createTable("create table t(a integer primary key, b text unique, c blob)");
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        for (Object[] row : rows(1, ROWS, 1, 1)) {
+            rows.add(row);
+        }
+        rows.add(new Object[] { ROWS + 1L, "value" + (ROWS / 2), new byte[] { 0 } });
+        try {
+            db.getTable("t").load(rows, 100);
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.CONSTRAINT, e.getErrorCode());
+        }
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    assertTrue(c.eof());
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void createIndex() throws Exception {
+        db.createTable("create table t(a integer primary key, b text, c blob)");
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                for (int i = ROWS; i > 0; i--) {
+                    t.insert(i, "value" + i, new byte[] { (byte) i });
+                }
+                return null;
+            }
+        });
+        db.createIndex("create index tb on t(b)");
+        assertRows(1, ROWS, 1, 1);
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").order("tb");
+                try {
+                    String prev = null;
+                    long count = 0;
+                    while (!c.eof()) {
+                        final String b = c.getString("b");
+                        assertTrue(prev == null || prev.compareTo(b) < 0);
+                        prev = b;
+                        count++;
+                        c.next();
+                    }
+                    assertEquals(ROWS, count);
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,274 @@
+/**
+ * ConcurrentReadsTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class ConcurrentReadsTest extends AbstractNewDbTest {
+
+    private static final int THREADS = 4;
+    private static final int ROWS = 1000;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        db.createTable("create table t(a integer primary key, b text)");
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                for (int i = 1; i <= ROWS; i++) {
+                    t.insert(i, "value" + i);
+                }
+                return null;
+            }
+        });
+        db.setConcurrentReads(true);
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        super.tearDown();
+    }
+
+    private long count() throws SqlJetException {
+        return (Long) db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    long count = 0;
+                    while (!c.eof()) {
+                        assertEquals("value" + c.getRowId(), c.getString(1));
+                        count++;
+                        c.next();
+                    }
+                    return count;
+                } finally {
+                    c.close();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void readersRunInParallel() throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        final List<Future<Object>> results = new ArrayList<Future<Object>>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return db.runReadTransaction(new ISqlJetTransaction() {
+                        public Object run(SqlJetDb db) throws SqlJetException {
+                            try {
+                                // all readers should be inside of transaction at once.
+                                barrier.await(10, TimeUnit.SECONDS);
+                            } catch (Exception e) {
+                                throw new SqlJetException(e);
+                            }
+                            return count();
+                        }
+                    });
+                }
+            }));
+        }
+        for (final Future<Object> result : results) {
+            assertEquals(Long.valueOf(ROWS), result.get());
+        }
+    }
+
+    @Test
+    public void readersDontWaitForCallOfOtherReader() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Future<Object> holder = executor.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                return db.runReadTransaction(new ISqlJetTransaction() {
+                    public Object run(SqlJetDb db) throws SqlJetException {
+                        return db.runWithLock(new ISqlJetRunnableWithLock() {
+                            public Object runWithLock(SqlJetDb db) throws SqlJetException {
+                                entered.countDown();
+                                try {
+                                    assertTrue(release.await(10, TimeUnit.SECONDS));
+                                } catch (InterruptedException e) {
+                                    throw new SqlJetException(e);
+                                }
+                                return count();
+                            }
+                        });
+                    }
+                });
+            }
+        });
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        try {
+            // other reader scans while the first one holds its lock.
+            final Future<Object> other = executor.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return count();
+                }
+            });
+            assertEquals(Long.valueOf(ROWS), other.get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+        assertEquals(Long.valueOf(ROWS), holder.get());
+    }
+
+    @Test
+    public void readersSeeCommittedWrites() throws Exception {
+        final List<Future<Object>> results = new ArrayList<Future<Object>>();
+        for (int i = 0; i < THREADS * 10; i++) {
+            results.add(executor.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    final long count = count();
+                    assertTrue(count == ROWS || count == ROWS + 1);
+                    return null;
+                }
+            }));
+        }
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.getTable("t").insert(ROWS + 1, "value" + (ROWS + 1));
+                return null;
+            }
+        });
+        for (final Future<Object> result : results) {
+            result.get();
+        }
+        assertEquals(ROWS + 1, count());
+    }
+
+    @Test
+    public void readersSeeSchemaChanges() throws Exception {
+        assertEquals(ROWS, count());
+        db.createTable("create table t2(a)");
+        executor.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                return db.runReadTransaction(new ISqlJetTransaction() {
+                    public Object run(SqlJetDb db) throws SqlJetException {
+                        final ISqlJetCursor c = db.getTable("t2").open();
+                        try {
+                            assertTrue(c.eof());
+                        } finally {
+                            c.close();
+                        }
+                        return null;
+                    }
+                });
+            }
+        }).get();
+    }
+
+    @Test
+    public void tableOpenedOutsideOfTransaction() throws Exception {
+        final ISqlJetTable table = db.getTable("t");
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        final List<Future<Object>> results = new ArrayList<Future<Object>>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return db.runReadTransaction(new ISqlJetTransaction() {
+                        public Object run(SqlJetDb db) throws SqlJetException {
+                            try {
+                                barrier.await(10, TimeUnit.SECONDS);
+                            } catch (Exception e) {
+                                throw new SqlJetException(e);
+                            }
+                            // table is used by connection of this transaction.
+                            final ISqlJetCursor c = table.open();
+                            try {
+                                return c.getRowCount();
+                            } finally {
+                                c.close();
+                            }
+                        }
+                    });
+                }
+            }));
+        }
+        for (final Future<Object> result : results) {
+            assertEquals(Long.valueOf(ROWS), result.get());
+        }
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                table.insert(ROWS + 1, "value" + (ROWS + 1));
+                return null;
+            }
+        });
+        assertEquals(ROWS + 1, count());
+    }
+
+    @Test
+    public void noWritesInsideOfRead() throws Exception {
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                try {
+                    db.runWriteTransaction(new ISqlJetTransaction() {
+                        public Object run(SqlJetDb db) throws SqlJetException {
+                            return null;
+                        }
+                    });
+                    fail();
+                } catch (SqlJetException e) {
+                    assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void readInsideOfWrite() throws Exception {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.getTable("t").insert(ROWS + 1, "value" + (ROWS + 1));
+                // nested read is run by the writer connection and sees its changes.
+                assertEquals(ROWS + 1, count());
+                return null;
+            }
+        });
+    }
+
+}
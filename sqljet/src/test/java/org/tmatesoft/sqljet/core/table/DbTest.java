@@ -29,6 +29,7 @@ import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 
 /**
@@ -91,6 +92,16 @@ public class DbTest extends AbstractNewDbTest {
         Assert.assertEquals(l, v[0]);
     }
 
+    @Test
+    public void testCachePolicy() throws SqlJetException {
+        db.setCachePolicy(SqlJetPageCachePolicy.TWO_Q);
+        Assert.assertEquals(SqlJetPageCachePolicy.TWO_Q, db.getCachePolicy());
+        db.createTable("create table t(a integer primary key, b integer)");
+        db.setCachePolicy(SqlJetPageCachePolicy.LRU);
+        db.getTable("t").insert(1, 1);
+        Assert.assertEquals(SqlJetPageCachePolicy.LRU, db.getCachePolicy());
+    }
+
     @Test
     public void testCacheSize() throws SqlJetException {
         db.setCacheSize(1000);
@@ -0,0 +1,256 @@
+/**
+ * GroupCommitTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class GroupCommitTest extends AbstractNewDbTest {
+
+    private static final int THREADS = 8;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        db.createTable("create table t(a integer primary key, b text)");
+        db.createIndex("create unique index tb on t(b)");
+    }
+
+    private long count() throws SqlJetException {
+        return (Long) db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    return c.getRowCount();
+                } finally {
+                    c.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts transactions while another one runs, so they all queue and make
+     * one group after it, since transaction which comes alone runs at once.
+     */
+    private Object[] runInOneGroup(final ISqlJetTransaction[] ops) throws Exception {
+        final Object[] results = new Object[ops.length];
+        final Thread[][] threads = new Thread[1][];
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                threads[0] = startWriters(ops, results);
+                try {
+                    for (final Thread thread : threads[0]) {
+                        while (thread.getState() != Thread.State.WAITING) {
+                            Thread.sleep(1);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    throw new SqlJetException(e);
+                }
+                return null;
+            }
+        });
+        for (final Thread thread : threads[0]) {
+            thread.join();
+        }
+        return results;
+    }
+
+    private Thread[] startWriters(final ISqlJetTransaction[] ops, final Object[] results) {
+        final Thread[] threads = new Thread[ops.length];
+        for (int i = 0; i < ops.length; i++) {
+            final int n = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        results[n] = db.runWriteTransaction(ops[n]);
+                    } catch (Throwable e) {
+                        results[n] = e;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        return threads;
+    }
+
+    private ISqlJetTransaction insert(final long key, final String value, final Set<Thread> runners) {
+        return new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                runners.add(Thread.currentThread());
+                return db.getTable("t").insert(key, value);
+            }
+        };
+    }
+
+    @Test
+    public void disabledByDefault() throws Exception {
+        assertEquals(0, db.getGroupCommitSize());
+        db.setGroupCommit(1, 100);
+        assertEquals(0, db.getGroupCommitSize());
+        db.setGroupCommit(THREADS, 100);
+        assertEquals(THREADS, db.getGroupCommitSize());
+        assertEquals(100, db.getGroupCommitWindow());
+    }
+
+    @Test
+    public void concurrentTransactionsShareOneCommit() throws Exception {
+        db.setGroupCommit(THREADS, 10000);
+        final Set<Thread> runners = Collections.synchronizedSet(new HashSet<Thread>());
+        final ISqlJetTransaction[] ops = new ISqlJetTransaction[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            ops[i] = insert(i + 1, "value" + i, runners);
+        }
+        final Object[] results = runInOneGroup(ops);
+        for (int i = 0; i < THREADS; i++) {
+            assertEquals(Long.valueOf(i + 1), results[i]);
+        }
+        // all transactions of group are run by the thread which leads it.
+        assertEquals(1, runners.size());
+        assertEquals(THREADS, count());
+    }
+
+    @Test
+    public void aloneTransactionDoesNotWait() throws Exception {
+        db.setGroupCommit(THREADS, 10000);
+        final long start = System.currentTimeMillis();
+        for (int i = 1; i <= 3; i++) {
+            db.getTable("t").insert(i, "value" + i);
+        }
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertEquals(3, count());
+    }
+
+    @Test
+    public void failureIsReportedToItsCallerOnly() throws Exception {
+        failureIsReportedToItsCallerOnly(false);
+    }
+
+    @Test
+    public void failureIsReportedToItsCallerOnlyWal() throws Exception {
+        failureIsReportedToItsCallerOnly(true);
+    }
+
+    private void failureIsReportedToItsCallerOnly(boolean wal) throws Exception {
+        if (wal) {
+            db.setJournalMode(SqlJetPagerJournalMode.WAL);
+        }
+        db.setGroupCommit(THREADS, 10000);
+        final Set<Thread> runners = Collections.synchronizedSet(new HashSet<Thread>());
+        final ISqlJetTransaction[] ops = new ISqlJetTransaction[THREADS];
+        for (int i = 0; i < THREADS - 2; i++) {
+            ops[i] = insert(i + 1, "value" + i, runners);
+        }
+        // violates unique index after it has inserted one row.
+        ops[THREADS - 2] = new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                runners.add(Thread.currentThread());
+                final ISqlJetTable t = db.getTable("t");
+                t.insert(100, "unique");
+                return t.insert(101, "unique");
+            }
+        };
+        ops[THREADS - 1] = new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                runners.add(Thread.currentThread());
+                db.getTable("t").insert(200, "thrown");
+                throw new IllegalStateException("thrown");
+            }
+        };
+        final Object[] results = runInOneGroup(ops);
+        assertEquals(1, runners.size());
+        for (int i = 0; i < THREADS - 2; i++) {
+            assertEquals(Long.valueOf(i + 1), results[i]);
+        }
+        assertTrue(results[THREADS - 2] instanceof SqlJetException);
+        assertEquals(SqlJetErrorCode.CONSTRAINT, ((SqlJetException) results[THREADS - 2]).getErrorCode());
+        assertTrue(results[THREADS - 1] instanceof IllegalStateException);
+
+        assertEquals(THREADS - 2, count());
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                for (final long key : new long[] { 100, 101, 200 }) {
+                    final ISqlJetCursor c = t.lookup(null, key);
+                    try {
+                        assertTrue(c.eof());
+                    } finally {
+                        c.close();
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void nestedTransactionRunsInGroup() throws Exception {
+        db.setGroupCommit(THREADS, 0);
+        final Object result = db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                return db.runWriteTransaction(new ISqlJetTransaction() {
+                    public Object run(SqlJetDb db) throws SqlJetException {
+                        return db.getTable("t").insert(1, "nested");
+                    }
+                });
+            }
+        });
+        assertEquals(Long.valueOf(1), result);
+        assertEquals(1, count());
+    }
+
+    @Test
+    public void schemaChangeRolledBack() throws Exception {
+        db.setGroupCommit(THREADS, 0);
+        try {
+            db.runWriteTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    db.createTable("create table u(a integer primary key)");
+                    throw new SqlJetException(SqlJetErrorCode.ABORT);
+                }
+            });
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.ABORT, e.getErrorCode());
+        }
+        assertNull(db.getSchema().getTable("u"));
+        db.createTable("create table u(a integer primary key)");
+        assertEquals(0, count());
+    }
+
+}
@@ -0,0 +1,237 @@
+/**
+ * MmapTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryBuffer;
+import org.tmatesoft.sqljet.core.internal.ISqlJetPage;
+import org.tmatesoft.sqljet.core.internal.ISqlJetPager;
+import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
+import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetFileUtil;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetMappedByteBuffer;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class MmapTest extends AbstractNewDbTest {
+
+    private static final long MMAP_SIZE = 1L << 30;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        db.createTable("create table t(a integer primary key, b text)");
+        db.createIndex("create index tb on t(b)");
+        insert(db, 1, 1000);
+        db.setMmapSize(MMAP_SIZE);
+    }
+
+    private void insert(final SqlJetDb db, final int from, final int count) throws SqlJetException {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                for (int i = from; i < from + count; i++) {
+                    t.insert(i, "value" + i);
+                }
+                return null;
+            }
+        });
+    }
+
+    private String lookup(final SqlJetDb db, final long key) throws SqlJetException {
+        return (String) db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").lookup(null, key);
+                try {
+                    return c.eof() ? null : c.getString("b");
+                } finally {
+                    c.close();
+                }
+            }
+        });
+    }
+
+    private long count(final SqlJetDb db) throws SqlJetException {
+        return (Long) db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    return c.getRowCount();
+                } finally {
+                    c.close();
+                }
+            }
+        });
+    }
+
+    private static boolean isMapped(ISqlJetPage page) {
+        final ISqlJetMemoryBuffer buffer = page.getData().getBuffer();
+        return buffer instanceof SqlJetMappedByteBuffer && ((SqlJetMappedByteBuffer) buffer).isMapped();
+    }
+
+    @Test
+    public void readThroughMapping() throws Exception {
+        final SqlJetDb reader = SqlJetDb.open(file, false);
+        try {
+            reader.setMmapSize(MMAP_SIZE);
+            assertEquals(MMAP_SIZE, reader.getMmapSize());
+            assertEquals(1000, count(reader));
+            assertEquals("value500", lookup(reader, 500));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void updateMappedPages() throws Exception {
+        assertEquals(1000, count(db));
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    while (!c.eof()) {
+                        c.update(c.getInteger("a"), "updated" + c.getInteger("a"));
+                        c.next();
+                    }
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+        assertEquals("updated500", lookup(db, 500));
+        db.close();
+
+        db = SqlJetDb.open(file, false);
+        db.setMmapSize(MMAP_SIZE);
+        assertEquals("updated500", lookup(db, 500));
+        assertEquals(1000, count(db));
+    }
+
+    @Test
+    public void rollbackRestoresMappedPages() throws Exception {
+        assertEquals("value10", lookup(db, 10));
+        db.beginTransaction(SqlJetTransactionMode.WRITE);
+        try {
+            final ISqlJetCursor c = db.getTable("t").open();
+            try {
+                while (!c.eof()) {
+                    c.delete();
+                }
+            } finally {
+                c.close();
+            }
+        } finally {
+            db.rollback();
+        }
+        assertEquals(1000, count(db));
+        assertEquals("value10", lookup(db, 10));
+    }
+
+    @Test
+    public void fileGrowsBeyondMapping() throws Exception {
+        assertEquals(1000, count(db));
+        insert(db, 1001, 5000);
+        assertEquals(6000, count(db));
+        assertEquals("value5500", lookup(db, 5500));
+    }
+
+    @Test
+    public void truncateMappedFile() throws Exception {
+        db.close();
+        SqlJetFileUtil.deleteFile(file);
+        db = SqlJetDb.open(file, true);
+        db.getOptions().setAutovacuum(true);
+        db.createTable("create table t(a integer primary key, b text)");
+        db.createTable("create table t2(a integer primary key, b text)");
+        insert(db, 1, 100);
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t2 = db.getTable("t2");
+                for (int i = 1; i <= 5000; i++) {
+                    t2.insert(i, "value" + i);
+                }
+                return null;
+            }
+        });
+        // reopen with empty page cache, so pages are read through mapping.
+        db.close();
+        db = SqlJetDb.open(file, true);
+        db.setMmapSize(MMAP_SIZE);
+        final long size = file.length();
+        final ISqlJetPage[] last = new ISqlJetPage[1];
+        final byte[] content = new byte[db.getBtree().getPageSize()];
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t2").open();
+                try {
+                    assertEquals(5000, c.getRowCount());
+                } finally {
+                    c.close();
+                }
+                // last page is read through mapping and is held over commit.
+                final ISqlJetPager pager = db.getBtree().getPager();
+                last[0] = pager.acquirePage(pager.getPageCount(), true);
+                assertTrue(isMapped(last[0]));
+                db.dropTable("t2");
+                last[0].getData().getBytes(content);
+                return null;
+            }
+        });
+        try {
+            // region of the page is cut off, its content was copied out.
+            assertTrue(file.length() < size);
+            assertTrue(file.length() < (long) last[0].getPageNumber() * content.length);
+            assertFalse(isMapped(last[0]));
+            final byte[] copy = new byte[content.length];
+            last[0].getData().getBytes(copy);
+            assertArrayEquals(content, copy);
+        } finally {
+            last[0].unref();
+        }
+        assertEquals(100, count(db));
+        assertEquals("value50", lookup(db, 50));
+        insert(db, 101, 5000);
+        assertEquals(5100, count(db));
+        assertEquals("value5000", lookup(db, 5000));
+    }
+
+    @Test
+    public void walWithMapping() throws Exception {
+        db.setJournalMode(SqlJetPagerJournalMode.WAL);
+        insert(db, 1001, 100);
+        assertEquals(1100, count(db));
+        db.close();
+        db = SqlJetDb.open(file, false);
+        db.setMmapSize(MMAP_SIZE);
+        assertEquals(1100, count(db));
+        assertEquals("value1050", lookup(db, 1050));
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * ReadAheadTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
+import org.tmatesoft.sqljet.core.schema.SqlJetConflictAction;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class ReadAheadTest extends AbstractNewDbTest {
+
+    private static final int ROWS = 5000;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        db.createTable("create table t(a integer primary key, b text)");
+        db.createIndex("create index tb on t(b)");
+        update(db, "value");
+        db.close();
+        db = SqlJetDb.open(file, true);
+        db.setCacheSize(10);
+    }
+
+    private void update(SqlJetDb db, final String prefix) throws SqlJetException {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                for (int i = 1; i <= ROWS; i++) {
+                    t.insertOr(SqlJetConflictAction.REPLACE, i, prefix + i);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Scans table and its index and checks every row.
+     */
+    private void assertScan(SqlJetDb db, final String prefix) throws SqlJetException {
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                ISqlJetCursor c = t.open();
+                try {
+                    long count = 0;
+                    while (!c.eof()) {
+                        count++;
+                        assertEquals(prefix + c.getInteger("a"), c.getString("b"));
+                        c.next();
+                    }
+                    assertEquals(ROWS, count);
+                } finally {
+                    c.close();
+                }
+                c = t.order("tb");
+                try {
+                    long count = 0;
+                    while (!c.eof()) {
+                        count++;
+                        assertEquals(prefix + c.getInteger("a"), c.getString("b"));
+                        c.next();
+                    }
+                    assertEquals(ROWS, count);
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void setReadAhead() throws Exception {
+        db.setReadAhead(32);
+        assertEquals(32, db.getReadAhead());
+        db.setReadAhead(1);
+        assertEquals(0, db.getReadAhead());
+    }
+
+    @Test
+    public void scanWithReadAhead() throws Exception {
+        db.setReadAhead(16);
+        assertScan(db, "value");
+        db.setReadAhead(0);
+        assertScan(db, "value");
+    }
+
+    @Test
+    public void changesBetweenScansAreSeen() throws Exception {
+        db.setReadAhead(16);
+        final SqlJetDb writer = SqlJetDb.open(file, true);
+        try {
+            assertScan(db, "value");
+            update(writer, "first");
+            assertScan(db, "first");
+            update(db, "second");
+            assertScan(db, "second");
+            assertScan(writer, "second");
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void changesInWalModeAreSeen() throws Exception {
+        db.setJournalMode(SqlJetPagerJournalMode.WAL);
+        db.setReadAhead(16);
+        assertScan(db, "value");
+        update(db, "wal");
+        assertScan(db, "wal");
+    }
+
+}
@@ -0,0 +1,189 @@
+/**
+ * SqlJetDbPoolTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetFileUtil;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetDbPoolTest {
+
+    private static final int READERS = 2;
+
+    private File file;
+    private SqlJetDbPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile(getClass().getSimpleName(), null);
+        file.deleteOnExit();
+        pool = new SqlJetDbPool(file, READERS);
+        pool.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.createTable("create table t(a integer primary key, b)");
+                db.getTable("t").insert(1, "one");
+                return null;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            if (pool != null) {
+                pool.close();
+            }
+        } finally {
+            SqlJetFileUtil.deleteFile(file);
+        }
+    }
+
+    private static Object value(SqlJetDb db, String table) throws SqlJetException {
+        final ISqlJetCursor c = db.getTable(table).open();
+        try {
+            return c.eof() ? null : c.getValue(1);
+        } finally {
+            c.close();
+        }
+    }
+
+    private Object read(final String table) throws SqlJetException {
+        return pool.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                return value(db, table);
+            }
+        });
+    }
+
+    @Test
+    public void readAndWrite() throws Exception {
+        assertEquals("one", read("t"));
+        pool.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.getTable("t").open().update(1, "uno");
+                return null;
+            }
+        });
+        assertEquals("uno", read("t"));
+        assertEquals(1, pool.getOpenReaders());
+    }
+
+    @Test
+    public void readersSeeSchemaChanges() throws Exception {
+        assertEquals("one", read("t"));
+        pool.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.createTable("create table t2(a integer primary key, b)");
+                db.getTable("t2").insert(1, "two");
+                return null;
+            }
+        });
+        assertEquals("two", read("t2"));
+    }
+
+    @Test
+    public void readersAreBounded() throws Exception {
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(READERS * 3);
+        try {
+            final List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (int i = 0; i < READERS * 10; i++) {
+                results.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        return pool.runReadTransaction(new ISqlJetTransaction() {
+                            public Object run(SqlJetDb db) throws SqlJetException {
+                                final int now = active.incrementAndGet();
+                                try {
+                                    synchronized (maxActive) {
+                                        maxActive.set(Math.max(maxActive.get(), now));
+                                    }
+                                    Thread.sleep(5);
+                                    return value(db, "t");
+                                } catch (InterruptedException e) {
+                                    throw new SqlJetException(e);
+                                } finally {
+                                    active.decrementAndGet();
+                                }
+                            }
+                        });
+                    }
+                }));
+            }
+            for (final Future<Object> result : results) {
+                assertEquals("one", result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(maxActive.get() <= READERS);
+        assertTrue(pool.getOpenReaders() <= READERS);
+    }
+
+    @Test
+    public void failedWrite() throws Exception {
+        try {
+            pool.runWriteTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    db.getTable("t").insert(2, "two");
+                    throw new SqlJetException(SqlJetErrorCode.CONSTRAINT);
+                }
+            });
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.CONSTRAINT, e.getErrorCode());
+        }
+        // failed transaction is rolled back.
+        assertEquals("one", read("t"));
+    }
+
+    @Test
+    public void closed() throws Exception {
+        pool.close();
+        try {
+            read("t");
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+        } finally {
+            pool = null;
+        }
+    }
+
+}
@@ -0,0 +1,328 @@
+/**
+ * TableWriterTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.schema.SqlJetConflictAction;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class TableWriterTest extends AbstractNewDbTest {
+
+    private static final int ROWS = 1000;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        db.createTable("create table t(a integer primary key autoincrement, b text unique, c real, d blob)");
+        db.createIndex("create index tc on t(c)");
+        db.createIndex("create index td on t(d)");
+        db.createIndex("create index tcb on t(c, b)");
+    }
+
+    @Test
+    public void insertRow() throws Exception {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTableWriter writer = db.getTable("t").openWriter();
+                try {
+                    for (int i = 1; i <= ROWS; i++) {
+                        writer.setString(1, "b" + i);
+                        writer.setFloat(2, i / 2.0);
+                        writer.setBlob(3, new byte[] { (byte) i });
+                        assertEquals(i, writer.insertRow(null));
+                    }
+                } finally {
+                    writer.close();
+                }
+                return null;
+            }
+        });
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                final ISqlJetCursor c = t.open();
+                try {
+                    assertEquals(ROWS, c.getRowCount());
+                } finally {
+                    c.close();
+                }
+                for (int i = 1; i <= ROWS; i += 37) {
+                    final ISqlJetCursor l = t.lookup("tcb", i / 2.0, "b" + i);
+                    try {
+                        assertFalse(l.eof());
+                        assertEquals(i, l.getRowId());
+                        assertArrayEquals(new byte[] { (byte) i }, l.getBlobAsArray("d"));
+                    } finally {
+                        l.close();
+                    }
+                }
+                return null;
+            }
+        });
+        assertEquals(ROWS + 1, db.getTable("t").insert(null, "b0", 0, null));
+    }
+
+    @Test
+    public void updateAndDelete() throws Exception {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTableWriter writer = db.getTable("t").openWriter();
+                try {
+                    for (int i = 1; i <= ROWS; i++) {
+                        writer.insert(null, null, "b" + i, i, null);
+                    }
+                    for (int i = 1; i <= ROWS; i += 2) {
+                        writer.setString(1, "u" + i);
+                        writer.setInteger(2, -i);
+                        writer.updateRow(null, i);
+                    }
+                    for (int i = 2; i <= ROWS; i += 2) {
+                        assertTrue(writer.delete(i));
+                    }
+                    assertFalse(writer.delete(2));
+                    assertFalse(writer.delete(ROWS + 1));
+                } finally {
+                    writer.close();
+                }
+                return null;
+            }
+        });
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").order("tc");
+                try {
+                    assertEquals(ROWS / 2, c.getRowCount());
+                    long i = ROWS - 1;
+                    while (!c.eof()) {
+                        assertEquals(i, c.getRowId());
+                        assertEquals("u" + i, c.getString("b"));
+                        assertEquals(-i, c.getInteger("c"));
+                        i -= 2;
+                        c.next();
+                    }
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void conflict() throws Exception {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTableWriter writer = db.getTable("t").openWriter();
+                try {
+                    writer.insert(null, null, "b", 1.0, null);
+                    try {
+                        writer.insert(null, null, "b", 2.0, null);
+                        fail();
+                    } catch (SqlJetException e) {
+                        assertEquals(SqlJetErrorCode.CONSTRAINT, e.getErrorCode());
+                    }
+                    writer.insert(SqlJetConflictAction.IGNORE, null, "b", 2.0, null);
+                    writer.setString(1, "b");
+                    writer.setFloat(2, 3.0);
+                    writer.insertRow(SqlJetConflictAction.REPLACE);
+                } finally {
+                    writer.close();
+                }
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    assertEquals(1, c.getRowCount());
+                    assertEquals(3.0, c.getFloat("c"), 0);
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void requiresWriteTransaction() throws Exception {
+        try {
+            db.getTable("t").openWriter();
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+        }
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                try {
+                    db.getTable("t").openWriter();
+                    fail();
+                } catch (SqlJetException e) {
+                    assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void insertRowWithoutIndexes() throws Exception {
+        db.createTable("create table p(a integer primary key, b integer not null, c real, d text)");
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTableWriter writer = db.getTable("p").openWriter();
+                try {
+                    for (int i = 1; i <= ROWS; i++) {
+                        if (i % 2 == 0) {
+                            writer.setInteger(0, i);
+                        }
+                        writer.setInteger(1, -i);
+                        writer.setFloat(2, i / 4.0);
+                        writer.setString(3, "d" + i);
+                        assertEquals(i, writer.insertRow(null));
+                    }
+                    writer.setInteger(0, 1);
+                    writer.setInteger(1, 0);
+                    try {
+                        writer.insertRow(null);
+                        fail();
+                    } catch (SqlJetException e) {
+                        assertEquals(SqlJetErrorCode.CONSTRAINT, e.getErrorCode());
+                    }
+                    writer.setString(3, "d");
+                    try {
+                        writer.insertRow(null);
+                        fail();
+                    } catch (SqlJetException e) {
+                        assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+                    }
+                    writer.setFloat(0, 1.0);
+                    writer.setInteger(1, 0);
+                    try {
+                        writer.insertRow(null);
+                        fail();
+                    } catch (SqlJetException e) {
+                        assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+                    }
+                } finally {
+                    writer.close();
+                }
+                return null;
+            }
+        });
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("p").open();
+                try {
+                    long i = 1;
+                    while (!c.eof()) {
+                        assertEquals(i, c.getRowId());
+                        assertEquals(i, c.getInteger("a"));
+                        assertEquals(-i, c.getInteger("b"));
+                        assertEquals(i / 4.0, c.getFloat("c"), 0);
+                        assertEquals("d" + i, c.getString("d"));
+                        i++;
+                        c.next();
+                    }
+                    assertEquals(ROWS + 1, i);
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void closedByTransactionEnd() throws Exception {
+        final ISqlJetTableWriter committed = (ISqlJetTableWriter) db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTableWriter writer = db.getTable("t").openWriter();
+                writer.insert(null, null, "b1", 1.0, null);
+                return writer;
+            }
+        });
+        db.beginTransaction(SqlJetTransactionMode.WRITE);
+        final ISqlJetTableWriter rolledBack = db.getTable("t").openWriter();
+        rolledBack.insert(null, null, "b2", 2.0, null);
+        db.rollback();
+        for (final ISqlJetTableWriter writer : new ISqlJetTableWriter[] { committed, rolledBack }) {
+            writer.close();
+            try {
+                writer.insert(null, null, "b3", 3.0, null);
+                fail();
+            } catch (SqlJetException e) {
+                assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+            }
+            try {
+                writer.setInteger(2, 3);
+                fail();
+            } catch (SqlJetException e) {
+                assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+            }
+        }
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                try {
+                    committed.delete(1);
+                    fail();
+                } catch (SqlJetException e) {
+                    assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+                }
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    assertEquals(1, c.getRowCount());
+                    assertEquals("b1", c.getString("b"));
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void incorrectField() throws Exception {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTableWriter writer = db.getTable("t").openWriter();
+                try {
+                    writer.setInteger(4, 1);
+                    fail();
+                } catch (SqlJetException e) {
+                    assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+                } finally {
+                    writer.close();
+                }
+                return null;
+            }
+        });
+    }
+
+}
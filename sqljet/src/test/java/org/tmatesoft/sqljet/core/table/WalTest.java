@@ -0,0 +1,354 @@
+/**
+ * WalTest.java
+ * Copyright (C) 2009-2010 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
+import org.tmatesoft.sqljet.core.internal.ISqlJetPage;
+import org.tmatesoft.sqljet.core.internal.ISqlJetPageCallback;
+import org.tmatesoft.sqljet.core.internal.ISqlJetPager;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetPageFlags;
+import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
+import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetFileSystem;
+import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetFileUtil;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class WalTest extends AbstractNewDbTest {
+
+    private File walFile;
+    private File copy;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        walFile = new File(file.getParentFile(), file.getName() + "-wal");
+        db.setJournalMode(SqlJetPagerJournalMode.WAL);
+        db.createTable("create table t(a integer primary key, b text)");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            super.tearDown();
+        } finally {
+            SqlJetFileUtil.deleteFile(walFile);
+            if (copy != null) {
+                SqlJetFileUtil.deleteFile(copy);
+                SqlJetFileUtil.deleteFile(new File(copy.getParentFile(), copy.getName() + "-wal"));
+            }
+        }
+    }
+
+    private void insert(final SqlJetDb db, final int from, final int count) throws SqlJetException {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                for (int i = from; i < from + count; i++) {
+                    t.insert(i, "value" + i);
+                }
+                return null;
+            }
+        });
+    }
+
+    private long count(final SqlJetDb db) throws SqlJetException {
+        return (Long) db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    return c.getRowCount();
+                } finally {
+                    c.close();
+                }
+            }
+        });
+    }
+
+    private static int readByte(final File file, final long offset) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(offset);
+            return raf.read();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Runs {@link #main(String[])} in a separate JVM and returns what it
+     * prints.
+     */
+    private static String runProcess(final File file, final String command) throws Exception {
+        final String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        final ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                WalTest.class.getName(), file.getPath(), command);
+        builder.redirectErrorStream(true);
+        final Process process = builder.start();
+        final StringBuilder output = new StringBuilder();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                output.append(line);
+            }
+        } finally {
+            reader.close();
+        }
+        process.waitFor();
+        return output.toString().trim();
+    }
+
+    /**
+     * Is run in a separate process: counts rows of the table or inserts a
+     * row into it, prints the count or the error code.
+     */
+    public static void main(String[] args) {
+        try {
+            final SqlJetDb db = SqlJetDb.open(new File(args[0]), true);
+            try {
+                if ("insert".equals(args[1])) {
+                    db.runWriteTransaction(new ISqlJetTransaction() {
+                        public Object run(SqlJetDb db) throws SqlJetException {
+                            db.getTable("t").insert(null, "other process");
+                            return null;
+                        }
+                    });
+                }
+                System.out.println(db.runReadTransaction(new ISqlJetTransaction() {
+                    public Object run(SqlJetDb db) throws SqlJetException {
+                        final ISqlJetCursor c = db.getTable("t").open();
+                        try {
+                            return c.getRowCount();
+                        } finally {
+                            c.close();
+                        }
+                    }
+                }));
+            } finally {
+                db.close();
+            }
+        } catch (SqlJetException e) {
+            System.out.println(e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void commitGoesToLog() throws Exception {
+        final long dbLength = file.length();
+        insert(db, 1, 100);
+        assertTrue(walFile.length() > 0);
+        assertEquals(dbLength, file.length());
+        assertEquals(100, count(db));
+        assertEquals(SqlJetPagerJournalMode.WAL, db.getJournalMode());
+    }
+
+    @Test
+    public void closeCheckpointsAndReopenKeepsMode() throws Exception {
+        insert(db, 1, 100);
+        db.close();
+        db = null;
+        assertFalse(walFile.exists());
+        assertEquals(2, readByte(file, 18));
+        assertEquals(2, readByte(file, 19));
+
+        db = SqlJetDb.open(file, true);
+        assertEquals(100, count(db));
+        assertEquals(SqlJetPagerJournalMode.WAL, db.getJournalMode());
+    }
+
+    @Test
+    public void readerKeepsSnapshot() throws Exception {
+        insert(db, 1, 10);
+        final SqlJetDb reader = SqlJetDb.open(file, true);
+        try {
+            reader.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+            try {
+                assertEquals(10, reader.getTable("t").open().getRowCount());
+
+                // with a rollback journal this commit would wait for the reader
+                insert(db, 11, 10);
+                assertEquals(20, count(db));
+
+                assertEquals(10, reader.getTable("t").open().getRowCount());
+            } finally {
+                reader.commit();
+            }
+            assertEquals(20, count(reader));
+        } finally {
+            reader.close();
+        }
+        assertEquals(20, count(db));
+    }
+
+    @Test
+    public void rollbackDiscardsFrames() throws Exception {
+        insert(db, 1, 10);
+        db.beginTransaction(SqlJetTransactionMode.WRITE);
+        try {
+            final ISqlJetTable t = db.getTable("t");
+            for (int i = 11; i < 1000; i++) {
+                t.insert(i, "value" + i);
+            }
+        } finally {
+            db.rollback();
+        }
+        assertEquals(10, count(db));
+        insert(db, 11, 5);
+        assertEquals(15, count(db));
+    }
+
+    @Test
+    public void recoverFromLog() throws Exception {
+        insert(db, 1, 50);
+        copy = File.createTempFile("WalTestCopy", null);
+        copyFile(file, copy);
+        copyFile(walFile, new File(copy.getParentFile(), copy.getName() + "-wal"));
+
+        final SqlJetDb recovered = SqlJetDb.open(copy, true);
+        try {
+            assertEquals(50, count(recovered));
+            assertEquals(SqlJetPagerJournalMode.WAL, recovered.getJournalMode());
+        } finally {
+            recovered.close();
+        }
+    }
+
+    @Test
+    public void checkpointRestartsLog() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            insert(db, i * 10 + 1, 10);
+        }
+        assertEquals(10000, count(db));
+        // the log is started over after checkpoint so it doesn't grow forever
+        final int pageSize = (readByte(file, 16) << 8) | readByte(file, 17);
+        final long frames = (walFile.length() - 32) / (24 + pageSize);
+        assertTrue(frames < 1100);
+    }
+
+    @Test
+    public void otherProcessIsBusy() throws Exception {
+        insert(db, 1, 10);
+        assertEquals(SqlJetErrorCode.BUSY.name(), runProcess(file, "count"));
+        assertEquals(SqlJetErrorCode.BUSY.name(), runProcess(file, "insert"));
+        insert(db, 11, 10);
+        assertEquals(20, count(db));
+        db.close();
+        db = null;
+
+        assertEquals("21", runProcess(file, "insert"));
+        db = SqlJetDb.open(file, true);
+        assertEquals(21, count(db));
+    }
+
+    @Test
+    public void commitOfSpilledPagesIsSynced() throws Exception {
+        db.close();
+        final int[] walSyncs = new int[1];
+        db = SqlJetDb.open(file, true, new SqlJetFileSystem() {
+            @Override
+            public ISqlJetFile open(File path, SqlJetFileType type, Set<SqlJetFileOpenPermission> permissions)
+                    throws SqlJetException {
+                final ISqlJetFile file = super.open(path, type, permissions);
+                if (type != SqlJetFileType.WAL) {
+                    return file;
+                }
+                return (ISqlJetFile) Proxy.newProxyInstance(ISqlJetFile.class.getClassLoader(),
+                        new Class<?>[] { ISqlJetFile.class }, new InvocationHandler() {
+                            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                                if ("sync".equals(method.getName())) {
+                                    walSyncs[0]++;
+                                }
+                                try {
+                                    return method.invoke(file, args);
+                                } catch (InvocationTargetException e) {
+                                    throw e.getCause();
+                                }
+                            }
+                        });
+            }
+        });
+        db.setSafetyLevel(SqlJetSafetyLevel.FULL);
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                for (int i = 1; i <= 100; i++) {
+                    t.insert(i, "value" + i);
+                }
+                // spill all dirty pages to the log, as full cache does.
+                final ISqlJetPager pager = db.getBtree().getPager();
+                for (int i = 1; i <= pager.getPageCount(); i++) {
+                    final ISqlJetPage page = pager.acquirePage(i, true);
+                    try {
+                        if (page.getFlags().contains(SqlJetPageFlags.DIRTY)) {
+                            ((ISqlJetPageCallback) pager).pageCallback(page);
+                        }
+                    } finally {
+                        page.unref();
+                    }
+                }
+                walSyncs[0] = 0;
+                return null;
+            }
+        });
+        assertTrue(walSyncs[0] > 0);
+        assertEquals(100, count(db));
+    }
+
+    @Test
+    public void leaveWalMode() throws Exception {
+        insert(db, 1, 100);
+        db.setJournalMode(SqlJetPagerJournalMode.DELETE);
+        assertFalse(walFile.exists());
+        assertEquals(1, readByte(file, 18));
+        assertEquals(1, readByte(file, 19));
+        insert(db, 101, 10);
+        assertFalse(walFile.exists());
+        db.close();
+        db = SqlJetDb.open(file, true);
+        assertEquals(110, count(db));
+        assertEquals(SqlJetPagerJournalMode.DELETE, db.getJournalMode());
+    }
+
+}
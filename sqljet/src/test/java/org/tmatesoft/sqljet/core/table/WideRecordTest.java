@@ -0,0 +1,126 @@
+/**
+ * WideRecordTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetException;
+
+/**
+ * Reads single fields of wide records, which parses record header only
+ * partially.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class WideRecordTest extends AbstractNewDbTest {
+
+    private static final int COLUMNS = 40;
+    private static final int ROWS = 100;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        final StringBuilder sql = new StringBuilder("create table t(");
+        for (int i = 0; i < COLUMNS; i++) {
+            sql.append(i == 0 ? "" : ", ").append("c").append(i);
+        }
+        db.createTable(sql.append(")").toString());
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                for (int row = 0; row < ROWS; row++) {
+                    t.insert(values(row));
+                }
+                return null;
+            }
+        });
+    }
+
+    private static Object[] values(int row) {
+        final Object[] values = new Object[COLUMNS];
+        for (int i = 0; i < COLUMNS; i++) {
+            switch (i % 4) {
+            case 0:
+                values[i] = Long.valueOf(row * COLUMNS + i);
+                break;
+            case 1:
+                values[i] = "text" + row + "-" + i;
+                break;
+            case 2:
+                values[i] = Double.valueOf(row + i / 10.0);
+                break;
+            default:
+                values[i] = null;
+            }
+        }
+        return values;
+    }
+
+    @Test
+    public void readFieldsInAnyOrder() throws Exception {
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    int row = 0;
+                    while (!c.eof()) {
+                        final Object[] expected = values(row);
+                        assertEquals(expected[1], c.getString(1));
+                        assertEquals(((Long) expected[36]).longValue(), c.getInteger(36));
+                        assertEquals(((Double) expected[2]).doubleValue(), c.getFloat(2), 0);
+                        assertTrue(c.isNull(COLUMNS - 1));
+                        assertEquals(COLUMNS, c.getFieldsCount());
+                        assertArrayEquals(expected, c.getRowValues());
+                        row++;
+                        c.next();
+                    }
+                    assertEquals(ROWS, row);
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void readMissingField() throws Exception {
+        db.alterTable("alter table t add column extra");
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    assertNull(c.getValue(COLUMNS));
+                    assertEquals("text0-1", c.getString(1));
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
+}
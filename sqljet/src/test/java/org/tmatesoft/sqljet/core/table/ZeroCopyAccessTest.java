@@ -0,0 +1,168 @@
+/**
+ * ZeroCopyAccessTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetLimits;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class ZeroCopyAccessTest extends AbstractNewDbTest {
+
+    private static final String[] TEXTS = { "", "abc", "abd", "ab", "\u00e9t\u00e9", "\u4e2d\u6587",
+            "\ud83d\ude00 smile", "\uffff" };
+
+    private static final byte[] BLOB = { 0, 1, 2, (byte) 0xff };
+
+    private static final int LONG_TEXT = 10000;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        // defaults are returned for NULL fields since file format 3.
+        db.getOptions().setFileFormat(ISqlJetLimits.SQLJET_MAX_FILE_FORMAT);
+        db.createTable("create table t(a integer primary key, b text, c blob, d integer, e text default 'def')");
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                for (int i = 0; i < TEXTS.length; i++) {
+                    t.insert(null, TEXTS[i], BLOB, i);
+                }
+                t.insert(null, null, null, null, null);
+                t.insert(null, longText(), null, null, null);
+                return null;
+            }
+        });
+    }
+
+    private static String longText() {
+        final StringBuilder s = new StringBuilder();
+        while (s.length() < LONG_TEXT) {
+            s.append("\u00e9").append(s.length());
+        }
+        return s.toString();
+    }
+
+    private static byte[] bytes(ByteBuffer b) {
+        final byte[] bytes = new byte[b.remaining()];
+        b.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void compareUtf8() throws Exception {
+        for (final String a : TEXTS) {
+            for (final String b : TEXTS) {
+                assertEquals(a + " vs " + b, Integer.signum(compareCodePoints(a, b)),
+                        Integer.signum(SqlJetUtility.compareUtf8(ByteBuffer.wrap(a.getBytes("UTF-8")), b)));
+            }
+        }
+    }
+
+    private static int compareCodePoints(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            final int c = a.codePointAt(i);
+            final int d = b.codePointAt(j);
+            if (c != d) {
+                return c < d ? -1 : 1;
+            }
+            i += Character.charCount(c);
+            j += Character.charCount(d);
+        }
+        return (a.length() - i) - (b.length() - j);
+    }
+
+    @Test
+    public void getBuffer() throws Exception {
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    for (int i = 0; i < TEXTS.length; i++) {
+                        assertArrayEquals(bytes(c.getBuffer(1)), bytes(c.getBuffer("b")));
+                        assertEquals(TEXTS[i], new String(bytes(c.getBuffer(1)), "UTF-8"));
+                        assertArrayEquals(BLOB, bytes(c.getBuffer("c")));
+                        assertTrue(c.getBuffer(1).isReadOnly());
+                        assertNull(c.getBuffer("d"));
+                        assertEquals("def", c.getString("e"));
+                        assertEquals("def", new String(bytes(c.getBuffer("e")), "UTF-8"));
+                        c.next();
+                    }
+                    assertNull(c.getBuffer(1));
+                    assertNull(c.getBuffer(2));
+                    assertEquals("def", new String(bytes(c.getBuffer(4)), "UTF-8"));
+                    c.next();
+                    assertEquals(longText(), new String(bytes(c.getBuffer(1)), "UTF-8"));
+                } catch (java.io.UnsupportedEncodingException e) {
+                    throw new SqlJetException(e);
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void compareString() throws Exception {
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    for (int i = 0; i < TEXTS.length; i++) {
+                        for (final String s : TEXTS) {
+                            assertEquals(Integer.signum(compareCodePoints(TEXTS[i], s)), c.compareString(1, s));
+                            assertEquals(Integer.signum(compareCodePoints(TEXTS[i], s)), c.compareString("b", s));
+                        }
+                        assertEquals(1, c.compareString(1, null));
+                        assertEquals(0, c.compareString("d", Integer.toString(i)));
+                        assertEquals(0, c.compareString("e", "def"));
+                        c.next();
+                    }
+                    assertEquals(-1, c.compareString(1, ""));
+                    assertEquals(0, c.compareString(1, null));
+                    assertEquals(0, c.compareString(4, "def"));
+                    assertEquals(1, c.compareString(4, "de"));
+                    c.next();
+                    assertEquals(0, c.compareString(1, longText()));
+                    assertEquals(1, c.compareString(1, "\u00e9"));
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,288 @@
+/**
+ * ReadersStress.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.issues.threads;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.table.ISqlJetCursor;
+import org.tmatesoft.sqljet.core.table.ISqlJetTable;
+import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
+import org.tmatesoft.sqljet.core.table.SqlJetDb;
+
+/**
+ * Many reader threads against one database, reports throughput of reads.
+ * Readers are virtual threads when JVM has them, then JFR events of virtual
+ * threads pinned to their carriers are recorded and reported too. Count of
+ * threads and duration are set by "sqljet.stress.readers" and
+ * "sqljet.stress.duration" system properties.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class ReadersStress extends AbstractNewDbTest {
+
+    private static final String TABLE = "record";
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    /** Thread.startVirtualThread(Runnable) or null if JVM has no virtual threads */
+    private static final Method START_VIRTUAL_THREAD = getStartVirtualThread();
+
+    private static final int READERS = Integer.getInteger("sqljet.stress.readers",
+            START_VIRTUAL_THREAD != null ? 5000 : 500);
+    private static final long DURATION = Long.getLong("sqljet.stress.duration", 10000);
+
+    private static final int ROWS = 1000;
+    private static final int SCAN = 100;
+
+    private static final Logger logger = Logger.getLogger(ReadersStress.class.getName());
+
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+    private final ISqlJetTransaction scan = new ISqlJetTransaction() {
+        public Object run(SqlJetDb db) throws SqlJetException {
+            final ISqlJetCursor cursor = db.getTable(TABLE).open();
+            try {
+                final long from = (long) (Math.random() * (ROWS - SCAN));
+                int n_read = 0;
+                if (cursor.goTo(from + 1)) {
+                    while (n_read < SCAN && !cursor.eof()) {
+                        Assert.assertEquals(cursor.getRowId(), cursor.getInteger(1));
+                        n_read++;
+                        cursor.next();
+                    }
+                }
+                Assert.assertEquals(SCAN, n_read);
+                return null;
+            } finally {
+                cursor.close();
+            }
+        }
+    };
+
+    private static Method getStartVirtualThread() {
+        try {
+            return Thread.class.getMethod("startVirtualThread", Runnable.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static void startReader(final Runnable reader, final int i) throws Exception {
+        if (START_VIRTUAL_THREAD != null) {
+            START_VIRTUAL_THREAD.invoke(null, reader);
+        } else {
+            final Thread thread = new Thread(reader, "reader " + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * JFR recording of pinned virtual threads. JFR API is called by
+     * reflection since it isn't available on all JVMs which run SQLJet.
+     */
+    private static class PinnedRecording {
+
+        private final Object recording;
+
+        private PinnedRecording(Object recording) {
+            this.recording = recording;
+        }
+
+        /**
+         * @return started recording or null if JFR isn't available.
+         */
+        public static PinnedRecording start() {
+            try {
+                final Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+                final Class<?> settingsClass = Class.forName("jdk.jfr.EventSettings");
+                final Class<?> durationClass = Class.forName("java.time.Duration");
+                final Object recording = recordingClass.getDeclaredConstructor().newInstance();
+                final Object settings = recordingClass.getMethod("enable", String.class).invoke(recording,
+                        PINNED_EVENT);
+                settingsClass.getMethod("withThreshold", durationClass).invoke(settings,
+                        durationClass.getField("ZERO").get(null));
+                settingsClass.getMethod("withStackTrace").invoke(settings);
+                recordingClass.getMethod("start").invoke(recording);
+                return new PinnedRecording(recording);
+            } catch (Exception e) {
+                logger.log(Level.INFO, "JFR isn't available, pinned threads aren't recorded: " + e);
+                return null;
+            }
+        }
+
+        /**
+         * Stops recording and counts pinned events by their topmost frame
+         * of SQLJet code, or by topmost frame if there is no such one.
+         */
+        public Map<String, Integer> stop() throws Exception {
+            final Class<?> recordingClass = recording.getClass();
+            recordingClass.getMethod("stop").invoke(recording);
+            final File dump = File.createTempFile(ReadersStress.class.getSimpleName(), ".jfr");
+            try {
+                final Object path = File.class.getMethod("toPath").invoke(dump);
+                final Class<?> pathClass = Class.forName("java.nio.file.Path");
+                recordingClass.getMethod("dump", pathClass).invoke(recording, path);
+                final Class<?> fileClass = Class.forName("jdk.jfr.consumer.RecordingFile");
+                final Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType");
+                final Class<?> eventClass = Class.forName("jdk.jfr.consumer.RecordedEvent");
+                final Class<?> stackTraceClass = Class.forName("jdk.jfr.consumer.RecordedStackTrace");
+                final Class<?> frameClass = Class.forName("jdk.jfr.consumer.RecordedFrame");
+                final Class<?> methodClass = Class.forName("jdk.jfr.consumer.RecordedMethod");
+                final Class<?> typeClass = Class.forName("jdk.jfr.consumer.RecordedClass");
+                final Map<String, Integer> pinned = new HashMap<String, Integer>();
+                for (final Object event : (List<?>) fileClass.getMethod("readAllEvents", pathClass).invoke(null,
+                        path)) {
+                    final Object type = eventClass.getMethod("getEventType").invoke(event);
+                    if (!PINNED_EVENT.equals(eventTypeClass.getMethod("getName").invoke(type))) {
+                        continue;
+                    }
+                    String where = "unknown";
+                    final Object stackTrace = eventClass.getMethod("getStackTrace").invoke(event);
+                    if (stackTrace != null) {
+                        for (final Object frame : (List<?>) stackTraceClass.getMethod("getFrames").invoke(
+                                stackTrace)) {
+                            final Object method = frameClass.getMethod("getMethod").invoke(frame);
+                            final Object owner = methodClass.getMethod("getType").invoke(method);
+                            final String frameName = typeClass.getMethod("getName").invoke(owner) + "."
+                                    + methodClass.getMethod("getName").invoke(method) + ":"
+                                    + frameClass.getMethod("getLineNumber").invoke(frame);
+                            if ("unknown".equals(where)) {
+                                where = frameName;
+                            }
+                            if (frameName.startsWith("org.tmatesoft.sqljet.core.")) {
+                                where = frameName;
+                                break;
+                            }
+                        }
+                    }
+                    final Integer count = pinned.get(where);
+                    pinned.put(where, count == null ? 1 : count + 1);
+                }
+                return pinned;
+            } finally {
+                recordingClass.getMethod("close").invoke(recording);
+                dump.delete();
+            }
+        }
+    }
+
+    private class Reader implements Runnable {
+
+        private final CountDownLatch start;
+        private final CountDownLatch done;
+        private final long deadline;
+
+        public Reader(CountDownLatch start, CountDownLatch done, long deadline) {
+            this.start = start;
+            this.done = done;
+            this.deadline = deadline;
+        }
+
+        public void run() {
+            try {
+                start.await();
+                while (System.currentTimeMillis() < deadline && failure.get() == null) {
+                    db.runReadTransaction(scan);
+                    reads.incrementAndGet();
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+
+    @Test
+    public void testReaders() throws Exception {
+
+        db.createTable("CREATE TABLE record (a INTEGER PRIMARY KEY, b INTEGER NOT NULL)");
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable table = db.getTable(TABLE);
+                for (long i = 1; i <= ROWS; i++) {
+                    table.insert(i, i);
+                }
+                return null;
+            }
+        });
+        db.setConcurrentReads(true);
+
+        final PinnedRecording recording = START_VIRTUAL_THREAD != null ? PinnedRecording.start() : null;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(READERS);
+        final long begin = System.currentTimeMillis();
+        final long deadline = begin + DURATION;
+        for (int i = 0; i < READERS; i++) {
+            startReader(new Reader(start, done, deadline), i);
+        }
+        start.countDown();
+        done.await();
+        final long elapsed = Math.max(System.currentTimeMillis() - begin, 1);
+
+        logger.log(Level.INFO, String.format("%d %s readers: %d reads in %d ms, %d reads/s", READERS,
+                START_VIRTUAL_THREAD != null ? "virtual" : "platform", reads.get(), elapsed, reads.get() * 1000
+                        / elapsed));
+
+        if (recording != null) {
+            logPinned(recording.stop());
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        Assert.assertTrue(reads.get() > 0);
+    }
+
+    private static void logPinned(final Map<String, Integer> pinned) {
+        final List<Map.Entry<String, Integer>> places = new ArrayList<Map.Entry<String, Integer>>(pinned.entrySet());
+        Collections.sort(places, new Comparator<Map.Entry<String, Integer>>() {
+            public int compare(Map.Entry<String, Integer> e1, Map.Entry<String, Integer> e2) {
+                return e2.getValue().compareTo(e1.getValue());
+            }
+        });
+        int total = 0;
+        final StringBuilder report = new StringBuilder();
+        for (final Map.Entry<String, Integer> place : places) {
+            total += place.getValue();
+            report.append(String.format("%n  %d at %s", place.getValue(), place.getKey()));
+        }
+        logger.log(Level.INFO, String.format("%d %s events%s", total, PINNED_EVENT, report));
+    }
+
+}